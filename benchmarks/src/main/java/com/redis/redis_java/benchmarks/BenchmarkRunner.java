@@ -0,0 +1,29 @@
+package com.redis.redis_java.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行全部基准测试, 结果为ops/s, 附带gc profiler的分配速率, 同时写入benchmark-result.json便于版本间对比
+ * 命令行参数与JMH相同, 例如只运行序列化: java -jar target/benchmarks.jar Serialize
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.mode(org.openjdk.jmh.annotations.Mode.Throughput)
+				.timeUnit(TimeUnit.SECONDS)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("benchmark-result.json")
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,47 @@
+package com.redis.redis_java.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.redis.redis_java.id.IdGeneratorUtil;
+import com.redis.redis_java.id.LocalIdGenerator;
+
+/**
+ * id的拼装、解析和进程内生成
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IdGeneratorBenchmark {
+
+	private final LocalIdGenerator local = new LocalIdGenerator(1);
+
+	private long second = 1500000000L;
+
+	private long seq;
+
+	private final long id = IdGeneratorUtil.buildId(1500000000L, 123456, 7, 89);
+
+	@Benchmark
+	public long buildId() {
+		seq = (seq + 1) & 0x3FF;
+		return IdGeneratorUtil.buildId(second, 123456, 7, seq);
+	}
+
+	@Benchmark
+	public List<Long> parseId() {
+		return IdGeneratorUtil.parseId(id);
+	}
+
+	@Benchmark
+	public long localNext() {
+		return local.next();
+	}
+}
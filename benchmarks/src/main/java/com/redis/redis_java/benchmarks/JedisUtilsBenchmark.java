@@ -0,0 +1,130 @@
+package com.redis.redis_java.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.redis.redis_java.jedis.JedisUtils;
+import com.redis.redis_java.jedis.properties.PropertiesService;
+
+/**
+ * JedisUtils的string/hash/zset读写
+ * backend=standin 连接本地启动的StandInRedisServer, backend=embedded 使用进程内的EmbeddedStore
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JedisUtilsBenchmark {
+
+	private static final String STRING_KEY = "bench:string";
+
+	private static final String HASH_KEY = "bench:hash";
+
+	private static final String ZSET_KEY = "bench:zset";
+
+	private static final String VALUE = "benchmark-value-0123456789";
+
+	@Param({"standin", "embedded"})
+	private String backend;
+
+	private StandInRedisServer server;
+
+	private JedisUtils jedisUtils;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		final Map<String, String> config = new HashMap<String, String>();
+		if (!"embedded".equals(backend)) {
+			server = new StandInRedisServer();
+			config.put("redis.port", String.valueOf(server.getPort()));
+		}
+		config.put("redis.host", "127.0.0.1");
+		config.put("redis.maxActive", "16");
+		config.put("redis.maxIdle", "16");
+		config.put("redis.maxWait", "2000");
+		config.put("redis.timeBetweenEvictionRunsMillis", "30000");
+		config.put("redis.testWhileIdle", "false");
+		config.put("redis.timeout", "2000");
+		config.put("redis.database", "0");
+		config.put("redis.mode", "embedded".equals(backend) ? "embedded" : "pool");
+		JedisUtils.properties = new PropertiesService() {
+			@Override
+			public String getProperty(String key) {
+				return config.get(key);
+			}
+
+			@Override
+			public String getProperty(String key, String value) {
+				String v = config.get(key);
+				return v == null ? value : v;
+			}
+		};
+		jedisUtils = JedisUtils.getInstance();
+
+		jedisUtils.strings().set(STRING_KEY, VALUE);
+		for (int i = 0; i < 16; i++) {
+			jedisUtils.hash().hset(HASH_KEY, "field" + i, VALUE);
+			jedisUtils.sortSet().zadd(ZSET_KEY, i, "member" + i);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Benchmark
+	public String stringSet() {
+		return jedisUtils.strings().set(STRING_KEY, VALUE);
+	}
+
+	@Benchmark
+	public String stringGet() {
+		return jedisUtils.strings().get(STRING_KEY);
+	}
+
+	@Benchmark
+	public long hashSet() {
+		return jedisUtils.hash().hset(HASH_KEY, "field0", VALUE);
+	}
+
+	@Benchmark
+	public String hashGet() {
+		return jedisUtils.hash().hget(HASH_KEY, "field0");
+	}
+
+	@Benchmark
+	public List<String> hashMget() {
+		return jedisUtils.hash().hmget(HASH_KEY, "field0", "field1", "field2", "field3");
+	}
+
+	@Benchmark
+	public Map<String, String> hashGetAll() {
+		return jedisUtils.hash().hgetAll(HASH_KEY);
+	}
+
+	@Benchmark
+	public long zsetAdd() {
+		return jedisUtils.sortSet().zadd(ZSET_KEY, 0, "member0");
+	}
+
+	@Benchmark
+	public Set<String> zsetRange() {
+		return jedisUtils.sortSet().zrange(ZSET_KEY, 0, 9);
+	}
+}
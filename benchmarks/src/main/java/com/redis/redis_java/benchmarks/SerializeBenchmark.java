@@ -0,0 +1,75 @@
+package com.redis.redis_java.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.redis.redis_java.SerializeUtils;
+import com.redis.redis_java.TestVO;
+import com.redis.redis_java.codec.Codec;
+import com.redis.redis_java.codec.Codecs;
+import com.redis.redis_java.codec.FastjsonCodec;
+
+/**
+ * SerializeUtils与各个Codec的序列化/反序列化
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SerializeBenchmark {
+
+	private final Codec fastjson = new FastjsonCodec("com.redis.redis_java");
+
+	private TestVO vo;
+
+	private byte[] javaBytes;
+
+	private byte[] compactBytes;
+
+	private byte[] fastjsonBytes;
+
+	@Setup
+	public void setup() throws Exception {
+		vo = new TestVO();
+		vo.setName("benchmark-name-0123456789");
+		javaBytes = SerializeUtils.serialize(vo);
+		compactBytes = Codecs.COMPACT.encode(vo);
+		fastjsonBytes = fastjson.encode(vo);
+	}
+
+	@Benchmark
+	public byte[] serializeUtilsEncode() throws Exception {
+		return SerializeUtils.serialize(vo);
+	}
+
+	@Benchmark
+	public Object serializeUtilsDecode() throws Exception {
+		return SerializeUtils.unSerialize(javaBytes);
+	}
+
+	@Benchmark
+	public byte[] compactEncode() throws Exception {
+		return Codecs.COMPACT.encode(vo);
+	}
+
+	@Benchmark
+	public Object compactDecode() throws Exception {
+		return Codecs.decode(compactBytes);
+	}
+
+	@Benchmark
+	public byte[] fastjsonEncode() throws Exception {
+		return fastjson.encode(vo);
+	}
+
+	@Benchmark
+	public Object fastjsonDecode() throws Exception {
+		return fastjson.decode(fastjsonBytes);
+	}
+}
@@ -0,0 +1,364 @@
+package com.redis.redis_java.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基准测试用的本地Redis替身, 实现RESP协议和基准测试用到的少量命令
+ * 每个连接一个线程, 数据只保存在内存中, 不支持过期
+ */
+public class StandInRedisServer implements AutoCloseable {
+
+	private static final byte[] CRLF = {'\r', '\n'};
+
+	private final ServerSocket serverSocket;
+
+	private final Map<String, Object> data = new ConcurrentHashMap<String, Object>();
+
+	private volatile boolean closed;
+
+	/**
+	 * 在随机端口上启动
+	 */
+	public StandInRedisServer() throws IOException {
+		serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "stand-in-redis-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		serverSocket.close();
+	}
+
+	private void accept() {
+		while (!closed) {
+			try {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				Thread worker = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				}, "stand-in-redis-" + socket.getPort());
+				worker.setDaemon(true);
+				worker.start();
+			} catch (IOException e) {
+				// closed
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			while (!closed) {
+				List<byte[]> command = readCommand(in);
+				if (command == null) {
+					break;
+				}
+				execute(command, out);
+				// 管道中的后续命令已经到达时先不刷新
+				if (in.available() == 0) {
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			// 连接断开
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	private static List<byte[]> readCommand(InputStream in) throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			return null;
+		}
+		if (b != '*') {
+			throw new IOException("Unsupported request");
+		}
+		int argc = (int) readLong(in);
+		List<byte[]> args = new ArrayList<byte[]>(argc);
+		for (int i = 0; i < argc; i++) {
+			if (in.read() != '$') {
+				throw new IOException("Bulk string expected");
+			}
+			int len = (int) readLong(in);
+			byte[] arg = new byte[len];
+			int read = 0;
+			while (read < len) {
+				int n = in.read(arg, read, len - read);
+				if (n < 0) {
+					throw new EOFException();
+				}
+				read += n;
+			}
+			in.read();
+			in.read();
+			args.add(arg);
+		}
+		return args;
+	}
+
+	private static long readLong(InputStream in) throws IOException {
+		long value = 0;
+		boolean negative = false;
+		int b;
+		while ((b = in.read()) != '\r') {
+			if (b == -1) {
+				throw new EOFException();
+			}
+			if (b == '-') {
+				negative = true;
+			} else {
+				value = value * 10 + (b - '0');
+			}
+		}
+		in.read();
+		return negative ? -value : value;
+	}
+
+	private static String str(byte[] bytes) {
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void execute(List<byte[]> args, OutputStream out) throws IOException {
+		String name = str(args.get(0)).toUpperCase();
+		switch (name) {
+		case "PING":
+			simple(out, "PONG");
+			break;
+		case "SELECT":
+		case "AUTH":
+		case "QUIT":
+			simple(out, "OK");
+			break;
+		case "FLUSHALL":
+		case "FLUSHDB":
+			data.clear();
+			simple(out, "OK");
+			break;
+		case "SET":
+		case "SETEX": {
+			byte[] value = args.get(name.equals("SET") ? 2 : 3);
+			data.put(str(args.get(1)), value);
+			simple(out, "OK");
+			break;
+		}
+		case "GET": {
+			Object value = data.get(str(args.get(1)));
+			bulk(out, value instanceof byte[] ? (byte[]) value : null);
+			break;
+		}
+		case "DEL": {
+			long count = 0;
+			for (int i = 1; i < args.size(); i++) {
+				if (data.remove(str(args.get(i))) != null) {
+					count++;
+				}
+			}
+			integer(out, count);
+			break;
+		}
+		case "EXISTS":
+			integer(out, data.containsKey(str(args.get(1))) ? 1 : 0);
+			break;
+		case "EXPIRE":
+			integer(out, data.containsKey(str(args.get(1))) ? 1 : 0);
+			break;
+		case "INCRBY": {
+			String key = str(args.get(1));
+			long delta = Long.parseLong(str(args.get(2)));
+			synchronized (data) {
+				Object value = data.get(key);
+				long n = (value == null ? 0 : Long.parseLong(str((byte[]) value))) + delta;
+				data.put(key, bytes(String.valueOf(n)));
+				integer(out, n);
+			}
+			break;
+		}
+		case "HSET": {
+			Map<String, byte[]> hash = (Map<String, byte[]>) structure(str(args.get(1)), ConcurrentHashMap.class);
+			integer(out, hash.put(str(args.get(2)), args.get(3)) == null ? 1 : 0);
+			break;
+		}
+		case "HGET": {
+			Map<String, byte[]> hash = (Map<String, byte[]>) data.get(str(args.get(1)));
+			bulk(out, hash == null ? null : hash.get(str(args.get(2))));
+			break;
+		}
+		case "HMGET": {
+			Map<String, byte[]> hash = (Map<String, byte[]>) data.get(str(args.get(1)));
+			arrayHeader(out, args.size() - 2);
+			for (int i = 2; i < args.size(); i++) {
+				bulk(out, hash == null ? null : hash.get(str(args.get(i))));
+			}
+			break;
+		}
+		case "HGETALL": {
+			Map<String, byte[]> hash = (Map<String, byte[]>) data.get(str(args.get(1)));
+			if (hash == null) {
+				arrayHeader(out, 0);
+				break;
+			}
+			List<Map.Entry<String, byte[]>> entries = new ArrayList<Map.Entry<String, byte[]>>(hash.entrySet());
+			arrayHeader(out, entries.size() * 2);
+			for (Map.Entry<String, byte[]> entry : entries) {
+				bulk(out, bytes(entry.getKey()));
+				bulk(out, entry.getValue());
+			}
+			break;
+		}
+		case "ZADD": {
+			SortedSet zset = (SortedSet) structure(str(args.get(1)), SortedSet.class);
+			integer(out, zset.add(Double.parseDouble(str(args.get(2))), str(args.get(3))));
+			break;
+		}
+		case "ZCARD": {
+			SortedSet zset = (SortedSet) data.get(str(args.get(1)));
+			integer(out, zset == null ? 0 : zset.size());
+			break;
+		}
+		case "ZRANGE": {
+			SortedSet zset = (SortedSet) data.get(str(args.get(1)));
+			List<String> members = zset == null ? new ArrayList<String>()
+					: zset.range(Integer.parseInt(str(args.get(2))), Integer.parseInt(str(args.get(3))));
+			arrayHeader(out, members.size());
+			for (String member : members) {
+				bulk(out, bytes(member));
+			}
+			break;
+		}
+		default:
+			out.write(bytes("-ERR unknown command '" + name + "'"));
+			out.write(CRLF);
+		}
+	}
+
+	private Object structure(String key, Class<?> type) {
+		Object value = data.get(key);
+		if (value == null) {
+			try {
+				Object created = type.newInstance();
+				value = ((ConcurrentHashMap<String, Object>) data).putIfAbsent(key, created);
+				if (value == null) {
+					value = created;
+				}
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return value;
+	}
+
+	private static void simple(OutputStream out, String s) throws IOException {
+		out.write('+');
+		out.write(bytes(s));
+		out.write(CRLF);
+	}
+
+	private static void integer(OutputStream out, long n) throws IOException {
+		out.write(':');
+		out.write(bytes(String.valueOf(n)));
+		out.write(CRLF);
+	}
+
+	private static void bulk(OutputStream out, byte[] value) throws IOException {
+		if (value == null) {
+			out.write(bytes("$-1"));
+			out.write(CRLF);
+			return;
+		}
+		out.write('$');
+		out.write(bytes(String.valueOf(value.length)));
+		out.write(CRLF);
+		out.write(value);
+		out.write(CRLF);
+	}
+
+	private static void arrayHeader(OutputStream out, int size) throws IOException {
+		out.write('*');
+		out.write(bytes(String.valueOf(size)));
+		out.write(CRLF);
+	}
+
+	/**
+	 * 按权重排序的集合
+	 */
+	public static class SortedSet {
+		private final Map<String, Double> scores = new TreeMap<String, Double>();
+		private final TreeSet<Object[]> ordered = new TreeSet<Object[]>((a, b) -> {
+			int c = Double.compare((Double) a[0], (Double) b[0]);
+			return c != 0 ? c : ((String) a[1]).compareTo((String) b[1]);
+		});
+
+		synchronized int add(double score, String member) {
+			Double old = scores.put(member, score);
+			if (old != null) {
+				ordered.remove(new Object[] {old, member});
+			}
+			ordered.add(new Object[] {score, member});
+			return old == null ? 1 : 0;
+		}
+
+		synchronized int size() {
+			return scores.size();
+		}
+
+		synchronized List<String> range(int start, int end) {
+			int size = ordered.size();
+			if (start < 0) start = Math.max(0, size + start);
+			if (end < 0) end = size + end;
+			end = Math.min(end, size - 1);
+			List<String> result = new ArrayList<String>();
+			int i = 0;
+			for (Object[] entry : ordered) {
+				if (i > end) {
+					break;
+				}
+				if (i >= start) {
+					result.add((String) entry[1]);
+				}
+				i++;
+			}
+			return result;
+		}
+	}
+}
@@ -1,18 +1,16 @@
 package com.redis.redis_java;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.redis.redis_java.codec.Codecs;
+
 public class SerializeUtils {
 
 	private static Logger logger = LoggerFactory.getLogger(SerializeUtils.class);
 
 	/**
-	 * 序列化
+	 * 序列化(Java序列化, 复用线程内的缓冲区)
 	 * 
 	 * @param object
 	 * @return byte[]
@@ -20,14 +18,8 @@ public class SerializeUtils {
 	 */
 	public static byte[] serialize(Object object) throws Exception {
 		if(object == null) return null;
-		ObjectOutputStream oos = null;
-		ByteArrayOutputStream baos = null;
 		try {
-			baos = new ByteArrayOutputStream();
-			oos = new ObjectOutputStream(baos);
-			oos.writeObject(object);
-			byte[] bytes = baos.toByteArray();
-			return bytes;
+			return Codecs.JAVA.encode(object);
 		} catch (Exception e) {
 			logger.error("序列化失败：" + e);
 			throw e;
@@ -35,7 +27,7 @@ public class SerializeUtils {
 	}
 
 	/**
-	 * 反序列化
+	 * 反序列化, 按格式标记识别Java序列化及其他Codec写入的数据
 	 * 
 	 * @param bytes
 	 * @return Object
@@ -43,11 +35,8 @@ public class SerializeUtils {
 	 */
 	public static Object unSerialize(byte[] bytes) throws Exception {
 		if(bytes == null) return null;
-		ByteArrayInputStream bais = null;
 		try {
-			bais = new ByteArrayInputStream(bytes);
-			ObjectInputStream ois = new ObjectInputStream(bais);
-			return ois.readObject();
+			return Codecs.decode(bytes);
 		} catch (Exception e) {
 			logger.error("反序列化失败：" + e);
 			throw e;
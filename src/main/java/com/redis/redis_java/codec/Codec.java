@@ -0,0 +1,34 @@
+package com.redis.redis_java.codec;
+
+/**
+ * 缓存值的编解码
+ * 编码结果的第一个字节是格式标记(header), 解码时由Codecs按标记找到对应的Codec,
+ * 所以同一个keyspace中可以同时存在不同格式的值
+ */
+public interface Codec {
+
+	/**
+	 * 格式标记, 即encode结果的第一个字节
+	 * 
+	 * @return byte
+	 */
+	byte header();
+
+	/**
+	 * 编码
+	 * 
+	 * @param object
+	 * @return byte[]
+	 * @throws Exception
+	 */
+	byte[] encode(Object object) throws Exception;
+
+	/**
+	 * 解码
+	 * 
+	 * @param bytes 包含格式标记的完整数据
+	 * @return Object
+	 * @throws Exception
+	 */
+	Object decode(byte[] bytes) throws Exception;
+}
@@ -0,0 +1,83 @@
+package com.redis.redis_java.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * 每个线程复用的编码缓冲区
+ */
+class CodecBuffer extends ByteArrayOutputStream {
+
+	private static final int INITIAL_SIZE = 256;
+
+	/** 超过这个大小的缓冲区用完后丢弃, 避免每个线程长期占用大块内存 */
+	private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+	private static final ThreadLocal<CodecBuffer> BUFFERS = new ThreadLocal<CodecBuffer>() {
+		@Override
+		protected CodecBuffer initialValue() {
+			return new CodecBuffer();
+		}
+	};
+
+	private boolean inUse;
+
+	private CodecBuffer() {
+		super(INITIAL_SIZE);
+	}
+
+	/**
+	 * 取当前线程的缓冲区, 用完必须release; 嵌套使用时返回一个新的缓冲区
+	 */
+	static CodecBuffer acquire() {
+		CodecBuffer buffer = BUFFERS.get();
+		if (buffer.inUse) {
+			return new CodecBuffer();
+		}
+		buffer.inUse = true;
+		buffer.reset();
+		return buffer;
+	}
+
+	void release() {
+		inUse = false;
+		if (buf.length > MAX_RETAINED_SIZE) {
+			buf = new byte[INITIAL_SIZE];
+		}
+	}
+
+	void ensureCapacity(int extra) {
+		if (count + extra > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + extra));
+		}
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(1);
+		buf[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(len);
+		System.arraycopy(b, off, buf, count, len);
+		count += len;
+	}
+
+	void writeVarLong(long value) {
+		ensureCapacity(10);
+		while ((value & ~0x7FL) != 0) {
+			buf[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[count++] = (byte) value;
+	}
+
+	void writeLong(long value) {
+		ensureCapacity(8);
+		for (int i = 56; i >= 0; i -= 8) {
+			buf[count++] = (byte) (value >>> i);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.redis.redis_java.codec;
+
+/**
+ * 内置Codec及按格式标记解码
+ */
+public class Codecs {
+
+	/** 旧版Java序列化 */
+	public static final Codec JAVA = new JavaCodec();
+
+	/** 紧凑二进制 */
+	public static final Codec COMPACT = new CompactCodec();
+
+	/** 下标为格式标记, 注册时整体替换 */
+	private static volatile Codec[] codecs = new Codec[256];
+
+	static {
+		register(JAVA);
+		register(COMPACT);
+	}
+
+	private Codecs() {}
+
+	/**
+	 * 注册一个Codec用于解码, 相同格式标记的Codec会被替换
+	 * 
+	 * @param codec
+	 */
+	public static synchronized void register(Codec codec) {
+		Codec[] copy = codecs.clone();
+		copy[codec.header() & 0xFF] = codec;
+		codecs = copy;
+	}
+
+	/**
+	 * 按第一个字节的格式标记选择Codec解码, 先去掉逻辑过期格式头, 压缩过的值再解压
+	 * 
+	 * @param bytes
+	 * @return Object
+	 * @throws Exception
+	 */
+	public static Object decode(byte[] bytes) throws Exception {
+		if (bytes == null || bytes.length == 0) return null;
+		bytes = Compression.decompress(TimedValue.unwrap(bytes));
+		Codec codec = codecs[bytes[0] & 0xFF];
+		if (codec == null) {
+			throw new IllegalArgumentException("Unknown codec header: " + (bytes[0] & 0xFF));
+		}
+		return codec.decode(bytes);
+	}
+}
@@ -0,0 +1,456 @@
+package com.redis.redis_java.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑二进制编码
+ * 基本类型、String、byte[]、ArrayList、HashSet、HashMap、Date直接编码;
+ * 有无参构造器的Serializable对象按字段编码, 同一次编码中重复出现的类只写一次类名;
+ * 其他对象, 以及有循环引用的对象图退回到Java序列化
+ *
+ * 对象字段发生变化后旧数据无法解码(抛出异常), 适合作为缓存使用
+ */
+public class CompactCodec implements Codec {
+
+	public static final byte HEADER = 0x01;
+
+	private static final byte NULL = 0;
+	private static final byte TRUE = 1;
+	private static final byte FALSE = 2;
+	private static final byte BYTE = 3;
+	private static final byte SHORT = 4;
+	private static final byte CHAR = 5;
+	private static final byte INT = 6;
+	private static final byte LONG = 7;
+	private static final byte FLOAT = 8;
+	private static final byte DOUBLE = 9;
+	private static final byte STRING = 10;
+	private static final byte BYTES = 11;
+	private static final byte LIST = 12;
+	private static final byte SET = 13;
+	private static final byte MAP = 14;
+	private static final byte DATE = 15;
+	private static final byte BEAN = 16;
+	private static final byte BEAN_REF = 17;
+	private static final byte JAVA = 18;
+
+	private static final int MAX_DEPTH = 64;
+
+	private static final Map<Class<?>, BeanInfo> BEANS = new ConcurrentHashMap<Class<?>, BeanInfo>();
+
+	@Override
+	public byte header() {
+		return HEADER;
+	}
+
+	@Override
+	public byte[] encode(Object object) throws Exception {
+		if (object == null) return null;
+		CodecBuffer buffer = CodecBuffer.acquire();
+		try {
+			buffer.write(HEADER);
+			try {
+				new Writer(buffer).write(object, 0);
+			} catch (CyclicGraphException e) {
+				// 按字段编码不保留引用, 整个值改用Java序列化
+				buffer.reset();
+				buffer.write(HEADER);
+				new Writer(buffer).writeJava(object);
+			}
+			return buffer.toByteArray();
+		} finally {
+			buffer.release();
+		}
+	}
+
+	@Override
+	public Object decode(byte[] bytes) throws Exception {
+		if (bytes == null) return null;
+		Reader reader = new Reader(bytes, 1);
+		return reader.read(0);
+	}
+
+	private static BeanInfo beanInfo(Class<?> type) {
+		BeanInfo info = BEANS.get(type);
+		if (info == null) {
+			info = new BeanInfo(type);
+			BEANS.put(type, info);
+		}
+		return info;
+	}
+
+	private static void checkDepth(int depth) throws NotSerializableException {
+		if (depth > MAX_DEPTH) {
+			throw new NotSerializableException("Object graph is too deep");
+		}
+	}
+
+	/**
+	 * 对象图中有循环引用, 由encode捕获后退回到Java序列化
+	 */
+	private static final class CyclicGraphException extends NotSerializableException {
+		private static final long serialVersionUID = 1L;
+
+		CyclicGraphException(Class<?> type) {
+			super(type.getName());
+		}
+	}
+
+	private static final class Writer {
+		private final CodecBuffer out;
+		private List<Class<?>> classes;
+		/** 当前正在编码的集合和对象, 用于发现循环引用 */
+		private Map<Object, Boolean> path;
+
+		Writer(CodecBuffer out) {
+			this.out = out;
+		}
+
+		private void enter(Object value) throws CyclicGraphException {
+			if (path == null) {
+				path = new IdentityHashMap<Object, Boolean>();
+			}
+			if (path.put(value, Boolean.TRUE) != null) {
+				throw new CyclicGraphException(value.getClass());
+			}
+		}
+
+		void write(Object value, int depth) throws Exception {
+			checkDepth(depth);
+			if (value == null) {
+				out.write(NULL);
+			} else if (value instanceof String) {
+				writeString((String) value);
+			} else if (value instanceof Integer) {
+				out.write(INT);
+				out.writeVarLong(zigZag((Integer) value));
+			} else if (value instanceof Long) {
+				out.write(LONG);
+				out.writeVarLong(zigZag((Long) value));
+			} else if (value instanceof Boolean) {
+				out.write((Boolean) value ? TRUE : FALSE);
+			} else if (value instanceof Double) {
+				out.write(DOUBLE);
+				out.writeLong(Double.doubleToLongBits((Double) value));
+			} else if (value instanceof Float) {
+				out.write(FLOAT);
+				out.writeVarLong(Float.floatToIntBits((Float) value) & 0xFFFFFFFFL);
+			} else if (value instanceof Short) {
+				out.write(SHORT);
+				out.writeVarLong(zigZag((Short) value));
+			} else if (value instanceof Byte) {
+				out.write(BYTE);
+				out.write((Byte) value);
+			} else if (value instanceof Character) {
+				out.write(CHAR);
+				out.writeVarLong((Character) value);
+			} else if (value instanceof byte[]) {
+				byte[] bytes = (byte[]) value;
+				out.write(BYTES);
+				out.writeVarLong(bytes.length);
+				out.write(bytes, 0, bytes.length);
+			} else if (value.getClass() == Date.class) {
+				out.write(DATE);
+				out.writeVarLong(zigZag(((Date) value).getTime()));
+			} else if (value.getClass() == ArrayList.class) {
+				out.write(LIST);
+				writeElements((Collection<?>) value, depth);
+			} else if (value.getClass() == HashSet.class || value.getClass() == LinkedHashSet.class) {
+				out.write(SET);
+				writeElements((Collection<?>) value, depth);
+			} else if (value.getClass() == HashMap.class || value.getClass() == LinkedHashMap.class) {
+				Map<?, ?> map = (Map<?, ?>) value;
+				enter(map);
+				out.write(MAP);
+				out.writeVarLong(map.size());
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					write(entry.getKey(), depth + 1);
+					write(entry.getValue(), depth + 1);
+				}
+				path.remove(map);
+			} else {
+				BeanInfo info = beanInfo(value.getClass());
+				if (info.constructor != null) {
+					enter(value);
+					writeBean(info, value, depth);
+					path.remove(value);
+				} else if (value instanceof Serializable) {
+					writeJava(value);
+				} else {
+					throw new NotSerializableException(value.getClass().getName());
+				}
+			}
+		}
+
+		private void writeString(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.write(STRING);
+			out.writeVarLong(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+
+		private void writeElements(Collection<?> values, int depth) throws Exception {
+			enter(values);
+			out.writeVarLong(values.size());
+			for (Object element : values) {
+				write(element, depth + 1);
+			}
+			path.remove(values);
+		}
+
+		private void writeBean(BeanInfo info, Object value, int depth) throws Exception {
+			if (classes == null) {
+				classes = new ArrayList<Class<?>>(4);
+			}
+			int ref = classes.indexOf(info.type);
+			if (ref >= 0) {
+				out.write(BEAN_REF);
+				out.writeVarLong(ref);
+			} else {
+				classes.add(info.type);
+				byte[] name = info.type.getName().getBytes(StandardCharsets.UTF_8);
+				out.write(BEAN);
+				out.writeVarLong(name.length);
+				out.write(name, 0, name.length);
+				out.writeVarLong(info.fingerprint & 0xFFFFFFFFL);
+			}
+			for (Field field : info.fields) {
+				write(field.get(value), depth + 1);
+			}
+		}
+
+		private void writeJava(Object value) throws Exception {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+			oos.writeObject(value);
+			oos.flush();
+			byte[] bytes = baos.toByteArray();
+			out.write(JAVA);
+			out.writeVarLong(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+	}
+
+	private static final class Reader {
+		private final byte[] in;
+		private int pos;
+		private List<BeanInfo> classes;
+
+		Reader(byte[] in, int pos) {
+			this.in = in;
+			this.pos = pos;
+		}
+
+		Object read(int depth) throws Exception {
+			checkDepth(depth);
+			byte tag = in[pos++];
+			switch (tag) {
+			case NULL:
+				return null;
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case BYTE:
+				return in[pos++];
+			case SHORT:
+				return (short) unZigZag(readVarLong());
+			case CHAR:
+				return (char) readVarLong();
+			case INT:
+				return (int) unZigZag(readVarLong());
+			case LONG:
+				return unZigZag(readVarLong());
+			case FLOAT:
+				return Float.intBitsToFloat((int) readVarLong());
+			case DOUBLE:
+				return Double.longBitsToDouble(readLong());
+			case STRING: {
+				int len = (int) readVarLong();
+				String s = new String(in, pos, len, StandardCharsets.UTF_8);
+				pos += len;
+				return s;
+			}
+			case BYTES: {
+				int len = (int) readVarLong();
+				byte[] bytes = new byte[len];
+				System.arraycopy(in, pos, bytes, 0, len);
+				pos += len;
+				return bytes;
+			}
+			case DATE:
+				return new Date(unZigZag(readVarLong()));
+			case LIST: {
+				int size = (int) readVarLong();
+				List<Object> list = new ArrayList<Object>(size);
+				for (int i = 0; i < size; i++) {
+					list.add(read(depth + 1));
+				}
+				return list;
+			}
+			case SET: {
+				int size = (int) readVarLong();
+				LinkedHashSet<Object> set = new LinkedHashSet<Object>(size * 4 / 3 + 1);
+				for (int i = 0; i < size; i++) {
+					set.add(read(depth + 1));
+				}
+				return set;
+			}
+			case MAP: {
+				int size = (int) readVarLong();
+				LinkedHashMap<Object, Object> map = new LinkedHashMap<Object, Object>(size * 4 / 3 + 1);
+				for (int i = 0; i < size; i++) {
+					Object key = read(depth + 1);
+					map.put(key, read(depth + 1));
+				}
+				return map;
+			}
+			case BEAN:
+				return readBean(readClass(), depth);
+			case BEAN_REF:
+				return readBean(classes.get((int) readVarLong()), depth);
+			case JAVA: {
+				int len = (int) readVarLong();
+				ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(in, pos, len));
+				pos += len;
+				return ois.readObject();
+			}
+			default:
+				throw new IllegalArgumentException("Unknown compact tag: " + tag);
+			}
+		}
+
+		private BeanInfo readClass() throws Exception {
+			int len = (int) readVarLong();
+			String name = new String(in, pos, len, StandardCharsets.UTF_8);
+			pos += len;
+			int fingerprint = (int) readVarLong();
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			Class<?> type = Class.forName(name, false, loader != null ? loader : CompactCodec.class.getClassLoader());
+			BeanInfo info = beanInfo(type);
+			if (info.constructor == null) {
+				throw new NotSerializableException(name);
+			}
+			if (info.fingerprint != fingerprint) {
+				throw new IllegalStateException("Fields of " + name + " have changed since the value was written");
+			}
+			if (classes == null) {
+				classes = new ArrayList<BeanInfo>(4);
+			}
+			classes.add(info);
+			return info;
+		}
+
+		private Object readBean(BeanInfo info, int depth) throws Exception {
+			Object bean = info.constructor.newInstance();
+			for (Field field : info.fields) {
+				field.set(bean, read(depth + 1));
+			}
+			return bean;
+		}
+
+		private long readVarLong() {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = in[pos++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		private long readLong() {
+			long value = 0;
+			for (int i = 0; i < 8; i++) {
+				value = (value << 8) | (in[pos++] & 0xFF);
+			}
+			return value;
+		}
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * 按字段编码的类的元数据, 每个类只反射一次
+	 */
+	private static final class BeanInfo {
+		final Class<?> type;
+		/** 不可按字段编码时为null */
+		final Constructor<?> constructor;
+		final Field[] fields;
+		final int fingerprint;
+
+		BeanInfo(Class<?> type) {
+			this.type = type;
+			Constructor<?> ctor = null;
+			if (Serializable.class.isAssignableFrom(type) && !type.isArray() && !type.isEnum()
+					&& !type.getName().startsWith("java.")) {
+				try {
+					ctor = type.getDeclaredConstructor();
+					ctor.setAccessible(true);
+				} catch (NoSuchMethodException e) {
+					ctor = null;
+				}
+			}
+			List<Field> list = new ArrayList<Field>();
+			if (ctor != null) {
+				for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+					List<Field> declared = new ArrayList<Field>();
+					for (Field field : c.getDeclaredFields()) {
+						int modifiers = field.getModifiers();
+						if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+							continue;
+						}
+						field.setAccessible(true);
+						declared.add(field);
+					}
+					Collections.sort(declared, new Comparator<Field>() {
+						@Override
+						public int compare(Field a, Field b) {
+							return a.getName().compareTo(b.getName());
+						}
+					});
+					list.addAll(declared);
+				}
+			}
+			int hash = type.getName().hashCode();
+			for (Field field : list) {
+				hash = 31 * hash + field.getName().hashCode();
+				hash = 31 * hash + field.getType().getName().hashCode();
+			}
+			this.constructor = ctor;
+			this.fields = list.toArray(new Field[list.size()]);
+			this.fingerprint = hash;
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package com.redis.redis_java.codec;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 大值透明压缩
+ * 超过阈值且压缩后明显变小的值加上格式头保存: [0x03][0xC7][算法编号][原始长度varint][压缩数据]
+ * 其余的值也加上格式头并以算法编号0标记为不压缩: [0x03][0xC7][0x00][原始数据],
+ * 所以启用压缩后写入的值都有格式头, 原始数据恰好以格式头开头时也不会被误认为压缩数据
+ * 读取时按格式头自动解压, 与当前配置的算法以及是否启用压缩无关; 没有格式头的值原样返回, 所以开启压缩前写入的数据仍然可读
+ * 按key前缀(第一个':'之前的部分)统计压缩率和压缩/解压耗时
+ */
+public class Compression {
+
+	/** 格式标记, 与Codec的格式标记(0xAC, 0x01, 0x02)不冲突 */
+	public static final byte HEADER = 0x03;
+
+	private static final byte MAGIC = (byte) 0xC7;
+
+	/** 算法编号0表示格式头之后是不压缩的原始数据 */
+	private static final byte RAW = 0;
+
+	private static final int RAW_HEADER_LENGTH = 3;
+
+	/** 压缩后不超过原始长度的90%才保存压缩结果 */
+	private static final double MAX_RATIO = 0.9;
+
+	/** 前缀数量上限, 超过后统计到(other) */
+	private static final int MAX_PREFIXES = 256;
+
+	/** 下标为算法编号 */
+	private static final Compressor[] COMPRESSORS = new Compressor[256];
+
+	static {
+		COMPRESSORS[Lz4Compressor.ID] = new Lz4Compressor();
+		COMPRESSORS[DeflateCompressor.ID] = new DeflateCompressor();
+	}
+
+	private final Compressor compressor;
+
+	private final int threshold;
+
+	private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+	/**
+	 * @param compressor 写入时使用的算法
+	 * @param threshold 不小于该字节数的值才压缩
+	 */
+	public Compression(Compressor compressor, int threshold) {
+		if (compressor == null) {
+			throw new IllegalArgumentException("compressor must not be null");
+		}
+		this.compressor = compressor;
+		this.threshold = Math.max(threshold, 1);
+	}
+
+	/**
+	 * 按配置创建
+	 *
+	 * @param algorithm none, lz4 或 deflate
+	 * @param threshold
+	 * @return 为none时返回null
+	 */
+	public static Compression of(String algorithm, int threshold) {
+		if (algorithm == null || algorithm.trim().isEmpty() || "none".equalsIgnoreCase(algorithm.trim())) {
+			return null;
+		}
+		for (Compressor c : COMPRESSORS) {
+			if (c != null && c.name().equalsIgnoreCase(algorithm.trim())) {
+				return new Compression(c, threshold);
+			}
+		}
+		throw new IllegalArgumentException("Unknown compression algorithm: " + algorithm);
+	}
+
+	public Compressor getCompressor() {
+		return compressor;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * 压缩一个值, 小于阈值或压缩效果不好时加上不压缩的格式头
+	 *
+	 * @param key 用于按前缀统计
+	 * @param value
+	 * @return 带格式头的值
+	 */
+	public byte[] compress(String key, byte[] value) {
+		if (value == null) {
+			return null;
+		}
+		Stats s = stats(key);
+		if (value.length < threshold) {
+			byte[] result = raw(value);
+			s.record(value.length, result.length, false, 0);
+			return result;
+		}
+		long start = System.nanoTime();
+		byte[] payload = compressor.compress(value, 0, value.length);
+		int headerLength = 3 + varintLength(value.length);
+		byte[] result;
+		boolean compressed = headerLength + payload.length <= value.length * MAX_RATIO;
+		if (compressed) {
+			result = new byte[headerLength + payload.length];
+			result[0] = HEADER;
+			result[1] = MAGIC;
+			result[2] = compressor.id();
+			writeVarint(value.length, result, 3);
+			System.arraycopy(payload, 0, result, headerLength, payload.length);
+		} else {
+			result = raw(value);
+		}
+		s.record(value.length, result.length, compressed, System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * 未启用压缩时写入的值: 以格式头开头的值加上不压缩的格式头, 避免读取时被当作压缩数据, 其余原样返回
+	 *
+	 * @param value
+	 * @return byte[]
+	 */
+	public static byte[] escape(byte[] value) {
+		return isFramed(value) ? raw(value) : value;
+	}
+
+	private static byte[] raw(byte[] value) {
+		byte[] result = new byte[RAW_HEADER_LENGTH + value.length];
+		result[0] = HEADER;
+		result[1] = MAGIC;
+		result[2] = RAW;
+		System.arraycopy(value, 0, result, RAW_HEADER_LENGTH, value.length);
+		return result;
+	}
+
+	/**
+	 * 解压并按key前缀记录耗时
+	 *
+	 * @param key
+	 * @param value
+	 * @return 去掉格式头的原始数据, 没有格式头时原样返回
+	 */
+	public byte[] decompress(String key, byte[] value) {
+		if (!isCompressed(value)) {
+			return decompress(value);
+		}
+		long start = System.nanoTime();
+		byte[] result = decompress(value);
+		stats(key).decompressed(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * 解压任意算法压缩的值, 不记录统计
+	 *
+	 * @param value
+	 * @return 去掉格式头的原始数据, 没有格式头时原样返回
+	 */
+	public static byte[] decompress(byte[] value) {
+		if (!isFramed(value)) {
+			return value;
+		}
+		if (value[2] == RAW) {
+			return Arrays.copyOfRange(value, RAW_HEADER_LENGTH, value.length);
+		}
+		Compressor c = COMPRESSORS[value[2] & 0xFF];
+		int originalLength = 0;
+		int shift = 0;
+		int i = 3;
+		byte b;
+		do {
+			if (i >= value.length || shift > 28) {
+				throw new IllegalArgumentException("Corrupt compressed value header");
+			}
+			b = value[i++];
+			originalLength |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return c.decompress(value, i, value.length - i, originalLength);
+	}
+
+	/**
+	 * 是否有压缩格式头且算法已知
+	 *
+	 * @param value
+	 * @return boolean
+	 */
+	public static boolean isCompressed(byte[] value) {
+		return value != null && value.length > 3 && value[0] == HEADER && value[1] == MAGIC
+				&& COMPRESSORS[value[2] & 0xFF] != null;
+	}
+
+	/**
+	 * 是否有格式头, 包括不压缩的格式头
+	 *
+	 * @param value
+	 * @return boolean
+	 */
+	public static boolean isFramed(byte[] value) {
+		return value != null && value.length >= RAW_HEADER_LENGTH && value[0] == HEADER && value[1] == MAGIC
+				&& (value[2] == RAW || isCompressed(value));
+	}
+
+	/**
+	 * 按前缀排序的统计快照
+	 *
+	 * @return Map
+	 */
+	public Map<String, Stats> stats() {
+		return new TreeMap<String, Stats>(stats);
+	}
+
+	private Stats stats(String key) {
+		String prefix = prefix(key);
+		Stats s = stats.get(prefix);
+		if (s == null) {
+			if (stats.size() >= MAX_PREFIXES) {
+				prefix = "(other)";
+			}
+			s = stats.computeIfAbsent(prefix, p -> new Stats());
+		}
+		return s;
+	}
+
+	static String prefix(String key) {
+		if (key == null) {
+			return "(none)";
+		}
+		int i = key.indexOf(':');
+		return i > 0 ? key.substring(0, i) : "(none)";
+	}
+
+	private static int varintLength(int value) {
+		int n = 1;
+		while ((value >>>= 7) != 0) {
+			n++;
+		}
+		return n;
+	}
+
+	private static void writeVarint(int value, byte[] dst, int offset) {
+		while ((value & ~0x7F) != 0) {
+			dst[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		dst[offset] = (byte) value;
+	}
+
+	/**
+	 * 一个key前缀的压缩统计
+	 */
+	public static final class Stats {
+
+		private final LongAdder values = new LongAdder();
+
+		private final LongAdder compressed = new LongAdder();
+
+		private final LongAdder originalBytes = new LongAdder();
+
+		private final LongAdder storedBytes = new LongAdder();
+
+		private final LongAdder compressNanos = new LongAdder();
+
+		private final LongAdder decompressed = new LongAdder();
+
+		private final LongAdder decompressNanos = new LongAdder();
+
+		void record(int original, int stored, boolean isCompressed, long nanos) {
+			values.increment();
+			originalBytes.add(original);
+			storedBytes.add(stored);
+			compressNanos.add(nanos);
+			if (isCompressed) {
+				compressed.increment();
+			}
+		}
+
+		void decompressed(long nanos) {
+			decompressed.increment();
+			decompressNanos.add(nanos);
+		}
+
+		/** 写入的值个数 */
+		public long getValues() {
+			return values.sum();
+		}
+
+		/** 其中保存为压缩格式的个数 */
+		public long getCompressed() {
+			return compressed.sum();
+		}
+
+		public long getOriginalBytes() {
+			return originalBytes.sum();
+		}
+
+		public long getStoredBytes() {
+			return storedBytes.sum();
+		}
+
+		/** 保存字节数 / 原始字节数, 越小越好 */
+		public double getRatio() {
+			long original = getOriginalBytes();
+			return original == 0 ? 1 : (double) getStoredBytes() / original;
+		}
+
+		/** 压缩累计耗时, 包括压缩后因效果不好而放弃的 */
+		public long getCompressNanos() {
+			return compressNanos.sum();
+		}
+
+		public long getDecompressed() {
+			return decompressed.sum();
+		}
+
+		public long getDecompressNanos() {
+			return decompressNanos.sum();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("values=%d, compressed=%d, ratio=%.3f, compress=%dus, decompressed=%d, decompress=%dus",
+					getValues(), getCompressed(), getRatio(), getCompressNanos() / 1000, getDecompressed(),
+					getDecompressNanos() / 1000);
+		}
+	}
+}
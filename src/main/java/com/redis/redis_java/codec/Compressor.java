@@ -0,0 +1,43 @@
+package com.redis.redis_java.codec;
+
+/**
+ * 压缩算法
+ * 压缩结果不包含原始长度, 由Compression写在格式头中
+ */
+public interface Compressor {
+
+	/**
+	 * 算法编号, 写在压缩数据的格式头中, 解压时据此选择算法
+	 *
+	 * @return byte
+	 */
+	byte id();
+
+	/**
+	 * 算法名称, 用于配置和日志
+	 *
+	 * @return String
+	 */
+	String name();
+
+	/**
+	 * 压缩
+	 *
+	 * @param src
+	 * @param offset
+	 * @param length
+	 * @return byte[]
+	 */
+	byte[] compress(byte[] src, int offset, int length);
+
+	/**
+	 * 解压
+	 *
+	 * @param src
+	 * @param offset
+	 * @param length
+	 * @param originalLength 压缩前的长度
+	 * @return byte[]
+	 */
+	byte[] decompress(byte[] src, int offset, int length, int originalLength);
+}
@@ -0,0 +1,22 @@
+package com.redis.redis_java.codec;
+
+/**
+ * 把Redis返回的原始字节解码为对象, 用于LazyList和LazyMap
+ *
+ * @param <T>
+ */
+@FunctionalInterface
+public interface Decoder<T> {
+
+	/**
+	 * @param bytes 原始字节, 不为null
+	 * @return T
+	 * @throws Exception
+	 */
+	T decode(byte[] bytes) throws Exception;
+
+	/**
+	 * 按格式标记解码缓存值, 见Codecs.decode
+	 */
+	Decoder<Object> CODECS = Codecs::decode;
+}
@@ -0,0 +1,88 @@
+package com.redis.redis_java.codec;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * JDK的Deflate(不带zlib头), 压缩率优先
+ */
+public class DeflateCompressor implements Compressor {
+
+	public static final byte ID = 2;
+
+	private final int level;
+
+	/**
+	 * @param level 压缩级别, 1(最快) ~ 9(最小)
+	 */
+	public DeflateCompressor(int level) {
+		if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("level must be between 1 and 9");
+		}
+		this.level = level;
+	}
+
+	/**
+	 * 默认级别6, 与zlib相同
+	 */
+	public DeflateCompressor() {
+		this(6);
+	}
+
+	@Override
+	public byte id() {
+		return ID;
+	}
+
+	@Override
+	public String name() {
+		return "deflate";
+	}
+
+	@Override
+	public byte[] compress(byte[] src, int offset, int length) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(src, offset, length);
+			deflater.finish();
+			byte[] dst = new byte[Math.max(64, length / 2)];
+			int n = 0;
+			while (!deflater.finished()) {
+				if (n == dst.length) {
+					dst = Arrays.copyOf(dst, dst.length * 2);
+				}
+				n += deflater.deflate(dst, n, dst.length - n);
+			}
+			return n == dst.length ? dst : Arrays.copyOf(dst, n);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public byte[] decompress(byte[] src, int offset, int length, int originalLength) {
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(src, offset, length);
+			byte[] dst = new byte[originalLength];
+			int n = 0;
+			while (n < originalLength && !inflater.finished()) {
+				int read = inflater.inflate(dst, n, originalLength - n);
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				n += read;
+			}
+			if (n != originalLength) {
+				throw new IllegalArgumentException("Corrupt deflate data: expected " + originalLength + " bytes, got " + n);
+			}
+			return dst;
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Corrupt deflate data", e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.redis.redis_java.codec;
+
+import java.nio.charset.StandardCharsets;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+/**
+ * fastjson编码, 写入@type以便还原对象类型
+ * 出于安全考虑只允许还原acceptPackages下的类
+ */
+public class FastjsonCodec implements Codec {
+
+	public static final byte HEADER = 0x02;
+
+	private final ParserConfig parserConfig = new ParserConfig();
+
+	/**
+	 * @param acceptPackages 允许反序列化的包名前缀, 如 "com.redis."
+	 */
+	public FastjsonCodec(String... acceptPackages) {
+		for (String acceptPackage : acceptPackages) {
+			parserConfig.addAccept(acceptPackage);
+		}
+	}
+
+	@Override
+	public byte header() {
+		return HEADER;
+	}
+
+	@Override
+	public byte[] encode(Object object) throws Exception {
+		if (object == null) return null;
+		CodecBuffer buffer = CodecBuffer.acquire();
+		try {
+			buffer.write(HEADER);
+			JSON.writeJSONString(buffer, object, SerializerFeature.WriteClassName);
+			return buffer.toByteArray();
+		} finally {
+			buffer.release();
+		}
+	}
+
+	@Override
+	public Object decode(byte[] bytes) throws Exception {
+		if (bytes == null) return null;
+		return JSON.parse(new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8), parserConfig);
+	}
+}
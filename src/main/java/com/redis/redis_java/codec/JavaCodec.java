@@ -0,0 +1,40 @@
+package com.redis.redis_java.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Java序列化, 与旧版本SerializeUtils写入的数据完全兼容
+ * Java序列化流本身以0xACED开头, 所以不额外写格式标记
+ */
+public class JavaCodec implements Codec {
+
+	public static final byte HEADER = (byte) 0xAC;
+
+	@Override
+	public byte header() {
+		return HEADER;
+	}
+
+	@Override
+	public byte[] encode(Object object) throws Exception {
+		if (object == null) return null;
+		CodecBuffer buffer = CodecBuffer.acquire();
+		try {
+			ObjectOutputStream oos = new ObjectOutputStream(buffer);
+			oos.writeObject(object);
+			oos.flush();
+			return buffer.toByteArray();
+		} finally {
+			buffer.release();
+		}
+	}
+
+	@Override
+	public Object decode(byte[] bytes) throws Exception {
+		if (bytes == null) return null;
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		return ois.readObject();
+	}
+}
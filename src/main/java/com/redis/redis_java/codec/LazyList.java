@@ -0,0 +1,90 @@
+package com.redis.redis_java.codec;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+/**
+ * 保留原始字节的只读列表, 元素第一次被访问时才解码, 解码结果被缓存
+ * 只访问少数元素时省掉其他元素的解码; 需要全部元素时用decodeAll并行解码
+ * 并发访问同一个元素时可能重复解码, 结果相同
+ *
+ * @param <T>
+ */
+public class LazyList<T> extends AbstractList<T> implements RandomAccess {
+
+	/** 元素数达到这个数量时decodeAll并行解码 */
+	static final int PARALLEL_THRESHOLD = 32;
+
+	private static final Object NOT_DECODED = new Object();
+
+	private final byte[][] raw;
+
+	private final Decoder<? extends T> decoder;
+
+	private final Object[] decoded;
+
+	/**
+	 * @param raw Redis返回的元素, 可以包含null
+	 * @param decoder
+	 */
+	public LazyList(List<byte[]> raw, Decoder<? extends T> decoder) {
+		this.raw = raw.toArray(new byte[raw.size()][]);
+		this.decoder = decoder;
+		this.decoded = new Object[this.raw.length];
+		Arrays.fill(decoded, NOT_DECODED);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		Object value = decoded[index];
+		if (value == NOT_DECODED) {
+			value = decode(raw[index], decoder);
+			decoded[index] = value;
+		}
+		return (T) value;
+	}
+
+	@Override
+	public int size() {
+		return raw.length;
+	}
+
+	/**
+	 * @param index
+	 * @return 未解码的原始字节
+	 */
+	public byte[] raw(int index) {
+		return raw[index];
+	}
+
+	/**
+	 * 解码全部元素, 元素较多时并行
+	 *
+	 * @return this
+	 */
+	public LazyList<T> decodeAll() {
+		IntStream indexes = IntStream.range(0, raw.length);
+		if (raw.length >= PARALLEL_THRESHOLD) {
+			indexes = indexes.parallel();
+		}
+		indexes.forEach(this::get);
+		return this;
+	}
+
+	static <T> T decode(byte[] bytes, Decoder<T> decoder) {
+		if (bytes == null) {
+			return null;
+		}
+		try {
+			return decoder.decode(bytes);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Cannot decode element", e);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.redis.redis_java.codec;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * 保留原始字节的只读Map, 例如HGETALL的结果
+ * get(key)时把key编码后按字节查找, 只解码这一个值; 遍历时key和value在被访问时才解码; 解码结果被缓存
+ * 需要全部内容时用decodeAll并行解码
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class LazyMap<K, V> extends AbstractMap<K, V> {
+
+	private static final Object NOT_DECODED = new Object();
+
+	private final byte[][] rawKeys;
+
+	private final byte[][] rawValues;
+
+	/** 原始key到下标 */
+	private final Map<ByteBuffer, Integer> index;
+
+	private final Function<Object, byte[]> keyEncoder;
+
+	private final Decoder<? extends K> keyDecoder;
+
+	private final Decoder<? extends V> valueDecoder;
+
+	private final Object[] keys;
+
+	private final Object[] values;
+
+	private Set<Map.Entry<K, V>> entrySet;
+
+	/**
+	 * @param raw Redis返回的原始结果
+	 * @param keyEncoder 把get的参数编码为原始key, 与写入时的编码相同
+	 * @param keyDecoder
+	 * @param valueDecoder
+	 */
+	public LazyMap(Map<byte[], byte[]> raw, Function<Object, byte[]> keyEncoder, Decoder<? extends K> keyDecoder,
+			Decoder<? extends V> valueDecoder) {
+		int n = raw.size();
+		this.rawKeys = new byte[n][];
+		this.rawValues = new byte[n][];
+		this.index = new HashMap<ByteBuffer, Integer>(n * 4 / 3 + 1);
+		int i = 0;
+		for (Map.Entry<byte[], byte[]> entry : raw.entrySet()) {
+			rawKeys[i] = entry.getKey();
+			rawValues[i] = entry.getValue();
+			index.put(ByteBuffer.wrap(entry.getKey()), i);
+			i++;
+		}
+		this.keyEncoder = keyEncoder;
+		this.keyDecoder = keyDecoder;
+		this.valueDecoder = valueDecoder;
+		this.keys = new Object[n];
+		this.values = new Object[n];
+		Arrays.fill(keys, NOT_DECODED);
+		Arrays.fill(values, NOT_DECODED);
+	}
+
+	@Override
+	public int size() {
+		return rawKeys.length;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public V get(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : value(i);
+	}
+
+	/**
+	 * @param rawKey
+	 * @return 未解码的值, 不存在时返回null
+	 */
+	public byte[] raw(byte[] rawKey) {
+		Integer i = index.get(ByteBuffer.wrap(rawKey));
+		return i == null ? null : rawValues[i];
+	}
+
+	private int indexOf(Object key) {
+		if (key == null) {
+			return -1;
+		}
+		Integer i = index.get(ByteBuffer.wrap(keyEncoder.apply(key)));
+		return i == null ? -1 : i;
+	}
+
+	@SuppressWarnings("unchecked")
+	private K key(int i) {
+		Object key = keys[i];
+		if (key == NOT_DECODED) {
+			key = LazyList.decode(rawKeys[i], keyDecoder);
+			keys[i] = key;
+		}
+		return (K) key;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V value(int i) {
+		Object value = values[i];
+		if (value == NOT_DECODED) {
+			value = LazyList.decode(rawValues[i], valueDecoder);
+			values[i] = value;
+		}
+		return (V) value;
+	}
+
+	/**
+	 * 解码全部key和value, 条目较多时并行
+	 *
+	 * @return this
+	 */
+	public LazyMap<K, V> decodeAll() {
+		IntStream indexes = IntStream.range(0, rawKeys.length);
+		if (rawKeys.length >= LazyList.PARALLEL_THRESHOLD) {
+			indexes = indexes.parallel();
+		}
+		indexes.forEach(i -> {
+			key(i);
+			value(i);
+		});
+		return this;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new Iterator<Map.Entry<K, V>>() {
+						private int next;
+
+						@Override
+						public boolean hasNext() {
+							return next < rawKeys.length;
+						}
+
+						@Override
+						public Map.Entry<K, V> next() {
+							if (next >= rawKeys.length) {
+								throw new NoSuchElementException();
+							}
+							return new Entry(next++);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return rawKeys.length;
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/** 访问时才解码的条目 */
+	private final class Entry implements Map.Entry<K, V> {
+
+		private final int i;
+
+		Entry(int i) {
+			this.i = i;
+		}
+
+		@Override
+		public K getKey() {
+			return key(i);
+		}
+
+		@Override
+		public V getValue() {
+			return value(i);
+		}
+
+		@Override
+		public V setValue(V value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return eq(getKey(), e.getKey()) && eq(getValue(), e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			K key = getKey();
+			V value = getValue();
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
+	private static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -0,0 +1,184 @@
+package com.redis.redis_java.codec;
+
+import java.util.Arrays;
+
+/**
+ * LZ4 block格式的纯Java实现, 速度优先
+ * 输出与LZ4 block格式兼容, 可以用其他语言的LZ4解压(原始长度另行保存)
+ */
+public class Lz4Compressor implements Compressor {
+
+	public static final byte ID = 1;
+
+	private static final int MIN_MATCH = 4;
+
+	/** 最后一个匹配必须在距离结尾12字节之前开始 */
+	private static final int MF_LIMIT = 12;
+
+	/** 最后5个字节必须是字面量 */
+	private static final int LAST_LITERALS = 5;
+
+	private static final int MAX_DISTANCE = 65535;
+
+	private static final int HASH_BITS = 12;
+
+	/** 连续未命中时加大步长, 不可压缩的数据很快跳过 */
+	private static final int SKIP_TRIGGER = 6;
+
+	private static final ThreadLocal<int[]> TABLES = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1 << HASH_BITS];
+		}
+	};
+
+	@Override
+	public byte id() {
+		return ID;
+	}
+
+	@Override
+	public String name() {
+		return "lz4";
+	}
+
+	@Override
+	public byte[] compress(byte[] src, int offset, int length) {
+		byte[] dst = new byte[length + length / 255 + 16];
+		int[] table = TABLES.get();
+		// 表中保存位置+1, 0表示空
+		Arrays.fill(table, 0);
+		int end = offset + length;
+		int anchor = offset;
+		int op = 0;
+		if (length > MF_LIMIT) {
+			int limit = end - MF_LIMIT;
+			int matchLimit = end - LAST_LITERALS;
+			int ip = offset;
+			int misses = 0;
+			while (ip < limit) {
+				int sequence = readInt(src, ip);
+				int h = hash(sequence);
+				int ref = table[h] - 1;
+				table[h] = ip + 1;
+				if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+					ip += 1 + (misses++ >>> SKIP_TRIGGER);
+					continue;
+				}
+				misses = 0;
+				// 向前扩展匹配
+				while (ip > anchor && ref > offset && src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+				int matchLength = MIN_MATCH;
+				while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+					matchLength++;
+				}
+				op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+				ip += matchLength;
+				anchor = ip;
+				if (ip - 2 >= offset && ip - 2 < limit) {
+					table[hash(readInt(src, ip - 2))] = ip - 2 + 1;
+				}
+			}
+		}
+		op = writeLiterals(src, anchor, end - anchor, dst, op, 0);
+		return Arrays.copyOf(dst, op);
+	}
+
+	private static int writeSequence(byte[] src, int literalStart, int literals, int distance, int matchLength,
+			byte[] dst, int op) {
+		int extra = matchLength - MIN_MATCH;
+		op = writeLiterals(src, literalStart, literals, dst, op, Math.min(extra, 15));
+		dst[op++] = (byte) distance;
+		dst[op++] = (byte) (distance >>> 8);
+		if (extra >= 15) {
+			op = writeLength(extra - 15, dst, op);
+		}
+		return op;
+	}
+
+	private static int writeLiterals(byte[] src, int start, int literals, byte[] dst, int op, int matchToken) {
+		dst[op++] = (byte) ((Math.min(literals, 15) << 4) | matchToken);
+		if (literals >= 15) {
+			op = writeLength(literals - 15, dst, op);
+		}
+		System.arraycopy(src, start, dst, op, literals);
+		return op + literals;
+	}
+
+	private static int writeLength(int length, byte[] dst, int op) {
+		while (length >= 255) {
+			dst[op++] = (byte) 255;
+			length -= 255;
+		}
+		dst[op++] = (byte) length;
+		return op;
+	}
+
+	@Override
+	public byte[] decompress(byte[] src, int offset, int length, int originalLength) {
+		byte[] dst = new byte[originalLength];
+		int ip = offset;
+		int end = offset + length;
+		int op = 0;
+		try {
+			while (ip < end) {
+				int token = src[ip++] & 0xFF;
+				int literals = token >>> 4;
+				if (literals == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						literals += b;
+					} while (b == 255);
+				}
+				System.arraycopy(src, ip, dst, op, literals);
+				ip += literals;
+				op += literals;
+				if (ip >= end) {
+					break;
+				}
+				int distance = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+				ip += 2;
+				if (distance == 0 || distance > op) {
+					throw new IllegalArgumentException("Corrupt lz4 data: bad offset " + distance);
+				}
+				int matchLength = token & 0x0F;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = op - distance;
+				if (distance >= matchLength) {
+					System.arraycopy(dst, ref, dst, op, matchLength);
+					op += matchLength;
+				} else {
+					// 重叠复制, 例如连续重复的字节
+					for (int i = 0; i < matchLength; i++) {
+						dst[op++] = dst[ref++];
+					}
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Corrupt lz4 data", e);
+		}
+		if (op != originalLength) {
+			throw new IllegalArgumentException("Corrupt lz4 data: expected " + originalLength + " bytes, got " + op);
+		}
+		return dst;
+	}
+
+	private static int readInt(byte[] b, int i) {
+		return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_BITS);
+	}
+}
@@ -0,0 +1,83 @@
+package com.redis.redis_java.codec;
+
+import java.util.Arrays;
+
+/**
+ * 带逻辑过期时间的缓存值
+ * 格式: [0x04][0x7E][逻辑过期时间毫秒 8字节][TTL秒 4字节][加载耗时毫秒 4字节][值]
+ * 逻辑过期早于Redis的物理过期, 两者之间的值是可以返回但需要刷新的旧值
+ * 读取方不关心元数据时用unwrap去掉格式头, Codecs.decode会自动去掉
+ */
+public class TimedValue {
+
+	/** 格式标记, 与Codec和Compression的格式标记不冲突 */
+	public static final byte HEADER = 0x04;
+
+	private static final byte MAGIC = 0x7E;
+
+	private static final int LENGTH = 18;
+
+	private TimedValue() {}
+
+	/**
+	 * @param value 编码(及压缩)后的值
+	 * @param expireAtMillis 逻辑过期时间
+	 * @param ttlSeconds 写入时的TTL, 用于按比例计算刷新时间
+	 * @param deltaMillis 加载这个值的耗时, 用于XFetch
+	 * @return byte[]
+	 */
+	public static byte[] wrap(byte[] value, long expireAtMillis, int ttlSeconds, int deltaMillis) {
+		byte[] result = new byte[LENGTH + value.length];
+		result[0] = HEADER;
+		result[1] = MAGIC;
+		writeLong(expireAtMillis, result, 2);
+		writeInt(ttlSeconds, result, 10);
+		writeInt(deltaMillis, result, 14);
+		System.arraycopy(value, 0, result, LENGTH, value.length);
+		return result;
+	}
+
+	public static boolean isTimed(byte[] bytes) {
+		return bytes != null && bytes.length >= LENGTH && bytes[0] == HEADER && bytes[1] == MAGIC;
+	}
+
+	/**
+	 * @param bytes
+	 * @return 去掉格式头的值, 不是这个格式时原样返回
+	 */
+	public static byte[] unwrap(byte[] bytes) {
+		return isTimed(bytes) ? Arrays.copyOfRange(bytes, LENGTH, bytes.length) : bytes;
+	}
+
+	public static long expireAtMillis(byte[] bytes) {
+		return readLong(bytes, 2);
+	}
+
+	public static int ttlSeconds(byte[] bytes) {
+		return readInt(bytes, 10);
+	}
+
+	public static int deltaMillis(byte[] bytes) {
+		return readInt(bytes, 14);
+	}
+
+	private static void writeLong(long v, byte[] dst, int offset) {
+		writeInt((int) (v >>> 32), dst, offset);
+		writeInt((int) v, dst, offset + 4);
+	}
+
+	private static void writeInt(int v, byte[] dst, int offset) {
+		dst[offset] = (byte) (v >>> 24);
+		dst[offset + 1] = (byte) (v >>> 16);
+		dst[offset + 2] = (byte) (v >>> 8);
+		dst[offset + 3] = (byte) v;
+	}
+
+	private static long readLong(byte[] b, int offset) {
+		return ((long) readInt(b, offset) << 32) | (readInt(b, offset + 4) & 0xFFFFFFFFL);
+	}
+
+	private static int readInt(byte[] b, int offset) {
+		return (b[offset] & 0xFF) << 24 | (b[offset + 1] & 0xFF) << 16 | (b[offset + 2] & 0xFF) << 8 | (b[offset + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,50 @@
+package com.redis.redis_java.embedded;
+
+import java.util.Arrays;
+
+/**
+ * byte[]作为HashMap的key, 缓存hash值
+ */
+final class BytesKey implements Comparable<BytesKey> {
+
+	final byte[] bytes;
+
+	private final int hash;
+
+	BytesKey(byte[] bytes) {
+		this.bytes = bytes;
+		this.hash = Arrays.hashCode(bytes);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		return obj instanceof BytesKey && hash == ((BytesKey) obj).hash && Arrays.equals(bytes, ((BytesKey) obj).bytes);
+	}
+
+	@Override
+	public int compareTo(BytesKey o) {
+		return compare(bytes, o.bytes);
+	}
+
+	/**
+	 * 按无符号字节比较, 与Redis的memcmp相同
+	 */
+	static int compare(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return a.length - b.length;
+	}
+}
@@ -0,0 +1,1001 @@
+package com.redis.redis_java.embedded;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.SortingParams;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 把JedisUtils用到的Jedis命令转到EmbeddedStore执行, 不建立网络连接
+ * 只覆盖JedisUtils、Batch、HashMapper和ScanIterator用到的命令, 其它命令仍会尝试连接Redis;
+ * EVAL/EVALSHA和OBJECT ENCODING抛出JedisDataException, 不会去连接Redis;
+ * 没有连接状态, 可以被多个线程共用, close()不做任何事
+ */
+public class EmbeddedJedis extends Jedis {
+
+	private final EmbeddedStore store;
+
+	public EmbeddedJedis(EmbeddedStore store) {
+		this.store = store;
+	}
+
+	public EmbeddedStore getStore() {
+		return store;
+	}
+
+	@Override
+	public void close() {
+		// 没有连接需要归还
+	}
+
+	@Override
+	public Pipeline pipelined() {
+		return new EmbeddedPipeline(this);
+	}
+
+	@Override
+	public String ping() {
+		return "PONG";
+	}
+
+	@Override
+	public String select(int index) {
+		return "OK";
+	}
+
+	@Override
+	public Long dbSize() {
+		return store.dbSize();
+	}
+
+	/*------------------------------ Keys ------------------------------*/
+
+	@Override
+	public Long expire(String key, int seconds) {
+		return store.expire(b(key), seconds);
+	}
+
+	@Override
+	public Long expire(byte[] key, int seconds) {
+		return store.expire(key, seconds);
+	}
+
+	@Override
+	public Long expireAt(String key, long unixTime) {
+		return store.expireAt(b(key), unixTime);
+	}
+
+	@Override
+	public Long expireAt(byte[] key, long unixTime) {
+		return store.expireAt(key, unixTime);
+	}
+
+	@Override
+	public Long ttl(String key) {
+		return store.ttl(b(key));
+	}
+
+	@Override
+	public Long ttl(byte[] key) {
+		return store.ttl(key);
+	}
+
+	@Override
+	public Long persist(String key) {
+		return store.persist(b(key));
+	}
+
+	@Override
+	public Long persist(byte[] key) {
+		return store.persist(key);
+	}
+
+	@Override
+	public String flushAll() {
+		store.flushAll();
+		return "OK";
+	}
+
+	@Override
+	public String flushDB() {
+		return flushAll();
+	}
+
+	@Override
+	public Boolean exists(String key) {
+		return store.exists(b(key));
+	}
+
+	@Override
+	public Boolean exists(byte[] key) {
+		return store.exists(key);
+	}
+
+	@Override
+	public String rename(String oldkey, String newkey) {
+		return rename(b(oldkey), b(newkey));
+	}
+
+	@Override
+	public String rename(byte[] oldkey, byte[] newkey) {
+		store.rename(oldkey, newkey);
+		return "OK";
+	}
+
+	@Override
+	public Long renamenx(String oldkey, String newkey) {
+		return store.renamenx(b(oldkey), b(newkey));
+	}
+
+	@Override
+	public Long renamenx(byte[] oldkey, byte[] newkey) {
+		return store.renamenx(oldkey, newkey);
+	}
+
+	@Override
+	public Long del(String key) {
+		return store.del(b(key));
+	}
+
+	@Override
+	public Long del(String... keys) {
+		return store.del(b(keys));
+	}
+
+	@Override
+	public Long del(byte[] key) {
+		return store.del(key);
+	}
+
+	@Override
+	public Long del(byte[]... keys) {
+		return store.del(keys);
+	}
+
+	@Override
+	public List<String> sort(String key) {
+		return s(store.sort(b(key), null));
+	}
+
+	@Override
+	public List<String> sort(String key, SortingParams sortingParameters) {
+		return s(store.sort(b(key), sortingParameters));
+	}
+
+	@Override
+	public List<byte[]> sort(byte[] key) {
+		return store.sort(key, null);
+	}
+
+	@Override
+	public List<byte[]> sort(byte[] key, SortingParams sortingParameters) {
+		return store.sort(key, sortingParameters);
+	}
+
+	@Override
+	public String type(String key) {
+		return store.type(b(key));
+	}
+
+	@Override
+	public String type(byte[] key) {
+		return store.type(key);
+	}
+
+	@Override
+	public ScanResult<String> scan(String cursor, ScanParams params) {
+		ScanResult<byte[]> result = scan(b(cursor), params);
+		return new ScanResult<String>(result.getStringCursor(), s(result.getResult()));
+	}
+
+	@Override
+	public ScanResult<byte[]> scan(byte[] cursor, ScanParams params) {
+		long position;
+		try {
+			position = Long.parseLong(s(cursor));
+		} catch (NumberFormatException e) {
+			position = -1;
+		}
+		return store.scan(position, option(params, "match"), count(params));
+	}
+
+	/*------------------------------ Strings ------------------------------*/
+
+	@Override
+	public String get(String key) {
+		return s(store.get(b(key)));
+	}
+
+	@Override
+	public byte[] get(byte[] key) {
+		return store.get(key);
+	}
+
+	@Override
+	public String set(String key, String value) {
+		store.set(b(key), b(value));
+		return "OK";
+	}
+
+	@Override
+	public String set(byte[] key, byte[] value) {
+		store.set(key, value);
+		return "OK";
+	}
+
+	@Override
+	public String setex(String key, int seconds, String value) {
+		store.setex(b(key), seconds, b(value));
+		return "OK";
+	}
+
+	@Override
+	public String setex(byte[] key, int seconds, byte[] value) {
+		store.setex(key, seconds, value);
+		return "OK";
+	}
+
+	@Override
+	public Long setnx(String key, String value) {
+		return store.setnx(b(key), b(value));
+	}
+
+	@Override
+	public Long setnx(byte[] key, byte[] value) {
+		return store.setnx(key, value);
+	}
+
+	@Override
+	public Long setrange(String key, long offset, String value) {
+		return store.setrange(b(key), offset, b(value));
+	}
+
+	@Override
+	public Long setrange(byte[] key, long offset, byte[] value) {
+		return store.setrange(key, offset, value);
+	}
+
+	@Override
+	public Long append(String key, String value) {
+		return store.append(b(key), b(value));
+	}
+
+	@Override
+	public Long append(byte[] key, byte[] value) {
+		return store.append(key, value);
+	}
+
+	@Override
+	public Long decrBy(String key, long integer) {
+		return store.decrBy(b(key), integer);
+	}
+
+	@Override
+	public Long decrBy(byte[] key, long integer) {
+		return store.decrBy(key, integer);
+	}
+
+	@Override
+	public Long incrBy(String key, long integer) {
+		return store.incrBy(b(key), integer);
+	}
+
+	@Override
+	public Long incrBy(byte[] key, long integer) {
+		return store.incrBy(key, integer);
+	}
+
+	@Override
+	public String getrange(String key, long startOffset, long endOffset) {
+		return s(store.getrange(b(key), startOffset, endOffset));
+	}
+
+	@Override
+	public byte[] getrange(byte[] key, long startOffset, long endOffset) {
+		return store.getrange(key, startOffset, endOffset);
+	}
+
+	@Override
+	public String getSet(String key, String value) {
+		return s(store.getSet(b(key), b(value)));
+	}
+
+	@Override
+	public byte[] getSet(byte[] key, byte[] value) {
+		return store.getSet(key, value);
+	}
+
+	@Override
+	public List<String> mget(String... keys) {
+		return s(store.mget(b(keys)));
+	}
+
+	@Override
+	public List<byte[]> mget(byte[]... keys) {
+		return store.mget(keys);
+	}
+
+	@Override
+	public String mset(String... keysvalues) {
+		store.mset(b(keysvalues));
+		return "OK";
+	}
+
+	@Override
+	public String mset(byte[]... keysvalues) {
+		store.mset(keysvalues);
+		return "OK";
+	}
+
+	@Override
+	public Long strlen(String key) {
+		return store.strlen(b(key));
+	}
+
+	@Override
+	public Long strlen(byte[] key) {
+		return store.strlen(key);
+	}
+
+	/*------------------------------ Lists ------------------------------*/
+
+	@Override
+	public Long llen(String key) {
+		return store.llen(b(key));
+	}
+
+	@Override
+	public Long llen(byte[] key) {
+		return store.llen(key);
+	}
+
+	@Override
+	public String lset(String key, long index, String value) {
+		store.lset(b(key), index, b(value));
+		return "OK";
+	}
+
+	@Override
+	public String lset(byte[] key, long index, byte[] value) {
+		store.lset(key, index, value);
+		return "OK";
+	}
+
+	@Override
+	public String lindex(String key, long index) {
+		return s(store.lindex(b(key), index));
+	}
+
+	@Override
+	public byte[] lindex(byte[] key, long index) {
+		return store.lindex(key, index);
+	}
+
+	@Override
+	public String lpop(String key) {
+		return s(store.lpop(b(key)));
+	}
+
+	@Override
+	public byte[] lpop(byte[] key) {
+		return store.lpop(key);
+	}
+
+	@Override
+	public String rpop(String key) {
+		return s(store.rpop(b(key)));
+	}
+
+	@Override
+	public byte[] rpop(byte[] key) {
+		return store.rpop(key);
+	}
+
+	@Override
+	public Long lpush(String key, String... strings) {
+		return store.lpush(b(key), b(strings));
+	}
+
+	@Override
+	public Long lpush(byte[] key, byte[]... strings) {
+		return store.lpush(key, strings);
+	}
+
+	@Override
+	public Long rpush(String key, String... strings) {
+		return store.rpush(b(key), b(strings));
+	}
+
+	@Override
+	public Long rpush(byte[] key, byte[]... strings) {
+		return store.rpush(key, strings);
+	}
+
+	@Override
+	public List<String> lrange(String key, long start, long end) {
+		return s(store.lrange(b(key), start, end));
+	}
+
+	@Override
+	public List<byte[]> lrange(byte[] key, long start, long end) {
+		return store.lrange(key, start, end);
+	}
+
+	@Override
+	public Long lrem(String key, long count, String value) {
+		return store.lrem(b(key), count, b(value));
+	}
+
+	@Override
+	public Long lrem(byte[] key, long count, byte[] value) {
+		return store.lrem(key, count, value);
+	}
+
+	@Override
+	public String ltrim(String key, long start, long end) {
+		store.ltrim(b(key), start, end);
+		return "OK";
+	}
+
+	@Override
+	public String ltrim(byte[] key, long start, long end) {
+		store.ltrim(key, start, end);
+		return "OK";
+	}
+
+	/*------------------------------ Sets ------------------------------*/
+
+	@Override
+	public Long sadd(String key, String... members) {
+		return store.sadd(b(key), b(members));
+	}
+
+	@Override
+	public Long sadd(byte[] key, byte[]... members) {
+		return store.sadd(key, members);
+	}
+
+	@Override
+	public Long scard(String key) {
+		return store.scard(b(key));
+	}
+
+	@Override
+	public Long scard(byte[] key) {
+		return store.scard(key);
+	}
+
+	@Override
+	public Boolean sismember(String key, String member) {
+		return store.sismember(b(key), b(member));
+	}
+
+	@Override
+	public Boolean sismember(byte[] key, byte[] member) {
+		return store.sismember(key, member);
+	}
+
+	@Override
+	public Set<String> smembers(String key) {
+		return stringSet(store.smembers(b(key)));
+	}
+
+	@Override
+	public Set<byte[]> smembers(byte[] key) {
+		return new LinkedHashSet<byte[]>(store.smembers(key));
+	}
+
+	@Override
+	public Long srem(String key, String... members) {
+		return store.srem(b(key), b(members));
+	}
+
+	@Override
+	public Long srem(byte[] key, byte[]... members) {
+		return store.srem(key, members);
+	}
+
+	@Override
+	public String spop(String key) {
+		return s(store.spop(b(key)));
+	}
+
+	@Override
+	public byte[] spop(byte[] key) {
+		return store.spop(key);
+	}
+
+	@Override
+	public Long smove(String srckey, String dstkey, String member) {
+		return store.smove(b(srckey), b(dstkey), b(member));
+	}
+
+	@Override
+	public Long smove(byte[] srckey, byte[] dstkey, byte[] member) {
+		return store.smove(srckey, dstkey, member);
+	}
+
+	@Override
+	public Set<String> sdiff(String... keys) {
+		return stringSet(store.sdiff(b(keys)));
+	}
+
+	@Override
+	public Long sdiffstore(String dstkey, String... keys) {
+		return store.sdiffstore(b(dstkey), b(keys));
+	}
+
+	@Override
+	public Set<String> sinter(String... keys) {
+		return stringSet(store.sinter(b(keys)));
+	}
+
+	@Override
+	public Long sinterstore(String dstkey, String... keys) {
+		return store.sinterstore(b(dstkey), b(keys));
+	}
+
+	@Override
+	public Set<String> sunion(String... keys) {
+		return stringSet(store.sunion(b(keys)));
+	}
+
+	@Override
+	public Long sunionstore(String dstkey, String... keys) {
+		return store.sunionstore(b(dstkey), b(keys));
+	}
+
+	@Override
+	public ScanResult<String> sscan(String key, String cursor, ScanParams params) {
+		ScanResult<byte[]> result = store.sscan(b(key), option(params, "match"));
+		return new ScanResult<String>(result.getStringCursor(), s(result.getResult()));
+	}
+
+	@Override
+	public ScanResult<byte[]> sscan(byte[] key, byte[] cursor, ScanParams params) {
+		return store.sscan(key, option(params, "match"));
+	}
+
+	/*------------------------------ Hash ------------------------------*/
+
+	@Override
+	public Long hdel(String key, String... fields) {
+		return store.hdel(b(key), b(fields));
+	}
+
+	@Override
+	public Long hdel(byte[] key, byte[]... fields) {
+		return store.hdel(key, fields);
+	}
+
+	@Override
+	public Boolean hexists(String key, String field) {
+		return store.hexists(b(key), b(field));
+	}
+
+	@Override
+	public Boolean hexists(byte[] key, byte[] field) {
+		return store.hexists(key, field);
+	}
+
+	@Override
+	public String hget(String key, String field) {
+		return s(store.hget(b(key), b(field)));
+	}
+
+	@Override
+	public byte[] hget(byte[] key, byte[] field) {
+		return store.hget(key, field);
+	}
+
+	@Override
+	public Map<String, String> hgetAll(String key) {
+		List<byte[]> entries = store.hgetAll(b(key));
+		Map<String, String> map = new HashMap<String, String>(entries.size());
+		for (int i = 0; i < entries.size(); i += 2) {
+			map.put(s(entries.get(i)), s(entries.get(i + 1)));
+		}
+		return map;
+	}
+
+	@Override
+	public Map<byte[], byte[]> hgetAll(byte[] key) {
+		List<byte[]> entries = store.hgetAll(key);
+		Map<byte[], byte[]> map = new LinkedHashMap<byte[], byte[]>(entries.size());
+		for (int i = 0; i < entries.size(); i += 2) {
+			map.put(entries.get(i), entries.get(i + 1));
+		}
+		return map;
+	}
+
+	@Override
+	public Long hset(String key, String field, String value) {
+		return store.hset(b(key), b(field), b(value));
+	}
+
+	@Override
+	public Long hset(byte[] key, byte[] field, byte[] value) {
+		return store.hset(key, field, value);
+	}
+
+	@Override
+	public Long hsetnx(String key, String field, String value) {
+		return store.hsetnx(b(key), b(field), b(value));
+	}
+
+	@Override
+	public Long hsetnx(byte[] key, byte[] field, byte[] value) {
+		return store.hsetnx(key, field, value);
+	}
+
+	@Override
+	public List<String> hvals(String key) {
+		return s(store.hvals(b(key)));
+	}
+
+	@Override
+	public List<byte[]> hvals(byte[] key) {
+		return store.hvals(key);
+	}
+
+	@Override
+	public Set<String> hkeys(String key) {
+		return stringSet(store.hkeys(b(key)));
+	}
+
+	@Override
+	public Set<byte[]> hkeys(byte[] key) {
+		return new LinkedHashSet<byte[]>(store.hkeys(key));
+	}
+
+	@Override
+	public Long hincrBy(String key, String field, long value) {
+		return store.hincrBy(b(key), b(field), value);
+	}
+
+	@Override
+	public Long hincrBy(byte[] key, byte[] field, long value) {
+		return store.hincrBy(key, field, value);
+	}
+
+	@Override
+	public Long hlen(String key) {
+		return store.hlen(b(key));
+	}
+
+	@Override
+	public Long hlen(byte[] key) {
+		return store.hlen(key);
+	}
+
+	@Override
+	public List<String> hmget(String key, String... fields) {
+		return s(store.hmget(b(key), b(fields)));
+	}
+
+	@Override
+	public List<byte[]> hmget(byte[] key, byte[]... fields) {
+		return store.hmget(key, fields);
+	}
+
+	@Override
+	public String hmset(String key, Map<String, String> hash) {
+		Map<byte[], byte[]> map = new LinkedHashMap<byte[], byte[]>(hash.size());
+		for (Map.Entry<String, String> entry : hash.entrySet()) {
+			map.put(b(entry.getKey()), b(entry.getValue()));
+		}
+		store.hmset(b(key), map);
+		return "OK";
+	}
+
+	@Override
+	public String hmset(byte[] key, Map<byte[], byte[]> hash) {
+		store.hmset(key, hash);
+		return "OK";
+	}
+
+	@Override
+	public ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, ScanParams params) {
+		ScanResult<byte[]> result = store.hscan(b(key), option(params, "match"));
+		List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>();
+		Iterator<byte[]> it = result.getResult().iterator();
+		while (it.hasNext()) {
+			entries.add(new AbstractMap.SimpleEntry<String, String>(s(it.next()), s(it.next())));
+		}
+		return new ScanResult<Map.Entry<String, String>>(result.getStringCursor(), entries);
+	}
+
+	/*------------------------------ SortSet ------------------------------*/
+
+	@Override
+	public Long zadd(String key, double score, String member) {
+		return store.zadd(b(key), score, b(member));
+	}
+
+	@Override
+	public Long zadd(byte[] key, double score, byte[] member) {
+		return store.zadd(key, score, member);
+	}
+
+	@Override
+	public Long zcard(String key) {
+		return store.zcard(b(key));
+	}
+
+	@Override
+	public Long zcard(byte[] key) {
+		return store.zcard(key);
+	}
+
+	@Override
+	public Long zcount(String key, double min, double max) {
+		return store.zcount(b(key), min, max);
+	}
+
+	@Override
+	public Long zcount(byte[] key, double min, double max) {
+		return store.zcount(key, min, max);
+	}
+
+	@Override
+	public Double zincrby(String key, double score, String member) {
+		return store.zincrby(b(key), score, b(member));
+	}
+
+	@Override
+	public Double zincrby(byte[] key, double score, byte[] member) {
+		return store.zincrby(key, score, member);
+	}
+
+	@Override
+	public Set<String> zrange(String key, long start, long end) {
+		return stringSet(store.zrange(b(key), start, end));
+	}
+
+	@Override
+	public Set<byte[]> zrange(byte[] key, long start, long end) {
+		return new LinkedHashSet<byte[]>(store.zrange(key, start, end));
+	}
+
+	@Override
+	public Set<String> zrevrange(String key, long start, long end) {
+		return stringSet(store.zrevrange(b(key), start, end));
+	}
+
+	@Override
+	public Set<byte[]> zrevrange(byte[] key, long start, long end) {
+		return new LinkedHashSet<byte[]>(store.zrevrange(key, start, end));
+	}
+
+	@Override
+	public Set<String> zrangeByScore(String key, double min, double max) {
+		return stringSet(store.zrangeByScore(b(key), min, max));
+	}
+
+	@Override
+	public Set<byte[]> zrangeByScore(byte[] key, double min, double max) {
+		return new LinkedHashSet<byte[]>(store.zrangeByScore(key, min, max));
+	}
+
+	@Override
+	public Long zrank(String key, String member) {
+		return store.zrank(b(key), b(member));
+	}
+
+	@Override
+	public Long zrank(byte[] key, byte[] member) {
+		return store.zrank(key, member);
+	}
+
+	@Override
+	public Long zrevrank(String key, String member) {
+		return store.zrevrank(b(key), b(member));
+	}
+
+	@Override
+	public Long zrevrank(byte[] key, byte[] member) {
+		return store.zrevrank(key, member);
+	}
+
+	@Override
+	public Long zrem(String key, String... members) {
+		return store.zrem(b(key), b(members));
+	}
+
+	@Override
+	public Long zrem(byte[] key, byte[]... members) {
+		return store.zrem(key, members);
+	}
+
+	@Override
+	public Long zremrangeByRank(String key, long start, long end) {
+		return store.zremrangeByRank(b(key), start, end);
+	}
+
+	@Override
+	public Long zremrangeByRank(byte[] key, long start, long end) {
+		return store.zremrangeByRank(key, start, end);
+	}
+
+	@Override
+	public Long zremrangeByScore(String key, double start, double end) {
+		return store.zremrangeByScore(b(key), start, end);
+	}
+
+	@Override
+	public Long zremrangeByScore(byte[] key, double start, double end) {
+		return store.zremrangeByScore(key, start, end);
+	}
+
+	@Override
+	public Double zscore(String key, String member) {
+		return store.zscore(b(key), b(member));
+	}
+
+	@Override
+	public Double zscore(byte[] key, byte[] member) {
+		return store.zscore(key, member);
+	}
+
+	@Override
+	public ScanResult<Tuple> zscan(String key, String cursor, ScanParams params) {
+		return store.zscan(b(key), option(params, "match"));
+	}
+
+	/*------------------------------ 事务和脚本 ------------------------------*/
+
+	@Override
+	public Transaction multi() {
+		return new EmbeddedTransaction(this);
+	}
+
+	@Override
+	public Object eval(String script, int keyCount, String... params) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object eval(String script, List<String> keys, List<String> args) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object eval(String script) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object eval(byte[] script, int keyCount, byte[]... params) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object eval(byte[] script, byte[] keyCount, byte[]... params) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object eval(byte[] script, List<byte[]> keys, List<byte[]> args) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object eval(byte[] script) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object evalsha(String sha1, int keyCount, String... params) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object evalsha(String sha1, List<String> keys, List<String> args) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object evalsha(String sha1) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object evalsha(byte[] sha1, int keyCount, byte[]... params) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object evalsha(byte[] sha1, List<byte[]> keys, List<byte[]> args) {
+		throw unsupported();
+	}
+
+	@Override
+	public Object evalsha(byte[] sha1) {
+		throw unsupported();
+	}
+
+	@Override
+	public String objectEncoding(String key) {
+		throw unsupported();
+	}
+
+	@Override
+	public byte[] objectEncoding(byte[] key) {
+		throw unsupported();
+	}
+
+	static JedisDataException unsupported() {
+		return new JedisDataException("ERR unsupported in embedded mode");
+	}
+
+	/*------------------------------ 转换 ------------------------------*/
+
+	static byte[] b(String s) {
+		return s == null ? null : SafeEncoder.encode(s);
+	}
+
+	static byte[][] b(String... strings) {
+		return SafeEncoder.encodeMany(strings);
+	}
+
+	static String s(byte[] bytes) {
+		return bytes == null ? null : SafeEncoder.encode(bytes);
+	}
+
+	static List<String> s(List<byte[]> list) {
+		List<String> result = new ArrayList<String>(list.size());
+		for (byte[] bytes : list) {
+			result.add(s(bytes));
+		}
+		return result;
+	}
+
+	/**
+	 * 有序集合的结果需要保持顺序
+	 */
+	static Set<String> stringSet(List<byte[]> list) {
+		Set<String> result = new LinkedHashSet<String>(list.size());
+		for (byte[] bytes : list) {
+			result.add(s(bytes));
+		}
+		return result;
+	}
+
+	/**
+	 * ScanParams只能通过getParams()读取: match pattern count n
+	 */
+	private static byte[] option(ScanParams params, String name) {
+		if (params == null) {
+			return null;
+		}
+		Iterator<byte[]> it = params.getParams().iterator();
+		while (it.hasNext()) {
+			byte[] option = it.next();
+			byte[] value = it.hasNext() ? it.next() : null;
+			if (name.equalsIgnoreCase(s(option))) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	private static int count(ScanParams params) {
+		byte[] count = option(params, "count");
+		return count == null ? 10 : Integer.parseInt(s(count));
+	}
+}
@@ -0,0 +1,389 @@
+package com.redis.redis_java.embedded;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * EmbeddedJedis的Pipeline, 命令在调用时立即执行, sync()不做任何事
+ * 命令出错时与Redis的Pipeline相同, 在Response.get()时抛出异常
+ * 只覆盖Batch和ScanIterator用到的命令
+ */
+public class EmbeddedPipeline extends Pipeline {
+
+	@SuppressWarnings("rawtypes")
+	private static final Builder IDENTITY = new Builder<Object>() {
+		@Override
+		public Object build(Object data) {
+			return data;
+		}
+	};
+
+	private final EmbeddedJedis jedis;
+
+	/**
+	 * 一般通过EmbeddedJedis.pipelined()获取, 测试中可以继承以记录sync的调用
+	 */
+	protected EmbeddedPipeline(EmbeddedJedis jedis) {
+		this.jedis = jedis;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Response<T> done(Supplier<T> command) {
+		Response<T> response = new Response<T>(IDENTITY);
+		try {
+			response.set(command.get());
+		} catch (JedisDataException e) {
+			response.set(e);
+		}
+		return response;
+	}
+
+	@Override
+	public void sync() {
+		// 命令已经执行
+	}
+
+	@Override
+	public List<Object> syncAndReturnAll() {
+		throw new UnsupportedOperationException("EmbeddedPipeline does not collect responses");
+	}
+
+	/*------------------------------ Keys ------------------------------*/
+
+	@Override
+	public Response<Long> expire(String key, int seconds) {
+		return done(() -> jedis.expire(key, seconds));
+	}
+
+	@Override
+	public Response<Long> expireAt(String key, long unixTime) {
+		return done(() -> jedis.expireAt(key, unixTime));
+	}
+
+	@Override
+	public Response<Long> ttl(String key) {
+		return done(() -> jedis.ttl(key));
+	}
+
+	@Override
+	public Response<Long> persist(String key) {
+		return done(() -> jedis.persist(key));
+	}
+
+	@Override
+	public Response<Boolean> exists(String key) {
+		return done(() -> jedis.exists(key));
+	}
+
+	@Override
+	public Response<Long> del(String... keys) {
+		return done(() -> jedis.del(keys));
+	}
+
+	@Override
+	public Response<Long> del(byte[]... keys) {
+		return done(() -> jedis.del(keys));
+	}
+
+	@Override
+	public Response<String> type(String key) {
+		return done(() -> jedis.type(key));
+	}
+
+	@Override
+	public Response<String> type(byte[] key) {
+		return done(() -> jedis.type(key));
+	}
+
+	/*------------------------------ Strings ------------------------------*/
+
+	@Override
+	public Response<String> get(String key) {
+		return done(() -> jedis.get(key));
+	}
+
+	@Override
+	public Response<byte[]> get(byte[] key) {
+		return done(() -> jedis.get(key));
+	}
+
+	@Override
+	public Response<String> set(String key, String value) {
+		return done(() -> jedis.set(key, value));
+	}
+
+	@Override
+	public Response<String> set(byte[] key, byte[] value) {
+		return done(() -> jedis.set(key, value));
+	}
+
+	@Override
+	public Response<String> setex(String key, int seconds, String value) {
+		return done(() -> jedis.setex(key, seconds, value));
+	}
+
+	@Override
+	public Response<String> setex(byte[] key, int seconds, byte[] value) {
+		return done(() -> jedis.setex(key, seconds, value));
+	}
+
+	@Override
+	public Response<Long> setnx(String key, String value) {
+		return done(() -> jedis.setnx(key, value));
+	}
+
+	@Override
+	public Response<Long> append(String key, String value) {
+		return done(() -> jedis.append(key, value));
+	}
+
+	@Override
+	public Response<Long> incrBy(String key, long integer) {
+		return done(() -> jedis.incrBy(key, integer));
+	}
+
+	@Override
+	public Response<Long> decrBy(String key, long integer) {
+		return done(() -> jedis.decrBy(key, integer));
+	}
+
+	@Override
+	public Response<List<String>> mget(String... keys) {
+		return done(() -> jedis.mget(keys));
+	}
+
+	@Override
+	public Response<String> mset(String... keysvalues) {
+		return done(() -> jedis.mset(keysvalues));
+	}
+
+	@Override
+	public Response<Long> strlen(String key) {
+		return done(() -> jedis.strlen(key));
+	}
+
+	/*------------------------------ Lists ------------------------------*/
+
+	@Override
+	public Response<Long> llen(String key) {
+		return done(() -> jedis.llen(key));
+	}
+
+	@Override
+	public Response<String> lindex(String key, long index) {
+		return done(() -> jedis.lindex(key, index));
+	}
+
+	@Override
+	public Response<String> lpop(String key) {
+		return done(() -> jedis.lpop(key));
+	}
+
+	@Override
+	public Response<byte[]> lpop(byte[] key) {
+		return done(() -> jedis.lpop(key));
+	}
+
+	@Override
+	public Response<String> rpop(String key) {
+		return done(() -> jedis.rpop(key));
+	}
+
+	@Override
+	public Response<Long> lpush(String key, String... strings) {
+		return done(() -> jedis.lpush(key, strings));
+	}
+
+	@Override
+	public Response<Long> lpush(byte[] key, byte[]... strings) {
+		return done(() -> jedis.lpush(key, strings));
+	}
+
+	@Override
+	public Response<Long> rpush(String key, String... strings) {
+		return done(() -> jedis.rpush(key, strings));
+	}
+
+	@Override
+	public Response<Long> rpush(byte[] key, byte[]... strings) {
+		return done(() -> jedis.rpush(key, strings));
+	}
+
+	@Override
+	public Response<List<String>> lrange(String key, long start, long end) {
+		return done(() -> jedis.lrange(key, start, end));
+	}
+
+	@Override
+	public Response<List<byte[]>> lrange(byte[] key, long start, long end) {
+		return done(() -> jedis.lrange(key, start, end));
+	}
+
+	@Override
+	public Response<String> ltrim(String key, long start, long end) {
+		return done(() -> jedis.ltrim(key, start, end));
+	}
+
+	/*------------------------------ Sets ------------------------------*/
+
+	@Override
+	public Response<Long> sadd(String key, String... members) {
+		return done(() -> jedis.sadd(key, members));
+	}
+
+	@Override
+	public Response<Long> sadd(byte[] key, byte[]... members) {
+		return done(() -> jedis.sadd(key, members));
+	}
+
+	@Override
+	public Response<Long> srem(String key, String... members) {
+		return done(() -> jedis.srem(key, members));
+	}
+
+	@Override
+	public Response<Boolean> sismember(String key, String member) {
+		return done(() -> jedis.sismember(key, member));
+	}
+
+	@Override
+	public Response<Long> scard(String key) {
+		return done(() -> jedis.scard(key));
+	}
+
+	@Override
+	public Response<Set<String>> smembers(String key) {
+		return done(() -> jedis.smembers(key));
+	}
+
+	/*------------------------------ Hash ------------------------------*/
+
+	@Override
+	public Response<Long> hdel(String key, String... fields) {
+		return done(() -> jedis.hdel(key, fields));
+	}
+
+	@Override
+	public Response<Boolean> hexists(String key, String field) {
+		return done(() -> jedis.hexists(key, field));
+	}
+
+	@Override
+	public Response<String> hget(String key, String field) {
+		return done(() -> jedis.hget(key, field));
+	}
+
+	@Override
+	public Response<byte[]> hget(byte[] key, byte[] field) {
+		return done(() -> jedis.hget(key, field));
+	}
+
+	@Override
+	public Response<Map<String, String>> hgetAll(String key) {
+		return done(() -> jedis.hgetAll(key));
+	}
+
+	@Override
+	public Response<Long> hset(String key, String field, String value) {
+		return done(() -> jedis.hset(key, field, value));
+	}
+
+	@Override
+	public Response<Long> hset(byte[] key, byte[] field, byte[] value) {
+		return done(() -> jedis.hset(key, field, value));
+	}
+
+	@Override
+	public Response<Long> hincrBy(String key, String field, long value) {
+		return done(() -> jedis.hincrBy(key, field, value));
+	}
+
+	@Override
+	public Response<Long> hlen(String key) {
+		return done(() -> jedis.hlen(key));
+	}
+
+	@Override
+	public Response<List<String>> hmget(String key, String... fields) {
+		return done(() -> jedis.hmget(key, fields));
+	}
+
+	@Override
+	public Response<List<byte[]>> hmget(byte[] key, byte[]... fields) {
+		return done(() -> jedis.hmget(key, fields));
+	}
+
+	@Override
+	public Response<String> hmset(String key, Map<String, String> hash) {
+		return done(() -> jedis.hmset(key, hash));
+	}
+
+	@Override
+	public Response<String> hmset(byte[] key, Map<byte[], byte[]> hash) {
+		return done(() -> jedis.hmset(key, hash));
+	}
+
+	/*------------------------------ SortSet ------------------------------*/
+
+	@Override
+	public Response<Long> zadd(String key, double score, String member) {
+		return done(() -> jedis.zadd(key, score, member));
+	}
+
+	@Override
+	public Response<Double> zincrby(String key, double score, String member) {
+		return done(() -> jedis.zincrby(key, score, member));
+	}
+
+	@Override
+	public Response<Long> zrem(String key, String... members) {
+		return done(() -> jedis.zrem(key, members));
+	}
+
+	@Override
+	public Response<Double> zscore(String key, String member) {
+		return done(() -> jedis.zscore(key, member));
+	}
+
+	@Override
+	public Response<Long> zrank(String key, String member) {
+		return done(() -> jedis.zrank(key, member));
+	}
+
+	@Override
+	public Response<Long> zrevrank(String key, String member) {
+		return done(() -> jedis.zrevrank(key, member));
+	}
+
+	@Override
+	public Response<Long> zcard(String key) {
+		return done(() -> jedis.zcard(key));
+	}
+
+	@Override
+	public Response<Long> zcount(String key, double min, double max) {
+		return done(() -> jedis.zcount(key, min, max));
+	}
+
+	@Override
+	public Response<Set<String>> zrange(String key, long start, long end) {
+		return done(() -> jedis.zrange(key, start, end));
+	}
+
+	@Override
+	public Response<Set<String>> zrevrange(String key, long start, long end) {
+		return done(() -> jedis.zrevrange(key, start, end));
+	}
+
+	@Override
+	public Response<Set<String>> zrangeByScore(String key, double min, double max) {
+		return done(() -> jedis.zrangeByScore(key, min, max));
+	}
+}
@@ -0,0 +1,1321 @@
+package com.redis.redis_java.embedded;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.SortingParams;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 进程内的存储引擎, 实现JedisUtils用到的string/list/set/hash/zset命令和过期语义, 不需要Redis服务
+ *
+ * 数据按key的hash分到多个段, 每段一把锁, 多key命令按段下标从小到大加锁;
+ * 过期与Redis相同: 访问时检查(惰性删除), 后台线程每100毫秒随机抽样删除(主动删除);
+ * 命令出错时抛出与Redis错误回复相同的JedisDataException
+ */
+public class EmbeddedStore implements Closeable {
+
+	static final String WRONGTYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+	private static final String NOT_INTEGER = "ERR value is not an integer or out of range";
+
+	/** 集合类型的SCAN一次返回全部成员, 游标总是0 */
+	private static final byte[] SCAN_END = SafeEncoder.encode("0");
+
+	/** 每轮主动过期每段抽样的key数 */
+	private static final int EXPIRE_SAMPLES = 20;
+
+	private final Segment[] segments;
+
+	private final int mask;
+
+	private final ScheduledExecutorService expirer;
+
+	public EmbeddedStore() {
+		this(64);
+	}
+
+	/**
+	 * @param concurrency 段数, 向上取2的幂
+	 */
+	public EmbeddedStore(int concurrency) {
+		int size = 1;
+		while (size < concurrency) {
+			size <<= 1;
+		}
+		segments = new Segment[size];
+		for (int i = 0; i < size; i++) {
+			segments[i] = new Segment();
+		}
+		mask = size - 1;
+		expirer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "embedded-store-expirer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		expirer.scheduleWithFixedDelay(this::expireCycle, 100, 100, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void close() {
+		expirer.shutdownNow();
+	}
+
+	/*------------------------------ Keys ------------------------------*/
+
+	public long expire(byte[] key, int seconds) {
+		return pexpireAt(key, System.currentTimeMillis() + seconds * 1000L);
+	}
+
+	/**
+	 * @param unixTime 秒
+	 */
+	public long expireAt(byte[] key, long unixTime) {
+		return pexpireAt(key, unixTime * 1000);
+	}
+
+	private long pexpireAt(byte[] key, final long at) {
+		return locked(key, (s, k) -> {
+			long now = System.currentTimeMillis();
+			Entry e = s.entry(k, now);
+			if (e == null) {
+				return 0L;
+			}
+			if (at <= now) {
+				s.remove(k);
+			} else {
+				s.expire(k, e, at);
+			}
+			return 1L;
+		});
+	}
+
+	/**
+	 * @return 剩余秒数, 没有过期时间返回-1, key不存在返回-2
+	 */
+	public long ttl(byte[] key) {
+		return locked(key, (s, k) -> {
+			long now = System.currentTimeMillis();
+			Entry e = s.entry(k, now);
+			if (e == null) {
+				return -2L;
+			}
+			return e.expireAt == 0 ? -1L : (e.expireAt - now + 500) / 1000;
+		});
+	}
+
+	public long persist(byte[] key) {
+		return locked(key, (s, k) -> {
+			Entry e = s.entry(k, System.currentTimeMillis());
+			return e != null && s.persist(e) ? 1L : 0L;
+		});
+	}
+
+	public void flushAll() {
+		for (Segment s : segments) {
+			s.lock.lock();
+		}
+		try {
+			for (Segment s : segments) {
+				s.data.clear();
+				s.volatileKeys.clear();
+			}
+		} finally {
+			for (Segment s : segments) {
+				s.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * key的数量, 包括已过期但还未删除的key
+	 */
+	public long dbSize() {
+		long size = 0;
+		for (Segment s : segments) {
+			s.lock.lock();
+			try {
+				size += s.data.size();
+			} finally {
+				s.lock.unlock();
+			}
+		}
+		return size;
+	}
+
+	public boolean exists(byte[] key) {
+		return locked(key, (s, k) -> s.entry(k, System.currentTimeMillis()) != null);
+	}
+
+	public long del(byte[]... keys) {
+		final BytesKey[] ks = keys(keys);
+		return lockedAll(ks, () -> {
+			long now = System.currentTimeMillis();
+			long count = 0;
+			for (BytesKey k : ks) {
+				Segment s = segment(k);
+				if (s.entry(k, now) != null) {
+					s.remove(k);
+					count++;
+				}
+			}
+			return count;
+		});
+	}
+
+	public void rename(byte[] oldKey, byte[] newKey) {
+		rename(oldKey, newKey, false);
+	}
+
+	public long renamenx(byte[] oldKey, byte[] newKey) {
+		return rename(oldKey, newKey, true) ? 1 : 0;
+	}
+
+	private boolean rename(byte[] oldKey, byte[] newKey, final boolean nx) {
+		final BytesKey from = new BytesKey(oldKey);
+		final BytesKey to = new BytesKey(newKey);
+		return lockedAll(new BytesKey[] {from, to}, () -> {
+			long now = System.currentTimeMillis();
+			Segment src = segment(from);
+			Entry e = src.entry(from, now);
+			if (e == null) {
+				throw new JedisDataException("ERR no such key");
+			}
+			if (from.equals(to)) {
+				return !nx;
+			}
+			Segment dst = segment(to);
+			if (nx && dst.entry(to, now) != null) {
+				return false;
+			}
+			long expireAt = e.expireAt;
+			src.remove(from);
+			dst.put(to, e.value);
+			if (expireAt != 0) {
+				dst.expire(to, dst.data.get(to), expireAt);
+			}
+			return true;
+		});
+	}
+
+	/**
+	 * @return string, list, set, hash, zset 或 none
+	 */
+	public String type(byte[] key) {
+		return locked(key, (s, k) -> {
+			Entry e = s.entry(k, System.currentTimeMillis());
+			return e == null ? "none" : typeName(e.value);
+		});
+	}
+
+	/**
+	 * 支持ASC, DESC, ALPHA, LIMIT, 不支持BY和GET
+	 */
+	public List<byte[]> sort(byte[] key, SortingParams params) {
+		boolean desc = false;
+		boolean alpha = false;
+		boolean nosort = false;
+		int offset = 0;
+		int count = -1;
+		if (params != null) {
+			Iterator<byte[]> it = params.getParams().iterator();
+			while (it.hasNext()) {
+				String option = SafeEncoder.encode(it.next()).toUpperCase();
+				if ("ASC".equals(option)) {
+					desc = false;
+				} else if ("DESC".equals(option)) {
+					desc = true;
+				} else if ("ALPHA".equals(option)) {
+					alpha = true;
+				} else if ("LIMIT".equals(option)) {
+					offset = Integer.parseInt(SafeEncoder.encode(it.next()));
+					count = Integer.parseInt(SafeEncoder.encode(it.next()));
+				} else if ("BY".equals(option) && "nosort".equals(SafeEncoder.encode(it.next()))) {
+					nosort = true;
+				} else {
+					throw new JedisDataException("ERR SORT " + option + " is not supported by the embedded store");
+				}
+			}
+		}
+		List<byte[]> elements = locked(key, (s, k) -> {
+			Entry e = s.entry(k, System.currentTimeMillis());
+			if (e == null) {
+				return new ArrayList<byte[]>();
+			}
+			if (e.value instanceof ListValue) {
+				ListValue list = (ListValue) e.value;
+				return list.range(0, list.size() - 1);
+			}
+			if (e.value instanceof HashSet) {
+				return members(set(e.value));
+			}
+			if (e.value instanceof ZSet) {
+				return nodeMembers(((ZSet) e.value).range(0, -1, false));
+			}
+			throw new JedisDataException(WRONGTYPE);
+		});
+		if (!nosort) {
+			Comparator<byte[]> comparator;
+			if (alpha) {
+				comparator = BytesKey::compare;
+			} else {
+				final Map<byte[], Double> values = new HashMap<byte[], Double>();
+				for (byte[] element : elements) {
+					try {
+						values.put(element, Double.valueOf(SafeEncoder.encode(element)));
+					} catch (NumberFormatException ex) {
+						throw new JedisDataException("ERR One or more scores can't be converted into double");
+					}
+				}
+				comparator = (a, b) -> Double.compare(values.get(a), values.get(b));
+			}
+			elements.sort(desc ? comparator.reversed() : comparator);
+		}
+		if (count >= 0 || offset > 0) {
+			int from = Math.min(Math.max(offset, 0), elements.size());
+			int to = count < 0 ? elements.size() : Math.min(from + count, elements.size());
+			elements = new ArrayList<byte[]>(elements.subList(from, to));
+		}
+		return elements;
+	}
+
+	/**
+	 * 游标为段下标, 每次至少返回count个key或扫描到最后一段
+	 */
+	public ScanResult<byte[]> scan(long cursor, byte[] pattern, int count) {
+		if (cursor < 0 || cursor > segments.length) {
+			throw new JedisDataException("ERR invalid cursor");
+		}
+		List<byte[]> result = new ArrayList<byte[]>();
+		int i = (int) cursor;
+		long now = System.currentTimeMillis();
+		while (i < segments.length && result.size() < count) {
+			Segment s = segments[i++];
+			s.lock.lock();
+			try {
+				for (Map.Entry<BytesKey, Entry> entry : s.data.entrySet()) {
+					Entry e = entry.getValue();
+					if ((e.expireAt == 0 || e.expireAt > now) && GlobPattern.match(pattern, entry.getKey().bytes)) {
+						result.add(entry.getKey().bytes);
+					}
+				}
+			} finally {
+				s.lock.unlock();
+			}
+		}
+		String next = i >= segments.length ? "0" : String.valueOf(i);
+		return new ScanResult<byte[]>(SafeEncoder.encode(next), result);
+	}
+
+	/*------------------------------ Strings ------------------------------*/
+
+	public byte[] get(byte[] key) {
+		return locked(key, (s, k) -> s.get(k, byte[].class));
+	}
+
+	public void set(byte[] key, final byte[] value) {
+		locked(key, (s, k) -> {
+			s.put(k, value);
+			return null;
+		});
+	}
+
+	public void setex(byte[] key, final int seconds, final byte[] value) {
+		if (seconds <= 0) {
+			throw new JedisDataException("ERR invalid expire time in setex");
+		}
+		locked(key, (s, k) -> {
+			s.put(k, value);
+			s.expire(k, s.data.get(k), System.currentTimeMillis() + seconds * 1000L);
+			return null;
+		});
+	}
+
+	public long setnx(byte[] key, final byte[] value) {
+		return locked(key, (s, k) -> {
+			if (s.entry(k, System.currentTimeMillis()) != null) {
+				return 0L;
+			}
+			s.put(k, value);
+			return 1L;
+		});
+	}
+
+	public long setrange(byte[] key, final long offset, final byte[] value) {
+		if (offset < 0 || offset + value.length > 512L * 1024 * 1024) {
+			throw new JedisDataException("ERR offset is out of range");
+		}
+		return locked(key, (s, k) -> {
+			Entry e = s.entry(k, System.currentTimeMillis());
+			byte[] old = e == null ? new byte[0] : string(e.value);
+			if (value.length == 0) {
+				return (long) old.length;
+			}
+			byte[] updated = Arrays.copyOf(old, (int) Math.max(old.length, offset + value.length));
+			System.arraycopy(value, 0, updated, (int) offset, value.length);
+			s.update(k, e, updated);
+			return (long) updated.length;
+		});
+	}
+
+	public long append(byte[] key, final byte[] value) {
+		return locked(key, (s, k) -> {
+			Entry e = s.entry(k, System.currentTimeMillis());
+			byte[] old = e == null ? new byte[0] : string(e.value);
+			byte[] updated = Arrays.copyOf(old, old.length + value.length);
+			System.arraycopy(value, 0, updated, old.length, value.length);
+			s.update(k, e, updated);
+			return (long) updated.length;
+		});
+	}
+
+	public long incrBy(byte[] key, final long delta) {
+		return locked(key, (s, k) -> {
+			Entry e = s.entry(k, System.currentTimeMillis());
+			long value = 0;
+			if (e != null) {
+				try {
+					value = Long.parseLong(SafeEncoder.encode(string(e.value)));
+				} catch (NumberFormatException ex) {
+					throw new JedisDataException(NOT_INTEGER);
+				}
+			}
+			try {
+				value = Math.addExact(value, delta);
+			} catch (ArithmeticException ex) {
+				throw new JedisDataException("ERR increment or decrement would overflow");
+			}
+			s.update(k, e, SafeEncoder.encode(String.valueOf(value)));
+			return value;
+		});
+	}
+
+	public long decrBy(byte[] key, long delta) {
+		if (delta == Long.MIN_VALUE) {
+			throw new JedisDataException("ERR decrement would overflow");
+		}
+		return incrBy(key, -delta);
+	}
+
+	public byte[] getrange(byte[] key, final long start, final long end) {
+		return locked(key, (s, k) -> {
+			byte[] value = s.get(k, byte[].class);
+			int[] range = value == null ? null : range(start, end, value.length);
+			return range == null ? new byte[0] : Arrays.copyOfRange(value, range[0], range[1] + 1);
+		});
+	}
+
+	public byte[] getSet(byte[] key, final byte[] value) {
+		return locked(key, (s, k) -> {
+			byte[] old = s.get(k, byte[].class);
+			s.put(k, value);
+			return old;
+		});
+	}
+
+	public List<byte[]> mget(byte[]... keys) {
+		final BytesKey[] ks = keys(keys);
+		return lockedAll(ks, () -> {
+			long now = System.currentTimeMillis();
+			List<byte[]> values = new ArrayList<byte[]>(ks.length);
+			for (BytesKey k : ks) {
+				Entry e = segment(k).entry(k, now);
+				values.add(e != null && e.value instanceof byte[] ? (byte[]) e.value : null);
+			}
+			return values;
+		});
+	}
+
+	public void mset(byte[]... keysvalues) {
+		if (keysvalues.length == 0 || keysvalues.length % 2 != 0) {
+			throw new JedisDataException("ERR wrong number of arguments for MSET");
+		}
+		final BytesKey[] ks = new BytesKey[keysvalues.length / 2];
+		for (int i = 0; i < ks.length; i++) {
+			ks[i] = new BytesKey(keysvalues[i * 2]);
+		}
+		lockedAll(ks, () -> {
+			for (int i = 0; i < ks.length; i++) {
+				segment(ks[i]).put(ks[i], keysvalues[i * 2 + 1]);
+			}
+			return null;
+		});
+	}
+
+	public long strlen(byte[] key) {
+		return locked(key, (s, k) -> {
+			byte[] value = s.get(k, byte[].class);
+			return value == null ? 0L : value.length;
+		});
+	}
+
+	/*------------------------------ Lists ------------------------------*/
+
+	public long llen(byte[] key) {
+		return locked(key, (s, k) -> {
+			ListValue list = s.get(k, ListValue.class);
+			return list == null ? 0L : list.size();
+		});
+	}
+
+	public void lset(byte[] key, final long index, final byte[] value) {
+		locked(key, (s, k) -> {
+			ListValue list = s.get(k, ListValue.class);
+			if (list == null) {
+				throw new JedisDataException("ERR no such key");
+			}
+			long i = index < 0 ? list.size() + index : index;
+			if (i < 0 || i >= list.size()) {
+				throw new JedisDataException("ERR index out of range");
+			}
+			list.set((int) i, value);
+			return null;
+		});
+	}
+
+	public byte[] lindex(byte[] key, final long index) {
+		return locked(key, (s, k) -> {
+			ListValue list = s.get(k, ListValue.class);
+			if (list == null) {
+				return null;
+			}
+			long i = index < 0 ? list.size() + index : index;
+			return i < 0 || i >= list.size() ? null : list.get((int) i);
+		});
+	}
+
+	public byte[] lpop(byte[] key) {
+		return pop(key, true);
+	}
+
+	public byte[] rpop(byte[] key) {
+		return pop(key, false);
+	}
+
+	private byte[] pop(byte[] key, final boolean first) {
+		return locked(key, (s, k) -> {
+			ListValue list = s.get(k, ListValue.class);
+			if (list == null) {
+				return null;
+			}
+			byte[] value = first ? list.pollFirst() : list.pollLast();
+			s.removeIfEmpty(k, list.size());
+			return value;
+		});
+	}
+
+	public long lpush(byte[] key, byte[]... values) {
+		return push(key, true, values);
+	}
+
+	public long rpush(byte[] key, byte[]... values) {
+		return push(key, false, values);
+	}
+
+	private long push(byte[] key, final boolean first, final byte[]... values) {
+		return locked(key, (s, k) -> {
+			ListValue list = s.getOrCreate(k, ListValue.class, ListValue::new);
+			for (byte[] value : values) {
+				if (first) {
+					list.addFirst(value);
+				} else {
+					list.addLast(value);
+				}
+			}
+			return (long) list.size();
+		});
+	}
+
+	public List<byte[]> lrange(byte[] key, final long start, final long end) {
+		return locked(key, (s, k) -> {
+			ListValue list = s.get(k, ListValue.class);
+			int[] range = list == null ? null : range(start, end, list.size());
+			return range == null ? new ArrayList<byte[]>() : list.range(range[0], range[1]);
+		});
+	}
+
+	public long lrem(byte[] key, final long count, final byte[] value) {
+		return locked(key, (s, k) -> {
+			ListValue list = s.get(k, ListValue.class);
+			if (list == null) {
+				return 0L;
+			}
+			int c = (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, count));
+			long removed = list.remove(c, value);
+			s.removeIfEmpty(k, list.size());
+			return removed;
+		});
+	}
+
+	public void ltrim(byte[] key, final long start, final long end) {
+		locked(key, (s, k) -> {
+			ListValue list = s.get(k, ListValue.class);
+			if (list == null) {
+				return null;
+			}
+			int[] range = range(start, end, list.size());
+			if (range == null) {
+				s.remove(k);
+			} else {
+				list.retain(range[0], range[1]);
+			}
+			return null;
+		});
+	}
+
+	/*------------------------------ Sets ------------------------------*/
+
+	public long sadd(byte[] key, final byte[]... members) {
+		return locked(key, (s, k) -> {
+			HashSet<BytesKey> set = set(s.getOrCreate(k, HashSet.class, HashSet::new));
+			long added = 0;
+			for (byte[] member : members) {
+				if (set.add(new BytesKey(member))) {
+					added++;
+				}
+			}
+			return added;
+		});
+	}
+
+	public long scard(byte[] key) {
+		return locked(key, (s, k) -> {
+			HashSet<?> set = s.get(k, HashSet.class);
+			return set == null ? 0L : set.size();
+		});
+	}
+
+	public boolean sismember(byte[] key, final byte[] member) {
+		return locked(key, (s, k) -> {
+			HashSet<?> set = s.get(k, HashSet.class);
+			return set != null && set.contains(new BytesKey(member));
+		});
+	}
+
+	public List<byte[]> smembers(byte[] key) {
+		return locked(key, (s, k) -> {
+			HashSet<?> set = s.get(k, HashSet.class);
+			return set == null ? new ArrayList<byte[]>() : members(set(set));
+		});
+	}
+
+	public long srem(byte[] key, final byte[]... members) {
+		return locked(key, (s, k) -> {
+			HashSet<?> set = s.get(k, HashSet.class);
+			if (set == null) {
+				return 0L;
+			}
+			long removed = 0;
+			for (byte[] member : members) {
+				if (set.remove(new BytesKey(member))) {
+					removed++;
+				}
+			}
+			s.removeIfEmpty(k, set.size());
+			return removed;
+		});
+	}
+
+	public byte[] spop(byte[] key) {
+		return locked(key, (s, k) -> {
+			HashSet<BytesKey> set = set(s.get(k, HashSet.class));
+			if (set == null) {
+				return null;
+			}
+			Iterator<BytesKey> it = set.iterator();
+			for (int skip = ThreadLocalRandom.current().nextInt(Math.min(set.size(), 64)); skip > 0; skip--) {
+				it.next();
+			}
+			BytesKey member = it.next();
+			it.remove();
+			s.removeIfEmpty(k, set.size());
+			return member.bytes;
+		});
+	}
+
+	public long smove(byte[] srckey, byte[] dstkey, final byte[] member) {
+		final BytesKey src = new BytesKey(srckey);
+		final BytesKey dst = new BytesKey(dstkey);
+		return lockedAll(new BytesKey[] {src, dst}, () -> {
+			HashSet<BytesKey> from = set(segment(src).get(src, HashSet.class));
+			HashSet<BytesKey> to = set(segment(dst).get(dst, HashSet.class));
+			BytesKey m = new BytesKey(member);
+			if (from == null || !from.contains(m)) {
+				return 0L;
+			}
+			if (src.equals(dst)) {
+				return 1L;
+			}
+			from.remove(m);
+			segment(src).removeIfEmpty(src, from.size());
+			if (to == null) {
+				to = new HashSet<BytesKey>();
+				segment(dst).put(dst, to);
+			}
+			to.add(m);
+			return 1L;
+		});
+	}
+
+	public List<byte[]> sdiff(byte[]... keys) {
+		return members(setOperation(SetOp.DIFF, keys));
+	}
+
+	public List<byte[]> sinter(byte[]... keys) {
+		return members(setOperation(SetOp.INTER, keys));
+	}
+
+	public List<byte[]> sunion(byte[]... keys) {
+		return members(setOperation(SetOp.UNION, keys));
+	}
+
+	public long sdiffstore(byte[] dstkey, byte[]... keys) {
+		return setOperationStore(SetOp.DIFF, dstkey, keys);
+	}
+
+	public long sinterstore(byte[] dstkey, byte[]... keys) {
+		return setOperationStore(SetOp.INTER, dstkey, keys);
+	}
+
+	public long sunionstore(byte[] dstkey, byte[]... keys) {
+		return setOperationStore(SetOp.UNION, dstkey, keys);
+	}
+
+	private enum SetOp {
+		DIFF, INTER, UNION
+	}
+
+	private HashSet<BytesKey> setOperation(final SetOp op, byte[]... keys) {
+		final BytesKey[] ks = keys(keys);
+		return lockedAll(ks, () -> compute(op, ks));
+	}
+
+	private long setOperationStore(final SetOp op, byte[] dstkey, byte[]... keys) {
+		final BytesKey dst = new BytesKey(dstkey);
+		final BytesKey[] ks = keys(keys);
+		BytesKey[] all = Arrays.copyOf(ks, ks.length + 1);
+		all[ks.length] = dst;
+		return lockedAll(all, () -> {
+			HashSet<BytesKey> result = compute(op, ks);
+			Segment s = segment(dst);
+			if (result.isEmpty()) {
+				s.remove(dst);
+			} else {
+				s.put(dst, result);
+			}
+			return (long) result.size();
+		});
+	}
+
+	private HashSet<BytesKey> compute(SetOp op, BytesKey[] ks) {
+		HashSet<BytesKey> result = null;
+		for (BytesKey k : ks) {
+			HashSet<BytesKey> set = set(segment(k).get(k, HashSet.class));
+			if (result == null) {
+				result = set == null ? new HashSet<BytesKey>() : new HashSet<BytesKey>(set);
+			} else if (op == SetOp.UNION) {
+				if (set != null) {
+					result.addAll(set);
+				}
+			} else if (op == SetOp.INTER) {
+				if (set == null) {
+					result.clear();
+				} else {
+					result.retainAll(set);
+				}
+			} else if (set != null) {
+				result.removeAll(set);
+			}
+		}
+		return result == null ? new HashSet<BytesKey>() : result;
+	}
+
+	/**
+	 * 集合一次全部返回, 游标总是0
+	 */
+	public ScanResult<byte[]> sscan(byte[] key, final byte[] pattern) {
+		List<byte[]> members = locked(key, (s, k) -> {
+			HashSet<BytesKey> set = set(s.get(k, HashSet.class));
+			List<byte[]> result = new ArrayList<byte[]>();
+			if (set != null) {
+				for (BytesKey member : set) {
+					if (GlobPattern.match(pattern, member.bytes)) {
+						result.add(member.bytes);
+					}
+				}
+			}
+			return result;
+		});
+		return new ScanResult<byte[]>(SCAN_END, members);
+	}
+
+	/*------------------------------ Hash ------------------------------*/
+
+	public long hdel(byte[] key, final byte[]... fields) {
+		return locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.get(k, HashMap.class));
+			if (hash == null) {
+				return 0L;
+			}
+			long removed = 0;
+			for (byte[] field : fields) {
+				if (hash.remove(new BytesKey(field)) != null) {
+					removed++;
+				}
+			}
+			s.removeIfEmpty(k, hash.size());
+			return removed;
+		});
+	}
+
+	public boolean hexists(byte[] key, final byte[] field) {
+		return locked(key, (s, k) -> {
+			HashMap<?, ?> hash = s.get(k, HashMap.class);
+			return hash != null && hash.containsKey(new BytesKey(field));
+		});
+	}
+
+	public byte[] hget(byte[] key, final byte[] field) {
+		return locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.get(k, HashMap.class));
+			return hash == null ? null : hash.get(new BytesKey(field));
+		});
+	}
+
+	/**
+	 * @return 字段和值交替排列
+	 */
+	public List<byte[]> hgetAll(byte[] key) {
+		return hscan(key, null).getResult();
+	}
+
+	public long hset(byte[] key, final byte[] field, final byte[] value) {
+		return locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.getOrCreate(k, HashMap.class, HashMap::new));
+			return hash.put(new BytesKey(field), value) == null ? 1L : 0L;
+		});
+	}
+
+	public long hsetnx(byte[] key, final byte[] field, final byte[] value) {
+		return locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.getOrCreate(k, HashMap.class, HashMap::new));
+			return hash.putIfAbsent(new BytesKey(field), value) == null ? 1L : 0L;
+		});
+	}
+
+	public List<byte[]> hvals(byte[] key) {
+		return locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.get(k, HashMap.class));
+			return hash == null ? new ArrayList<byte[]>() : new ArrayList<byte[]>(hash.values());
+		});
+	}
+
+	public List<byte[]> hkeys(byte[] key) {
+		return locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.get(k, HashMap.class));
+			return hash == null ? new ArrayList<byte[]>() : members(hash.keySet());
+		});
+	}
+
+	public long hincrBy(byte[] key, final byte[] field, final long delta) {
+		return locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.getOrCreate(k, HashMap.class, HashMap::new));
+			BytesKey f = new BytesKey(field);
+			byte[] old = hash.get(f);
+			long value;
+			try {
+				value = old == null ? 0 : Long.parseLong(SafeEncoder.encode(old));
+			} catch (NumberFormatException ex) {
+				throw new JedisDataException("ERR hash value is not an integer");
+			}
+			try {
+				value = Math.addExact(value, delta);
+			} catch (ArithmeticException ex) {
+				throw new JedisDataException("ERR increment or decrement would overflow");
+			}
+			hash.put(f, SafeEncoder.encode(String.valueOf(value)));
+			return value;
+		});
+	}
+
+	public long hlen(byte[] key) {
+		return locked(key, (s, k) -> {
+			HashMap<?, ?> hash = s.get(k, HashMap.class);
+			return hash == null ? 0L : hash.size();
+		});
+	}
+
+	public List<byte[]> hmget(byte[] key, final byte[]... fields) {
+		return locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.get(k, HashMap.class));
+			List<byte[]> values = new ArrayList<byte[]>(fields.length);
+			for (byte[] field : fields) {
+				values.add(hash == null ? null : hash.get(new BytesKey(field)));
+			}
+			return values;
+		});
+	}
+
+	public void hmset(byte[] key, final Map<byte[], byte[]> map) {
+		if (map.isEmpty()) {
+			throw new JedisDataException("ERR wrong number of arguments for HMSET");
+		}
+		locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.getOrCreate(k, HashMap.class, HashMap::new));
+			for (Map.Entry<byte[], byte[]> entry : map.entrySet()) {
+				hash.put(new BytesKey(entry.getKey()), entry.getValue());
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * 哈希一次全部返回, 游标总是0, 字段和值交替排列
+	 */
+	public ScanResult<byte[]> hscan(byte[] key, final byte[] pattern) {
+		List<byte[]> entries = locked(key, (s, k) -> {
+			HashMap<BytesKey, byte[]> hash = hash(s.get(k, HashMap.class));
+			List<byte[]> result = new ArrayList<byte[]>();
+			if (hash != null) {
+				for (Map.Entry<BytesKey, byte[]> entry : hash.entrySet()) {
+					if (GlobPattern.match(pattern, entry.getKey().bytes)) {
+						result.add(entry.getKey().bytes);
+						result.add(entry.getValue());
+					}
+				}
+			}
+			return result;
+		});
+		return new ScanResult<byte[]>(SCAN_END, entries);
+	}
+
+	/*------------------------------ SortSet ------------------------------*/
+
+	public long zadd(byte[] key, final double score, final byte[] member) {
+		if (Double.isNaN(score)) {
+			throw new JedisDataException("ERR value is not a valid float");
+		}
+		return locked(key, (s, k) -> s.getOrCreate(k, ZSet.class, ZSet::new).add(member, score) ? 1L : 0L);
+	}
+
+	public long zcard(byte[] key) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			return zset == null ? 0L : zset.size();
+		});
+	}
+
+	public long zcount(byte[] key, final double min, final double max) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			return zset == null ? 0L : zset.count(min, max);
+		});
+	}
+
+	public double zincrby(byte[] key, final double increment, final byte[] member) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.getOrCreate(k, ZSet.class, ZSet::new);
+			Double old = zset.score(member);
+			double score = old == null ? increment : old + increment;
+			if (Double.isNaN(score)) {
+				throw new JedisDataException("ERR resulting score is not a number (NaN)");
+			}
+			zset.add(member, score);
+			return score;
+		});
+	}
+
+	public List<byte[]> zrange(byte[] key, long start, long end) {
+		return zrange(key, start, end, false);
+	}
+
+	public List<byte[]> zrevrange(byte[] key, long start, long end) {
+		return zrange(key, start, end, true);
+	}
+
+	private List<byte[]> zrange(byte[] key, final long start, final long end, final boolean reverse) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			return zset == null ? new ArrayList<byte[]>() : nodeMembers(zset.range(start, end, reverse));
+		});
+	}
+
+	public List<byte[]> zrangeByScore(byte[] key, final double min, final double max) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			return zset == null ? new ArrayList<byte[]>() : nodeMembers(zset.rangeByScore(min, max));
+		});
+	}
+
+	public Long zrank(byte[] key, byte[] member) {
+		return zrank(key, member, false);
+	}
+
+	public Long zrevrank(byte[] key, byte[] member) {
+		return zrank(key, member, true);
+	}
+
+	private Long zrank(byte[] key, final byte[] member, final boolean reverse) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			return zset == null ? null : zset.rank(member, reverse);
+		});
+	}
+
+	public long zrem(byte[] key, final byte[]... members) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			if (zset == null) {
+				return 0L;
+			}
+			long removed = 0;
+			for (byte[] member : members) {
+				if (zset.remove(member)) {
+					removed++;
+				}
+			}
+			s.removeIfEmpty(k, zset.size());
+			return removed;
+		});
+	}
+
+	public long zremrangeByRank(byte[] key, final long start, final long end) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			return zset == null ? 0L : removeNodes(s, k, zset, zset.range(start, end, false));
+		});
+	}
+
+	public long zremrangeByScore(byte[] key, final double min, final double max) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			return zset == null ? 0L : removeNodes(s, k, zset, zset.rangeByScore(min, max));
+		});
+	}
+
+	private static long removeNodes(Segment s, BytesKey k, ZSet zset, List<ZSkipList.Node> nodes) {
+		for (ZSkipList.Node node : nodes) {
+			zset.remove(node.member);
+		}
+		s.removeIfEmpty(k, zset.size());
+		return nodes.size();
+	}
+
+	public Double zscore(byte[] key, final byte[] member) {
+		return locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			return zset == null ? null : zset.score(member);
+		});
+	}
+
+	/**
+	 * 有序集合一次全部返回, 游标总是0, 按权重排序
+	 */
+	public ScanResult<Tuple> zscan(byte[] key, final byte[] pattern) {
+		List<Tuple> tuples = locked(key, (s, k) -> {
+			ZSet zset = s.get(k, ZSet.class);
+			List<Tuple> result = new ArrayList<Tuple>();
+			if (zset != null) {
+				for (ZSkipList.Node node = zset.list.first(); node != null; node = node.next()) {
+					if (GlobPattern.match(pattern, node.member)) {
+						result.add(new Tuple(node.member, node.score));
+					}
+				}
+			}
+			return result;
+		});
+		return new ScanResult<Tuple>(SCAN_END, tuples);
+	}
+
+	/*------------------------------ 内部实现 ------------------------------*/
+
+	private static final class Entry {
+		Object value;
+		/** 过期时间, 毫秒, 0表示不过期 */
+		long expireAt;
+		/** 在Segment.volatileKeys中的下标, -1表示不过期 */
+		int volatileIndex = -1;
+
+		Entry(Object value) {
+			this.value = value;
+		}
+	}
+
+	private static final class Segment {
+		final ReentrantLock lock = new ReentrantLock();
+		final HashMap<BytesKey, Entry> data = new HashMap<BytesKey, Entry>();
+		/** 设置了过期时间的key, 用于随机抽样 */
+		final ArrayList<BytesKey> volatileKeys = new ArrayList<BytesKey>();
+
+		/**
+		 * 已过期的key在这里删除
+		 */
+		Entry entry(BytesKey key, long now) {
+			Entry e = data.get(key);
+			if (e != null && e.expireAt != 0 && e.expireAt <= now) {
+				remove(key);
+				return null;
+			}
+			return e;
+		}
+
+		<V> V get(BytesKey key, Class<V> type) {
+			Entry e = entry(key, System.currentTimeMillis());
+			if (e == null) {
+				return null;
+			}
+			if (!type.isInstance(e.value)) {
+				throw new JedisDataException(WRONGTYPE);
+			}
+			return type.cast(e.value);
+		}
+
+		<V> V getOrCreate(BytesKey key, Class<V> type, Supplier<V> factory) {
+			V value = get(key, type);
+			if (value == null) {
+				value = factory.get();
+				put(key, value);
+			}
+			return value;
+		}
+
+		/**
+		 * 覆盖值并清除过期时间, 与SET相同
+		 */
+		void put(BytesKey key, Object value) {
+			Entry e = data.get(key);
+			if (e == null) {
+				data.put(key, new Entry(value));
+			} else {
+				e.value = value;
+				persist(e);
+			}
+		}
+
+		/**
+		 * 修改值并保留过期时间, 与APPEND/INCRBY相同
+		 */
+		void update(BytesKey key, Entry e, Object value) {
+			if (e == null) {
+				data.put(key, new Entry(value));
+			} else {
+				e.value = value;
+			}
+		}
+
+		void remove(BytesKey key) {
+			Entry e = data.remove(key);
+			if (e != null) {
+				persist(e);
+			}
+		}
+
+		void removeIfEmpty(BytesKey key, int size) {
+			if (size == 0) {
+				remove(key);
+			}
+		}
+
+		void expire(BytesKey key, Entry e, long at) {
+			e.expireAt = at;
+			if (e.volatileIndex < 0) {
+				e.volatileIndex = volatileKeys.size();
+				volatileKeys.add(key);
+			}
+		}
+
+		boolean persist(Entry e) {
+			if (e.expireAt == 0) {
+				return false;
+			}
+			int i = e.volatileIndex;
+			int last = volatileKeys.size() - 1;
+			BytesKey moved = volatileKeys.remove(last);
+			if (i != last) {
+				volatileKeys.set(i, moved);
+				data.get(moved).volatileIndex = i;
+			}
+			e.volatileIndex = -1;
+			e.expireAt = 0;
+			return true;
+		}
+
+		/**
+		 * @return 删除的过期key数
+		 */
+		int expireSample(long now) {
+			int expired = 0;
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int i = 0; i < EXPIRE_SAMPLES && !volatileKeys.isEmpty(); i++) {
+				BytesKey key = volatileKeys.get(random.nextInt(volatileKeys.size()));
+				if (data.get(key).expireAt <= now) {
+					remove(key);
+					expired++;
+				}
+			}
+			return expired;
+		}
+	}
+
+	/**
+	 * 与Redis的activeExpireCycle相同, 一轮抽样中过期的超过1/4时继续抽样
+	 */
+	private void expireCycle() {
+		long now = System.currentTimeMillis();
+		for (Segment s : segments) {
+			if (!s.lock.tryLock()) {
+				continue;
+			}
+			try {
+				for (int round = 0; round < 16 && s.expireSample(now) > EXPIRE_SAMPLES / 4; round++) {
+					// 继续抽样
+				}
+			} finally {
+				s.lock.unlock();
+			}
+		}
+	}
+
+	private Segment segment(BytesKey key) {
+		int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & mask];
+	}
+
+	private <T> T locked(byte[] key, BiFunction<Segment, BytesKey, T> op) {
+		BytesKey k = new BytesKey(key);
+		Segment s = segment(k);
+		s.lock.lock();
+		try {
+			return op.apply(s, k);
+		} finally {
+			s.lock.unlock();
+		}
+	}
+
+	/**
+	 * 多key命令按段下标从小到大加锁, 避免死锁
+	 */
+	private <T> T lockedAll(BytesKey[] keys, Supplier<T> op) {
+		int[] indexes = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			int h = keys[i].hashCode();
+			indexes[i] = (h ^ (h >>> 16)) & mask;
+		}
+		Arrays.sort(indexes);
+		int locked = 0;
+		try {
+			for (int i = 0; i < indexes.length; i++) {
+				if (i == 0 || indexes[i] != indexes[i - 1]) {
+					segments[indexes[i]].lock.lock();
+				}
+				locked = i + 1;
+			}
+			return op.get();
+		} finally {
+			for (int i = locked - 1; i >= 0; i--) {
+				if (i == 0 || indexes[i] != indexes[i - 1]) {
+					segments[indexes[i]].lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 锁住keys所在的段执行op, 用于MULTI: 执行期间其他线程不能读写这些key
+	 */
+	<T> T atomically(byte[][] keys, Supplier<T> op) {
+		return lockedAll(keys(keys), op);
+	}
+
+	private static BytesKey[] keys(byte[][] keys) {
+		BytesKey[] ks = new BytesKey[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			ks[i] = new BytesKey(keys[i]);
+		}
+		return ks;
+	}
+
+	/**
+	 * 按Redis的规则校正下标范围, 范围为空时返回null
+	 */
+	private static int[] range(long start, long end, int size) {
+		if (start < 0) {
+			start = Math.max(0, size + start);
+		}
+		if (end < 0) {
+			end = size + end;
+		}
+		end = Math.min(end, size - 1);
+		if (start > end || size == 0) {
+			return null;
+		}
+		return new int[] {(int) start, (int) end};
+	}
+
+	private static String typeName(Object value) {
+		if (value instanceof byte[]) {
+			return "string";
+		}
+		if (value instanceof ListValue) {
+			return "list";
+		}
+		if (value instanceof HashSet) {
+			return "set";
+		}
+		if (value instanceof HashMap) {
+			return "hash";
+		}
+		return "zset";
+	}
+
+	private static byte[] string(Object value) {
+		if (!(value instanceof byte[])) {
+			throw new JedisDataException(WRONGTYPE);
+		}
+		return (byte[]) value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static HashSet<BytesKey> set(Object value) {
+		return (HashSet<BytesKey>) value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static HashMap<BytesKey, byte[]> hash(Object value) {
+		return (HashMap<BytesKey, byte[]>) value;
+	}
+
+	private static List<byte[]> members(Collection<BytesKey> keys) {
+		List<byte[]> result = new ArrayList<byte[]>(keys.size());
+		for (BytesKey key : keys) {
+			result.add(key.bytes);
+		}
+		return result;
+	}
+
+	private static List<byte[]> nodeMembers(List<ZSkipList.Node> nodes) {
+		List<byte[]> result = new ArrayList<byte[]>(nodes.size());
+		for (ZSkipList.Node node : nodes) {
+			result.add(node.member);
+		}
+		return result;
+	}
+}
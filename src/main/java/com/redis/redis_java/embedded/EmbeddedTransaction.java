@@ -0,0 +1,108 @@
+package com.redis.redis_java.embedded;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * EmbeddedJedis的MULTI, 命令在本地排队, exec()时锁住涉及的key所在的段后依次执行,
+ * 与Redis相同, 执行期间其他线程的命令不会插入; 命令出错时其他命令照常执行, 错误在Response.get()时抛出
+ * 只覆盖HashMapper用到的命令
+ */
+public class EmbeddedTransaction extends Transaction {
+
+	@SuppressWarnings("rawtypes")
+	private static final Builder IDENTITY = new Builder<Object>() {
+		@Override
+		public Object build(Object data) {
+			return data;
+		}
+	};
+
+	private final EmbeddedJedis jedis;
+
+	private final List<byte[]> keys = new ArrayList<byte[]>();
+
+	private final List<Supplier<?>> commands = new ArrayList<Supplier<?>>();
+
+	private final List<Response<?>> responses = new ArrayList<Response<?>>();
+
+	EmbeddedTransaction(EmbeddedJedis jedis) {
+		this.jedis = jedis;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> Response<T> queue(byte[] key, Supplier<T> command) {
+		Response<T> response = new Response<T>(IDENTITY);
+		keys.add(key);
+		commands.add(command);
+		responses.add(response);
+		return response;
+	}
+
+	@Override
+	public List<Object> exec() {
+		List<Object> results = new ArrayList<Object>(commands.size());
+		jedis.getStore().atomically(keys.toArray(new byte[keys.size()][]), () -> {
+			for (int i = 0; i < commands.size(); i++) {
+				Object result;
+				try {
+					result = commands.get(i).get();
+				} catch (JedisDataException e) {
+					result = e;
+				}
+				responses.get(i).set(result);
+				results.add(result);
+			}
+			return null;
+		});
+		clear();
+		return results;
+	}
+
+	@Override
+	public String discard() {
+		clear();
+		return "OK";
+	}
+
+	@Override
+	public void clear() {
+		keys.clear();
+		commands.clear();
+		responses.clear();
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+
+	/*------------------------------ Hash ------------------------------*/
+
+	@Override
+	public Response<String> hmset(String key, Map<String, String> hash) {
+		return queue(EmbeddedJedis.b(key), () -> jedis.hmset(key, hash));
+	}
+
+	@Override
+	public Response<String> hmset(byte[] key, Map<byte[], byte[]> hash) {
+		return queue(key, () -> jedis.hmset(key, hash));
+	}
+
+	@Override
+	public Response<Long> hdel(String key, String... fields) {
+		return queue(EmbeddedJedis.b(key), () -> jedis.hdel(key, fields));
+	}
+
+	@Override
+	public Response<Long> hdel(byte[] key, byte[]... fields) {
+		return queue(key, () -> jedis.hdel(key, fields));
+	}
+}
@@ -0,0 +1,82 @@
+package com.redis.redis_java.embedded;
+
+/**
+ * 与Redis的stringmatchlen相同的glob匹配, 支持 * ? [abc] [^abc] [a-z] 和 \ 转义
+ */
+final class GlobPattern {
+
+	private GlobPattern() {}
+
+	static boolean match(byte[] pattern, byte[] string) {
+		return pattern == null || match(pattern, 0, string, 0);
+	}
+
+	private static boolean match(byte[] p, int pi, byte[] s, int si) {
+		while (pi < p.length) {
+			switch (p[pi]) {
+			case '*':
+				while (pi + 1 < p.length && p[pi + 1] == '*') {
+					pi++;
+				}
+				if (pi + 1 == p.length) {
+					return true;
+				}
+				for (int i = si; i <= s.length; i++) {
+					if (match(p, pi + 1, s, i)) {
+						return true;
+					}
+				}
+				return false;
+			case '?':
+				if (si >= s.length) {
+					return false;
+				}
+				si++;
+				break;
+			case '[': {
+				if (si >= s.length) {
+					return false;
+				}
+				pi++;
+				boolean not = pi < p.length && p[pi] == '^';
+				if (not) {
+					pi++;
+				}
+				boolean matched = false;
+				while (pi < p.length && p[pi] != ']') {
+					if (p[pi] == '\\' && pi + 1 < p.length) {
+						pi++;
+						matched |= p[pi] == s[si];
+					} else if (pi + 2 < p.length && p[pi + 1] == '-' && p[pi + 2] != ']') {
+						int start = p[pi] & 0xFF;
+						int end = p[pi + 2] & 0xFF;
+						int c = s[si] & 0xFF;
+						matched |= c >= Math.min(start, end) && c <= Math.max(start, end);
+						pi += 2;
+					} else {
+						matched |= p[pi] == s[si];
+					}
+					pi++;
+				}
+				if (matched == not) {
+					return false;
+				}
+				si++;
+				break;
+			}
+			case '\\':
+				if (pi + 1 < p.length) {
+					pi++;
+				}
+				// fall through
+			default:
+				if (si >= s.length || p[pi] != s[si]) {
+					return false;
+				}
+				si++;
+			}
+			pi++;
+		}
+		return si == s.length;
+	}
+}
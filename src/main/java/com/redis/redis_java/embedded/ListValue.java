@@ -0,0 +1,163 @@
+package com.redis.redis_java.embedded;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 列表的环形数组, 两端的push/pop为O(1), 按下标访问为O(1)
+ * 非线程安全, 由EmbeddedStore的分段锁保护
+ */
+final class ListValue {
+
+	private byte[][] elements = new byte[8][];
+
+	private int head;
+
+	private int size;
+
+	int size() {
+		return size;
+	}
+
+	byte[] get(int index) {
+		return elements[(head + index) & (elements.length - 1)];
+	}
+
+	void set(int index, byte[] value) {
+		elements[(head + index) & (elements.length - 1)] = value;
+	}
+
+	void addFirst(byte[] value) {
+		grow();
+		head = (head - 1) & (elements.length - 1);
+		elements[head] = value;
+		size++;
+	}
+
+	void addLast(byte[] value) {
+		grow();
+		elements[(head + size) & (elements.length - 1)] = value;
+		size++;
+	}
+
+	byte[] pollFirst() {
+		if (size == 0) {
+			return null;
+		}
+		byte[] value = elements[head];
+		elements[head] = null;
+		head = (head + 1) & (elements.length - 1);
+		size--;
+		return value;
+	}
+
+	byte[] pollLast() {
+		if (size == 0) {
+			return null;
+		}
+		int tail = (head + size - 1) & (elements.length - 1);
+		byte[] value = elements[tail];
+		elements[tail] = null;
+		size--;
+		return value;
+	}
+
+	/**
+	 * 下标范围[start, end]内的元素, 下标已经过校正
+	 */
+	List<byte[]> range(int start, int end) {
+		List<byte[]> result = new ArrayList<byte[]>(Math.max(0, end - start + 1));
+		for (int i = start; i <= end; i++) {
+			result.add(get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * 只保留[start, end]内的元素
+	 */
+	void retain(int start, int end) {
+		if (start > end) {
+			clear();
+			return;
+		}
+		byte[][] kept = new byte[capacity(end - start + 1)][];
+		for (int i = start; i <= end; i++) {
+			kept[i - start] = get(i);
+		}
+		elements = kept;
+		head = 0;
+		size = end - start + 1;
+	}
+
+	/**
+	 * 与LREM相同, count > 0 从头删除, count < 0 从尾删除, count = 0 全部删除
+	 */
+	int remove(int count, byte[] value) {
+		byte[][] kept = new byte[elements.length][];
+		int keptSize = 0;
+		int removed = 0;
+		int limit = count == 0 ? Integer.MAX_VALUE : Math.abs(count);
+		if (count >= 0) {
+			for (int i = 0; i < size; i++) {
+				byte[] element = get(i);
+				if (removed < limit && Arrays.equals(element, value)) {
+					removed++;
+				} else {
+					kept[keptSize++] = element;
+				}
+			}
+		} else {
+			int n = size;
+			keptSize = size;
+			for (int i = n - 1; i >= 0; i--) {
+				byte[] element = get(i);
+				if (removed < limit && Arrays.equals(element, value)) {
+					removed++;
+					keptSize--;
+				} else {
+					kept[i] = element;
+				}
+			}
+			// 压缩空位
+			int j = 0;
+			for (int i = 0; i < n; i++) {
+				if (kept[i] != null) {
+					kept[j++] = kept[i];
+				}
+			}
+			Arrays.fill(kept, j, n, null);
+		}
+		elements = kept;
+		head = 0;
+		size = keptSize;
+		return removed;
+	}
+
+	private void clear() {
+		elements = new byte[8][];
+		head = 0;
+		size = 0;
+	}
+
+	private void grow() {
+		if (size < elements.length) {
+			return;
+		}
+		byte[][] grown = new byte[elements.length << 1][];
+		for (int i = 0; i < size; i++) {
+			grown[i] = get(i);
+		}
+		elements = grown;
+		head = 0;
+	}
+
+	private static int capacity(int n) {
+		int capacity = 8;
+		while (capacity < n) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+}
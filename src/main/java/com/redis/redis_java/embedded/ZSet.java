@@ -0,0 +1,102 @@
+package com.redis.redis_java.embedded;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 有序集合: 成员到权重的HashMap加按权重排序的跳表
+ * 非线程安全, 由EmbeddedStore的分段锁保护
+ */
+final class ZSet {
+
+	final HashMap<BytesKey, Double> scores = new HashMap<BytesKey, Double>();
+
+	final ZSkipList list = new ZSkipList();
+
+	int size() {
+		return scores.size();
+	}
+
+	/**
+	 * @return 新增成员时返回true
+	 */
+	boolean add(byte[] member, double score) {
+		BytesKey key = new BytesKey(member);
+		Double old = scores.put(key, score);
+		if (old != null) {
+			if (old == score) {
+				return false;
+			}
+			list.delete(old, member);
+		}
+		list.insert(score, member);
+		return old == null;
+	}
+
+	boolean remove(byte[] member) {
+		Double old = scores.remove(new BytesKey(member));
+		if (old == null) {
+			return false;
+		}
+		list.delete(old, member);
+		return true;
+	}
+
+	Double score(byte[] member) {
+		return scores.get(new BytesKey(member));
+	}
+
+	/**
+	 * @return 从0开始的排名, 不存在时返回null
+	 */
+	Long rank(byte[] member, boolean reverse) {
+		Double score = score(member);
+		if (score == null) {
+			return null;
+		}
+		long rank = list.rank(score, member) - 1;
+		return reverse ? size() - 1 - rank : rank;
+	}
+
+	/**
+	 * 排名在[start, end]内的节点, 下标含义与ZRANGE相同
+	 */
+	List<ZSkipList.Node> range(long start, long end, boolean reverse) {
+		long size = size();
+		if (start < 0) {
+			start = Math.max(0, size + start);
+		}
+		if (end < 0) {
+			end = size + end;
+		}
+		end = Math.min(end, size - 1);
+		List<ZSkipList.Node> result = new ArrayList<ZSkipList.Node>();
+		if (start > end) {
+			return result;
+		}
+		ZSkipList.Node node = list.byRank(reverse ? size - start : start + 1);
+		for (long i = start; i <= end && node != null; i++) {
+			result.add(node);
+			node = reverse ? node.backward : node.next();
+		}
+		return result;
+	}
+
+	List<ZSkipList.Node> rangeByScore(double min, double max) {
+		List<ZSkipList.Node> result = new ArrayList<ZSkipList.Node>();
+		for (ZSkipList.Node node = list.firstFrom(min); node != null && node.score <= max; node = node.next()) {
+			result.add(node);
+		}
+		return result;
+	}
+
+	long count(double min, double max) {
+		ZSkipList.Node first = list.firstFrom(min);
+		if (first == null || first.score > max) {
+			return 0;
+		}
+		ZSkipList.Node last = list.lastTo(max);
+		return list.rank(last.score, last.member) - list.rank(first.score, first.member) + 1;
+	}
+}
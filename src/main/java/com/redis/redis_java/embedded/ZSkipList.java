@@ -0,0 +1,203 @@
+package com.redis.redis_java.embedded;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 有序集合的跳表, 与Redis的zskiplist相同: 按(权重, 成员)排序, 每层记录跨度, 排名查询为O(log n)
+ * 非线程安全, 由EmbeddedStore的分段锁保护
+ */
+final class ZSkipList {
+
+	private static final int MAX_LEVEL = 32;
+
+	private static final double P = 0.25;
+
+	static final class Node {
+		final byte[] member;
+		final double score;
+		Node backward;
+		final Node[] forward;
+		final long[] span;
+
+		Node(byte[] member, double score, int level) {
+			this.member = member;
+			this.score = score;
+			this.forward = new Node[level];
+			this.span = new long[level];
+		}
+
+		Node next() {
+			return forward[0];
+		}
+	}
+
+	private final Node header = new Node(null, 0, MAX_LEVEL);
+
+	private Node tail;
+
+	private long length;
+
+	private int level = 1;
+
+	long length() {
+		return length;
+	}
+
+	Node first() {
+		return header.forward[0];
+	}
+
+	Node last() {
+		return tail;
+	}
+
+	void insert(double score, byte[] member) {
+		Node[] update = new Node[MAX_LEVEL];
+		long[] rank = new long[MAX_LEVEL];
+		Node x = header;
+		for (int i = level - 1; i >= 0; i--) {
+			rank[i] = i == level - 1 ? 0 : rank[i + 1];
+			while (x.forward[i] != null && compare(x.forward[i], score, member) < 0) {
+				rank[i] += x.span[i];
+				x = x.forward[i];
+			}
+			update[i] = x;
+		}
+		int newLevel = randomLevel();
+		if (newLevel > level) {
+			for (int i = level; i < newLevel; i++) {
+				rank[i] = 0;
+				update[i] = header;
+				header.span[i] = length;
+			}
+			level = newLevel;
+		}
+		x = new Node(member, score, newLevel);
+		for (int i = 0; i < newLevel; i++) {
+			x.forward[i] = update[i].forward[i];
+			update[i].forward[i] = x;
+			x.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+			update[i].span[i] = (rank[0] - rank[i]) + 1;
+		}
+		for (int i = newLevel; i < level; i++) {
+			update[i].span[i]++;
+		}
+		x.backward = update[0] == header ? null : update[0];
+		if (x.forward[0] != null) {
+			x.forward[0].backward = x;
+		} else {
+			tail = x;
+		}
+		length++;
+	}
+
+	boolean delete(double score, byte[] member) {
+		Node[] update = new Node[MAX_LEVEL];
+		Node x = header;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.forward[i] != null && compare(x.forward[i], score, member) < 0) {
+				x = x.forward[i];
+			}
+			update[i] = x;
+		}
+		x = x.forward[0];
+		if (x != null && x.score == score && Arrays.equals(x.member, member)) {
+			for (int i = 0; i < level; i++) {
+				if (update[i].forward[i] == x) {
+					update[i].span[i] += x.span[i] - 1;
+					update[i].forward[i] = x.forward[i];
+				} else {
+					update[i].span[i]--;
+				}
+			}
+			if (x.forward[0] != null) {
+				x.forward[0].backward = x.backward;
+			} else {
+				tail = x.backward;
+			}
+			while (level > 1 && header.forward[level - 1] == null) {
+				level--;
+			}
+			length--;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return 从1开始的排名, 不存在时返回0
+	 */
+	long rank(double score, byte[] member) {
+		long rank = 0;
+		Node x = header;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.forward[i] != null && compare(x.forward[i], score, member) <= 0) {
+				rank += x.span[i];
+				x = x.forward[i];
+			}
+			if (x != header && Arrays.equals(x.member, member)) {
+				return rank;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param rank 从1开始的排名
+	 */
+	Node byRank(long rank) {
+		long traversed = 0;
+		Node x = header;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.forward[i] != null && traversed + x.span[i] <= rank) {
+				traversed += x.span[i];
+				x = x.forward[i];
+			}
+			if (traversed == rank) {
+				return x;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 第一个权重 >= min 的节点
+	 */
+	Node firstFrom(double min) {
+		Node x = header;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.forward[i] != null && x.forward[i].score < min) {
+				x = x.forward[i];
+			}
+		}
+		return x.forward[0];
+	}
+
+	/**
+	 * 最后一个权重 <= max 的节点
+	 */
+	Node lastTo(double max) {
+		Node x = header;
+		for (int i = level - 1; i >= 0; i--) {
+			while (x.forward[i] != null && x.forward[i].score <= max) {
+				x = x.forward[i];
+			}
+		}
+		return x == header ? null : x;
+	}
+
+	private static int compare(Node node, double score, byte[] member) {
+		int c = Double.compare(node.score, score);
+		return c != 0 ? c : BytesKey.compare(node.member, member);
+	}
+
+	private static int randomLevel() {
+		int level = 1;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (level < MAX_LEVEL && random.nextDouble() < P) {
+			level++;
+		}
+		return level;
+	}
+}
@@ -14,6 +14,8 @@ public class IdGeneratorImpl implements IdGenerator {
 		idGenerator = IdGeneratorUtil.builder()
 				.addHost("192.168.2.126", 6379, "pw123", "c5809078fa6d652e0b0232d552a9d06d37fe819c")
 //				.addHost(ip, port, password, luasha)
+//				.segment(200)//号段模式, 一次evalsha预取200个序号
+//				.localFallback(0)//Redis全部不可用时在进程内生成id, 每个进程的workerId不同
 		.build();
 	}
 
@@ -1,7 +1,23 @@
 package com.redis.redis_java.id;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
@@ -9,6 +25,9 @@ import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.Pool;
 
 public class IdGeneratorUtil {
 	private static final Logger logger = LoggerFactory.getLogger(IdGeneratorUtil.class);
@@ -16,17 +35,104 @@ public class IdGeneratorUtil {
 	/**
 	 * JedisPool, luaSha
 	 */
-	List<Pair<JedisPool, String>> jedisPoolList;
+	List<Pair<Pool<Jedis>, String>> jedisPoolList;
 	int retryTimes;
 
-	int index = 0;
+	/** 节点选择, 按延迟和错误率剔除不健康的节点 */
+	NodeSelector selector;
+
+	/** evalsha超过这个时间未返回时向另一个节点再发一次, 0表示不启用 */
+	long hedgeDelayMillis;
+
+	/** 号段模式的脚本, 各节点通用, 首次使用时自动script load */
+	static final String SEGMENT_SCRIPT = loadScript("lua/redis-script-segment.lua");
+	static final String SEGMENT_SCRIPT_SHA = sha1(SEGMENT_SCRIPT);
+
+	/** 执行hedge请求的线程数上限 */
+	private static final int HEDGE_THREADS = 4;
+
+	/**
+	 * 延迟发出并执行hedge请求, 线程数固定; 主请求在hedgeDelayMillis内返回时取消, 不占用线程
+	 * 线程都在执行hedge时新的hedge排队, 队列长度不超过同时等待主请求的调用方数
+	 */
+	private static final ScheduledThreadPoolExecutor hedgeExecutor = new ScheduledThreadPoolExecutor(HEDGE_THREADS,
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "id-generator-hedge");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		hedgeExecutor.setRemoveOnCancelPolicy(true);
+	}
+
+	/** 预取下一个号段的后台线程 */
+	private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "id-segment-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/** 号段大小, 0表示不启用号段模式 */
+	int segmentSize;
+	/** 序号步长, 与节点脚本中的step一致 */
+	int segmentStep;
+	/** 剩余序号不超过这个数时预取下一个号段 */
+	int lowWaterMark;
+	/** 号段(包括预取的号段)取得后超过这个时间不再使用 */
+	long segmentMaxAgeNanos = TimeUnit.MILLISECONDS.toNanos(1000);
+
+	/** Redis全部不可用时的本地生成, null表示不启用 */
+	LocalIdGenerator localIdGenerator;
+	/** 传给Redis的分区数, 其余分区保留给本地生成 */
+	int redisPartitions = LocalIdGenerator.MAX_PARTITION + 1;
+	/** 当前是否处于本地生成模式 */
+	private volatile boolean localMode;
+	/** 本地模式下同时只允许一个线程试探Redis是否恢复 */
+	private final AtomicBoolean probing = new AtomicBoolean();
+
+	private final LongAdder redisIds = new LongAdder();
+	private final LongAdder localIds = new LongAdder();
+	private final LongAdder modeSwitches = new LongAdder();
+	private final LongAdder hedges = new LongAdder();
+
+	private final ConcurrentHashMap<String, SegmentBuffer> segmentBuffers = new ConcurrentHashMap<String, SegmentBuffer>();
 
 	private IdGeneratorUtil() {}
 
-	private IdGeneratorUtil(List<Pair<JedisPool, String>> jedisPoolList,
-			int retryTimes) {
+	private IdGeneratorUtil(IdGeneratorBuilder builder) {
+		this(builder.jedisPoolList, builder.retryTimes, builder.segmentSize, builder.segmentStep);
+		this.segmentMaxAgeNanos = TimeUnit.MILLISECONDS.toNanos(builder.segmentMaxAgeMillis);
+		this.selector = new NodeSelector(jedisPoolList.size(), builder.ejectCooldownMillis,
+				builder.ejectFailureThreshold, builder.ejectErrorRate);
+		this.hedgeDelayMillis = builder.hedgeDelayMillis;
+		if (builder.localWorkerId >= 0) {
+			int partition = builder.localWorkerId;
+			if (!jedisPoolList.isEmpty()) {
+				this.redisPartitions = LocalIdGenerator.MAX_PARTITION + 1 - builder.reservedPartitions;
+				if (partition >= builder.reservedPartitions) {
+					throw new IllegalArgumentException("workerId must be less than reservedPartitions");
+				}
+				partition += redisPartitions;
+			}
+			this.localIdGenerator = new LocalIdGenerator(partition);
+			this.localMode = jedisPoolList.isEmpty();
+		}
+	}
+
+	private IdGeneratorUtil(List<Pair<Pool<Jedis>, String>> jedisPoolList,
+			int retryTimes, int segmentSize, int segmentStep) {
 		this.jedisPoolList = jedisPoolList;
 		this.retryTimes = retryTimes;
+		this.segmentSize = segmentSize;
+		this.segmentStep = segmentStep > 0 ? segmentStep : jedisPoolList.size();
+		this.lowWaterMark = Math.max(1, segmentSize / 5);
 	}
 
 	static public IdGeneratorBuilder builder() {
@@ -34,11 +140,27 @@ public class IdGeneratorUtil {
 	}
 
 	static class IdGeneratorBuilder {
-		List<Pair<JedisPool, String>> jedisPoolList = new ArrayList();
+		List<Pair<Pool<Jedis>, String>> jedisPoolList = new ArrayList();
 		int retryTimes = 5;
+		int segmentSize = 0;
+		int segmentStep = 0;
+		long segmentMaxAgeMillis = 1000;
+		long ejectCooldownMillis = 10000;
+		int ejectFailureThreshold = 3;
+		double ejectErrorRate = 0.5;
+		long hedgeDelayMillis = 0;
+		int localWorkerId = -1;
+		int reservedPartitions = 64;
 
 		public IdGeneratorBuilder addHost(String host, int port, String password, String luaSha) {
-			jedisPoolList.add(Pair.of(new JedisPool(new GenericObjectPoolConfig(), host, port, 3000, password), luaSha));
+			return addPool(new JedisPool(new GenericObjectPoolConfig(), host, port, 3000, password), luaSha);
+		}
+
+		/**
+		 * 使用已有的连接池作为一个节点, 用于测试
+		 */
+		IdGeneratorBuilder addPool(Pool<Jedis> pool, String luaSha) {
+			jedisPoolList.add(Pair.<Pool<Jedis>, String>of(pool, luaSha));
 			return this;
 		}
 
@@ -47,8 +169,104 @@ public class IdGeneratorUtil {
 			return this;
 		}
 
+		/**
+		 * 启用号段模式, 一次evalsha预留segmentSize个序号, 本地分发
+		 * 第N个addHost的节点使用startStep = N - 1, step默认为节点数, 与redis-script-node*.lua的配置保持一致
+		 * 
+		 * @param segmentSize 号段大小, 受每毫秒1024个序号的限制, 实际返回的号段可能更小
+		 */
+		public IdGeneratorBuilder segment(int segmentSize) {
+			this.segmentSize = segmentSize;
+			return this;
+		}
+
+		/**
+		 * @param segmentSize 号段大小
+		 * @param step 节点脚本中的step
+		 */
+		public IdGeneratorBuilder segment(int segmentSize, int step) {
+			this.segmentSize = segmentSize;
+			this.segmentStep = step;
+			return this;
+		}
+
+		/**
+		 * 号段中的id带的是预留时的毫秒, 取得后超过maxAgeMillis的号段(包括预取的号段)丢弃,
+		 * 低流量时id的时间与实际生成时间相差不超过这个值
+		 * 
+		 * @param maxAgeMillis 默认1秒
+		 */
+		public IdGeneratorBuilder segmentMaxAge(long maxAgeMillis) {
+			if (maxAgeMillis <= 0) {
+				throw new IllegalArgumentException("maxAgeMillis must be positive");
+			}
+			this.segmentMaxAgeMillis = maxAgeMillis;
+			return this;
+		}
+
+		/**
+		 * 节点连续失败failureThreshold次或错误率(EWMA)达到errorRate时, 在cooldownMillis内不再使用
+		 * 
+		 * @param cooldownMillis 剔除时长, 默认10秒
+		 * @param failureThreshold 连续失败次数, 默认3
+		 * @param errorRate 错误率, 默认0.5
+		 */
+		public IdGeneratorBuilder eject(long cooldownMillis, int failureThreshold, double errorRate) {
+			this.ejectCooldownMillis = cooldownMillis;
+			this.ejectFailureThreshold = failureThreshold;
+			this.ejectErrorRate = errorRate;
+			return this;
+		}
+
+		/**
+		 * evalsha超过hedgeDelayMillis未返回时, 在后台向另一个节点再发一次;
+		 * 主请求在调用线程执行并优先使用它的结果, 主请求失败时使用hedge的结果, 不需要再选择节点重试
+		 * 
+		 * @param hedgeDelayMillis 0表示不启用
+		 */
+		public IdGeneratorBuilder hedgeDelay(long hedgeDelayMillis) {
+			this.hedgeDelayMillis = hedgeDelayMillis;
+			return this;
+		}
+
+		/**
+		 * Redis全部不可用时自动切换到进程内生成id, 恢复后自动切回
+		 * 分区的最后reservedPartitions个保留给本地生成, 传给Redis的shardId先对剩余分区数取模,
+		 * 所以使用同一组Redis的所有进程都要开启并使用相同的reservedPartitions
+		 * 
+		 * @param workerId 进程编号, 0 ~ reservedPartitions - 1, 每个进程不同
+		 * @param reservedPartitions 保留的分区数, 1 ~ 4095, 默认64
+		 */
+		public IdGeneratorBuilder localFallback(int workerId, int reservedPartitions) {
+			if (reservedPartitions < 1 || reservedPartitions > LocalIdGenerator.MAX_PARTITION) {
+				throw new IllegalArgumentException("reservedPartitions must be between 1 and "
+						+ LocalIdGenerator.MAX_PARTITION);
+			}
+			if (workerId < 0 || workerId >= reservedPartitions) {
+				throw new IllegalArgumentException("workerId must be between 0 and reservedPartitions - 1");
+			}
+			this.localWorkerId = workerId;
+			this.reservedPartitions = reservedPartitions;
+			return this;
+		}
+
+		public IdGeneratorBuilder localFallback(int workerId) {
+			return localFallback(workerId, reservedPartitions);
+		}
+
+		/**
+		 * 单节点部署不使用Redis, 只在进程内生成id, 此时workerId就是分区, 0 ~ 4095
+		 * 
+		 * @param workerId
+		 */
+		public IdGeneratorBuilder localOnly(int workerId) {
+			this.jedisPoolList.clear();
+			this.localWorkerId = workerId;
+			return this;
+		}
+
 		public IdGeneratorUtil build() {
-			return new IdGeneratorUtil(jedisPoolList, retryTimes);
+			return new IdGeneratorUtil(this);
 		}
 	}
 
@@ -57,42 +275,370 @@ public class IdGeneratorUtil {
 	}
 
 	public long next(String tab, long shardId) {
+		if (localIdGenerator == null) {
+			return redisNext(tab, shardId);
+		}
+		if (localMode) {
+			// 冷却结束后由一个线程试探Redis, 其他线程继续本地生成
+			if (jedisPoolList.isEmpty() || !selector.anyHealthy() || !probing.compareAndSet(false, true)) {
+				return localNext();
+			}
+			try {
+				long id = redisNext(tab, Math.floorMod(shardId, redisPartitions));
+				switchMode(false);
+				return id;
+			} catch (RuntimeException e) {
+				return localNext();
+			} finally {
+				probing.set(false);
+			}
+		}
+		try {
+			// 负数的shardId也要落在Redis的分区内, 不能被脚本取模到保留给本地生成的分区
+			return redisNext(tab, Math.floorMod(shardId, redisPartitions));
+		} catch (RuntimeException e) {
+			switchMode(true);
+			return localNext();
+		}
+	}
+
+	private long localNext() {
+		localIds.increment();
+		return localIdGenerator.next();
+	}
+
+	private synchronized void switchMode(boolean local) {
+		if (localMode != local) {
+			localMode = local;
+			modeSwitches.increment();
+			if (local) {
+				logger.error("all id generator nodes are unavailable, switch to local mode, partition: {}",
+						localIdGenerator.partition());
+			} else {
+				logger.warn("id generator nodes recovered, switch back to redis mode");
+			}
+		}
+	}
+
+	/**
+	 * 是否处于本地生成模式
+	 */
+	public boolean isLocalMode() {
+		return localMode;
+	}
+
+	/**
+	 * 由Redis生成的id数
+	 */
+	public long redisIdCount() {
+		return redisIds.sum();
+	}
+
+	/**
+	 * 本地生成的id数
+	 */
+	public long localIdCount() {
+		return localIds.sum();
+	}
+
+	/**
+	 * Redis模式与本地模式之间的切换次数
+	 */
+	public long modeSwitchCount() {
+		return modeSwitches.sum();
+	}
+
+	/**
+	 * 发出的hedge请求数
+	 */
+	public long hedgeCount() {
+		return hedges.sum();
+	}
+
+	public long clockBackwardCount() {
+		return localIdGenerator == null ? 0 : localIdGenerator.clockBackwardCount();
+	}
+
+	private long redisNext(String tab, long shardId) {
+		if (segmentSize > 0) {
+			long id = segmentBuffer(tab, shardId).next();
+			redisIds.increment();
+			return id;
+		}
 		for (int i = 0; i < retryTimes; ++i) {
 			Long id = innerNext(tab, shardId);
 			if (id != null) {
+				redisIds.increment();
 				return id;
 			}
 		}
 		throw new RuntimeException("Can not generate id!");
 	}
 
-	Long innerNext(String tab, long shardId) {
-		index++;
-		Pair<JedisPool, String> pair = jedisPoolList.get(index
-				% jedisPoolList.size());
-		JedisPool jedisPool = pair.getLeft();
+	Long innerNext(final String tab, final long shardId) {
+		return execute(new NodeCall<Long>() {
+			@Override
+			public Long call(Jedis jedis, int node, String luaSha) {
+				List<Long> result = (List<Long>) jedis.evalsha(luaSha, 2, tab, String.valueOf(shardId));
+				return buildId(result.get(0), result.get(1), result.get(2), result.get(3));
+			}
+		});
+	}
+
+	/**
+	 * 在一个节点上执行的调用
+	 */
+	interface NodeCall<T> {
+		T call(Jedis jedis, int node, String luaSha);
+	}
 
-		String luaSha = pair.getRight();
+	/**
+	 * 选择一个健康节点执行, 启用hedge时慢请求会再发给另一个节点
+	 * 主请求在调用线程执行, 只有超过hedgeDelayMillis时hedge才占用后台线程
+	 * 
+	 * @return 结果, 节点不可用时返回null
+	 */
+	<T> T execute(final NodeCall<T> call) {
+		final int node = selector.select(-1);
+		if (node < 0) {
+			return null;
+		}
+		if (hedgeDelayMillis <= 0 || selector.size() < 2) {
+			return callNode(node, call);
+		}
+		final CompletableFuture<T> hedge = new CompletableFuture<T>();
+		ScheduledFuture<?> timer = hedgeExecutor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				int second = selector.select(node);
+				if (second < 0 || !selector.isHealthy(second)) {
+					hedge.complete(null);
+					return;
+				}
+				hedges.increment();
+				try {
+					hedge.complete(callNode(second, call));
+				} catch (RuntimeException e) {
+					hedge.completeExceptionally(e);
+				}
+			}
+		}, hedgeDelayMillis, TimeUnit.MILLISECONDS);
+		T result = null;
+		try {
+			result = callNode(node, call);
+		} catch (JedisException e) {
+			logger.error("generate id error!", e);
+		}
+		// 主请求成功, 或者失败时hedge还没有发出
+		if (timer.cancel(false) || result != null) {
+			return result;
+		}
+		try {
+			return hedge.get();
+		} catch (ExecutionException e) {
+			logger.error("generate id error!", e.getCause());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	private <T> T callNode(int node, NodeCall<T> call) {
+		Pair<Pool<Jedis>, String> pair = jedisPoolList.get(node);
+		Pool<Jedis> jedisPool = pair.getLeft();
+		long start = System.nanoTime();
 		Jedis jedis = null;
 		try {
 			jedis = jedisPool.getResource();
-			List<Long> result = (List<Long>) jedis.evalsha(luaSha, 2, tab, String.valueOf(shardId));
-			long id = buildId(result.get(0), result.get(1), result.get(2),
-					result.get(3));
-			return id;
+			T result = call.call(jedis, node, pair.getRight());
+			selector.success(node, System.nanoTime() - start);
+			return result;
 		} catch (JedisConnectionException e) {
-			if (jedis != null) {
-				jedisPool.returnBrokenResource(jedis);
-			}
+			selector.failure(node);
 			logger.error("generate id error!", e);
+		} catch (JedisException e) {
+			selector.failure(node);
+			throw e;
 		} finally {
 			if (jedis != null) {
-				jedisPool.returnResource(jedis);
+				jedis.close();
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * 每个(tab, 分区)一个号段缓冲; 脚本按shardId % 4096取分区, 先归一到分区,
+	 * 映射到同一分区的shardId共用缓冲, 缓冲数不超过tab数 * 4096
+	 */
+	SegmentBuffer segmentBuffer(String tab, long shardId) {
+		long partition = shardId & LocalIdGenerator.MAX_PARTITION;
+		String key = tab + ':' + partition;
+		SegmentBuffer buffer = segmentBuffers.get(key);
+		if (buffer == null) {
+			SegmentBuffer created = new SegmentBuffer(tab, partition);
+			buffer = segmentBuffers.putIfAbsent(key, created);
+			if (buffer == null) {
+				buffer = created;
+			}
+		}
+		return buffer;
+	}
+
+	IdSegment nextSegment(String tab, long shardId) {
+		for (int i = 0; i < retryTimes; ++i) {
+			IdSegment segment = innerNextSegment(tab, shardId);
+			if (segment != null) {
+				return segment;
+			}
+		}
+		throw new RuntimeException("Can not generate id!");
+	}
+
+	IdSegment innerNextSegment(final String tab, final long shardId) {
+		return execute(new NodeCall<IdSegment>() {
+			@Override
+			public IdSegment call(Jedis jedis, int node, String luaSha) {
+				List<String> keys = new ArrayList<String>(2);
+				keys.add(tab);
+				keys.add(String.valueOf(shardId));
+				List<String> args = new ArrayList<String>(3);
+				args.add(String.valueOf(segmentSize));
+				args.add(String.valueOf(segmentStep));
+				args.add(String.valueOf(node));
+				List<Long> result;
+				try {
+					result = (List<Long>) jedis.evalsha(SEGMENT_SCRIPT_SHA, keys, args);
+				} catch (JedisNoScriptException e) {
+					jedis.scriptLoad(SEGMENT_SCRIPT);
+					result = (List<Long>) jedis.evalsha(SEGMENT_SCRIPT_SHA, keys, args);
+				}
+				return new IdSegment(result);
+			}
+		});
+	}
+
+	/**
+	 * 一个(tab, shardId)的号段, 当前号段剩余不多时在后台预取下一个
+	 * 切换号段不加锁: 当前号段用完或过旧时各线程自行获取并用CAS替换, 替换失败的号段留作预取
+	 */
+	class SegmentBuffer {
+		private final String tab;
+		private final long shardId;
+		private final AtomicReference<IdSegment> current = new AtomicReference<IdSegment>();
+		private final AtomicReference<IdSegment> prefetched = new AtomicReference<IdSegment>();
+		private final AtomicBoolean loading = new AtomicBoolean();
+
+		SegmentBuffer(String tab, long shardId) {
+			this.tab = tab;
+			this.shardId = shardId;
+		}
+
+		long next() {
+			for (;;) {
+				IdSegment segment = current.get();
+				if (segment != null && !segment.olderThan(segmentMaxAgeNanos)) {
+					long id = segment.next();
+					if (id >= 0) {
+						if (segment.remaining() <= lowWaterMark) {
+							prefetch();
+						}
+						return id;
+					}
+				}
+				switchSegment(segment);
+			}
+		}
+
+		private void prefetch() {
+			if (prefetched.get() != null || !loading.compareAndSet(false, true)) {
+				return;
+			}
+			prefetchExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						offer(nextSegment(tab, shardId));
+					} catch (Exception e) {
+						logger.error("prefetch id segment error!", e);
+					} finally {
+						loading.set(false);
+					}
+				}
+			});
+		}
+
+		/**
+		 * 当前号段用完时切换到预取的号段, 没有可用的预取号段则在当前线程同步获取, 不持有锁
+		 */
+		private void switchSegment(IdSegment exhausted) {
+			IdSegment segment = prefetched.getAndSet(null);
+			if (segment == null || segment.olderThan(segmentMaxAgeNanos)) {
+				if (current.get() != exhausted) {
+					// 其他线程已经切换
+					return;
+				}
+				segment = nextSegment(tab, shardId);
+			}
+			if (!current.compareAndSet(exhausted, segment)) {
+				offer(segment);
+			}
+		}
+
+		/**
+		 * 留作预取, 已有预取的号段时丢弃
+		 */
+		private void offer(IdSegment segment) {
+			prefetched.compareAndSet(null, segment);
+		}
+
+		IdSegment current() {
+			return current.get();
+		}
+
+		IdSegment prefetched() {
+			return prefetched.get();
+		}
+	}
+
+	private static String loadScript(String path) {
+		InputStream in = IdGeneratorUtil.class.getClassLoader().getResourceAsStream(path);
+		if (in == null) {
+			throw new IllegalStateException("Script not found: " + path);
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} catch (Exception e) {
+			throw new IllegalStateException("Can not read script: " + path, e);
+		} finally {
+			try {
+				in.close();
+			} catch (Exception e) {
+				// ignore
+			}
+		}
+	}
+
+	private static String sha1(String script) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(40);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	public static long buildId(long second, long microSecond, long shardId,
 			long seq) {
 		long miliSecond = (second * 1000 + microSecond / 1000);
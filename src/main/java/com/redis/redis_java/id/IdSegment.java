@@ -0,0 +1,58 @@
+package com.redis.redis_java.id;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次evalsha从Redis预留的一段序号, 同一毫秒, 同一分区
+ * 本地通过无锁计数依次分发
+ */
+class IdSegment {
+
+	/** 序号为0时的id, 即 毫秒 << 22 | 分区 << 10 */
+	private final long base;
+	private final long firstSeq;
+	private final long step;
+	private final int size;
+	private final AtomicInteger cursor = new AtomicInteger();
+	/** 取得号段的本地时间, 用于判断号段是否过旧 */
+	private final long createdNanos = System.nanoTime();
+
+	/**
+	 * @param result 脚本返回值: second, microSecond, partition, firstSeq, lastSeq, step
+	 */
+	IdSegment(List<Long> result) {
+		this.base = IdGeneratorUtil.buildId(result.get(0), result.get(1), result.get(2), 0);
+		this.firstSeq = result.get(3);
+		this.step = result.get(5);
+		this.size = (int) ((result.get(4) - firstSeq) / step) + 1;
+	}
+
+	/**
+	 * @return 下一个id, 号段用完返回-1
+	 */
+	long next() {
+		int i = cursor.getAndIncrement();
+		if (i >= size) {
+			return -1;
+		}
+		return base + firstSeq + i * step;
+	}
+
+	/**
+	 * 号段中的id带的是预留时的毫秒, 过旧的号段不再使用, 避免id的时间远早于实际生成的时间
+	 *
+	 * @param maxAgeNanos 最长使用时间
+	 */
+	boolean olderThan(long maxAgeNanos) {
+		return System.nanoTime() - createdNanos > maxAgeNanos;
+	}
+
+	int remaining() {
+		return Math.max(0, size - cursor.get());
+	}
+
+	int size() {
+		return size;
+	}
+}
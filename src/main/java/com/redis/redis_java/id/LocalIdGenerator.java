@@ -0,0 +1,96 @@
+package com.redis.redis_java.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 进程内生成id, 与IdGeneratorUtil.buildId的位布局相同: 毫秒 << 22 | 分区(12位) << 10 | 序号(10位)
+ * 每个进程必须使用不同的分区, 分区不能与Redis生成id使用的分区重叠
+ *
+ * 时钟回拨不超过maxBackwardMillis时等待时钟追上; 超过时继续使用上一次的毫秒值向前推进(逻辑时钟),
+ * 此时id中的时间会领先于系统时间
+ */
+public class LocalIdGenerator {
+	private static final Logger logger = LoggerFactory.getLogger(LocalIdGenerator.class);
+
+	public static final int MAX_PARTITION = 0xFFF;
+
+	private static final long MAX_SEQ = 0x3FF;
+
+	private final long partition;
+
+	private final long maxBackwardMillis;
+
+	/** 上一个id的 毫秒 << 10 | 序号 */
+	private final AtomicLong state = new AtomicLong();
+
+	private final LongAdder clockBackwards = new LongAdder();
+
+	/** 系统时间是否落后于上一个id的时间, 只用于统计回拨次数 */
+	private volatile boolean behind;
+
+	/**
+	 * @param partition 0 ~ 4095
+	 * @param maxBackwardMillis 可以等待的时钟回拨毫秒数
+	 */
+	public LocalIdGenerator(int partition, long maxBackwardMillis) {
+		if (partition < 0 || partition > MAX_PARTITION) {
+			throw new IllegalArgumentException("partition must be between 0 and " + MAX_PARTITION);
+		}
+		this.partition = partition;
+		this.maxBackwardMillis = maxBackwardMillis;
+	}
+
+	public LocalIdGenerator(int partition) {
+		this(partition, 10);
+	}
+
+	public long next() {
+		for (;;) {
+			long last = state.get();
+			long lastMs = last >>> 10;
+			long now = System.currentTimeMillis();
+			long update;
+			if (now > lastMs) {
+				update = now << 10;
+			} else {
+				long seq = (last & MAX_SEQ) + 1;
+				if (seq <= MAX_SEQ) {
+					update = last + 1;
+				} else if (lastMs - now > maxBackwardMillis) {
+					// 时钟大幅回拨, 逻辑时钟继续前进
+					update = (lastMs + 1) << 10;
+				} else {
+					// 当前毫秒的序号用完或时钟小幅回拨, 等待时钟前进
+					Thread.yield();
+					continue;
+				}
+			}
+			if (state.compareAndSet(last, update)) {
+				boolean isBehind = now < lastMs;
+				if (isBehind != behind) {
+					behind = isBehind;
+					if (isBehind) {
+						clockBackwards.increment();
+						logger.warn("clock moved backwards {} ms, keep generating ids from {}", lastMs - now, lastMs);
+					}
+				}
+				long ms = update >>> 10;
+				return (ms << (12 + 10)) + (partition << 10) + (update & MAX_SEQ);
+			}
+		}
+	}
+
+	public int partition() {
+		return (int) partition;
+	}
+
+	/**
+	 * 发现时钟回拨的次数
+	 */
+	public long clockBackwardCount() {
+		return clockBackwards.sum();
+	}
+}
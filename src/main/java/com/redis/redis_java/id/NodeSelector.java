@@ -0,0 +1,156 @@
+package com.redis.redis_java.id;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 无锁的节点选择, 轮询健康节点
+ * 记录每个节点的平均延迟(EWMA)和错误率, 连续失败或错误率过高的节点在冷却时间内不再被选中,
+ * 冷却结束后重新参与轮询, 再次失败立即剔除;
+ * 平均延迟超过最快的健康节点SLOW_FACTOR倍(且超过MIN_SLOW_NANOS)的节点同样剔除, 但至少保留一个健康节点
+ */
+class NodeSelector {
+	private static final Logger logger = LoggerFactory.getLogger(NodeSelector.class);
+
+	/** EWMA的平滑系数 */
+	private static final double ALPHA = 0.1;
+
+	/** 平均延迟是最快节点的多少倍时剔除 */
+	private static final int SLOW_FACTOR = 5;
+
+	/** 平均延迟低于此值时不因为慢而剔除, 避免微秒级的抖动 */
+	private static final long MIN_SLOW_NANOS = 1000000;
+
+	/** 至少有这么多样本后才根据平均延迟剔除 */
+	private static final int MIN_SAMPLES = 10;
+
+	private final Node[] nodes;
+	private final AtomicInteger cursor = new AtomicInteger();
+	private final long cooldownMillis;
+	private final int failureThreshold;
+	private final double errorRateThreshold;
+
+	NodeSelector(int size, long cooldownMillis, int failureThreshold, double errorRateThreshold) {
+		this.nodes = new Node[size];
+		for (int i = 0; i < size; i++) {
+			nodes[i] = new Node();
+		}
+		this.cooldownMillis = cooldownMillis;
+		this.failureThreshold = failureThreshold;
+		this.errorRateThreshold = errorRateThreshold;
+	}
+
+	/**
+	 * 选择一个节点
+	 *
+	 * @param exclude 不选的节点, -1表示不排除
+	 * @return 节点下标, 没有可选节点时返回-1
+	 */
+	int select(int exclude) {
+		int size = nodes.length;
+		int start = (cursor.getAndIncrement() & Integer.MAX_VALUE) % size;
+		long now = System.currentTimeMillis();
+		int fallback = -1;
+		for (int i = 0; i < size; i++) {
+			int n = (start + i) % size;
+			if (n == exclude) {
+				continue;
+			}
+			if (nodes[n].ejectedUntil <= now) {
+				return n;
+			}
+			if (fallback < 0 || nodes[n].ejectedUntil < nodes[fallback].ejectedUntil) {
+				fallback = n;
+			}
+		}
+		// 全部被剔除时选最早结束冷却的节点试探
+		return fallback;
+	}
+
+	void success(int n, long nanos) {
+		Node node = nodes[n];
+		node.consecutiveFailures.set(0);
+		// 统计值允许并发更新时丢失少量样本
+		node.latencyNanos = node.latencyNanos == 0 ? nanos : (long) (node.latencyNanos * (1 - ALPHA) + nanos * ALPHA);
+		node.errorRate = node.errorRate * (1 - ALPHA);
+		node.samples++;
+		if (node.samples >= MIN_SAMPLES && node.latencyNanos > MIN_SLOW_NANOS) {
+			ejectIfSlow(n, node);
+		}
+	}
+
+	private void ejectIfSlow(int n, Node node) {
+		long now = System.currentTimeMillis();
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < nodes.length; i++) {
+			Node other = nodes[i];
+			if (i != n && other.ejectedUntil <= now && other.samples >= MIN_SAMPLES) {
+				best = Math.min(best, other.latencyNanos);
+			}
+		}
+		// 没有其他可比较的健康节点时不剔除
+		if (best == Long.MAX_VALUE || node.latencyNanos <= best * SLOW_FACTOR) {
+			return;
+		}
+		eject(n, node, now, "average latency " + node.latencyNanos / 1000 + "us, best " + best / 1000 + "us");
+	}
+
+	private void eject(int n, Node node, long now, String reason) {
+		long until = now + cooldownMillis;
+		if (node.ejectedUntil < until) {
+			node.ejectedUntil = until;
+			// 冷却结束后重新统计延迟
+			node.latencyNanos = 0;
+			node.samples = 0;
+			logger.warn("id generator node {} ejected for {} ms, {}", n, cooldownMillis, reason);
+		}
+	}
+
+	void failure(int n) {
+		Node node = nodes[n];
+		int failures = node.consecutiveFailures.incrementAndGet();
+		node.errorRate = node.errorRate * (1 - ALPHA) + ALPHA;
+		if (failures >= failureThreshold || node.errorRate >= errorRateThreshold) {
+			eject(n, node, System.currentTimeMillis(),
+					"consecutive failures: " + failures + ", error rate: " + node.errorRate);
+		}
+	}
+
+	boolean isHealthy(int n) {
+		return nodes[n].ejectedUntil <= System.currentTimeMillis();
+	}
+
+	/**
+	 * 是否有未被剔除的节点
+	 */
+	boolean anyHealthy() {
+		long now = System.currentTimeMillis();
+		for (Node node : nodes) {
+			if (node.ejectedUntil <= now) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	long latencyNanos(int n) {
+		return nodes[n].latencyNanos;
+	}
+
+	double errorRate(int n) {
+		return nodes[n].errorRate;
+	}
+
+	int size() {
+		return nodes.length;
+	}
+
+	private static final class Node {
+		final AtomicInteger consecutiveFailures = new AtomicInteger();
+		volatile long latencyNanos;
+		volatile int samples;
+		volatile double errorRate;
+		volatile long ejectedUntil;
+	}
+}
@@ -0,0 +1,180 @@
+package com.redis.redis_java.jedis;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redis.redis_java.metrics.CommandMetrics;
+import com.redis.redis_java.metrics.LatencyHistogram;
+
+/**
+ * 根据获取连接的等待时间、连接利用率和命令延迟, 在[minTotal, maxTotal]之间调整连接池的最大连接数
+ *
+ * 每个周期比较CommandMetrics在这个周期内的变化:
+ * 1) 获取连接的p99等待时间超过targetWait或有线程在等待, 且命令p99延迟不超过maxLatency时扩大一半;
+ *    命令延迟已经很高时Redis本身是瓶颈, 增加连接只会加重排队, 保持不变
+ * 2) 连续3个周期没有等待且利用率(命令耗时之和 / 周期 / 连接数)低于30%时缩小四分之一;
+ *    按当前负载估算缩小后的利用率, 超过40%时少缩一些, 一个连接也不能少时保持不变
+ * 每次调整都记录日志
+ */
+public class AdaptivePoolController implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptivePoolController.class);
+
+    /** 利用率低于此值时考虑缩小*/
+    private static final double LOW_UTILIZATION = 0.3;
+
+    /** 缩小后的利用率不超过此值*/
+    private static final double MAX_UTILIZATION_AFTER_SHRINK = 0.4;
+
+    /** 连续多少个空闲周期后缩小*/
+    private static final int SHRINK_AFTER_WINDOWS = 3;
+
+    private final ResizableJedisPool pool;
+
+    private final CommandMetrics metrics;
+
+    private final int minTotal;
+
+    private final int maxTotal;
+
+    private final long targetWaitNanos;
+
+    private final long maxLatencyNanos;
+
+    private final long intervalNanos;
+
+    /** 连接数变化时通知, 例如调整AsyncJedisUtils的线程数*/
+    private final IntConsumer listener;
+
+    private final ScheduledExecutorService timer;
+
+    private LatencyHistogram.Snapshot lastWait = LatencyHistogram.Snapshot.EMPTY;
+
+    private LatencyHistogram.Snapshot lastCommands = LatencyHistogram.Snapshot.EMPTY;
+
+    private int idleWindows;
+
+    /**
+     * @param pool
+     * @param metrics 连接池所属客户端的指标
+     * @param minTotal 最小的最大连接数
+     * @param maxTotal 最大的最大连接数
+     * @param targetWaitMillis 获取连接的p99等待时间目标
+     * @param maxLatencyMillis 命令p99延迟超过此值时不再扩大
+     * @param intervalMillis 调整周期
+     * @param listener 连接数变化时调用, 可以为null
+     */
+    public AdaptivePoolController(ResizableJedisPool pool, CommandMetrics metrics, int minTotal, int maxTotal,
+            long targetWaitMillis, long maxLatencyMillis, long intervalMillis, IntConsumer listener) {
+        if (minTotal < 1 || maxTotal < minTotal) {
+            throw new IllegalArgumentException("invalid pool bounds [" + minTotal + ", " + maxTotal + "]");
+        }
+        this.pool = pool;
+        this.metrics = metrics;
+        this.minTotal = minTotal;
+        this.maxTotal = maxTotal;
+        this.targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(targetWaitMillis);
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.listener = listener;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jedis-pool-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int initial = Math.max(minTotal, Math.min(maxTotal, pool.getMaxTotal()));
+        if (initial != pool.getMaxTotal()) {
+            pool.resize(initial);
+        }
+        timer.scheduleWithFixedDelay(this::adjust, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private void adjust() {
+        if (pool.isClosed()) {
+            close();
+            return;
+        }
+        try {
+            LatencyHistogram.Snapshot wait = metrics.poolWait().snapshot();
+            LatencyHistogram.Snapshot commands = metrics.commandSnapshot();
+            Decision decision = decide(pool.getMaxTotal(), wait.minus(lastWait), commands.minus(lastCommands),
+                    pool.getNumWaiters());
+            lastWait = wait;
+            lastCommands = commands;
+            if (decision.size != pool.getMaxTotal()) {
+                logger.info("JedisPool maxTotal {} -> {}: {}", pool.getMaxTotal(), decision.size, decision.reason);
+                pool.resize(decision.size);
+                if (listener != null) {
+                    listener.accept(decision.size);
+                }
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("JedisPool maxTotal {} unchanged: {}", decision.size, decision.reason);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("JedisPool adjust failed", e);
+        }
+    }
+
+    /**
+     * 根据一个周期内的等待时间和命令延迟计算新的最大连接数
+     *
+     * @param current 当前最大连接数
+     * @param wait 周期内获取连接的等待时间
+     * @param commands 周期内所有命令的延迟
+     * @param waiters 当前等待连接的线程数
+     * @return 新的最大连接数和原因
+     */
+    Decision decide(int current, LatencyHistogram.Snapshot wait, LatencyHistogram.Snapshot commands, int waiters) {
+        long waitP99 = wait.percentileNanos(99);
+        long latencyP99 = commands.percentileNanos(99);
+        double utilization = (double) commands.sumNanos() / intervalNanos / current;
+        String stats = String.format("wait p99 %.2fms, waiters %d, latency p99 %.2fms, utilization %.0f%%",
+                waitP99 / 1e6, waiters, latencyP99 / 1e6, utilization * 100);
+
+        if (waitP99 > targetWaitNanos || waiters > 0) {
+            idleWindows = 0;
+            if (latencyP99 > maxLatencyNanos) {
+                return new Decision(current, "server latency high, not growing (" + stats + ")");
+            }
+            if (current >= maxTotal) {
+                return new Decision(current, "at maxTotal " + maxTotal + " (" + stats + ")");
+            }
+            return new Decision(Math.min(maxTotal, current + Math.max(1, current / 2)), "grow (" + stats + ")");
+        }
+        if (utilization < LOW_UTILIZATION && current > minTotal) {
+            if (++idleWindows < SHRINK_AFTER_WINDOWS) {
+                return new Decision(current, "idle window " + idleWindows + " (" + stats + ")");
+            }
+            idleWindows = 0;
+            // 忙碌的连接数不变, 缩小后的利用率 = utilization * current / size
+            int floor = (int) Math.floor(utilization * current / MAX_UTILIZATION_AFTER_SHRINK) + 1;
+            int size = Math.max(Math.max(minTotal, floor), current - Math.max(1, current / 4));
+            if (size >= current) {
+                return new Decision(current, "utilization would exceed "
+                        + (int) (MAX_UTILIZATION_AFTER_SHRINK * 100) + "% after shrink (" + stats + ")");
+            }
+            return new Decision(size, "shrink (" + stats + ")");
+        }
+        idleWindows = 0;
+        return new Decision(current, "steady (" + stats + ")");
+    }
+
+    static final class Decision {
+        final int size;
+        final String reason;
+
+        Decision(int size, String reason) {
+            this.size = size;
+            this.reason = reason;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.redis.redis_java.jedis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JedisUtils的异步操作
+ * 方法与JedisUtils中Keys,Strings,Lists,Sets,Hash,SortSet的方法保持一致, 返回CompletableFuture;
+ * 由线程数等于连接池最大连接数的线程池执行, 等待队列有界, 队列满时返回的future以RejectedExecutionException结束;
+ * 超时未完成的future以TimeoutException结束, 取消或超时的命令如果还没开始执行则不再执行;
+ * close()后不再接受新命令
+ *
+ * <pre>
+ * CompletableFuture&lt;String&gt; name = JedisUtils.getInstance().async().hash().hget("user:1", "name");
+ * CompletableFuture&lt;Long&gt; rank = JedisUtils.getInstance().async().sortSet().zrank("rank", "user:1");
+ * name.thenCombine(rank, (n, r) -&gt; n + ":" + r);
+ * </pre>
+ */
+public class AsyncJedisUtils implements AutoCloseable {
+
+    /** 默认超时时间(毫秒)*/
+    private static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    /** 每个线程对应的等待队列长度*/
+    private static final int QUEUE_SIZE_PER_THREAD = 128;
+
+    private final JedisUtils jedisUtils;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    private volatile long timeoutMillis;
+
+    private final AsyncKeys keys 		= new AsyncKeys();
+    private final AsyncStrings strings 	= new AsyncStrings();
+    private final AsyncLists lists 		= new AsyncLists();
+    private final AsyncSets sets 		= new AsyncSets();
+    private final AsyncHash hash 		= new AsyncHash();
+    private final AsyncSortSet sortSet 	= new AsyncSortSet();
+
+    AsyncJedisUtils(JedisUtils jedisUtils) {
+        this(jedisUtils, jedisUtils.getMaxTotal(), jedisUtils.getMaxTotal() * QUEUE_SIZE_PER_THREAD, timeoutFromProperties());
+    }
+
+    /**
+     * @param jedisUtils
+     * @param threads 执行线程数
+     * @param queueSize 等待队列长度
+     * @param timeoutMillis 超时时间, 0表示不超时
+     */
+    AsyncJedisUtils(JedisUtils jedisUtils, int threads, int queueSize, long timeoutMillis) {
+        this.jedisUtils = jedisUtils;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), daemonThreadFactory("jedis-async-"));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timer = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("jedis-async-timer-"));
+        // 命令完成后取消的超时任务立即从队列中移除, 关闭时不必等待它们到期
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    private static long timeoutFromProperties() {
+        String timeout = JedisUtils.properties == null ? null : JedisUtils.properties.getProperty("redis.async.timeout");
+        return timeout == null ? DEFAULT_TIMEOUT_MILLIS : Long.valueOf(timeout);
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * 设置超时时间, 0表示不超时
+     *
+     * @param timeoutMillis
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 调整执行线程数, 连接池大小变化时调用
+     *
+     * @param threads
+     */
+    public void setThreads(int threads) {
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * 异步执行任意操作, 用于没有对应异步方法的命令
+     * <pre>
+     * async.supply(() -&gt; JedisUtils.getInstance().keys().sort("list"));
+     * </pre>
+     *
+     * @param task
+     * @return CompletableFuture
+     */
+    public <T> CompletableFuture<T> supply(final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        final Future<?> running;
+        try {
+            running = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.isDone()) {
+                        return;
+                    }
+                    try {
+                        future.complete(task.call());
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        final ScheduledFuture<?> timeoutTask = scheduleTimeout(future, timeoutMillis);
+        future.whenComplete((result, error) -> {
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            // 取消或超时: 还没开始的命令不再执行, 已经发出的命令无法中断
+            if (error != null) {
+                running.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private ScheduledFuture<?> scheduleTimeout(final CompletableFuture<?> future, final long timeout) {
+        if (timeout <= 0) {
+            return null;
+        }
+        try {
+            return timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    future.completeExceptionally(new TimeoutException("Redis command timed out after " + timeout + " ms"));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 提交命令后close()关闭了计时线程, 已接受的命令照常执行, 只是没有超时
+            return null;
+        }
+    }
+
+    /**
+     * 不再接受新命令, 之后提交的命令以RejectedExecutionException结束;
+     * 已经排队的命令继续执行, 它们的超时仍然有效, 执行线程和计时线程在最后一个命令结束后退出
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        timer.shutdown();
+    }
+
+    public boolean isClosed() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * 等待中的命令数
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public AsyncKeys keys() {
+        return keys;
+    }
+
+    public AsyncStrings strings() {
+        return strings;
+    }
+
+    public AsyncLists lists() {
+        return lists;
+    }
+
+    public AsyncSets sets() {
+        return sets;
+    }
+
+    public AsyncHash hash() {
+        return hash;
+    }
+
+    public AsyncSortSet sortSet() {
+        return sortSet;
+    }
+
+    public class AsyncKeys {
+
+        public CompletableFuture<Long> expire(String key, int seconds) {
+            return supply(() -> jedisUtils.keys().expire(key, seconds));
+        }
+
+        public CompletableFuture<Long> expireAt(String key, long timestamp) {
+            return supply(() -> jedisUtils.keys().expireAt(key, timestamp));
+        }
+
+        public CompletableFuture<Long> ttl(String key) {
+            return supply(() -> jedisUtils.keys().ttl(key));
+        }
+
+        public CompletableFuture<Long> persist(String key) {
+            return supply(() -> jedisUtils.keys().persist(key));
+        }
+
+        public CompletableFuture<Boolean> exists(String key) {
+            return supply(() -> jedisUtils.keys().exists(key));
+        }
+
+        public CompletableFuture<Long> del(String... keys) {
+            return supply(() -> jedisUtils.keys().del(keys));
+        }
+
+        public CompletableFuture<String> type(String key) {
+            return supply(() -> jedisUtils.keys().type(key));
+        }
+    }
+
+    public class AsyncStrings {
+
+        public CompletableFuture<String> get(String key) {
+            return supply(() -> jedisUtils.strings().get(key));
+        }
+
+        public CompletableFuture<byte[]> get(byte[] key) {
+            return supply(() -> jedisUtils.strings().get(key));
+        }
+
+        public CompletableFuture<String> set(String key, String value) {
+            return supply(() -> jedisUtils.strings().set(key, value));
+        }
+
+        public CompletableFuture<String> set(byte[] key, byte[] value) {
+            return supply(() -> jedisUtils.strings().set(key, value));
+        }
+
+        public CompletableFuture<String> setEx(String key, int seconds, String value) {
+            return supply(() -> jedisUtils.strings().setEx(key, seconds, value));
+        }
+
+        public CompletableFuture<Long> setnx(String key, String value) {
+            return supply(() -> jedisUtils.strings().setnx(key, value));
+        }
+
+        public CompletableFuture<Long> incrBy(String key, long number) {
+            return supply(() -> jedisUtils.strings().incrBy(key, number));
+        }
+
+        public CompletableFuture<Long> decrBy(String key, long number) {
+            return supply(() -> jedisUtils.strings().decrBy(key, number));
+        }
+
+        public CompletableFuture<List<String>> mget(String... keys) {
+            return supply(() -> jedisUtils.strings().mget(keys));
+        }
+
+        public CompletableFuture<String> mset(String... keysvalues) {
+            return supply(() -> jedisUtils.strings().mset(keysvalues));
+        }
+    }
+
+    public class AsyncLists {
+
+        public CompletableFuture<Long> llen(String key) {
+            return supply(() -> jedisUtils.lists().llen(key));
+        }
+
+        public CompletableFuture<String> lindex(String key, int index) {
+            return supply(() -> jedisUtils.lists().lindex(key, index));
+        }
+
+        public CompletableFuture<String> lpop(String key) {
+            return supply(() -> jedisUtils.lists().lpop(key));
+        }
+
+        public CompletableFuture<String> rpop(String key) {
+            return supply(() -> jedisUtils.lists().rpop(key));
+        }
+
+        public CompletableFuture<Long> lpush(String key, String value) {
+            return supply(() -> jedisUtils.lists().lpush(key, value));
+        }
+
+        public CompletableFuture<Long> rpush(String key, String value) {
+            return supply(() -> jedisUtils.lists().rpush(key, value));
+        }
+
+        public CompletableFuture<List<String>> lrange(String key, long start, long end) {
+            return supply(() -> jedisUtils.lists().lrange(key, start, end));
+        }
+    }
+
+    public class AsyncSets {
+
+        public CompletableFuture<Long> sadd(String key, String member) {
+            return supply(() -> jedisUtils.sets().sadd(key, member));
+        }
+
+        public CompletableFuture<Long> srem(String key, String member) {
+            return supply(() -> jedisUtils.sets().srem(key, member));
+        }
+
+        public CompletableFuture<Boolean> sismember(String key, String member) {
+            return supply(() -> jedisUtils.sets().sismember(key, member));
+        }
+
+        public CompletableFuture<Long> scard(String key) {
+            return supply(() -> jedisUtils.sets().scard(key));
+        }
+
+        public CompletableFuture<Set<String>> smembers(String key) {
+            return supply(() -> jedisUtils.sets().smembers(key));
+        }
+    }
+
+    public class AsyncHash {
+
+        public CompletableFuture<Long> hdel(String key, String fieid) {
+            return supply(() -> jedisUtils.hash().hdel(key, fieid));
+        }
+
+        public CompletableFuture<Boolean> hexists(String key, String fieid) {
+            return supply(() -> jedisUtils.hash().hexists(key, fieid));
+        }
+
+        public CompletableFuture<String> hget(String key, String fieid) {
+            return supply(() -> jedisUtils.hash().hget(key, fieid));
+        }
+
+        public CompletableFuture<byte[]> hget(byte[] key, byte[] fieid) {
+            return supply(() -> jedisUtils.hash().hget(key, fieid));
+        }
+
+        public CompletableFuture<Map<String, String>> hgetAll(String key) {
+            return supply(() -> jedisUtils.hash().hgetAll(key));
+        }
+
+        public CompletableFuture<Long> hset(String key, String fieid, String value) {
+            return supply(() -> jedisUtils.hash().hset(key, fieid, value));
+        }
+
+        public CompletableFuture<Long> hincrby(String key, String fieid, long value) {
+            return supply(() -> jedisUtils.hash().hincrby(key, fieid, value));
+        }
+
+        public CompletableFuture<List<String>> hmget(String key, String... fieids) {
+            return supply(() -> jedisUtils.hash().hmget(key, fieids));
+        }
+
+        public CompletableFuture<String> hmset(String key, Map<String, String> map) {
+            return supply(() -> jedisUtils.hash().hmset(key, map));
+        }
+    }
+
+    public class AsyncSortSet {
+
+        public CompletableFuture<Long> zadd(String key, double score, String member) {
+            return supply(() -> jedisUtils.sortSet().zadd(key, score, member));
+        }
+
+        public CompletableFuture<Double> zincrby(String key, double score, String member) {
+            return supply(() -> jedisUtils.sortSet().zincrby(key, score, member));
+        }
+
+        public CompletableFuture<Long> zrem(String key, String member) {
+            return supply(() -> jedisUtils.sortSet().zrem(key, member));
+        }
+
+        public CompletableFuture<Double> zscore(String key, String member) {
+            return supply(() -> jedisUtils.sortSet().zscore(key, member));
+        }
+
+        public CompletableFuture<Long> zrank(String key, String member) {
+            return supply(() -> jedisUtils.sortSet().zrank(key, member));
+        }
+
+        public CompletableFuture<Long> zcard(String key) {
+            return supply(() -> jedisUtils.sortSet().zcard(key));
+        }
+
+        public CompletableFuture<Set<String>> zrange(String key, int start, int end) {
+            return supply(() -> jedisUtils.sortSet().zrange(key, start, end));
+        }
+
+        public CompletableFuture<Set<String>> zrevrange(String key, int start, int end) {
+            return supply(() -> jedisUtils.sortSet().zrevrange(key, start, end));
+        }
+    }
+}
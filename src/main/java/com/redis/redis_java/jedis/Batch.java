@@ -0,0 +1,429 @@
+package com.redis.redis_java.jedis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 批量操作
+ * 方法与JedisUtils中Keys,Strings,Lists,Sets,Hash,SortSet的方法保持一致,
+ * 调用时只在本地排队并返回BatchResponse, execute()时只借用一次连接, 通过Pipeline一次发送全部命令;
+ * cluster、sharded模式下按key所在的节点分组, 每个节点借用一个连接发送自己的Pipeline, 不同节点并行执行,
+ * 多key命令(del、mget、mset)的key必须在同一个分区(cluster模式下用hash tag), 否则该命令以CROSSSLOT错误结束
+ *
+ * <pre>
+ * Batch batch = JedisUtils.getInstance().batch();
+ * BatchResponse&lt;String&gt; name = batch.hget("user:1", "name");
+ * batch.zadd("rank", 10, "user:1");
+ * batch.expire("rank", 60);
+ * batch.execute();
+ * name.get();
+ * </pre>
+ */
+public class Batch {
+
+    private final JedisUtils jedisUtils;
+
+    private final List<BatchResponse<?>> responses = new ArrayList<BatchResponse<?>>();
+
+    Batch(JedisUtils jedisUtils) {
+        this.jedisUtils = jedisUtils;
+    }
+
+    private <T> BatchResponse<T> queue(Object key, BatchResponse.Command<T> command) {
+        BatchResponse<T> response = new BatchResponse<T>(key, command);
+        responses.add(response);
+        return response;
+    }
+
+    /**
+     * 已排队的命令数
+     *
+     * @return
+     */
+    public int size() {
+        return responses.size();
+    }
+
+    /**
+     * 通过一个连接上的Pipeline发送全部已排队的命令, 执行后队列被清空, Batch可以继续使用
+     * 发送失败时抛出异常, 这一批的BatchResponse在get()时抛出同一个异常, 队列同样被清空;
+     * 多个节点时某个节点失败也抛出异常, 其他节点上的命令可能已经执行
+     */
+    public void execute() {
+        if (responses.isEmpty()) {
+            return;
+        }
+        try {
+            if (jedisUtils.isRouted()) {
+                executeByNode();
+            } else {
+                jedisUtils.execute("pipeline", jedis -> {
+                    Pipeline pipeline = jedis.pipelined();
+                    for (BatchResponse<?> response : responses) {
+                        response.queue(pipeline);
+                    }
+                    pipeline.sync();
+                    return null;
+                });
+            }
+            for (BatchResponse<?> response : responses) {
+                response.complete();
+            }
+        } catch (RuntimeException e) {
+            for (BatchResponse<?> response : responses) {
+                response.fail(e);
+            }
+            throw e;
+        } finally {
+            responses.clear();
+        }
+    }
+
+    private void executeByNode() {
+        List<BatchResponse<?>> routed = new ArrayList<BatchResponse<?>>(responses.size());
+        List<byte[]> keys = new ArrayList<byte[]>(responses.size());
+        for (BatchResponse<?> response : responses) {
+            byte[][] responseKeys = response.keys();
+            if (responseKeys.length == 0) {
+                response.fail(new JedisDataException("ERR wrong number of arguments"));
+                continue;
+            }
+            if (!samePartition(responseKeys)) {
+                response.fail(new JedisDataException("CROSSSLOT Keys in request don't hash to the same slot"));
+                continue;
+            }
+            routed.add(response);
+            keys.add(responseKeys[0]);
+        }
+        jedisUtils.executeByNode("pipeline", keys.toArray(new byte[keys.size()][]), (jedis, indexes) -> {
+            Pipeline pipeline = jedis.pipelined();
+            for (int index : indexes) {
+                routed.get(index).queue(pipeline);
+            }
+            pipeline.sync();
+            return null;
+        });
+        // 迁移中的slot返回MOVED/ASK, 这些命令单独发送, 由KeyRouter刷新路由后重试
+        for (BatchResponse<?> response : routed) {
+            if (response.redirected()) {
+                jedisUtils.execute("pipeline", response.keys()[0], jedis -> {
+                    Pipeline pipeline = jedis.pipelined();
+                    response.queue(pipeline);
+                    pipeline.sync();
+                    response.throwIfRedirected();
+                    return null;
+                });
+            }
+        }
+    }
+
+    private boolean samePartition(byte[][] keys) {
+        int partition = jedisUtils.partition(keys[0]);
+        for (int i = 1; i < keys.length; i++) {
+            if (jedisUtils.partition(keys[i]) != partition) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] keysOf(String[] keysvalues) {
+        String[] keys = new String[keysvalues.length / 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keysvalues[i * 2];
+        }
+        return keys;
+    }
+
+    /*------------------------------ Keys ------------------------------*/
+
+    /**
+     * 设置过期时间
+     *
+     * @param key
+     * @param seconds
+     * @return 返回影响的记录数
+     */
+    public BatchResponse<Long> expire(final String key, final int seconds) {
+        if (seconds <= 0) {
+            return BatchResponse.of(-1L);
+        }
+        return queue(key, p -> p.expire(key, seconds));
+    }
+
+    public BatchResponse<Long> expire(String key) {
+        return expire(key, JedisUtils.DEFAULT_CACHE_SECONDS);
+    }
+
+    public BatchResponse<Long> expireAt(final String key, final long timestamp) {
+        return queue(key, p -> p.expireAt(key, timestamp));
+    }
+
+    public BatchResponse<Long> ttl(final String key) {
+        return queue(key, p -> p.ttl(key));
+    }
+
+    public BatchResponse<Long> persist(final String key) {
+        return queue(key, p -> p.persist(key));
+    }
+
+    public BatchResponse<Boolean> exists(final String key) {
+        return queue(key, p -> p.exists(key));
+    }
+
+    public BatchResponse<Long> del(final String... keys) {
+        return queue(keys, p -> p.del(keys));
+    }
+
+    public BatchResponse<Long> del(final byte[]... keys) {
+        return queue(keys, p -> p.del(keys));
+    }
+
+    public BatchResponse<String> type(final String key) {
+        return queue(key, p -> p.type(key));
+    }
+
+    /*------------------------------ Strings ------------------------------*/
+
+    public BatchResponse<String> get(final String key) {
+        return queue(key, p -> p.get(key));
+    }
+
+    public BatchResponse<byte[]> get(final byte[] key) {
+        BatchResponse<byte[]> response = queue(key, p -> p.get(key));
+        response.finisher = value -> jedisUtils.decompress(key, value);
+        return response;
+    }
+
+    public BatchResponse<String> set(final String key, final String value) {
+        return queue(key, p -> p.set(key, value));
+    }
+
+    public BatchResponse<String> set(String key, byte[] value) {
+        return set(SafeEncoder.encode(key), value);
+    }
+
+    public BatchResponse<String> set(final byte[] key, final byte[] value) {
+        final byte[] stored = jedisUtils.compress(key, value);
+        return queue(key, p -> p.set(key, stored));
+    }
+
+    public BatchResponse<String> setEx(final String key, final int seconds, final String value) {
+        return queue(key, p -> p.setex(key, seconds, value));
+    }
+
+    public BatchResponse<String> setEx(final byte[] key, final int seconds, final byte[] value) {
+        final byte[] stored = jedisUtils.compress(key, value);
+        return queue(key, p -> p.setex(key, seconds, stored));
+    }
+
+    public BatchResponse<Long> setnx(final String key, final String value) {
+        return queue(key, p -> p.setnx(key, value));
+    }
+
+    public BatchResponse<Long> append(final String key, final String value) {
+        return queue(key, p -> p.append(key, value));
+    }
+
+    public BatchResponse<Long> incrBy(final String key, final long number) {
+        return queue(key, p -> p.incrBy(key, number));
+    }
+
+    public BatchResponse<Long> decrBy(final String key, final long number) {
+        return queue(key, p -> p.decrBy(key, number));
+    }
+
+    public BatchResponse<List<String>> mget(final String... keys) {
+        return queue(keys, p -> p.mget(keys));
+    }
+
+    public BatchResponse<String> mset(final String... keysvalues) {
+        return queue(keysOf(keysvalues), p -> p.mset(keysvalues));
+    }
+
+    public BatchResponse<Long> strlen(final String key) {
+        return queue(key, p -> p.strlen(key));
+    }
+
+    /*------------------------------ Lists ------------------------------*/
+
+    public BatchResponse<Long> llen(final String key) {
+        return queue(key, p -> p.llen(key));
+    }
+
+    public BatchResponse<String> lindex(final String key, final int index) {
+        return queue(key, p -> p.lindex(key, index));
+    }
+
+    public BatchResponse<String> lpop(final String key) {
+        return queue(key, p -> p.lpop(key));
+    }
+
+    public BatchResponse<byte[]> lpop(final byte[] key) {
+        return queue(key, p -> p.lpop(key));
+    }
+
+    public BatchResponse<String> rpop(final String key) {
+        return queue(key, p -> p.rpop(key));
+    }
+
+    public BatchResponse<Long> lpush(final String key, final String value) {
+        return queue(key, p -> p.lpush(key, value));
+    }
+
+    public BatchResponse<Long> lpush(final byte[] key, final byte[] value) {
+        return queue(key, p -> p.lpush(key, value));
+    }
+
+    public BatchResponse<Long> rpush(final String key, final String value) {
+        return queue(key, p -> p.rpush(key, value));
+    }
+
+    public BatchResponse<Long> rpush(final byte[] key, final byte[] value) {
+        return queue(key, p -> p.rpush(key, value));
+    }
+
+    public BatchResponse<List<String>> lrange(final String key, final long start, final long end) {
+        return queue(key, p -> p.lrange(key, start, end));
+    }
+
+    public BatchResponse<List<byte[]>> lrange(final byte[] key, final int start, final int end) {
+        return queue(key, p -> p.lrange(key, start, end));
+    }
+
+    public BatchResponse<String> ltrim(final String key, final int start, final int end) {
+        return queue(key, p -> p.ltrim(key, start, end));
+    }
+
+    /*------------------------------ Sets ------------------------------*/
+
+    public BatchResponse<Long> sadd(final String key, final String member) {
+        return queue(key, p -> p.sadd(key, member));
+    }
+
+    public BatchResponse<Long> sadd(final byte[] key, final byte[] member) {
+        return queue(key, p -> p.sadd(key, member));
+    }
+
+    public BatchResponse<Long> srem(final String key, final String member) {
+        return queue(key, p -> p.srem(key, member));
+    }
+
+    public BatchResponse<Boolean> sismember(final String key, final String member) {
+        return queue(key, p -> p.sismember(key, member));
+    }
+
+    public BatchResponse<Long> scard(final String key) {
+        return queue(key, p -> p.scard(key));
+    }
+
+    public BatchResponse<Set<String>> smembers(final String key) {
+        return queue(key, p -> p.smembers(key));
+    }
+
+    /*------------------------------ Hash ------------------------------*/
+
+    public BatchResponse<Long> hdel(final String key, final String fieid) {
+        return queue(key, p -> p.hdel(key, fieid));
+    }
+
+    public BatchResponse<Boolean> hexists(final String key, final String fieid) {
+        return queue(key, p -> p.hexists(key, fieid));
+    }
+
+    public BatchResponse<String> hget(final String key, final String fieid) {
+        return queue(key, p -> p.hget(key, fieid));
+    }
+
+    public BatchResponse<byte[]> hget(final byte[] key, final byte[] fieid) {
+        return queue(key, p -> p.hget(key, fieid));
+    }
+
+    public BatchResponse<Map<String, String>> hgetAll(final String key) {
+        return queue(key, p -> p.hgetAll(key));
+    }
+
+    public BatchResponse<Long> hset(final String key, final String fieid, final String value) {
+        return queue(key, p -> p.hset(key, fieid, value));
+    }
+
+    public BatchResponse<Long> hset(final String key, final String fieid, final byte[] value) {
+        return queue(key, p -> p.hset(key.getBytes(), fieid.getBytes(), value));
+    }
+
+    public BatchResponse<Long> hincrby(final String key, final String fieid, final long value) {
+        return queue(key, p -> p.hincrBy(key, fieid, value));
+    }
+
+    public BatchResponse<Long> hlen(final String key) {
+        return queue(key, p -> p.hlen(key));
+    }
+
+    public BatchResponse<List<String>> hmget(final String key, final String... fieids) {
+        return queue(key, p -> p.hmget(key, fieids));
+    }
+
+    public BatchResponse<List<byte[]>> hmget(final byte[] key, final byte[]... fieids) {
+        return queue(key, p -> p.hmget(key, fieids));
+    }
+
+    public BatchResponse<String> hmset(final String key, final Map<String, String> map) {
+        return queue(key, p -> p.hmset(key, map));
+    }
+
+    public BatchResponse<String> hmset(final byte[] key, final Map<byte[], byte[]> map) {
+        return queue(key, p -> p.hmset(key, map));
+    }
+
+    /*------------------------------ SortSet ------------------------------*/
+
+    public BatchResponse<Long> zadd(final String key, final double score, final String member) {
+        return queue(key, p -> p.zadd(key, score, member));
+    }
+
+    public BatchResponse<Double> zincrby(final String key, final double score, final String member) {
+        return queue(key, p -> p.zincrby(key, score, member));
+    }
+
+    public BatchResponse<Long> zrem(final String key, final String member) {
+        return queue(key, p -> p.zrem(key, member));
+    }
+
+    public BatchResponse<Double> zscore(final String key, final String member) {
+        return queue(key, p -> p.zscore(key, member));
+    }
+
+    public BatchResponse<Long> zrank(final String key, final String member) {
+        return queue(key, p -> p.zrank(key, member));
+    }
+
+    public BatchResponse<Long> zrevrank(final String key, final String member) {
+        return queue(key, p -> p.zrevrank(key, member));
+    }
+
+    public BatchResponse<Long> zcard(final String key) {
+        return queue(key, p -> p.zcard(key));
+    }
+
+    public BatchResponse<Long> zcount(final String key, final double min, final double max) {
+        return queue(key, p -> p.zcount(key, min, max));
+    }
+
+    public BatchResponse<Set<String>> zrange(final String key, final int start, final int end) {
+        return queue(key, p -> p.zrange(key, start, end));
+    }
+
+    public BatchResponse<Set<String>> zrevrange(final String key, final int start, final int end) {
+        return queue(key, p -> p.zrevrange(key, start, end));
+    }
+
+    public BatchResponse<Set<String>> zrangeByScore(final String key, final double min, final double max) {
+        return queue(key, p -> p.zrangeByScore(key, min, max));
+    }
+}
@@ -0,0 +1,132 @@
+package com.redis.redis_java.jedis;
+
+import java.util.function.UnaryOperator;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Batch中一条命令的返回结果, Batch.execute()之后才能取值
+ *
+ * @param <T>
+ */
+public class BatchResponse<T> {
+
+    /** 把命令写入Pipeline, 返回Pipeline对应的Response */
+    interface Command<T> {
+        Response<T> apply(Pipeline pipeline);
+    }
+
+    private final Command<T> command;
+
+    /** 命令的key: String、byte[]、String[]或byte[][], cluster、sharded模式下用来选择节点 */
+    private final Object key;
+
+    private Response<T> response;
+
+    private T value;
+
+    private boolean done;
+
+    /** Pipeline发送失败时的异常, 取值时抛出 */
+    private RuntimeException error;
+
+    /** 取值时对Redis返回的结果做的转换, 例如解压 */
+    UnaryOperator<T> finisher;
+
+    BatchResponse(Object key, Command<T> command) {
+        this.key = key;
+        this.command = command;
+    }
+
+    /**
+     * 不需要发送到Redis的命令, 直接给定结果
+     */
+    static <T> BatchResponse<T> of(T value) {
+        BatchResponse<T> r = new BatchResponse<T>(null, null);
+        r.value = value;
+        r.done = true;
+        return r;
+    }
+
+    void queue(Pipeline pipeline) {
+        if (command != null) {
+            response = command.apply(pipeline);
+        }
+    }
+
+    /**
+     * @return 编码后的key, 多key命令的key应在同一个分区
+     */
+    byte[][] keys() {
+        if (key instanceof byte[]) {
+            return new byte[][] {(byte[]) key};
+        }
+        if (key instanceof String) {
+            return new byte[][] {SafeEncoder.encode((String) key)};
+        }
+        if (key instanceof String[]) {
+            return SafeEncoder.encodeMany((String[]) key);
+        }
+        return (byte[][]) key;
+    }
+
+    /**
+     * @return cluster模式下命令收到MOVED/ASK, 需要发送到新的节点
+     */
+    boolean redirected() {
+        if (response == null) {
+            return false;
+        }
+        try {
+            response.get();
+            return false;
+        } catch (JedisRedirectionException e) {
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 收到MOVED/ASK时抛出, 由KeyRouter刷新路由后重试
+     */
+    void throwIfRedirected() {
+        if (redirected()) {
+            response.get();
+        }
+    }
+
+    void complete() {
+        done = true;
+    }
+
+    void fail(RuntimeException error) {
+        this.error = error;
+        this.done = true;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * 获取命令结果, 命令在Redis端执行出错时抛出JedisDataException, 整批发送失败时抛出execute()抛出的异常
+     *
+     * @return 结果
+     */
+    public T get() {
+        if (!done) {
+            throw new IllegalStateException("Batch has not been executed yet");
+        }
+        if (error != null) {
+            throw error;
+        }
+        if (response == null) {
+            return value;
+        }
+        return finisher == null ? response.get() : finisher.apply(response.get());
+    }
+}
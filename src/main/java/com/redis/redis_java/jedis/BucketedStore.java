@@ -0,0 +1,301 @@
+package com.redis.redis_java.jedis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.MurmurHash;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 把大量小对象按key的哈希分散到固定数量的hash中保存, 每个逻辑key是某个hash的一个field
+ * hash的field数不超过hash-max-ziplist-entries(默认128), 值不超过hash-max-ziplist-value(默认64字节)时,
+ * Redis使用紧凑的ziplist/listpack编码, 省掉了每个顶层key的dictEntry、redisObject和过期表开销
+ *
+ * 注意: field不能单独设置过期时间, 只适合不过期或整体清理的数据
+ *
+ * <pre>
+ * BucketedStore store = new BucketedStore(JedisUtils.getInstance(), "vo",
+ *         BucketedStore.bucketsFor(10000000, 128));
+ * store.put("vo:1", bytes);
+ * byte[] value = store.getBytes("vo:1");
+ * </pre>
+ */
+public class BucketedStore {
+
+    private static final int SEED = 0x2B1D5EED;
+
+    /** 每个桶的目标填充率, 留出余量避免哈希不均匀的桶超过ziplist上限 */
+    private static final double FILL_FACTOR = 0.75;
+
+    private static final byte[] MEMORY_USAGE = SafeEncoder.encode("return redis.call('memory', 'usage', KEYS[1])");
+
+    /** 把值写入专用的探测key并测量后立即删除, 探测key已存在时不测量 */
+    private static final byte[] PROBE = SafeEncoder.encode("if redis.call('exists', KEYS[1]) == 1 then return -1 end "
+            + "redis.call('set', KEYS[1], ARGV[1]) "
+            + "local bytes = redis.call('memory', 'usage', KEYS[1]) "
+            + "redis.call('del', KEYS[1]) return bytes");
+
+    private final JedisUtils jedisUtils;
+
+    private final String namespace;
+
+    private final int buckets;
+
+    /**
+     * @param jedisUtils
+     * @param namespace 桶的key前缀, 桶的key为namespace:b:序号
+     * @param buckets 桶数, 确定后不能修改, 否则已有的key找不到
+     */
+    public BucketedStore(JedisUtils jedisUtils, String namespace, int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("buckets must be positive");
+        }
+        this.jedisUtils = jedisUtils;
+        this.namespace = namespace;
+        this.buckets = buckets;
+    }
+
+    /**
+     * 根据预计的条目数计算桶数
+     *
+     * @param expectedEntries 预计的条目数
+     * @param maxZiplistEntries Redis的hash-max-ziplist-entries(hash-max-listpack-entries)配置
+     * @return 桶数
+     */
+    public static int bucketsFor(long expectedEntries, int maxZiplistEntries) {
+        long perBucket = Math.max(1, (long) (maxZiplistEntries * FILL_FACTOR));
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (expectedEntries + perBucket - 1) / perBucket));
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    int bucket(String key) {
+        return (int) Math.floorMod(MurmurHash.hash64A(SafeEncoder.encode(key), SEED), (long) buckets);
+    }
+
+    /**
+     * @param key 逻辑key
+     * @return 保存它的hash的key
+     */
+    public String bucketKey(String key) {
+        return bucketKey(bucket(key));
+    }
+
+    private String bucketKey(int bucket) {
+        return namespace + ":b:" + bucket;
+    }
+
+    public byte[] getBytes(String key) {
+        return jedisUtils.hash().hget(SafeEncoder.encode(bucketKey(key)), SafeEncoder.encode(key));
+    }
+
+    public String get(String key) {
+        return jedisUtils.hash().hget(bucketKey(key), key);
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @return 1新增, 0覆盖
+     */
+    public long put(String key, byte[] value) {
+        return jedisUtils.hash().hset(bucketKey(key), key, value);
+    }
+
+    public long put(String key, String value) {
+        return jedisUtils.hash().hset(bucketKey(key), key, value);
+    }
+
+    /**
+     * @param key
+     * @return 删除的数量
+     */
+    public long delete(String key) {
+        return jedisUtils.hash().hdel(bucketKey(key), key);
+    }
+
+    /**
+     * 批量读取, 同一个桶中的key用一次HMGET
+     *
+     * @param keys
+     * @return 按keys顺序的key到值的映射, 不存在的key不在其中
+     */
+    public Map<String, byte[]> getAllBytes(Collection<String> keys) {
+        Map<Integer, List<String>> byBucket = group(keys);
+        Map<String, byte[]> found = new LinkedHashMap<String, byte[]>();
+        for (Map.Entry<Integer, List<String>> entry : byBucket.entrySet()) {
+            List<String> fields = entry.getValue();
+            byte[][] rawFields = new byte[fields.size()][];
+            for (int i = 0; i < rawFields.length; i++) {
+                rawFields[i] = SafeEncoder.encode(fields.get(i));
+            }
+            List<byte[]> values = jedisUtils.hash().hmget(SafeEncoder.encode(bucketKey(entry.getKey())), rawFields);
+            for (int i = 0; i < rawFields.length; i++) {
+                found.put(fields.get(i), values.get(i));
+            }
+        }
+        return ordered(keys, found);
+    }
+
+    /**
+     * 批量读取, 同一个桶中的key用一次HMGET
+     *
+     * @param keys
+     * @return 按keys顺序的key到值的映射, 不存在的key不在其中
+     */
+    public Map<String, String> getAll(Collection<String> keys) {
+        Map<Integer, List<String>> byBucket = group(keys);
+        Map<String, String> found = new LinkedHashMap<String, String>();
+        for (Map.Entry<Integer, List<String>> entry : byBucket.entrySet()) {
+            List<String> fields = entry.getValue();
+            List<String> values = jedisUtils.hash().hmget(bucketKey(entry.getKey()),
+                    fields.toArray(new String[fields.size()]));
+            for (int i = 0; i < fields.size(); i++) {
+                found.put(fields.get(i), values.get(i));
+            }
+        }
+        return ordered(keys, found);
+    }
+
+    private Map<Integer, List<String>> group(Collection<String> keys) {
+        Map<Integer, List<String>> byBucket = new LinkedHashMap<Integer, List<String>>();
+        for (String key : keys) {
+            byBucket.computeIfAbsent(bucket(key), b -> new ArrayList<String>()).add(key);
+        }
+        return byBucket;
+    }
+
+    private static <V> Map<String, V> ordered(Collection<String> keys, Map<String, V> found) {
+        Map<String, V> result = new LinkedHashMap<String, V>();
+        for (String key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 抽样估算节省的内存: 用MEMORY USAGE测量抽样桶每个条目的平均占用,
+     * 再把每个桶中的一个条目的值临时写到专用的探测key namespace:probe 测量(写入、测量、删除在一个脚本中完成),
+     * 不会覆盖或删除用户的逻辑key, 两者之差乘以估算的条目数
+     * 需要Redis 4.0以上
+     *
+     * @param sampleBuckets 抽样的桶数
+     * @return MemoryReport
+     */
+    public MemoryReport report(int sampleBuckets) {
+        MemoryReport report = new MemoryReport();
+        int samples = Math.max(1, Math.min(sampleBuckets, buckets));
+        long bucketBytes = 0;
+        long topLevelBytes = 0;
+        int probes = 0;
+        byte[] probeKey = SafeEncoder.encode(namespace + ":probe");
+        for (int i = 0; i < samples; i++) {
+            byte[] bucketKey = SafeEncoder.encode(bucketKey((int) ((long) i * buckets / samples)));
+            long entries = jedisUtils.execute("hlen", bucketKey, jedis -> jedis.hlen(bucketKey));
+            if (entries == 0) {
+                report.sampledBuckets++;
+                continue;
+            }
+            try {
+                bucketBytes += (Long) jedisUtils.execute("eval", bucketKey, jedis -> jedis.eval(MEMORY_USAGE, 1, bucketKey));
+            } catch (JedisDataException e) {
+                throw new JedisDataException(e.getMessage() + " (MEMORY USAGE requires Redis 4.0 or later)", e);
+            }
+            report.sampledBuckets++;
+            report.sampledEntries += entries;
+            String encoding = jedisUtils.execute("object", bucketKey,
+                    jedis -> SafeEncoder.encode(jedis.objectEncoding(bucketKey)));
+            if ("ziplist".equals(encoding) || "listpack".equals(encoding)) {
+                report.compactBuckets++;
+            }
+            ScanResult<Map.Entry<byte[], byte[]>> page = jedisUtils.execute("hscan", bucketKey,
+                    jedis -> jedis.hscan(bucketKey, ScanParams.SCAN_POINTER_START_BINARY, new ScanParams().count(10)));
+            if (!page.getResult().isEmpty()) {
+                byte[] value = page.getResult().get(0).getValue();
+                long bytes = jedisUtils.execute("eval", probeKey,
+                        jedis -> (Long) jedis.eval(PROBE, 1, probeKey, value));
+                if (bytes > 0) {
+                    topLevelBytes += bytes;
+                    probes++;
+                }
+            }
+        }
+        if (report.sampledEntries > 0) {
+            report.bucketBytesPerEntry = (double) bucketBytes / report.sampledEntries;
+            report.estimatedEntries = report.sampledEntries * buckets / report.sampledBuckets;
+        }
+        if (probes > 0) {
+            report.topLevelBytesPerEntry = (double) topLevelBytes / probes;
+        }
+        return report;
+    }
+
+    /**
+     * 内存占用的抽样估算
+     */
+    public static final class MemoryReport {
+
+        private int sampledBuckets;
+
+        private long sampledEntries;
+
+        private int compactBuckets;
+
+        private long estimatedEntries;
+
+        private double bucketBytesPerEntry;
+
+        private double topLevelBytesPerEntry;
+
+        public int getSampledBuckets() {
+            return sampledBuckets;
+        }
+
+        public long getSampledEntries() {
+            return sampledEntries;
+        }
+
+        /** 抽样的非空桶中仍是ziplist/listpack编码的数量, 小于非空桶数时应增加桶数 */
+        public int getCompactBuckets() {
+            return compactBuckets;
+        }
+
+        /** 按抽样估算的总条目数 */
+        public long getEstimatedEntries() {
+            return estimatedEntries;
+        }
+
+        /** 桶中每个条目的平均字节数 */
+        public double getBucketBytesPerEntry() {
+            return bucketBytesPerEntry;
+        }
+
+        /** 同样的条目作为顶层key保存时的平均字节数 */
+        public double getTopLevelBytesPerEntry() {
+            return topLevelBytesPerEntry;
+        }
+
+        /** 估算节省的总字节数 */
+        public long getEstimatedSavedBytes() {
+            return (long) ((topLevelBytesPerEntry - bucketBytesPerEntry) * estimatedEntries);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("entries~%d, bucket=%.1fB/entry, top-level=%.1fB/entry, saved~%dKB, compact=%d/%d buckets",
+                    estimatedEntries, bucketBytesPerEntry, topLevelBytesPerEntry, getEstimatedSavedBytes() / 1024,
+                    compactBuckets, sampledBuckets);
+        }
+    }
+}
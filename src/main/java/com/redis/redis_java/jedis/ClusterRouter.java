@@ -0,0 +1,141 @@
+package com.redis.redis_java.jedis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.BinaryJedisCluster;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisClusterMaxRedirectionsException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisNoReachableClusterNodeException;
+import redis.clients.util.JedisClusterCRC16;
+
+/**
+ * Redis Cluster的路由, 分区是hash slot
+ * 使用Jedis的slot缓存, 收到MOVED时刷新, 收到ASK时向目标节点发送ASKING后重试
+ */
+class ClusterRouter implements KeyRouter {
+
+    private final SlotHandler handler;
+
+    private final int maxAttempts;
+
+    /**
+     * @param nodes 部分集群节点, 用于发现整个集群
+     * @param poolConfig 每个节点连接池的配置
+     * @param timeout 连接超时, 毫秒
+     * @param password 可以为null
+     * @param maxAttempts 重定向或连接失败时的最多尝试次数
+     */
+    ClusterRouter(Set<HostAndPort> nodes, GenericObjectPoolConfig poolConfig, int timeout, String password,
+            int maxAttempts) {
+        this.handler = new SlotHandler(nodes, poolConfig, timeout, password);
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Override
+    public int partition(byte[] key) {
+        return JedisClusterCRC16.getSlot(key);
+    }
+
+    @Override
+    public Object node(int slot) {
+        JedisPool pool = handler.slotPool(slot);
+        if (pool == null) {
+            handler.renewSlotCache();
+            pool = handler.slotPool(slot);
+        }
+        if (pool == null) {
+            throw new JedisNoReachableClusterNodeException("No node serves slot " + slot);
+        }
+        return pool;
+    }
+
+    @Override
+    public Jedis getResource(int slot) {
+        return handler.getConnectionFromSlot(slot);
+    }
+
+    @Override
+    public <T> T execute(int slot, Function<Jedis, T> action) {
+        HostAndPort asking = null;
+        for (int attempt = 1;; attempt++) {
+            Jedis jedis = null;
+            try {
+                if (asking != null) {
+                    jedis = handler.getConnectionFromNode(asking);
+                    jedis.asking();
+                    asking = null;
+                } else {
+                    jedis = getResource(slot);
+                }
+                return action.apply(jedis);
+            } catch (JedisMovedDataException e) {
+                if (attempt >= maxAttempts) {
+                    throw new JedisClusterMaxRedirectionsException(e);
+                }
+                handler.renewSlotCache(jedis);
+            } catch (JedisAskDataException e) {
+                if (attempt >= maxAttempts) {
+                    throw new JedisClusterMaxRedirectionsException(e);
+                }
+                asking = e.getTargetNode();
+            } catch (JedisConnectionException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                if (jedis != null) {
+                    jedis.close();
+                    jedis = null;
+                }
+                handler.renewSlotCache();
+            } finally {
+                if (jedis != null) {
+                    jedis.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Collection<JedisPool> nodes() {
+        // 只返回持有slot的节点, 避免SCAN等命令在replica上重复执行
+        IdentityHashMap<JedisPool, Boolean> masters = new IdentityHashMap<JedisPool, Boolean>();
+        for (int slot = 0; slot < BinaryJedisCluster.HASHSLOTS; slot++) {
+            JedisPool pool = handler.slotPool(slot);
+            if (pool != null) {
+                masters.put(pool, Boolean.TRUE);
+            }
+        }
+        return Collections.unmodifiableSet(masters.keySet());
+    }
+
+    @Override
+    public void close() {
+        handler.close();
+    }
+
+    /**
+     * 读取Jedis slot缓存中的连接池
+     */
+    private static final class SlotHandler extends JedisSlotBasedConnectionHandler {
+
+        SlotHandler(Set<HostAndPort> nodes, GenericObjectPoolConfig poolConfig, int timeout, String password) {
+            super(nodes, poolConfig, timeout, timeout, password);
+        }
+
+        JedisPool slotPool(int slot) {
+            return cache.getSlotPool(slot);
+        }
+    }
+}
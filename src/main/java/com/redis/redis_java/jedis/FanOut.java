@@ -0,0 +1,217 @@
+package com.redis.redis_java.jedis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.Pool;
+
+/**
+ * 多key命令按分区拆分, 每个节点借用一个连接并行执行, 结果按调用方传入的顺序合并
+ * 第一个节点在调用线程上执行, 只涉及一个节点时不切换线程
+ */
+class FanOut {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final KeyRouter router;
+
+    private final ExecutorService executor;
+
+    FanOut(KeyRouter router) {
+        this.router = router;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "jedis-fanout-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 一个分区的key在原数组中的位置和命令结果
+     */
+    static final class Part<R> {
+        final int[] indexes;
+        R result;
+
+        Part(int[] indexes) {
+            this.indexes = indexes;
+        }
+    }
+
+    /**
+     * 每个分区调用一次action, action的参数是该分区的key在keys中的位置
+     *
+     * @param keys 编码后的key
+     * @param action
+     * @return 每个分区的结果
+     */
+    <R> List<Part<R>> byPartition(byte[][] keys, BiFunction<Jedis, int[], R> action) {
+        Map<Integer, List<Integer>> partitions = new LinkedHashMap<Integer, List<Integer>>();
+        for (int i = 0; i < keys.length; i++) {
+            partitions.computeIfAbsent(router.partition(keys[i]), p -> new ArrayList<Integer>()).add(i);
+        }
+        Map<Object, List<Integer>> nodes = new LinkedHashMap<Object, List<Integer>>();
+        Map<Integer, Part<R>> parts = new LinkedHashMap<Integer, Part<R>>();
+        for (Map.Entry<Integer, List<Integer>> entry : partitions.entrySet()) {
+            int partition = entry.getKey();
+            nodes.computeIfAbsent(router.node(partition), n -> new ArrayList<Integer>()).add(partition);
+            int[] indexes = new int[entry.getValue().size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = entry.getValue().get(i);
+            }
+            parts.put(partition, new Part<R>(indexes));
+        }
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(nodes.size());
+        List<Integer> local = null;
+        for (List<Integer> node : nodes.values()) {
+            if (local == null) {
+                local = node;
+            } else {
+                futures.add(executor.submit(() -> runNode(node, parts, action)));
+            }
+        }
+        if (local != null) {
+            runNode(local, parts, action);
+        }
+        await(futures);
+        return new ArrayList<Part<R>>(parts.values());
+    }
+
+    /**
+     * 按节点拆分, 每个节点借用一个连接调用一次action, action的参数是该节点的key在keys中的位置
+     * 用于Pipeline: 同一节点的命令不论属于哪个分区都在一次往返中发送
+     *
+     * @param keys 编码后的key
+     * @param action
+     * @return 每个节点的结果
+     */
+    <R> List<Part<R>> byNode(byte[][] keys, BiFunction<Jedis, int[], R> action) {
+        Map<Object, Integer> firstPartitions = new LinkedHashMap<Object, Integer>();
+        Map<Object, List<Integer>> nodes = new LinkedHashMap<Object, List<Integer>>();
+        for (int i = 0; i < keys.length; i++) {
+            int partition = router.partition(keys[i]);
+            Object node = router.node(partition);
+            firstPartitions.putIfAbsent(node, partition);
+            nodes.computeIfAbsent(node, n -> new ArrayList<Integer>()).add(i);
+        }
+        List<Part<R>> parts = new ArrayList<Part<R>>(nodes.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(nodes.size());
+        for (Map.Entry<Object, List<Integer>> entry : nodes.entrySet()) {
+            int[] indexes = new int[entry.getValue().size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = entry.getValue().get(i);
+            }
+            Part<R> part = new Part<R>(indexes);
+            int partition = firstPartitions.get(entry.getKey());
+            if (!parts.isEmpty()) {
+                futures.add(executor.submit(() -> runPart(partition, part, action)));
+            }
+            parts.add(part);
+        }
+        if (!parts.isEmpty()) {
+            runPart(firstPartitions.values().iterator().next(), parts.get(0), action);
+        }
+        await(futures);
+        return parts;
+    }
+
+    private <R> void runPart(int partition, Part<R> part, BiFunction<Jedis, int[], R> action) {
+        Jedis jedis = router.getResource(partition);
+        try {
+            part.result = action.apply(jedis, part.indexes);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    private <R> void runNode(List<Integer> partitions, Map<Integer, Part<R>> parts, BiFunction<Jedis, int[], R> action) {
+        Jedis jedis = router.getResource(partitions.get(0));
+        try {
+            for (int partition : partitions) {
+                Part<R> part = parts.get(partition);
+                try {
+                    part.result = action.apply(jedis, part.indexes);
+                } catch (JedisRedirectionException e) {
+                    // 分区已迁移到其他节点, 单独重试
+                    part.result = router.execute(partition, j -> action.apply(j, part.indexes));
+                }
+            }
+        } finally {
+            jedis.close();
+        }
+    }
+
+    /**
+     * 在每个节点上执行一次
+     *
+     * @param action
+     * @return 每个节点的结果
+     */
+    <R> List<R> onAllNodes(Function<Jedis, R> action) {
+        Collection<? extends Pool<Jedis>> pools = router.nodes();
+        List<Future<R>> futures = new ArrayList<Future<R>>(pools.size());
+        for (Pool<Jedis> pool : pools) {
+            futures.add(executor.submit(() -> {
+                Jedis jedis = pool.getResource();
+                try {
+                    return action.apply(jedis);
+                } finally {
+                    jedis.close();
+                }
+            }));
+        }
+        List<R> results = new ArrayList<R>(futures.size());
+        for (Future<R> future : futures) {
+            results.add(get(future));
+        }
+        return results;
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private static void await(List<Future<?>> futures) {
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                get(future);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static <R> R get(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new JedisException(e.getCause());
+        }
+    }
+}
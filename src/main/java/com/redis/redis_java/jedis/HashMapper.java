@@ -0,0 +1,407 @@
+package com.redis.redis_java.jedis;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.alibaba.fastjson.JSON;
+
+import redis.clients.jedis.Transaction;
+
+/**
+ * 把JavaBean的属性保存为hash的field, 可以只读写其中几个属性, 数值属性可以用HINCRBY原子地增减
+ * 每个类的属性访问器(getter/setter的MethodHandle和类型转换)只在第一次使用时解析一次
+ *
+ * 属性值按文本保存: 数字、boolean、String原样, 枚举为名称, Date为毫秒数, 其他类型为JSON; null属性不保存
+ *
+ * <pre>
+ * HashMapper&lt;User&gt; users = HashMapper.of(JedisUtils.getInstance(), User.class);
+ * users.save("user:1", user);
+ * users.update("user:1", user, "nickname");          // 只写一个field
+ * User partial = users.load("user:1", "nickname", "level");
+ * users.increment("user:1", "points", 10);
+ * </pre>
+ *
+ * @param <T> 有无参构造方法的JavaBean
+ */
+public class HashMapper<T> {
+
+    /** 每个类解析一次的属性 */
+    private static final Map<Class<?>, Map<String, Property>> PROPERTIES = new ConcurrentHashMap<Class<?>, Map<String, Property>>();
+
+    /** 增减后的值超出属性类型的范围时不修改并返回错误, 只用于int/short/byte, 这些范围内Lua的number是精确的 */
+    private static final String INCREMENT_IN_RANGE = "local current = tonumber(redis.call('hget', KEYS[1], ARGV[1]) or '0') "
+            + "if not current then return redis.error_reply('ERR hash value is not an integer') end "
+            + "local result = current + tonumber(ARGV[2]) "
+            + "if result < tonumber(ARGV[3]) or result > tonumber(ARGV[4]) then "
+            + "return redis.error_reply('ERR increment or decrement would overflow') end "
+            + "return redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])";
+
+    private final JedisUtils jedisUtils;
+
+    private final Class<T> type;
+
+    private final MethodHandle constructor;
+
+    private final Map<String, Property> properties;
+
+    private HashMapper(JedisUtils jedisUtils, Class<T> type) {
+        this.jedisUtils = jedisUtils;
+        this.type = type;
+        try {
+            this.constructor = MethodHandles.publicLookup().unreflectConstructor(type.getConstructor());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(type.getName() + " must have a public no-arg constructor", e);
+        }
+        this.properties = PROPERTIES.computeIfAbsent(type, HashMapper::introspect);
+    }
+
+    /**
+     * @param jedisUtils
+     * @param type
+     * @return HashMapper
+     */
+    public static <T> HashMapper<T> of(JedisUtils jedisUtils, Class<T> type) {
+        return new HashMapper<T>(jedisUtils, type);
+    }
+
+    private static Map<String, Property> introspect(Class<?> type) {
+        BeanInfo info;
+        try {
+            info = Introspector.getBeanInfo(type, Object.class);
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException("cannot introspect " + type.getName(), e);
+        }
+        Map<String, Property> result = new LinkedHashMap<String, Property>();
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (PropertyDescriptor descriptor : info.getPropertyDescriptors()) {
+            if (descriptor.getReadMethod() == null || descriptor.getWriteMethod() == null) {
+                continue;
+            }
+            try {
+                result.put(descriptor.getName(), new Property(descriptor.getName(),
+                        lookup.unreflect(descriptor.getReadMethod()), lookup.unreflect(descriptor.getWriteMethod()),
+                        descriptor.getPropertyType(), descriptor.getWriteMethod().getGenericParameterTypes()[0]));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("property " + descriptor.getName() + " is not accessible", e);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return 可映射的属性名(同时有public getter和setter)
+     */
+    public List<String> fields() {
+        return new ArrayList<String>(properties.keySet());
+    }
+
+    /**
+     * 保存全部属性, 值为null的属性从hash中删除
+     *
+     * @param key
+     * @param bean
+     */
+    public void save(String key, T bean) {
+        write(key, bean, properties.values());
+    }
+
+    /**
+     * 只写入指定的属性, 值为null的属性从hash中删除
+     *
+     * @param key
+     * @param bean 从中读取属性值
+     * @param fields 属性名
+     */
+    public void update(String key, T bean, String... fields) {
+        List<Property> selected = new ArrayList<Property>(fields.length);
+        for (String field : fields) {
+            selected.add(property(field));
+        }
+        write(key, bean, selected);
+    }
+
+    /**
+     * 写入单个属性
+     *
+     * @param key
+     * @param field 属性名
+     * @param value 属性值, null时删除
+     */
+    public void set(String key, String field, Object value) {
+        Property property = property(field);
+        if (value == null) {
+            jedisUtils.hash().hdel(key, field);
+        } else {
+            jedisUtils.hash().hset(key, field, property.toHash(value));
+        }
+    }
+
+    /**
+     * 写入的field和要删除的field在一个MULTI中提交, 其他客户端不会读到只写了一半的bean
+     */
+    private void write(String key, T bean, Iterable<Property> selected) {
+        Map<String, String> hash = new HashMap<String, String>();
+        List<String> nulls = new ArrayList<String>();
+        for (Property property : selected) {
+            Object value = property.get(bean);
+            if (value == null) {
+                nulls.add(property.name);
+            } else {
+                hash.put(property.name, property.toHash(value));
+            }
+        }
+        if (nulls.isEmpty()) {
+            if (!hash.isEmpty()) {
+                jedisUtils.hash().hmset(key, hash);
+            }
+            return;
+        }
+        String[] fields = nulls.toArray(new String[nulls.size()]);
+        if (hash.isEmpty()) {
+            jedisUtils.execute("hdel", key, jedis -> jedis.hdel(key, fields));
+            return;
+        }
+        jedisUtils.execute("multi", key, jedis -> {
+            Transaction transaction = jedis.multi();
+            transaction.hmset(key, hash);
+            transaction.hdel(key, fields);
+            return transaction.exec();
+        });
+    }
+
+    /**
+     * 读取全部属性
+     *
+     * @param key
+     * @return hash不存在时返回null
+     */
+    public T load(String key) {
+        Map<String, String> hash = jedisUtils.hash().hgetAll(key);
+        return hash == null || hash.isEmpty() ? null : fromHash(hash);
+    }
+
+    /**
+     * 只读取指定的属性, 其他属性保持构造方法中的默认值
+     *
+     * @param key
+     * @param fields 属性名
+     * @return 指定的field都不存在时返回null
+     */
+    public T load(String key, String... fields) {
+        for (String field : fields) {
+            property(field);
+        }
+        List<String> values = jedisUtils.hash().hmget(key, fields);
+        Map<String, String> hash = new HashMap<String, String>();
+        for (int i = 0; i < fields.length; i++) {
+            if (values.get(i) != null) {
+                hash.put(fields[i], values.get(i));
+            }
+        }
+        return hash.isEmpty() ? null : fromHash(hash);
+    }
+
+    /**
+     * 原子地增减整数属性
+     * int/short/byte属性增减后超出类型范围时不修改, 抛出JedisDataException; long和BigInteger的范围由HINCRBY检查
+     *
+     * @param key
+     * @param field 整数类型的属性名
+     * @param delta
+     * @return 增减后的值
+     */
+    public long increment(String key, String field, long delta) {
+        Property property = property(field);
+        if (!property.isIntegral()) {
+            throw new IllegalArgumentException("field " + field + " of " + type.getName() + " is not an integer");
+        }
+        long[] range = property.range();
+        if (range == null) {
+            return jedisUtils.hash().hincrby(key, field, delta);
+        }
+        if (delta < range[0] - range[1] || delta > range[1] - range[0]) {
+            throw new IllegalArgumentException("delta " + delta + " overflows field " + field + " of " + type.getName());
+        }
+        return jedisUtils.execute("eval", key, jedis -> (Long) jedis.eval(INCREMENT_IN_RANGE, 1, key, field,
+                String.valueOf(delta), String.valueOf(range[0]), String.valueOf(range[1])));
+    }
+
+    /**
+     * @param bean
+     * @return 非null属性的文本值
+     */
+    public Map<String, String> toHash(T bean) {
+        Map<String, String> hash = new LinkedHashMap<String, String>();
+        for (Property property : properties.values()) {
+            Object value = property.get(bean);
+            if (value != null) {
+                hash.put(property.name, property.toHash(value));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @param hash field到文本值, 不认识的field被忽略
+     * @return bean
+     */
+    @SuppressWarnings("unchecked")
+    public T fromHash(Map<String, String> hash) {
+        T bean;
+        try {
+            bean = (T) constructor.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot create " + type.getName(), e);
+        }
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+            Property property = properties.get(entry.getKey());
+            if (property != null && entry.getValue() != null) {
+                property.set(bean, property.fromHash(entry.getValue()));
+            }
+        }
+        return bean;
+    }
+
+    private Property property(String field) {
+        Property property = properties.get(field);
+        if (property == null) {
+            throw new IllegalArgumentException("unknown field " + field + " of " + type.getName());
+        }
+        return property;
+    }
+
+    /**
+     * 一个属性的访问器和文本转换
+     */
+    private static final class Property {
+
+        final String name;
+
+        final MethodHandle getter;
+
+        final MethodHandle setter;
+
+        final Class<?> type;
+
+        final Type genericType;
+
+        Property(String name, MethodHandle getter, MethodHandle setter, Class<?> type, Type genericType) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+            this.type = type;
+            this.genericType = genericType;
+        }
+
+        Object get(Object bean) {
+            try {
+                return getter.invoke(bean);
+            } catch (Throwable e) {
+                throw new IllegalStateException("cannot read " + name, e);
+            }
+        }
+
+        void set(Object bean, Object value) {
+            try {
+                setter.invoke(bean, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException("cannot write " + name, e);
+            }
+        }
+
+        boolean isIntegral() {
+            return type == int.class || type == Integer.class || type == long.class || type == Long.class
+                    || type == short.class || type == Short.class || type == byte.class || type == Byte.class
+                    || type == BigInteger.class;
+        }
+
+        /**
+         * @return 比long窄的整数类型的{最小值, 最大值}, 其他类型返回null
+         */
+        long[] range() {
+            if (type == int.class || type == Integer.class) {
+                return new long[] {Integer.MIN_VALUE, Integer.MAX_VALUE};
+            }
+            if (type == short.class || type == Short.class) {
+                return new long[] {Short.MIN_VALUE, Short.MAX_VALUE};
+            }
+            if (type == byte.class || type == Byte.class) {
+                return new long[] {Byte.MIN_VALUE, Byte.MAX_VALUE};
+            }
+            return null;
+        }
+
+        String toHash(Object value) {
+            if (value instanceof String || value instanceof Number || value instanceof Boolean
+                    || value instanceof Character) {
+                return value.toString();
+            }
+            if (value instanceof Enum) {
+                return ((Enum<?>) value).name();
+            }
+            if (value instanceof Date) {
+                return String.valueOf(((Date) value).getTime());
+            }
+            return JSON.toJSONString(value);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object fromHash(String text) {
+            if (type == String.class) {
+                return text;
+            }
+            if (type == int.class || type == Integer.class) {
+                return Integer.valueOf(text);
+            }
+            if (type == long.class || type == Long.class) {
+                return Long.valueOf(text);
+            }
+            if (type == double.class || type == Double.class) {
+                return Double.valueOf(text);
+            }
+            if (type == float.class || type == Float.class) {
+                return Float.valueOf(text);
+            }
+            if (type == boolean.class || type == Boolean.class) {
+                return Boolean.valueOf(text);
+            }
+            if (type == short.class || type == Short.class) {
+                return Short.valueOf(text);
+            }
+            if (type == byte.class || type == Byte.class) {
+                return Byte.valueOf(text);
+            }
+            if (type == char.class || type == Character.class) {
+                return text.charAt(0);
+            }
+            if (type == BigDecimal.class) {
+                return new BigDecimal(text);
+            }
+            if (type == BigInteger.class) {
+                return new BigInteger(text);
+            }
+            if (type.isEnum()) {
+                return Enum.valueOf((Class<Enum>) type, text);
+            }
+            if (type == Date.class) {
+                return new Date(Long.parseLong(text));
+            }
+            return JSON.parseObject(text, genericType);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.redis.redis_java.jedis;
+
+import java.util.Arrays;
+import java.util.List;
+
+import redis.clients.util.MurmurHash;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 带虚拟节点和权重的一致性哈希环
+ * 虚拟节点的位置只由节点名决定, 增加一个节点只会移动约1/N的key;
+ * 与Redis Cluster相同, key中有{tag}时只按tag计算, 同一tag的key在同一个节点上
+ */
+class HashRing {
+
+    private static final int SEED = 0x1234ABCD;
+
+    /** 环上的位置, 升序 */
+    private final long[] points;
+
+    /** 每个位置对应的节点序号 */
+    private final int[] owners;
+
+    /**
+     * @param names 节点名, 例如host:port
+     * @param weights 每个节点的权重, 虚拟节点数 = virtualNodes * weight
+     * @param virtualNodes 权重为1时的虚拟节点数
+     */
+    HashRing(List<String> names, int[] weights, int virtualNodes) {
+        if (names.isEmpty() || names.size() != weights.length) {
+            throw new IllegalArgumentException("names and weights must be non-empty and of the same size");
+        }
+        int total = 0;
+        for (int weight : weights) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weight must be positive");
+            }
+            total += weight * virtualNodes;
+        }
+        long[][] entries = new long[total][];
+        int n = 0;
+        for (int node = 0; node < names.size(); node++) {
+            for (int v = 0; v < weights[node] * virtualNodes; v++) {
+                entries[n++] = new long[] {hash(SafeEncoder.encode(names.get(node) + "#" + v)), node};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[total];
+        this.owners = new int[total];
+        for (int i = 0; i < total; i++) {
+            points[i] = entries[i][0];
+            owners[i] = (int) entries[i][1];
+        }
+    }
+
+    /**
+     * @param key 编码后的key
+     * @return 顺时针方向第一个虚拟节点所属的节点序号
+     */
+    int node(byte[] key) {
+        int i = Arrays.binarySearch(points, hash(tag(key)));
+        if (i < 0) {
+            i = -i - 1;
+            if (i == points.length) {
+                i = 0;
+            }
+        }
+        return owners[i];
+    }
+
+    private static long hash(byte[] bytes) {
+        return MurmurHash.hash64A(bytes, SEED);
+    }
+
+    /**
+     * @return 第一对{}之间的非空内容, 没有时返回整个key
+     */
+    private static byte[] tag(byte[] key) {
+        for (int start = 0; start < key.length; start++) {
+            if (key[start] == '{') {
+                for (int end = start + 1; end < key.length; end++) {
+                    if (key[end] == '}') {
+                        return end == start + 1 ? key : Arrays.copyOfRange(key, start + 1, end);
+                    }
+                }
+                return key;
+            }
+        }
+        return key;
+    }
+}
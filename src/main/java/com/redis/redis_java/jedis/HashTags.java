@@ -0,0 +1,58 @@
+package com.redis.redis_java.jedis;
+
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.JedisClusterHashTagUtil;
+
+/**
+ * Redis Cluster的hash tag工具
+ * key中第一对{}之间的非空内容决定slot, tag相同的key在同一个slot上,
+ * 可以一起用于rename、smove、sinterstore等不会被JedisUtils拆分的多key命令
+ *
+ * <pre>
+ * String profile = HashTags.tagged("user:1", "profile");   // {user:1}:profile
+ * String orders = HashTags.tagged("user:1", "orders");     // {user:1}:orders
+ * HashTags.sameSlot(profile, orders);                       // true
+ * </pre>
+ */
+public final class HashTags {
+
+    private HashTags() {}
+
+    /**
+     * @param tag 决定slot的部分, 不能包含'}'
+     * @param key
+     * @return {tag}:key
+     */
+    public static String tagged(String tag, String key) {
+        if (tag.isEmpty() || tag.indexOf('}') >= 0) {
+            throw new IllegalArgumentException("invalid hash tag: " + tag);
+        }
+        return "{" + tag + "}:" + key;
+    }
+
+    /**
+     * @return key中参与计算slot的部分, 没有hash tag时是整个key
+     */
+    public static String tagOf(String key) {
+        return JedisClusterHashTagUtil.getHashTag(key);
+    }
+
+    /**
+     * @return key所在的slot, 0 ~ 16383
+     */
+    public static int slot(String key) {
+        return JedisClusterCRC16.getSlot(key);
+    }
+
+    /**
+     * @return 所有key是否在同一个slot上
+     */
+    public static boolean sameSlot(String... keys) {
+        for (int i = 1; i < keys.length; i++) {
+            if (slot(keys[i]) != slot(keys[0])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,17 +1,39 @@
 package com.redis.redis_java.jedis;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import com.redis.redis_java.codec.Compression;
+import com.redis.redis_java.codec.Decoder;
+import com.redis.redis_java.codec.LazyList;
+import com.redis.redis_java.codec.LazyMap;
+import com.redis.redis_java.embedded.EmbeddedJedis;
+import com.redis.redis_java.embedded.EmbeddedStore;
 import com.redis.redis_java.jedis.properties.PropertiesService;
+import com.redis.redis_java.metrics.CommandMetrics;
+import com.redis.redis_java.scan.ScanIterator;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.SortingParams;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Pool;
 import redis.clients.util.SafeEncoder;
 
 public class JedisUtils {
@@ -22,12 +44,24 @@ public class JedisUtils {
     public static PropertiesService properties;
     
 	/** Redis 数据缓存时间*/
-    private static final int DEFAULT_CACHE_SECONDS = 60000;
+    static final int DEFAULT_CACHE_SECONDS = 60000;
 
     private static JedisUtils instance;
 
     private static JedisPool jedisPool;
 
+    /** redis.pool.adaptive=true时根据等待时间调整jedisPool的最大连接数*/
+    private static AdaptivePoolController poolController;
+
+    /** redis.mode=embedded时使用进程内的存储引擎代替JedisPool*/
+    private static EmbeddedJedis embeddedJedis;
+
+    /** redis.mode=cluster时按hash slot, redis.mode=sharded时按一致性哈希把命令发送到各节点*/
+    private static KeyRouter router;
+
+    /** 多key命令按分区拆分后并行执行*/
+    private static FanOut fanOut;
+
     /** 重入锁  递归无阻塞的同步机制*/
     private static ReentrantLock lock = new ReentrantLock();
     
@@ -41,6 +75,15 @@ public class JedisUtils {
     private final Hash hash 		= new Hash();
     private final SortSet sortSet 	= new SortSet();
 
+    /** 命令延迟、连接池等待等指标, 同时注册到JMX*/
+    private final CommandMetrics metrics = CommandMetrics.of("JedisUtils");
+
+    /** redis.compress.algorithm不为none时, Strings中byte[]类型的值超过阈值后压缩保存*/
+    private volatile Compression compression;
+
+    /** 异步操作, 第一次使用时创建*/
+    private volatile AsyncJedisUtils async;
+
     private JedisUtils() {}
     
     public static JedisUtils getInstance() {
@@ -57,11 +100,71 @@ public class JedisUtils {
         return instance;
     }
 
+    /**
+     * 不读配置文件, 直接使用给定的内嵌存储或路由, 用于测试; 都为null时下次使用按配置文件重新初始化
+     *
+     * @param embedded
+     * @param keyRouter
+     */
+    static void use(EmbeddedJedis embedded, KeyRouter keyRouter) {
+        lock.lock();
+        try {
+            if (fanOut != null) {
+                fanOut.close();
+            }
+            embeddedJedis = embedded;
+            router = keyRouter;
+            fanOut = keyRouter == null ? null : new FanOut(keyRouter);
+            jedisPool = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * 初始化JedisPool
      */
     private void initJedisPool() {
     	
+        if (properties != null) {
+            compression = Compression.of(properties.getProperty("redis.compress.algorithm"),
+                    Integer.valueOf(properties.getProperty("redis.compress.threshold", "1024")));
+        }
+        if (properties != null && "embedded".equals(properties.getProperty("redis.mode"))) {
+            int concurrency = Integer.valueOf(properties.getProperty("redis.embedded.concurrency", "64"));
+            embeddedJedis = new EmbeddedJedis(new EmbeddedStore(concurrency));
+            return;
+        }
+        if (properties != null && "cluster".equals(properties.getProperty("redis.mode"))) {
+            Set<HostAndPort> nodes = new HashSet<HostAndPort>();
+            for (String node : properties.getProperty("redis.cluster.nodes").split(",")) {
+                nodes.add(HostAndPort.parseString(node.trim()));
+            }
+            JedisPoolConfig config = new JedisPoolConfig();
+            config.setMaxTotal(Integer.valueOf(properties.getProperty("redis.maxActive")));
+            config.setMaxIdle(Integer.valueOf(properties.getProperty("redis.maxIdle")));
+            config.setMaxWaitMillis(Integer.valueOf(properties.getProperty("redis.maxWait")));
+            String password = properties.getProperty("redis.password");
+            router = new ClusterRouter(nodes, config, Integer.valueOf(properties.getProperty("redis.timeout")),
+                    password == null || password.isEmpty() ? null : password,
+                    Integer.valueOf(properties.getProperty("redis.cluster.maxRedirections", "5")));
+            fanOut = new FanOut(router);
+            return;
+        }
+        if (properties != null && "sharded".equals(properties.getProperty("redis.mode"))) {
+            List<HostAndPort> shards = new ArrayList<HostAndPort>();
+            int[] weights = ShardRouter.parse(properties.getProperty("redis.shards"), shards);
+            JedisPoolConfig config = new JedisPoolConfig();
+            config.setMaxTotal(Integer.valueOf(properties.getProperty("redis.maxActive")));
+            config.setMaxIdle(Integer.valueOf(properties.getProperty("redis.maxIdle")));
+            config.setMaxWaitMillis(Integer.valueOf(properties.getProperty("redis.maxWait")));
+            String password = properties.getProperty("redis.password");
+            router = new ShardRouter(shards, weights, config, Integer.valueOf(properties.getProperty("redis.timeout")),
+                    password == null || password.isEmpty() ? null : password,
+                    Integer.valueOf(properties.getProperty("redis.database")));
+            fanOut = new FanOut(router);
+            return;
+        }
         JedisPoolConfig config = new JedisPoolConfig();
         if (properties == null) {
         	config.setMaxTotal(10);
@@ -76,13 +179,27 @@ public class JedisUtils {
             config.setMaxWaitMillis(Integer.valueOf(properties.getProperty("redis.maxWait")));
             config.setTimeBetweenEvictionRunsMillis(Integer.valueOf(properties.getProperty("redis.timeBetweenEvictionRunsMillis")));
             config.setTestWhileIdle(Boolean.getBoolean(properties.getProperty("redis.testWhileIdle")));
-            jedisPool = new JedisPool(config, 
+            ResizableJedisPool pool = new ResizableJedisPool(config, 
             		properties.getProperty("redis.host"), 
             		Integer.valueOf(properties.getProperty("redis.port")),
             		Integer.valueOf(properties.getProperty("redis.timeout")),
             		properties.getProperty("redis.password"),
             		Integer.valueOf(properties.getProperty("redis.database"))
             );
+            if ("true".equals(properties.getProperty("redis.pool.adaptive"))) {
+                poolController = new AdaptivePoolController(pool, metrics,
+                        Integer.valueOf(properties.getProperty("redis.pool.minTotal", "4")),
+                        Integer.valueOf(properties.getProperty("redis.pool.maxTotal", "64")),
+                        Long.valueOf(properties.getProperty("redis.pool.adaptive.targetWaitMillis", "5")),
+                        Long.valueOf(properties.getProperty("redis.pool.adaptive.maxLatencyMillis", "50")),
+                        Long.valueOf(properties.getProperty("redis.pool.adaptive.intervalMillis", "5000")),
+                        size -> {
+                            if (async != null) {
+                                async.setThreads(size);
+                            }
+                        });
+            }
+            jedisPool = pool;
         }
     }
 
@@ -91,17 +208,266 @@ public class JedisUtils {
      *
      * @return
      */
-    private Jedis getJedis() {
-        if (jedisPool == null) {
+    Jedis getJedis() {
+        init();
+        if (embeddedJedis != null) {
+            return embeddedJedis;
+        }
+        if (router != null) {
+            throw new IllegalStateException("cluster and sharded modes require a key to choose the node");
+        }
+        long start = System.nanoTime();
+        Jedis jedis = jedisPool.getResource();
+        metrics.recordPoolWait(start);
+        return jedis;
+    }
+
+    /**
+     * 获取key所在节点的连接, 只有cluster和sharded模式下与getJedis()不同
+     *
+     * @param key
+     * @return
+     */
+    Jedis getJedis(byte[] key) {
+        init();
+        if (router == null) {
+            return getJedis();
+        }
+        long start = System.nanoTime();
+        Jedis jedis = router.getResource(router.partition(key));
+        metrics.recordPoolWait(start);
+        return jedis;
+    }
+
+    private void init() {
+        if (jedisPool == null && embeddedJedis == null && router == null) {
             lock.lock();
             try {
-            	initJedisPool();
-                logger.info("JedisPool init success！");
+                if (jedisPool == null && embeddedJedis == null && router == null) {
+                    initJedisPool();
+                    logger.info("JedisPool init success！");
+                }
             } finally {
                 lock.unlock();
             }
         }
-        return jedisPool.getResource();
+    }
+
+    /**
+     * 借用一个连接执行命令并归还, 记录命令延迟, 失败时记录错误数
+     *
+     * @param command 命令名, 小写, 作为指标的名字
+     * @param action
+     * @return 命令的返回值
+     */
+    <T> T execute(String command, Function<Jedis, T> action) {
+        Jedis jedis = getJedis();
+        long start = System.nanoTime();
+        try {
+            return action.apply(jedis);
+        } catch (RuntimeException e) {
+            metrics.error(command);
+            throw e;
+        } finally {
+            metrics.record(command, start);
+            releaseResource(jedis);
+        }
+    }
+
+    /**
+     * 在key所在的节点上执行命令, cluster模式下收到MOVED/ASK时重定向
+     *
+     * @param command 命令名, 小写, 作为指标的名字
+     * @param key 决定节点的key
+     * @param action
+     * @return 命令的返回值
+     */
+    <T> T execute(String command, byte[] key, Function<Jedis, T> action) {
+        init();
+        KeyRouter r = router;
+        if (r == null) {
+            return execute(command, action);
+        }
+        long start = System.nanoTime();
+        try {
+            return r.execute(r.partition(key), action);
+        } catch (RuntimeException e) {
+            metrics.error(command);
+            throw e;
+        } finally {
+            metrics.record(command, start);
+        }
+    }
+
+    <T> T execute(String command, String key, Function<Jedis, T> action) {
+        init();
+        return router == null ? execute(command, action) : execute(command, SafeEncoder.encode(key), action);
+    }
+
+    /**
+     * @return cluster、sharded模式下命令需要按key路由到各节点
+     */
+    boolean isRouted() {
+        init();
+        return router != null;
+    }
+
+    /**
+     * @param key
+     * @return key所在的分区, 非cluster、sharded模式下只有分区0
+     */
+    int partition(byte[] key) {
+        init();
+        return router == null ? 0 : router.partition(key);
+    }
+
+    /**
+     * 按key所在的节点拆分, 每个节点借用一个连接调用一次action, 不同节点并行执行; 非cluster、sharded模式下只有一个节点
+     *
+     * @param command 命令名, 小写, 作为指标的名字
+     * @param keys
+     * @param action 参数是该节点的key在keys中的位置
+     * @return 每个节点的结果
+     */
+    <R> List<FanOut.Part<R>> executeByNode(String command, byte[][] keys, BiFunction<Jedis, int[], R> action) {
+        init();
+        if (router == null) {
+            return executeByPartition(command, keys, action);
+        }
+        long start = System.nanoTime();
+        try {
+            return fanOut.byNode(keys, action);
+        } catch (RuntimeException e) {
+            metrics.error(command);
+            throw e;
+        } finally {
+            metrics.record(command, start);
+        }
+    }
+
+    /**
+     * 多key命令按分区拆分, 每个分区调用一次action, 不同节点并行执行; 非cluster、sharded模式下只有一个分区
+     *
+     * @param command 命令名, 小写, 作为指标的名字
+     * @param keys
+     * @param action 参数是该分区的key在keys中的位置
+     * @return 每个分区的结果
+     */
+    <R> List<FanOut.Part<R>> executeByPartition(String command, byte[][] keys, BiFunction<Jedis, int[], R> action) {
+        init();
+        if (router == null) {
+            int[] indexes = new int[keys.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+            FanOut.Part<R> part = new FanOut.Part<R>(indexes);
+            part.result = execute(command, jedis -> action.apply(jedis, indexes));
+            return Collections.singletonList(part);
+        }
+        long start = System.nanoTime();
+        try {
+            return fanOut.byPartition(keys, action);
+        } catch (RuntimeException e) {
+            metrics.error(command);
+            throw e;
+        } finally {
+            metrics.record(command, start);
+        }
+    }
+
+    <R> List<FanOut.Part<R>> executeByPartition(String command, String[] keys, BiFunction<Jedis, int[], R> action) {
+        init();
+        return executeByPartition(command, router == null ? new byte[keys.length][] : encode(keys), action);
+    }
+
+    /**
+     * @return newKey和keys是否在同一个分区, 非cluster、sharded模式下总是true
+     */
+    private boolean samePartition(String newKey, String... keys) {
+        init();
+        KeyRouter r = router;
+        if (r == null) {
+            return true;
+        }
+        int partition = r.partition(SafeEncoder.encode(newKey));
+        for (String key : keys) {
+            if (r.partition(SafeEncoder.encode(key)) != partition) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * rename/renamenx要求两个key在同一个分区, 否则sharded模式下新key会落在错误的节点上,
+     * cluster模式下会返回CROSSSLOT
+     */
+    private void checkSamePartition(String command, byte[] oldKey, byte[] newKey) {
+        init();
+        KeyRouter r = router;
+        if (r != null && r.partition(oldKey) != r.partition(newKey)) {
+            throw new JedisDataException("ERR '" + command + "' keys are in different partitions: "
+                    + SafeEncoder.encode(oldKey) + ", " + SafeEncoder.encode(newKey)
+                    + ", use HashTags.tagged to keep them together");
+        }
+    }
+
+    /**
+     * 在每个节点上执行一次, 非cluster、sharded模式下只有一个节点
+     */
+    <R> List<R> executeOnAllNodes(String command, Function<Jedis, R> action) {
+        init();
+        if (router == null) {
+            return Collections.singletonList(execute(command, action));
+        }
+        long start = System.nanoTime();
+        try {
+            return fanOut.onAllNodes(action);
+        } catch (RuntimeException e) {
+            metrics.error(command);
+            throw e;
+        } finally {
+            metrics.record(command, start);
+        }
+    }
+
+    /**
+     * SCAN遍历key时的连接来源, cluster和sharded模式下每个节点一个
+     */
+    private List<Supplier<Jedis>> scanSources() {
+        init();
+        if (router == null) {
+            return Collections.<Supplier<Jedis>>singletonList(this::getJedis);
+        }
+        List<Supplier<Jedis>> sources = new ArrayList<Supplier<Jedis>>();
+        for (Pool<Jedis> pool : router.nodes()) {
+            sources.add(pool::getResource);
+        }
+        return sources;
+    }
+
+    private static byte[][] encode(String... keys) {
+        byte[][] encoded = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            encoded[i] = SafeEncoder.encode(keys[i]);
+        }
+        return encoded;
+    }
+
+    private static String[] pick(String[] keys, int[] indexes) {
+        String[] picked = new String[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            picked[i] = keys[indexes[i]];
+        }
+        return picked;
+    }
+
+    private static byte[][] pick(byte[][] keys, int[] indexes) {
+        byte[][] picked = new byte[indexes.length][];
+        for (int i = 0; i < indexes.length; i++) {
+            picked[i] = keys[indexes[i]];
+        }
+        return picked;
     }
 
     /**
@@ -109,12 +475,53 @@ public class JedisUtils {
 	 * 
 	 * @param jedis
 	 */
-	private void releaseResource(Jedis jedis) {
+	void releaseResource(Jedis jedis) {
 		if (jedis != null) {
 			jedis.close();
 		}
 	}
 
+    /**
+     * 每个命令的延迟直方图、连接池等待时间, 也可以通过JMX读取
+     *
+     * @return CommandMetrics
+     */
+    public CommandMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * 按key前缀统计的压缩率和耗时, 未启用压缩时返回null
+     */
+    public Compression compression() {
+        return compression;
+    }
+
+    /**
+     * 替换配置文件中的压缩设置, 传入null关闭; 关闭后之前压缩保存的值读取时仍然自动解压
+     *
+     * @param compression
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * 启用压缩时所有值都带格式头保存; 未启用时只有以格式头开头的值加上不压缩的格式头
+     */
+    byte[] compress(byte[] key, byte[] value) {
+        Compression c = compression;
+        return c == null ? Compression.escape(value) : c.compress(SafeEncoder.encode(key), value);
+    }
+
+    /**
+     * 按格式头解压, 与当前是否启用压缩无关
+     */
+    byte[] decompress(byte[] key, byte[] value) {
+        Compression c = compression;
+        return c == null ? Compression.decompress(value) : c.decompress(SafeEncoder.encode(key), value);
+    }
+
     public Keys keys() {
         return keys;
     }
@@ -139,6 +546,49 @@ public class JedisUtils {
         return sortSet;
     }
 
+    /**
+     * 异步操作, 返回CompletableFuture, 由与连接池大小相同的线程池执行
+     * 共享的实例被close后, 下次调用创建新的实例
+     *
+     * @return AsyncJedisUtils
+     */
+    public AsyncJedisUtils async() {
+        AsyncJedisUtils current = async;
+        if (current == null || current.isClosed()) {
+            lock.lock();
+            try {
+                current = async;
+                if (current == null || current.isClosed()) {
+                    current = new AsyncJedisUtils(this);
+                    async = current;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 连接池最大连接数
+     */
+    int getMaxTotal() {
+        if (jedisPool instanceof ResizableJedisPool) {
+            return ((ResizableJedisPool) jedisPool).getMaxTotal();
+        }
+        return properties == null ? 10 : Integer.valueOf(properties.getProperty("redis.maxActive"));
+    }
+
+    /**
+     * 创建一个批量操作, 命令在本地排队, 调用execute()时通过Pipeline一次发送;
+     * cluster、sharded模式下按key所在的节点拆分, 每个节点一个Pipeline并行发送
+     *
+     * @return Batch
+     */
+    public Batch batch() {
+        return new Batch(this);
+    }
+
     public class Keys {
 
         /**
@@ -152,10 +602,7 @@ public class JedisUtils {
             if (seconds <= 0) {
                 return -1L;
             }
-            Jedis jedis = getJedis();
-            long result = jedis.expire(key, seconds);
-            releaseResource(jedis);
-            return result;
+            return execute("expire", key, jedis -> jedis.expire(key, seconds));
         }
 
         /**
@@ -175,10 +622,7 @@ public class JedisUtils {
          * @return 影响的记录数
          */
         public long expireAt(String key, long timestamp) {
-            Jedis jedis = getJedis();
-            long result = jedis.expireAt(key, timestamp);
-            releaseResource(jedis);
-            return result;
+            return execute("expireat", key, jedis -> jedis.expireAt(key, timestamp));
         }
 
         /**
@@ -188,10 +632,7 @@ public class JedisUtils {
          * @return 以秒为单位的时间表示
          */
         public long ttl(String key) {
-            Jedis jedis = getJedis();
-            long len = jedis.ttl(key);
-            releaseResource(jedis);
-            return len;
+            return execute("ttl", key, jedis -> jedis.ttl(key));
         }
 
         /**
@@ -201,10 +642,7 @@ public class JedisUtils {
          * @return 影响的记录数
          */
         public long persist(String key) {
-            Jedis jedis = getJedis();
-            long result = jedis.persist(key);
-            releaseResource(jedis);
-            return result;
+            return execute("persist", key, jedis -> jedis.persist(key));
         }
 
         /**
@@ -213,10 +651,7 @@ public class JedisUtils {
          * @return
          */
         public String flushAll() {
-            Jedis jedis = getJedis();
-            String result = jedis.flushAll();
-            releaseResource(jedis);
-            return result;
+            return executeOnAllNodes("flushall", jedis -> jedis.flushAll()).get(0);
         }
 
         /**
@@ -226,10 +661,7 @@ public class JedisUtils {
          * @return boolean
          */
         public boolean exists(String key) {
-            Jedis jedis = getJedis();
-            boolean result = jedis.exists(key);
-            releaseResource(jedis);
-            return result;
+            return execute("exists", key, jedis -> jedis.exists(key));
         }
 
         /**
@@ -242,26 +674,24 @@ public class JedisUtils {
 
         /**
          * 更改key,仅当新key不存在时才执行
+         * cluster、sharded模式下两个key必须在同一个分区, 否则抛出JedisDataException
          *
          * @param oldKey
          * @param newKey
          * @return 状态码
          */
         public long renamenx(String oldKey, String newKey) {
-            Jedis jedis = getJedis();
-            long status = jedis.renamenx(oldKey, newKey);
-            releaseResource(jedis);
-            return status;
+            checkSamePartition("renamenx", SafeEncoder.encode(oldKey), SafeEncoder.encode(newKey));
+            return execute("renamenx", oldKey, jedis -> jedis.renamenx(oldKey, newKey));
         }
 
         /**
          * 更改key
+         * cluster、sharded模式下两个key必须在同一个分区, 否则抛出JedisDataException
          */
         public String rename(byte[] oldKey, byte[] newKey) {
-            Jedis jedis = getJedis();
-            String status = jedis.rename(oldKey, newKey);
-            releaseResource(jedis);
-            return status;
+            checkSamePartition("rename", oldKey, newKey);
+            return execute("rename", oldKey, jedis -> jedis.rename(oldKey, newKey));
         }
 
 
@@ -272,10 +702,11 @@ public class JedisUtils {
          * @return 删除的记录数
          */
         public long del(String... keys) {
-            Jedis jedis = getJedis();
-            long count = jedis.del(keys);
-            releaseResource(jedis);
-            return count;
+            long deleted = 0;
+            for (FanOut.Part<Long> part : executeByPartition("del", keys, (jedis, indexes) -> jedis.del(pick(keys, indexes)))) {
+                deleted += part.result;
+            }
+            return deleted;
         }
 
         /**
@@ -285,10 +716,11 @@ public class JedisUtils {
          * @return 删除的记录数
          */
         public long del(byte[]... keys) {
-            Jedis jedis = getJedis();
-            long count = jedis.del(keys);
-            releaseResource(jedis);
-            return count;
+            long deleted = 0;
+            for (FanOut.Part<Long> part : executeByPartition("del", keys, (jedis, indexes) -> jedis.del(pick(keys, indexes)))) {
+                deleted += part.result;
+            }
+            return deleted;
         }
 
         /**
@@ -298,10 +730,7 @@ public class JedisUtils {
          * @return List<String> 集合的全部记录
          */
         public List<String> sort(String key) {
-            Jedis jedis = getJedis();
-            List<String> list = jedis.sort(key);
-            releaseResource(jedis);
-            return list;
+            return execute("sort", key, jedis -> jedis.sort(key));
         }
 
         /**
@@ -312,10 +741,7 @@ public class JedisUtils {
          * @return List<String> 全部或部分记录
          */
         public List<String> sort(String key, SortingParams parame) {
-            Jedis jedis = getJedis();
-            List<String> list = jedis.sort(key, parame);
-            releaseResource(jedis);
-            return list;
+            return execute("sort", key, jedis -> jedis.sort(key, parame));
         }
 
         /**
@@ -325,22 +751,57 @@ public class JedisUtils {
          * @return String string|list|set|zset|hash
          */
         public String type(String key) {
-            Jedis jedis = getJedis();
-            String type = jedis.type(key);
-            releaseResource(jedis);
-            return type;
+            return execute("type", key, jedis -> jedis.type(key));
         }
 
         /**
          * 查找所有匹配给定的模式的键
+         * 通过SCAN分页获取, 不会像KEYS一样阻塞Redis, 但结果仍全部放在内存中, key较多时应使用scan;
+         * cluster、sharded模式下各节点并行遍历
          *
          * @param pattern 的表达式,*表示多个，？表示一个
          */
         public Set<String> keys(String pattern) {
-            Jedis jedis = getJedis();
-            Set<String> set = jedis.keys(pattern);
-            releaseResource(jedis);
-            return set;
+            return parallelScan(pattern, ScanIterator.DEFAULT_COUNT, null).collect(Collectors.toSet());
+        }
+
+        /**
+         * 以SCAN分页遍历匹配给定模式的键, 每次只取一页
+         *
+         * @param pattern 的表达式,*表示多个，？表示一个
+         * @param count 每页数量
+         * @return ScanIterator, 可通过stream()转为Stream
+         */
+        public ScanIterator<String> scan(String pattern, int count) {
+            return scan(pattern, count, null);
+        }
+
+        /**
+         * 以SCAN分页遍历匹配给定模式且为指定类型的键
+         *
+         * @param pattern 的表达式,*表示多个，？表示一个
+         * @param count 每页数量
+         * @param type string|list|set|zset|hash, null表示不过滤
+         * @return ScanIterator
+         */
+        public ScanIterator<String> scan(String pattern, int count, String type) {
+            return ScanIterator.keys(scanSources(), pattern, count, type);
+        }
+
+        /**
+         * 以SCAN遍历匹配给定模式且为指定类型的键, cluster、sharded模式下各节点并行遍历, 每个节点内按页顺序遍历
+         *
+         * @param pattern 的表达式,*表示多个，？表示一个
+         * @param count 每页数量
+         * @param type string|list|set|zset|hash, null表示不过滤
+         * @return 并行的Stream, 只有一个节点时与scan(pattern, count, type).stream()相同
+         */
+        public Stream<String> parallelScan(String pattern, int count, String type) {
+            List<Supplier<Jedis>> sources = scanSources();
+            if (sources.size() == 1) {
+                return ScanIterator.keys(sources.get(0), pattern, count, type).stream();
+            }
+            return ScanIterator.parallelKeys(sources, pattern, count, type);
         }
     }
 
@@ -354,16 +815,10 @@ public class JedisUtils {
          * @return 操作码, 0或1
          */
         public long sadd(String key, String member) {
-            Jedis jedis = getJedis();
-            long status = jedis.sadd(key, member);
-            releaseResource(jedis);
-            return status;
+            return execute("sadd", key, jedis -> jedis.sadd(key, member));
         }
         public long sadd(byte[] key, byte[] member) {
-            Jedis jedis = getJedis();
-            long status = jedis.sadd(key, member);
-            releaseResource(jedis);
-            return status;
+            return execute("sadd", key, jedis -> jedis.sadd(key, member));
         }
 
         /**
@@ -373,10 +828,7 @@ public class JedisUtils {
          * @return 元素个数
          */
         public long scard(String key) {
-            Jedis jedis = getJedis();
-            long len = jedis.scard(key);
-            releaseResource(jedis);
-            return len;
+            return execute("scard", key, jedis -> jedis.scard(key));
         }
 
         /**
@@ -386,10 +838,21 @@ public class JedisUtils {
          * @return 差异的成员集合
          */
         public Set<String> sdiff(String... keys) {
-            Jedis jedis = getJedis();
-            Set<String> set = jedis.sdiff(keys);
-            releaseResource(jedis);
-            return set;
+            // 第一个key所在的分区做差集, 其他分区取并集后再从中去掉
+            Set<String> result = null;
+            List<Set<String>> others = new ArrayList<Set<String>>();
+            for (FanOut.Part<Set<String>> part : executeByPartition("sdiff", keys, (jedis, indexes) -> indexes[0] == 0
+                    ? jedis.sdiff(pick(keys, indexes)) : jedis.sunion(pick(keys, indexes)))) {
+                if (part.indexes[0] == 0) {
+                    result = part.result;
+                } else {
+                    others.add(part.result);
+                }
+            }
+            for (Set<String> other : others) {
+                result.removeAll(other);
+            }
+            return result;
         }
 
         /**
@@ -400,10 +863,10 @@ public class JedisUtils {
          * @return 新集合中的记录数
          */
         public long sdiffstore(String newKey, String... keys) {
-            Jedis jedis = getJedis();
-            long count = jedis.sdiffstore(newKey, keys);
-            releaseResource(jedis);
-            return count;
+            if (samePartition(newKey, keys)) {
+                return execute("sdiffstore", newKey, jedis -> jedis.sdiffstore(newKey, keys));
+            }
+            return store("sdiffstore", newKey, sdiff(keys));
         }
 
         /**
@@ -413,10 +876,15 @@ public class JedisUtils {
          * @return 交集成员的集合
          */
         public Set<String> sinter(String... keys) {
-            Jedis jedis = getJedis();
-            Set<String> set = jedis.sinter(keys);
-            releaseResource(jedis);
-            return set;
+            Set<String> result = null;
+            for (FanOut.Part<Set<String>> part : executeByPartition("sinter", keys, (jedis, indexes) -> jedis.sinter(pick(keys, indexes)))) {
+                if (result == null) {
+                    result = part.result;
+                } else {
+                    result.retainAll(part.result);
+                }
+            }
+            return result;
         }
 
         /**
@@ -427,10 +895,10 @@ public class JedisUtils {
          * @return 新集合中的记录数
          */
         public long sinterstore(String newKey, String... keys) {
-            Jedis jedis = getJedis();
-            long count = jedis.sinterstore(newKey, keys);
-            releaseResource(jedis);
-            return count;
+            if (samePartition(newKey, keys)) {
+                return execute("sinterstore", newKey, jedis -> jedis.sinterstore(newKey, keys));
+            }
+            return store("sinterstore", newKey, sinter(keys));
         }
 
         /**
@@ -441,10 +909,7 @@ public class JedisUtils {
          * @return 存在返回1，不存在返回0
          */
         public boolean sismember(String key, String member) {
-            Jedis jedis = getJedis();
-            boolean status = jedis.sismember(key, member);
-            releaseResource(jedis);
-            return status;
+            return execute("sismember", key, jedis -> jedis.sismember(key, member));
         }
 
         /**
@@ -454,16 +919,35 @@ public class JedisUtils {
          * @return 成员集合
          */
         public Set<String> smembers(String key) {
-            Jedis jedis = getJedis();
-            Set<String> set = jedis.smembers(key);
-            releaseResource(jedis);
-            return set;
+            return execute("smembers", key, jedis -> jedis.smembers(key));
         }
         public Set<byte[]> smembers(byte[] key) {
-            Jedis jedis = getJedis();
-            Set<byte[]> set = jedis.smembers(key);
-            releaseResource(jedis);
-            return set;
+            return execute("smembers", key, jedis -> jedis.smembers(key));
+        }
+
+        /**
+         * 返回集合中的所有成员, 成员在被访问时才解码
+         *
+         * @param key
+         * @param decoder 成员的解码方式
+         * @return 保留原始字节的列表, 需要全部成员时调用decodeAll()
+         */
+        public <T> LazyList<T> smembers(byte[] key, Decoder<? extends T> decoder) {
+            return new LazyList<T>(new ArrayList<byte[]>(smembers(key)), decoder);
+        }
+
+        /**
+         * 以SSCAN分页遍历集合中的成员, 每次只取一页, 适合成员很多的集合
+         *
+         * @param key
+         * @param count 每页数量
+         * @return ScanIterator
+         */
+        public ScanIterator<String> sscan(String key, int count) {
+            return ScanIterator.set(() -> getJedis(SafeEncoder.encode(key)), key, null, count);
+        }
+        public ScanIterator<byte[]> sscan(byte[] key, int count) {
+            return ScanIterator.binarySet(() -> getJedis(key), key, null, count);
         }
 
         /**
@@ -471,16 +955,22 @@ public class JedisUtils {
          * 如果源集合不存在或不包含指定成员，不进行任何操作，返回0
          * 否则该成员从源集合上删除，并添加到目标集合，如果目标集合中成员已存在，则只在源集合进行删除
          *
+         * cluster、sharded模式下两个集合不在同一个分区时, 先在源集合srem再在目标集合sadd, 两步之间不是原子的
+         *
          * @param srckey 源集合
          * @param dstkey 目标集合
          * @param member 源集合中的成员
          * @return 状态码，1成功，0失败
          */
         public long smove(String srckey, String dstkey, String member) {
-            Jedis jedis = getJedis();
-            long status = jedis.smove(srckey, dstkey, member);
-            releaseResource(jedis);
-            return status;
+            if (samePartition(dstkey, srckey)) {
+                return execute("smove", srckey, jedis -> jedis.smove(srckey, dstkey, member));
+            }
+            if (srem(srckey, member) == 0) {
+                return 0;
+            }
+            execute("sadd", dstkey, jedis -> jedis.sadd(dstkey, member));
+            return 1;
         }
 
         /**
@@ -490,10 +980,7 @@ public class JedisUtils {
          * @return 被删除的成员
          */
         public String spop(String key) {
-            Jedis jedis = getJedis();
-            String s = jedis.spop(key);
-            releaseResource(jedis);
-            return s;
+            return execute("spop", key, jedis -> jedis.spop(key));
         }
 
         /**
@@ -504,10 +991,7 @@ public class JedisUtils {
          * @return 状态码，成功返回1，成员不存在返回0
          */
         public long srem(String key, String member) {
-            Jedis jedis = getJedis();
-            long status = jedis.srem(key, member);
-            releaseResource(jedis);
-            return status;
+            return execute("srem", key, jedis -> jedis.srem(key, member));
         }
 
         /**
@@ -517,10 +1001,15 @@ public class JedisUtils {
          * @return 合并后的结果集合
          */
         public Set<String> sunion(String... keys) {
-            Jedis jedis = getJedis();
-            Set<String> set = jedis.sunion(keys);
-            releaseResource(jedis);
-            return set;
+            Set<String> result = null;
+            for (FanOut.Part<Set<String>> part : executeByPartition("sunion", keys, (jedis, indexes) -> jedis.sunion(pick(keys, indexes)))) {
+                if (result == null) {
+                    result = part.result;
+                } else {
+                    result.addAll(part.result);
+                }
+            }
+            return result;
         }
 
         /**
@@ -530,10 +1019,25 @@ public class JedisUtils {
          * @param keys   要合并的集合
          */
         public long sunionstore(String newKey, String... keys) {
-            Jedis jedis = getJedis();
-            long s = jedis.sunionstore(newKey, keys);
-            releaseResource(jedis);
-            return s;
+            if (samePartition(newKey, keys)) {
+                return execute("sunionstore", newKey, jedis -> jedis.sunionstore(newKey, keys));
+            }
+            return store("sunionstore", newKey, sunion(keys));
+        }
+
+        /**
+         * 用members覆盖newKey, 用于结果集合与源集合不在同一分区时
+         */
+        private long store(String command, String newKey, Set<String> members) {
+            return execute(command, newKey, jedis -> {
+                Transaction tx = jedis.multi();
+                tx.del(newKey);
+                if (!members.isEmpty()) {
+                    tx.sadd(newKey, members.toArray(new String[members.size()]));
+                }
+                tx.exec();
+                return (long) members.size();
+            });
         }
     }
     
@@ -548,10 +1052,7 @@ public class JedisUtils {
          * @return 状态码 1成功，0已存在
          */
         public long zadd(String key, double score, String member) {
-            Jedis jedis = getJedis();
-            long status = jedis.zadd(key, score, member);
-            releaseResource(jedis);
-            return status;
+            return execute("zadd", key, jedis -> jedis.zadd(key, score, member));
         }
 
         /**
@@ -561,10 +1062,7 @@ public class JedisUtils {
          * @return 如果返回0则集合不存在
          */
         public long zcard(String key) {
-            Jedis jedis = getJedis();
-            long len = jedis.zcard(key);
-            releaseResource(jedis);
-            return len;
+            return execute("zcard", key, jedis -> jedis.zcard(key));
         }
 
         /**
@@ -575,10 +1073,7 @@ public class JedisUtils {
          * @param max 最大排序位置
          */
         public long zcount(String key, double min, double max) {
-            Jedis jedis = getJedis();
-            long len = jedis.zcount(key, min, max);
-            releaseResource(jedis);
-            return len;
+            return execute("zcount", key, jedis -> jedis.zcount(key, min, max));
         }
 
         /**
@@ -588,10 +1083,7 @@ public class JedisUtils {
          * @return
          */
         public long zlength(String key) {
-            long len = 0;
-            Set<String> set = zrange(key, 0, -1);
-            len = set.size();
-            return len;
+            return zcard(key);
         }
 
         /**
@@ -603,10 +1095,7 @@ public class JedisUtils {
          * @return 增后的权重
          */
         public double zincrby(String key, double score, String member) {
-            Jedis jedis = getJedis();
-            double s = jedis.zincrby(key, score, member);
-            releaseResource(jedis);
-            return s;
+            return execute("zincrby", key, jedis -> jedis.zincrby(key, score, member));
         }
 
         /**
@@ -618,10 +1107,18 @@ public class JedisUtils {
          * @return Set<String>
          */
         public Set<String> zrange(String key, int start, int end) {
-            Jedis jedis = getJedis();
-            Set<String> set = jedis.zrange(key, start, end);
-            releaseResource(jedis);
-            return set;
+            return execute("zrange", key, jedis -> jedis.zrange(key, start, end));
+        }
+
+        /**
+         * 以ZSCAN分页遍历集合中的成员和权重, 每次只取一页, 适合代替zrange(key, 0, -1), 不保证按权重排序
+         *
+         * @param key
+         * @param count 每页数量
+         * @return ScanIterator
+         */
+        public ScanIterator<Tuple> zscan(String key, int count) {
+            return ScanIterator.sortedSet(() -> getJedis(SafeEncoder.encode(key)), key, null, count);
         }
 
         /**
@@ -633,10 +1130,7 @@ public class JedisUtils {
          * @return Set<String>
          */
         public Set<String> zrangeByScore(String key, double min, double max) {
-            Jedis jedis = getJedis();
-            Set<String> set = jedis.zrangeByScore(key, min, max);
-            releaseResource(jedis);
-            return set;
+            return execute("zrangebyscore", key, jedis -> jedis.zrangeByScore(key, min, max));
         }
 
         /**
@@ -647,10 +1141,7 @@ public class JedisUtils {
          * @return long 位置
          */
         public long zrank(String key, String member) {
-            Jedis jedis = getJedis();
-            long index = jedis.zrank(key, member);
-            releaseResource(jedis);
-            return index;
+            return execute("zrank", key, jedis -> jedis.zrank(key, member));
         }
 
         /**
@@ -661,10 +1152,7 @@ public class JedisUtils {
          * @return long 位置
          */
         public long zrevrank(String key, String member) {
-            Jedis jedis = getJedis();
-            long index = jedis.zrevrank(key, member);
-            releaseResource(jedis);
-            return index;
+            return execute("zrevrank", key, jedis -> jedis.zrevrank(key, member));
         }
 
         /**
@@ -675,10 +1163,7 @@ public class JedisUtils {
          * @return 返回1成功
          */
         public long zrem(String key, String member) {
-            Jedis jedis = getJedis();
-            long status = jedis.zrem(key, member);
-            releaseResource(jedis);
-            return status;
+            return execute("zrem", key, jedis -> jedis.zrem(key, member));
         }
 
         /**
@@ -688,10 +1173,7 @@ public class JedisUtils {
          * @return
          */
         public long zrem(String key) {
-            Jedis jedis = getJedis();
-            long s = jedis.del(key);
-            releaseResource(jedis);
-            return s;
+            return execute("del", key, jedis -> jedis.del(key));
         }
 
         /**
@@ -703,10 +1185,7 @@ public class JedisUtils {
          * @return 删除的数量
          */
         public long zremrangeByRank(String key, int start, int end) {
-            Jedis jedis = getJedis();
-            long s = jedis.zremrangeByRank(key, start, end);
-            releaseResource(jedis);
-            return s;
+            return execute("zremrangebyrank", key, jedis -> jedis.zremrangeByRank(key, start, end));
         }
 
         /**
@@ -718,10 +1197,7 @@ public class JedisUtils {
          * @return 删除的数量
          */
         public long zremrangeByScore(String key, double min, double max) {
-            Jedis jedis = getJedis();
-            long s = jedis.zremrangeByScore(key, min, max);
-            releaseResource(jedis);
-            return s;
+            return execute("zremrangebyscore", key, jedis -> jedis.zremrangeByScore(key, min, max));
         }
 
         /**
@@ -733,10 +1209,7 @@ public class JedisUtils {
          * @return Set<String>
          */
         public Set<String> zrevrange(String key, int start, int end) {
-            Jedis jedis = getJedis();
-            Set<String> set = jedis.zrevrange(key, start, end);
-            releaseResource(jedis);
-            return set;
+            return execute("zrevrange", key, jedis -> jedis.zrevrange(key, start, end));
         }
 
         /**
@@ -747,9 +1220,7 @@ public class JedisUtils {
          * @return double 权重
          */
         public double zscore(String key, String memebr) {
-            Jedis jedis = getJedis();
-            Double score = jedis.zscore(key, memebr);
-            releaseResource(jedis);
+            Double score = execute("zscore", key, jedis -> jedis.zscore(key, memebr));
             if (score != null)
                 return score;
             return 0;
@@ -766,16 +1237,10 @@ public class JedisUtils {
          * @return 状态码，1成功，0失败
          */
         public long hdel(String key, String fieid) {
-            Jedis jedis = getJedis();
-            long status = jedis.hdel(key, fieid);
-            releaseResource(jedis);
-            return status;
+            return execute("hdel", key, jedis -> jedis.hdel(key, fieid));
         }
         public long hdel(String key) {
-            Jedis jedis = getJedis();
-            long s = jedis.del(key);
-            releaseResource(jedis);
-            return s;
+            return execute("del", key, jedis -> jedis.del(key));
         }
 
         /**
@@ -786,10 +1251,7 @@ public class JedisUtils {
          * @return 1存在，0不存在
          */
         public boolean hexists(String key, String fieid) {
-            Jedis jedis = getJedis();
-            boolean status = jedis.hexists(key, fieid);
-            releaseResource(jedis);
-            return status;
+            return execute("hexists", key, jedis -> jedis.hexists(key, fieid));
         }
 
         /**
@@ -800,16 +1262,10 @@ public class JedisUtils {
          * @return 存储对应的值
          */
         public String hget(String key, String fieid) {
-            Jedis jedis = getJedis();
-            String s = jedis.hget(key, fieid);
-            releaseResource(jedis);
-            return s;
+            return execute("hget", key, jedis -> jedis.hget(key, fieid));
         }
         public byte[] hget(byte[] key, byte[] fieid) {
-            Jedis jedis = getJedis();
-            byte[] s = jedis.hget(key, fieid);
-            releaseResource(jedis);
-            return s;
+            return execute("hget", key, jedis -> jedis.hget(key, fieid));
         }
 
         /**
@@ -819,10 +1275,19 @@ public class JedisUtils {
          * @return Map<Strinig,String>
          */
         public Map<String, String> hgetAll(String key) {
-            Jedis jedis = getJedis();
-            Map<String, String> map = jedis.hgetAll(key);
-            releaseResource(jedis);
-            return map;
+            return execute("hgetall", key, jedis -> jedis.hgetAll(key));
+        }
+
+        /**
+         * 以HSCAN分页遍历hash中的存储和值, 每次只取一页, 适合存储很多的hash
+         * 只需要存储或值时可以 hscan(key, count).stream().map(Map.Entry::getKey)
+         *
+         * @param key
+         * @param count 每页数量
+         * @return ScanIterator
+         */
+        public ScanIterator<Map.Entry<String, String>> hscan(String key, int count) {
+            return ScanIterator.hash(() -> getJedis(SafeEncoder.encode(key)), key, null, count);
         }
 
         /**
@@ -834,16 +1299,10 @@ public class JedisUtils {
          * @return 状态码 1成功，0失败，fieid已存在将更新，也返回0
          */
         public long hset(String key, String fieid, String value) {
-            Jedis jedis = getJedis();
-            long status = jedis.hset(key, fieid, value);
-            releaseResource(jedis);
-            return status;
+            return execute("hset", key, jedis -> jedis.hset(key, fieid, value));
         }
         public long hset(String key, String fieid, byte[] value) {
-            Jedis jedis = getJedis();
-            long status = jedis.hset(key.getBytes(), fieid.getBytes(), value);
-            releaseResource(jedis);
-            return status;
+            return execute("hset", key.getBytes(), jedis -> jedis.hset(key.getBytes(), fieid.getBytes(), value));
         }
 
         /**
@@ -855,10 +1314,7 @@ public class JedisUtils {
          * @return 状态码 1成功，0失败fieid已存
          */
         public long hsetnx(String key, String fieid, String value) {
-            Jedis jedis = getJedis();
-            long status = jedis.hsetnx(key, fieid, value);
-            releaseResource(jedis);
-            return status;
+            return execute("hsetnx", key, jedis -> jedis.hsetnx(key, fieid, value));
         }
 
         /**
@@ -868,10 +1324,7 @@ public class JedisUtils {
          * @return List<String>
          */
         public List<String> hvals(String key) {
-            Jedis jedis = getJedis();
-            List<String> list = jedis.hvals(key);
-            releaseResource(jedis);
-            return list;
+            return execute("hvals", key, jedis -> jedis.hvals(key));
         }
 
         /**
@@ -883,10 +1336,7 @@ public class JedisUtils {
          * @return 增加指定数字后，存储位置的值
          */
         public long hincrby(String key, String fieid, long value) {
-            Jedis jedis = getJedis();
-            long s = jedis.hincrBy(key, fieid, value);
-            releaseResource(jedis);
-            return s;
+            return execute("hincrby", key, jedis -> jedis.hincrBy(key, fieid, value));
         }
 
         /**
@@ -896,10 +1346,7 @@ public class JedisUtils {
          * @return Set<String> 存储名称的集合
          */
         public Set<String> hkeys(String key) {
-            Jedis jedis = getJedis();
-            Set<String> set = jedis.hkeys(key);
-            releaseResource(jedis);
-            return set;
+            return execute("hkeys", key, jedis -> jedis.hkeys(key));
         }
 
         /**
@@ -909,10 +1356,7 @@ public class JedisUtils {
          * @return long 存储的个数
          */
         public long hlen(String key) {
-            Jedis jedis = getJedis();
-            long len = jedis.hlen(key);
-            releaseResource(jedis);
-            return len;
+            return execute("hlen", key, jedis -> jedis.hlen(key));
         }
 
         /**
@@ -923,16 +1367,23 @@ public class JedisUtils {
          * @return List<String>
          */
         public List<String> hmget(String key, String... fieids) {
-            Jedis jedis = getJedis();
-            List<String> list = jedis.hmget(key, fieids);
-            releaseResource(jedis);
-            return list;
+            return execute("hmget", key, jedis -> jedis.hmget(key, fieids));
+        }
+        /**
+         * 返回hash中所有的field和value, value在被访问时才解码
+         * get(field)只解码这一个value, 适合从大hash中取少数field
+         *
+         * @param key
+         * @param decoder value的解码方式
+         * @return 保留原始字节的Map, 需要全部内容时调用decodeAll()
+         */
+        public <V> LazyMap<String, V> hgetAll(byte[] key, Decoder<? extends V> decoder) {
+            Map<byte[], byte[]> raw = execute("hgetall", key, jedis -> jedis.hgetAll(key));
+            return new LazyMap<String, V>(raw, field -> SafeEncoder.encode((String) field), SafeEncoder::encode, decoder);
         }
+
         public List<byte[]> hmget(byte[] key, byte[]... fieids) {
-            Jedis jedis = getJedis();
-            List<byte[]> list = jedis.hmget(key, fieids);
-            releaseResource(jedis);
-            return list;
+            return execute("hmget", key, jedis -> jedis.hmget(key, fieids));
         }
 
         /**
@@ -943,16 +1394,10 @@ public class JedisUtils {
          * @return 状态，成功返回OK
          */
         public String hmset(String key, Map<String, String> map) {
-            Jedis jedis = getJedis();
-            String s = jedis.hmset(key, map);
-            releaseResource(jedis);
-            return s;
+            return execute("hmset", key, jedis -> jedis.hmset(key, map));
         }
         public String hmset(byte[] key, Map<byte[], byte[]> map) {
-            Jedis jedis = getJedis();
-            String s = jedis.hmset(key, map);
-            releaseResource(jedis);
-            return s;
+            return execute("hmset", key, jedis -> jedis.hmset(key, map));
         }
     }
 
@@ -965,10 +1410,7 @@ public class JedisUtils {
          * @return 值
          */
         public String get(String key) {
-            Jedis jedis = getJedis();
-            String value = jedis.get(key);
-            releaseResource(jedis);
-            return value;
+            return execute("get", key, jedis -> jedis.get(key));
         }
 
         /**
@@ -978,10 +1420,7 @@ public class JedisUtils {
          * @return 值
          */
         public byte[] get(byte[] key) {
-            Jedis jedis = getJedis();
-            byte[] value = jedis.get(key);
-            releaseResource(jedis);
-            return value;
+            return decompress(key, execute("get", key, jedis -> jedis.get(key)));
         }
 
         /**
@@ -993,10 +1432,7 @@ public class JedisUtils {
          * @return String 操作状态
          */
         public String setEx(String key, int seconds, String value) {
-            Jedis jedis = getJedis();
-            String str = jedis.setex(key, seconds, value);
-            releaseResource(jedis);
-            return str;
+            return execute("setex", key, jedis -> jedis.setex(key, seconds, value));
         }
 
         /**
@@ -1008,10 +1444,8 @@ public class JedisUtils {
          * @return String 操作状态
          */
         public String setEx(byte[] key, int seconds, byte[] value) {
-            Jedis jedis = getJedis();
-            String str = jedis.setex(key, seconds, value);
-            releaseResource(jedis);
-            return str;
+            byte[] stored = compress(key, value);
+            return execute("setex", key, jedis -> jedis.setex(key, seconds, stored));
         }
 
         /**
@@ -1022,10 +1456,7 @@ public class JedisUtils {
          * @return long 状态码，1插入成功且key不存在，0未插入，key存在
          */
         public long setnx(String key, String value) {
-            Jedis jedis = getJedis();
-            long status = jedis.setnx(key, value);
-            releaseResource(jedis);
-            return status;
+            return execute("setnx", key, jedis -> jedis.setnx(key, value));
         }
 
         /**
@@ -1036,16 +1467,17 @@ public class JedisUtils {
          * @return 状态码
          */
         public String set(String key, String value) {
-            return set(SafeEncoder.encode(key), SafeEncoder.encode(value));
+            return execute("set", key, jedis -> jedis.set(key, value));
         }
+        /**
+         * 启用压缩时超过redis.compress.threshold的值压缩保存, 用get(byte[])读取时自动解压
+         */
         public String set(String key, byte[] value) {
             return set(SafeEncoder.encode(key), value);
         }
         public String set(byte[] key, byte[] value) {
-            Jedis jedis = getJedis();
-            String status = jedis.set(key, value);
-            releaseResource(jedis);
-            return status;
+            byte[] stored = compress(key, value);
+            return execute("set", key, jedis -> jedis.set(key, stored));
         }
 
         /**
@@ -1059,10 +1491,7 @@ public class JedisUtils {
          * @return long value的长度
          */
         public long setRange(String key, long offset, String value) {
-            Jedis jedis = getJedis();
-            long len = jedis.setrange(key, offset, value);
-            releaseResource(jedis);
-            return len;
+            return execute("setrange", key, jedis -> jedis.setrange(key, offset, value));
         }
 
         /**
@@ -1073,10 +1502,7 @@ public class JedisUtils {
          * @return long 追加后value的长度
          */
         public long append(String key, String value) {
-            Jedis jedis = getJedis();
-            long len = jedis.append(key, value);
-            releaseResource(jedis);
-            return len;
+            return execute("append", key, jedis -> jedis.append(key, value));
         }
 
         /**
@@ -1087,10 +1513,7 @@ public class JedisUtils {
          * @return long 减指定值后的值
          */
         public long decrBy(String key, long number) {
-            Jedis jedis = getJedis();
-            long len = jedis.decrBy(key, number);
-            releaseResource(jedis);
-            return len;
+            return execute("decrby", key, jedis -> jedis.decrBy(key, number));
         }
 
         /**
@@ -1102,10 +1525,7 @@ public class JedisUtils {
          * @return long 相加后的值
          */
         public long incrBy(String key, long number) {
-            Jedis jedis = getJedis();
-            long len = jedis.incrBy(key, number);
-            releaseResource(jedis);
-            return len;
+            return execute("incrby", key, jedis -> jedis.incrBy(key, number));
         }
 
         /**
@@ -1117,10 +1537,7 @@ public class JedisUtils {
          * @return String 截取的值
          */
         public String getrange(String key, long startOffset, long endOffset) {
-            Jedis jedis = getJedis();
-            String value = jedis.getrange(key, startOffset, endOffset);
-            releaseResource(jedis);
-            return value;
+            return execute("getrange", key, jedis -> jedis.getrange(key, startOffset, endOffset));
         }
 
         /**
@@ -1132,10 +1549,7 @@ public class JedisUtils {
          * @return String 原始value或null
          */
         public String getSet(String key, String value) {
-            Jedis jedis = getJedis();
-            String str = jedis.getSet(key, value);
-            releaseResource(jedis);
-            return str;
+            return execute("getset", key, jedis -> jedis.getSet(key, value));
         }
 
         /**
@@ -1145,10 +1559,13 @@ public class JedisUtils {
          * @return List<String> 值得集合
          */
         public List<String> mget(String... keys) {
-            Jedis jedis = getJedis();
-            List<String> str = jedis.mget(keys);
-            releaseResource(jedis);
-            return str;
+            String[] values = new String[keys.length];
+            for (FanOut.Part<List<String>> part : executeByPartition("mget", keys, (jedis, indexes) -> jedis.mget(pick(keys, indexes)))) {
+                for (int i = 0; i < part.indexes.length; i++) {
+                    values[part.indexes[i]] = part.result.get(i);
+                }
+            }
+            return new ArrayList<String>(Arrays.asList(values));
         }
 
         /**
@@ -1158,10 +1575,22 @@ public class JedisUtils {
          * @return String 状态码
          */
         public String mset(String... keysvalues) {
-            Jedis jedis = getJedis();
-            String str = jedis.mset(keysvalues);
-            releaseResource(jedis);
-            return str;
+            if (keysvalues.length % 2 != 0) {
+                throw new JedisDataException("ERR wrong number of arguments for 'mset' command");
+            }
+            String[] keys = new String[keysvalues.length / 2];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = keysvalues[i * 2];
+            }
+            List<FanOut.Part<String>> parts = executeByPartition("mset", keys, (jedis, indexes) -> {
+                String[] picked = new String[indexes.length * 2];
+                for (int i = 0; i < indexes.length; i++) {
+                    picked[i * 2] = keysvalues[indexes[i] * 2];
+                    picked[i * 2 + 1] = keysvalues[indexes[i] * 2 + 1];
+                }
+                return jedis.mset(picked);
+            });
+            return parts.isEmpty() ? "OK" : parts.get(0).result;
         }
 
         /**
@@ -1171,10 +1600,7 @@ public class JedisUtils {
          * @return value值得长度
          */
         public long strlen(String key) {
-            Jedis jedis = getJedis();
-            long len = jedis.strlen(key);
-            releaseResource(jedis);
-            return len;
+            return execute("strlen", key, jedis -> jedis.strlen(key));
         }
     }
 
@@ -1197,10 +1623,7 @@ public class JedisUtils {
          * @return 长度
          */
         public long llen(byte[] key) {
-            Jedis jedis = getJedis();
-            long count = jedis.llen(key);
-            releaseResource(jedis);
-            return count;
+            return execute("llen", key, jedis -> jedis.llen(key));
         }
 
         /**
@@ -1212,10 +1635,7 @@ public class JedisUtils {
          * @return 状态码
          */
         public String lset(byte[] key, int index, byte[] value) {
-            Jedis jedis = getJedis();
-            String status = jedis.lset(key, index, value);
-            releaseResource(jedis);
-            return status;
+            return execute("lset", key, jedis -> jedis.lset(key, index, value));
         }
 
         /**
@@ -1250,10 +1670,7 @@ public class JedisUtils {
          * @return 值
          */
         public byte[] lindex(byte[] key, int index) {
-            Jedis jedis = getJedis();
-            byte[] value = jedis.lindex(key, index);
-            releaseResource(jedis);
-            return value;
+            return execute("lindex", key, jedis -> jedis.lindex(key, index));
         }
 
         /**
@@ -1266,10 +1683,7 @@ public class JedisUtils {
             return SafeEncoder.encode(lpop(SafeEncoder.encode(key)));
         }
         public byte[] lpop(byte[] key) {
-            Jedis jedis = getJedis();
-            byte[] value = jedis.lpop(key);
-            releaseResource(jedis);
-            return value;
+            return execute("lpop", key, jedis -> jedis.lpop(key));
         }
 
         /**
@@ -1279,10 +1693,7 @@ public class JedisUtils {
          * @return 移出的记录
          */
         public String rpop(String key) {
-            Jedis jedis = getJedis();
-            String value = jedis.rpop(key);
-            releaseResource(jedis);
-            return value;
+            return execute("rpop", key, jedis -> jedis.rpop(key));
         }
 
         /**
@@ -1304,10 +1715,7 @@ public class JedisUtils {
          * @return 记录总数
          */
         public long rpush(String key, String value) {
-            Jedis jedis = getJedis();
-            long count = jedis.rpush(key, value);
-            releaseResource(jedis);
-            return count;
+            return execute("rpush", key, jedis -> jedis.rpush(key, value));
         }
 
         /**
@@ -1318,10 +1726,7 @@ public class JedisUtils {
          * @return 记录总数
          */
         public long rpush(byte[] key, byte[] value) {
-            Jedis jedis = getJedis();
-            long count = jedis.rpush(key, value);
-            releaseResource(jedis);
-            return count;
+            return execute("rpush", key, jedis -> jedis.rpush(key, value));
         }
 
         /**
@@ -1332,10 +1737,7 @@ public class JedisUtils {
          * @return 记录总数
          */
         public long lpush(byte[] key, byte[] value) {
-            Jedis jedis = getJedis();
-            long count = jedis.lpush(key, value);
-            releaseResource(jedis);
-            return count;
+            return execute("lpush", key, jedis -> jedis.lpush(key, value));
         }
 
         /**
@@ -1347,10 +1749,7 @@ public class JedisUtils {
          * @return List
          */
         public List<String> lrange(String key, long start, long end) {
-            Jedis jedis = getJedis();
-            List<String> list = jedis.lrange(key, start, end);
-            releaseResource(jedis);
-            return list;
+            return execute("lrange", key, jedis -> jedis.lrange(key, start, end));
         }
 
         /**
@@ -1362,10 +1761,20 @@ public class JedisUtils {
          * @return List
          */
         public List<byte[]> lrange(byte[] key, int start, int end) {
-            Jedis jedis = getJedis();
-            List<byte[]> list = jedis.lrange(key, start, end);
-            releaseResource(jedis);
-            return list;
+            return execute("lrange", key, jedis -> jedis.lrange(key, start, end));
+        }
+
+        /**
+         * 获取指定范围的记录, 记录在被访问时才解码
+         *
+         * @param key
+         * @param start
+         * @param end   如果为负数，则尾部开始计算
+         * @param decoder 记录的解码方式
+         * @return 保留原始字节的列表, 需要全部记录时调用decodeAll()
+         */
+        public <T> LazyList<T> lrange(byte[] key, int start, int end, Decoder<? extends T> decoder) {
+            return new LazyList<T>(lrange(key, start, end), decoder);
         }
 
         /**
@@ -1377,10 +1786,7 @@ public class JedisUtils {
          * @return 删除后的List中的记录数
          */
         public long lrem(byte[] key, int c, byte[] value) {
-            Jedis jedis = getJedis();
-            long count = jedis.lrem(key, c, value);
-            releaseResource(jedis);
-            return count;
+            return execute("lrem", key, jedis -> jedis.lrem(key, c, value));
         }
         public long lrem(String key, int c, String value) {
             return lrem(SafeEncoder.encode(key), c, SafeEncoder.encode(value));
@@ -1395,10 +1801,7 @@ public class JedisUtils {
          * @return 执行状态码
          */
         public String ltrim(byte[] key, int start, int end) {
-            Jedis jedis = getJedis();
-            String str = jedis.ltrim(key, start, end);
-            releaseResource(jedis);
-            return str;
+            return execute("ltrim", key, jedis -> jedis.ltrim(key, start, end));
         }
         public String ltrim(String key, int start, int end) {
             return ltrim(SafeEncoder.encode(key), start, end);
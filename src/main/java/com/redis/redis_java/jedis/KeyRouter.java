@@ -0,0 +1,42 @@
+package com.redis.redis_java.jedis;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * 把key分配到多个节点, JedisUtils在cluster模式下按slot路由
+ * 同一分区的key可以放在同一条多key命令中, 同一节点的多个分区共用一个连接
+ */
+interface KeyRouter {
+
+    /**
+     * @param key 编码后的key
+     * @return key所在的分区
+     */
+    int partition(byte[] key);
+
+    /**
+     * @return 分区所在的节点, 只用于判断两个分区是否在同一节点
+     */
+    Object node(int partition);
+
+    /**
+     * 从分区所在节点借用连接, 用完通过Jedis.close()归还
+     */
+    Jedis getResource(int partition);
+
+    /**
+     * 在分区所在节点上执行, 节点变化(例如MOVED)时刷新路由并重试
+     */
+    <T> T execute(int partition, Function<Jedis, T> action);
+
+    /**
+     * @return 所有节点的连接池, 用于flushAll、SCAN等需要发送到每个节点的命令
+     */
+    Collection<? extends Pool<Jedis>> nodes();
+
+    void close();
+}
@@ -0,0 +1,36 @@
+package com.redis.redis_java.jedis;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 可以在运行时调整最大连接数的JedisPool, 由AdaptivePoolController调整
+ */
+public class ResizableJedisPool extends JedisPool {
+
+    public ResizableJedisPool(GenericObjectPoolConfig config, String host, int port, int timeout,
+            String password, int database) {
+        super(config, host, port, timeout, password, database);
+    }
+
+    public int getMaxTotal() {
+        return internalPool.getMaxTotal();
+    }
+
+    /**
+     * 调整最大连接数, 最大空闲数随之调整;
+     * 缩小时正在使用的连接不会被关闭, 归还时超出最大空闲数的连接被关闭
+     *
+     * @param maxTotal
+     */
+    public void resize(int maxTotal) {
+        if (maxTotal > internalPool.getMaxTotal()) {
+            internalPool.setMaxIdle(maxTotal);
+            internalPool.setMaxTotal(maxTotal);
+        } else {
+            internalPool.setMaxTotal(maxTotal);
+            internalPool.setMaxIdle(maxTotal);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.redis.redis_java.jedis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+/**
+ * 客户端一致性哈希分片, 每个分片是一个独立的Redis实例, 分区是分片序号
+ * 适合只做缓存的场景: 分片之间没有复制, 增减分片后移动的key相当于缓存失效
+ */
+class ShardRouter implements KeyRouter {
+
+    /** 权重为1时每个分片的虚拟节点数 */
+    static final int VIRTUAL_NODES = 160;
+
+    private final List<? extends Pool<Jedis>> pools;
+
+    private final HashRing ring;
+
+    /**
+     * @param shards 分片地址
+     * @param weights 每个分片的权重
+     * @param poolConfig 每个分片连接池的配置
+     * @param timeout 超时, 毫秒
+     * @param password 可以为null
+     * @param database
+     */
+    ShardRouter(List<HostAndPort> shards, int[] weights, GenericObjectPoolConfig poolConfig, int timeout,
+            String password, int database) {
+        List<String> names = new ArrayList<String>(shards.size());
+        List<JedisPool> created = new ArrayList<JedisPool>(shards.size());
+        for (HostAndPort shard : shards) {
+            names.add(shard.toString());
+            created.add(new JedisPool(poolConfig, shard.getHost(), shard.getPort(), timeout, password, database));
+        }
+        this.pools = Collections.unmodifiableList(created);
+        this.ring = new HashRing(names, weights, VIRTUAL_NODES);
+    }
+
+    /**
+     * @param names 分片名称, 决定key在哈希环上的位置
+     * @param weights 每个分片的权重
+     * @param pools 每个分片的连接池, 与names一一对应
+     */
+    ShardRouter(List<String> names, int[] weights, List<? extends Pool<Jedis>> pools) {
+        this.pools = Collections.unmodifiableList(new ArrayList<Pool<Jedis>>(pools));
+        this.ring = new HashRing(names, weights, VIRTUAL_NODES);
+    }
+
+    /**
+     * 解析host:port[:weight],host:port[:weight]...
+     *
+     * @param spec
+     * @param shards 解析出的地址
+     * @return 每个分片的权重, 默认1
+     */
+    static int[] parse(String spec, List<HostAndPort> shards) {
+        String[] items = spec.split(",");
+        int[] weights = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            String[] parts = items[i].trim().split(":");
+            if (parts.length < 2 || parts.length > 3) {
+                throw new IllegalArgumentException("invalid shard: " + items[i]);
+            }
+            shards.add(new HostAndPort(parts[0], Integer.parseInt(parts[1])));
+            weights[i] = parts.length == 3 ? Integer.parseInt(parts[2]) : 1;
+        }
+        return weights;
+    }
+
+    @Override
+    public int partition(byte[] key) {
+        return ring.node(key);
+    }
+
+    @Override
+    public Object node(int partition) {
+        return pools.get(partition);
+    }
+
+    @Override
+    public Jedis getResource(int partition) {
+        return pools.get(partition).getResource();
+    }
+
+    @Override
+    public <T> T execute(int partition, Function<Jedis, T> action) {
+        Jedis jedis = getResource(partition);
+        try {
+            return action.apply(jedis);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public List<? extends Pool<Jedis>> nodes() {
+        return pools;
+    }
+
+    @Override
+    public void close() {
+        for (Pool<Jedis> pool : pools) {
+            pool.destroy();
+        }
+    }
+}
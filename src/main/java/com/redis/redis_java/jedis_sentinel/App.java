@@ -19,16 +19,12 @@ public class App {
     	JedisSentinelPool jedisSentinelPool = (JedisSentinelPool) context.getBean("jedisSentinelPool");
      	JedisSentinelUtils.setJedisSentinelPool(jedisSentinelPool);
     	
-    	TestVO testVO;
-    	Object object = JedisSentinelUtils.get(CUSTOM_REDIS_KEY);
-    	if (object == null) {
-    		
-    		testVO = new TestVO();
-    		testVO.setName("測試 Redis 存儲數據");
-    		JedisSentinelUtils.save(CUSTOM_REDIS_KEY, testVO);
-    	} else {
-    		testVO = (TestVO)object;
-    	}
+    	//未命中时只有一个线程(以及拿到Redis锁的一个进程)执行加载, 其他调用方等待结果
+    	TestVO testVO = JedisSentinelUtils.getOrLoad(CUSTOM_REDIS_KEY, 3600, () -> {
+    		TestVO vo = new TestVO();
+    		vo.setName("測試 Redis 存儲數據");
+    		return vo;
+    	}, 3000);
     	
     	System.out.println(testVO.getName());
     }
@@ -1,15 +1,39 @@
 package com.redis.redis_java.jedis_sentinel;
 
-import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.stream.IntStream;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.redis.redis_java.SerializeUtils;
+import com.redis.redis_java.codec.Codec;
+import com.redis.redis_java.codec.Codecs;
+import com.redis.redis_java.codec.Compression;
+import com.redis.redis_java.codec.LazyMap;
+import com.redis.redis_java.codec.TimedValue;
+import com.redis.redis_java.metrics.CommandMetrics;
+import com.redis.redis_java.scan.ScanIterator;
 
 public class JedisSentinelUtils {
 
@@ -20,7 +44,68 @@ public class JedisSentinelUtils {
 
 	/** Redis 连接池 (自动注入自于SpringMvc)*/
 	@Autowired
-	private static JedisSentinelPool jedisSentinelPool;
+	private static Pool<Jedis> jedisSentinelPool;
+
+	/** 缓存键的编码方式, 默认String和数字按UTF-8保存; 旧数据迁移前可以设为JAVA*/
+	private static volatile KeyEncoding keyEncoding = KeyEncoding.UTF8;
+
+	/** 缓存值的编码方式, 默认Java序列化; 读取时按格式标记自动识别*/
+	private static volatile Codec codec = Codecs.JAVA;
+
+	/** 大值压缩, 为null时不压缩; 读取时总是按格式头自动解压*/
+	private static volatile Compression compression;
+
+	/** 进程内近端缓存, 为null时不启用*/
+	private static volatile NearCache nearCache;
+
+	/** 逻辑过期和后台刷新, 为null时不启用*/
+	private static volatile RefreshAhead refreshAhead;
+
+	/** saveBehind的延迟写入缓冲, 为null时saveBehind同步写入*/
+	private static volatile WriteBehind writeBehind;
+
+	/** JVM退出时写出延迟写入缓冲中剩余的值*/
+	private static Thread writeBehindHook;
+
+	/** 读操作的路由, 为null时全部读master*/
+	private static volatile ReplicaRouter router;
+
+	/** 进行中的getOrLoad, 按序列化后的key合并*/
+	private static final SingleFlight<ByteBuffer> loads = new SingleFlight<ByteBuffer>();
+
+	/** getOrLoad的Redis锁: key为序列化后的缓存键加后缀, 值为随机token*/
+	private static final byte[] LOCK_SUFFIX = ":load-lock".getBytes();
+	private static final byte[] NX = "NX".getBytes();
+	private static final byte[] PX = "PX".getBytes();
+	private static final byte[] UNLOCK_SCRIPT = ("if redis.call('get', KEYS[1]) == ARGV[1] then "
+			+ "return redis.call('del', KEYS[1]) else return 0 end").getBytes();
+
+	/** saveAll每个Pipeline批次、getAll每次MGET的key数*/
+	private static final int BATCH_SIZE = 500;
+
+	/** getAll的结果达到这个数量时并行反序列化*/
+	private static final int PARALLEL_DECODE_THRESHOLD = 32;
+
+	/** 关闭延迟写入时等待写出的最长时间*/
+	private static final long WRITE_BEHIND_CLOSE_MILLIS = 10000;
+
+	/** 等待其他进程加载时的轮询间隔*/
+	private static final long LOCK_POLL_MILLIS = 20;
+
+	/** byte[]按内容比较(无符号字典序), 用于按内容去重的key集合*/
+	private static final Comparator<byte[]> BYTES_ORDER = (a, b) -> {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return a.length - b.length;
+	};
+
+	/** 每个方法的延迟、连接池等待、序列化耗时和字节数, 同时注册到JMX*/
+	private static final CommandMetrics metrics = CommandMetrics.of("JedisSentinelUtils");
 	
 	/**
 	 * 释放redis资源
@@ -33,6 +118,97 @@ public class JedisSentinelUtils {
 		}
 	}
 	
+	/**
+	 * 从连接池借用连接, 记录等待时间
+	 */
+	private static Jedis getResource() {
+		long start = System.nanoTime();
+		Jedis jedis = jedisSentinelPool.getResource();
+		metrics.recordPoolWait(start);
+		return jedis;
+	}
+
+	/**
+	 * 为读操作借用连接, 启用replica读取时按ReadPreference选择节点, replica不可用时回退到master
+	 * 
+	 * @param rawKey 序列化后的key, null表示与key无关的读
+	 */
+	private static Jedis getReadResource(byte[] rawKey) {
+		ReplicaRouter r = router;
+		return r == null ? getResource() : getReadResource(r, r.route(rawKey));
+	}
+
+	/**
+	 * 为多key读操作借用连接, 其中任何一个key刚被当前线程写入时读master
+	 */
+	private static Jedis getReadResource(List<byte[]> rawKeys) {
+		ReplicaRouter r = router;
+		return r == null ? getResource() : getReadResource(r, r.route(rawKeys));
+	}
+
+	private static Jedis getReadResource(ReplicaRouter r, Pool<Jedis> pool) {
+		if (pool != jedisSentinelPool) {
+			long start = System.nanoTime();
+			try {
+				Jedis jedis = pool.getResource();
+				metrics.recordPoolWait(start);
+				return jedis;
+			} catch (JedisConnectionException e) {
+				r.failed(pool);
+			} catch (JedisException e) {
+				// 连接池耗尽等不是replica的故障, 只回退到master, 不标记为不可用
+			}
+		}
+		return getResource();
+	}
+
+	/**
+	 * 写入后调用, 启用read-your-writes时当前线程之后的读取发送到master
+	 */
+	private static void wrote(byte[] rawKey) {
+		ReplicaRouter r = router;
+		if (r != null) {
+			r.wrote(rawKey);
+		}
+	}
+
+	/**
+	 * 用当前的Codec编码缓存值, 启用压缩时超过阈值的值再压缩, 记录耗时和字节数
+	 * 
+	 * @param key 用于按前缀统计压缩率
+	 */
+	private static byte[] encode(Object key, Object object) throws Exception {
+		long start = System.nanoTime();
+		byte[] bytes = codec.encode(object);
+		Compression c = compression;
+		if (c != null) {
+			bytes = c.compress(statsKey(key), bytes);
+		}
+		metrics.recordSerialize(start, bytes.length);
+		return bytes;
+	}
+
+	/**
+	 * 按格式标记解码缓存值, 压缩过的值先解压, 记录耗时和字节数
+	 */
+	private static Object decode(Object key, byte[] bytes) throws Exception {
+		if (bytes == null) {
+			return null;
+		}
+		long start = System.nanoTime();
+		int length = bytes.length;
+		bytes = TimedValue.unwrap(bytes);
+		Compression c = compression;
+		bytes = c == null ? Compression.decompress(bytes) : c.decompress(statsKey(key), bytes);
+		Object object = Codecs.decode(bytes);
+		metrics.recordDeserialize(start, length);
+		return object;
+	}
+
+	private static String statsKey(Object key) {
+		return key instanceof String ? (String) key : null;
+	}
+	
 	/**
 	 * 清空Redis
 	 * 
@@ -41,12 +217,18 @@ public class JedisSentinelUtils {
 	 */
 	public static void flushAll() {
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
-			jedis = jedisSentinelPool.getResource();
+			jedis = getResource();
 			jedis.flushAll();
+			if (nearCache != null) {
+				nearCache.clear();
+			}
 		} catch (Exception e) {
+			metrics.error("flushAll");
 			logger.error("Cache清空失败：" + e);
 		} finally {
+			metrics.record("flushAll", start);
 			releaseResource(jedis);
 		}
 	}
@@ -72,16 +254,170 @@ public class JedisSentinelUtils {
 	 * @return true or false
 	 */
 	public static Boolean save(Object key, Object object, int seconds) {
+		return save(key, object, seconds, 0);
+	}
+
+	/**
+	 * 启用提前刷新时值带上逻辑过期时间, Redis中多保留staleSeconds
+	 * 
+	 * @param deltaMillis 加载这个值的耗时
+	 */
+	private static Boolean save(Object key, Object object, int seconds, int deltaMillis) {
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
-			jedis = jedisSentinelPool.getResource();
-			jedis.set(SerializeUtils.serialize(key), SerializeUtils.serialize(object));
-			jedis.expire(SerializeUtils.serialize(key), seconds);
+			byte[] rawKey = rawKey(key);
+			cancelBehind(rawKey);
+			jedis = getResource();
+			// SETEX一次写入值和过期时间, 不会留下没有过期时间的key
+			jedis.setex(rawKey, physicalSeconds(seconds), encodeForSave(key, object, seconds, deltaMillis));
+			wrote(rawKey);
+			publishInvalidation(jedis, rawKey);
 			return true;
 		} catch (Exception e) {
+			metrics.error("save");
+			logger.error("Cache保存失败：" + e);
+			return false;
+		} finally {
+			metrics.record("save", start);
+			releaseResource(jedis);
+		}
+	}
+
+	/**
+	 * 批量保存, 每BATCH_SIZE个key用一个Pipeline发送SETEX
+	 * 
+	 * @param objects key到值的映射
+	 * @param seconds
+	 * @return true or false, 某一批失败时之前的批次已经写入
+	 */
+	public static Boolean saveAll(Map<?, ?> objects, int seconds) {
+		if (objects.isEmpty()) {
+			return true;
+		}
+		Jedis jedis = null;
+		long start = System.nanoTime();
+		try {
+			// 借用连接之前取消, 等待正在写出的一批时不占用连接
+			for (Object key : objects.keySet()) {
+				cancelBehind(rawKey(key));
+			}
+			jedis = getResource();
+			NearCache cache = nearCache;
+			int ttl = physicalSeconds(seconds);
+			Pipeline pipeline = jedis.pipelined();
+			int queued = 0;
+			for (Map.Entry<?, ?> entry : objects.entrySet()) {
+				byte[] rawKey = rawKey(entry.getKey());
+				pipeline.setex(rawKey, ttl, encodeForSave(entry.getKey(), entry.getValue(), seconds, 0));
+				if (cache != null) {
+					cache.publish(pipeline, rawKey);
+				}
+				wrote(rawKey);
+				if (++queued % BATCH_SIZE == 0) {
+					pipeline.sync();
+				}
+			}
+			pipeline.sync();
+			return true;
+		} catch (Exception e) {
+			metrics.error("saveAll");
+			logger.error("Cache保存失败：" + e);
+			return false;
+		} finally {
+			metrics.record("saveAll", start);
+			releaseResource(jedis);
+		}
+	}
+
+	/**
+	 * 按当前的KeyEncoding编码缓存键
+	 */
+	private static byte[] rawKey(Object key) throws Exception {
+		return keyEncoding.encode(key);
+	}
+
+	/**
+	 * 编码要保存的值, 启用提前刷新时带上逻辑过期时间
+	 */
+	private static byte[] encodeForSave(Object key, Object object, int seconds, int deltaMillis) throws Exception {
+		byte[] bytes = encode(key, object);
+		if (refreshAhead != null) {
+			bytes = TimedValue.wrap(bytes, System.currentTimeMillis() + seconds * 1000L, seconds, deltaMillis);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return Redis中的过期时间, 启用提前刷新时多保留staleSeconds
+	 */
+	private static int physicalSeconds(int seconds) {
+		RefreshAhead r = refreshAhead;
+		return r == null ? seconds : seconds + r.staleSeconds();
+	}
+
+	/**
+	 * 延迟保存, 用于允许丢失的高频写入, 需要先调用enableWriteBehind, 否则同步保存
+	 * 值在调用时编码, 之后修改对象不影响写入的内容;
+	 * 写出之前读取可能得到旧值, 写出失败或进程被强制结束时会丢失;
+	 * 写出之前对同一个key调用del、save或expire时, 队列中的值被取消, 不会覆盖之后的操作
+	 * 
+	 * @param key
+	 * @param object
+	 * @param seconds
+	 * @return false表示队列满而被丢弃或编码失败
+	 */
+	public static Boolean saveBehind(Object key, Object object, int seconds) {
+		WriteBehind w = writeBehind;
+		if (w == null) {
+			return save(key, object, seconds);
+		}
+		try {
+			byte[] rawKey = rawKey(key);
+			boolean queued = w.offer(rawKey, encodeForSave(key, object, seconds, 0), physicalSeconds(seconds));
+			if (!queued) {
+				metrics.error("saveBehind");
+			}
+			return queued;
+		} catch (Exception e) {
+			metrics.error("saveBehind");
 			logger.error("Cache保存失败：" + e);
 			return false;
+		}
+	}
+
+	/**
+	 * 同步删除或保存之前取消这个key在延迟写入队列中的值, 避免之后写出时覆盖
+	 * 
+	 * @return 被取消的值, 没有时返回null
+	 */
+	private static WriteBehind.Entry cancelBehind(byte[] rawKey) {
+		WriteBehind w = writeBehind;
+		return w == null ? null : w.cancel(rawKey);
+	}
+
+	/**
+	 * 在一个Pipeline中写出一批延迟保存的值, 由WriteBehind的后台线程调用
+	 */
+	private static void writeBatch(List<WriteBehind.Entry> batch) {
+		Jedis jedis = null;
+		long start = System.nanoTime();
+		try {
+			jedis = getResource();
+			Pipeline pipeline = jedis.pipelined();
+			NearCache cache = nearCache;
+			for (WriteBehind.Entry entry : batch) {
+				pipeline.setex(entry.key, entry.seconds, entry.value);
+				if (cache != null) {
+					cache.publish(pipeline, entry.key);
+				}
+			}
+			pipeline.sync();
+		} catch (RuntimeException e) {
+			metrics.error("writeBehind");
+			throw e;
 		} finally {
+			metrics.record("writeBehind", start);
 			releaseResource(jedis);
 		}
 	}
@@ -94,19 +430,116 @@ public class JedisSentinelUtils {
 	 * @throws Exception
 	 */
 	public static Object get(Object key) {
+		NearCache cache = nearCache;
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
-			jedis = jedisSentinelPool.getResource();
-			byte[] obj = jedis.get(SerializeUtils.serialize(key));
-			return obj == null ? null : SerializeUtils.unSerialize(obj);
+			byte[] rawKey = rawKey(key);
+			if (cache != null) {
+				Object cached = cache.get(rawKey);
+				if (cached != null) {
+					return cached;
+				}
+			}
+			long version = cache == null ? 0 : cache.version(rawKey);
+			jedis = getReadResource(rawKey);
+			byte[] obj = jedis.get(rawKey);
+			if (obj == null) {
+				return null;
+			}
+			Object value = decode(key, obj);
+			if (cache != null) {
+				cache.put(rawKey, value, obj.length, version);
+			}
+			return value;
 		} catch (Exception e) {
+			metrics.error("get");
 			logger.error("Cache获取失败：" + e);
 			return null;
 		} finally {
+			metrics.record("get", start);
+			releaseResource(jedis);
+		}
+	}
+
+	/**
+	 * 批量读取, 近端缓存未命中的key每BATCH_SIZE个用一次MGET读取, 结果较多时并行反序列化
+	 * 
+	 * @param keys
+	 * @return 按keys顺序的key到值的映射, 不存在或读取失败的key不在其中
+	 */
+	public static Map<Object, Object> getAll(Collection<?> keys) {
+		Map<Object, Object> result = new LinkedHashMap<Object, Object>();
+		if (keys.isEmpty()) {
+			return result;
+		}
+		NearCache cache = nearCache;
+		Jedis jedis = null;
+		long start = System.nanoTime();
+		try {
+			List<Object> missingKeys = new ArrayList<Object>();
+			List<byte[]> missingRawKeys = new ArrayList<byte[]>();
+			for (Object key : keys) {
+				byte[] rawKey = rawKey(key);
+				Object cached = cache == null ? null : cache.get(rawKey);
+				// 先占位, 保持keys的顺序
+				result.put(key, cached);
+				if (cached == null) {
+					missingKeys.add(key);
+					missingRawKeys.add(rawKey);
+				}
+			}
+			if (!missingKeys.isEmpty()) {
+				long[] versions = new long[missingRawKeys.size()];
+				for (int i = 0; cache != null && i < versions.length; i++) {
+					versions[i] = cache.version(missingRawKeys.get(i));
+				}
+				jedis = getReadResource(missingRawKeys);
+				List<byte[]> values = new ArrayList<byte[]>(missingRawKeys.size());
+				for (int from = 0; from < missingRawKeys.size(); from += BATCH_SIZE) {
+					List<byte[]> chunk = missingRawKeys.subList(from, Math.min(from + BATCH_SIZE, missingRawKeys.size()));
+					values.addAll(jedis.mget(chunk.toArray(new byte[chunk.size()][])));
+				}
+				releaseResource(jedis);
+				jedis = null;
+				Object[] decoded = new Object[values.size()];
+				IntStream indexes = IntStream.range(0, decoded.length);
+				if (decoded.length >= PARALLEL_DECODE_THRESHOLD) {
+					indexes = indexes.parallel();
+				}
+				indexes.forEach(i -> decoded[i] = decodeQuietly(missingKeys.get(i), values.get(i)));
+				for (int i = 0; i < decoded.length; i++) {
+					if (decoded[i] != null) {
+						result.put(missingKeys.get(i), decoded[i]);
+						if (cache != null) {
+							cache.put(missingRawKeys.get(i), decoded[i], values.get(i).length, versions[i]);
+						}
+					}
+				}
+			}
+			result.values().removeIf(value -> value == null);
+			return result;
+		} catch (Exception e) {
+			metrics.error("getAll");
+			logger.error("Cache获取失败：" + e);
+			result.values().removeIf(value -> value == null);
+			return result;
+		} finally {
+			metrics.record("getAll", start);
 			releaseResource(jedis);
 		}
 	}
 
+	private static Object decodeQuietly(Object key, byte[] bytes) {
+		try {
+			return decode(key, bytes);
+		} catch (Exception e) {
+			metrics.error("getAll");
+			logger.error("Cache反序列化失败：" + e);
+			return null;
+		}
+	}
+
 	/**
 	 * 根据缓存键清除Redis缓存中的值
 	 * 
@@ -116,15 +549,22 @@ public class JedisSentinelUtils {
 	 */
 	public static Boolean del(Object key) {
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
 			// System.out.println(key);
-			jedis = jedisSentinelPool.getResource();
-			jedis.del(SerializeUtils.serialize(key));
+			byte[] rawKey = rawKey(key);
+			cancelBehind(rawKey);
+			jedis = getResource();
+			jedis.del(rawKey);
+			wrote(rawKey);
+			publishInvalidation(jedis, rawKey);
 			return true;
 		} catch (Exception e) {
+			metrics.error("del");
 			logger.error("Cache删除失败：" + e);
 			return false;
 		} finally {
+			metrics.record("del", start);
 			releaseResource(jedis);
 		}
 	}
@@ -138,14 +578,26 @@ public class JedisSentinelUtils {
 	 */
 	public static Boolean del(Object... keys) {
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
-			jedis = jedisSentinelPool.getResource();
-			jedis.del(SerializeUtils.serialize(keys));
+			byte[][] rawKeys = new byte[keys.length][];
+			for (int i = 0; i < keys.length; i++) {
+				rawKeys[i] = rawKey(keys[i]);
+				cancelBehind(rawKeys[i]);
+			}
+			jedis = getResource();
+			jedis.del(rawKeys);
+			for (byte[] rawKey : rawKeys) {
+				wrote(rawKey);
+				publishInvalidation(jedis, rawKey);
+			}
 			return true;
 		} catch (Exception e) {
+			metrics.error("del");
 			logger.error("Cache删除失败：" + e);
 			return false;
 		} finally {
+			metrics.record("del", start);
 			releaseResource(jedis);
 		}
 	}
@@ -158,14 +610,26 @@ public class JedisSentinelUtils {
 	public static Boolean expire(Object key, int seconds) {
 
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
-			jedis = jedisSentinelPool.getResource();
-			jedis.expire(SerializeUtils.serialize(key), seconds);
+			byte[] rawKey = rawKey(key);
+			WriteBehind.Entry pending = cancelBehind(rawKey);
+			jedis = getResource();
+			if (pending != null && seconds > 0) {
+				// 还没有写出的值按新的过期时间同步写入
+				jedis.setex(rawKey, seconds, pending.value);
+			} else {
+				jedis.expire(rawKey, seconds);
+			}
+			wrote(rawKey);
+			publishInvalidation(jedis, rawKey);
 			return true;
 		} catch (Exception e) {
+			metrics.error("expire");
 			logger.error("Cache设置超时时间失败：" + e);
 			return false;
 		} finally {
+			metrics.record("expire", start);
 			releaseResource(jedis);
 		}
 	}
@@ -180,14 +644,19 @@ public class JedisSentinelUtils {
 	 */
 	public static Boolean addHash(String key, Object field, Object value) {
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
-			jedis = jedisSentinelPool.getResource();
-			jedis.hset(SerializeUtils.serialize(key), SerializeUtils.serialize(field), SerializeUtils.serialize(value));
+			jedis = getResource();
+			byte[] rawKey = rawKey(key);
+			jedis.hset(rawKey, SerializeUtils.serialize(field), encode(key, value));
+			wrote(rawKey);
 			return true;
 		} catch (Exception e) {
+			metrics.error("addHash");
 			logger.error("Cache保存失败：" + e);
 			return false;
 		} finally {
+			metrics.record("addHash", start);
 			releaseResource(jedis);
 		}
 	}
@@ -201,14 +670,18 @@ public class JedisSentinelUtils {
 	 */
 	public static Object getHash(Object key, Object field) {
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
-			jedis = jedisSentinelPool.getResource();
-			byte[] obj = jedis.hget(SerializeUtils.serialize(key), SerializeUtils.serialize(field));
-			return SerializeUtils.unSerialize(obj);
+			byte[] rawKey = rawKey(key);
+			jedis = getReadResource(rawKey);
+			byte[] obj = jedis.hget(rawKey, SerializeUtils.serialize(field));
+			return decode(key, obj);
 		} catch (Exception e) {
+			metrics.error("getHash");
 			logger.error("Cache读取失败：" + e);
 			return null;
 		} finally {
+			metrics.record("getHash", start);
 			releaseResource(jedis);
 		}
 	}
@@ -222,58 +695,105 @@ public class JedisSentinelUtils {
 	 */
 	public static Boolean delHash(Object key, Object field) {
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
-			jedis = jedisSentinelPool.getResource();
-			long result = jedis.hdel(SerializeUtils.serialize(key), SerializeUtils.serialize(field));
+			jedis = getResource();
+			byte[] rawKey = rawKey(key);
+			long result = jedis.hdel(rawKey, SerializeUtils.serialize(field));
+			wrote(rawKey);
 			return result == 1 ? true : false;
 		} catch (Exception e) {
+			metrics.error("delHash");
 			logger.error("Cache删除失败：" + e);
 			return null;
 		} finally {
+			metrics.record("delHash", start);
 			releaseResource(jedis);
 		}
 	}
 
 	/**
 	 * 拿到缓存中所有符合pattern的key
+	 * 通过SCAN分页获取, 不会阻塞Redis, 但结果仍全部放在内存中, key较多时应使用scan;
+	 * SCAN可能返回重复的key, 结果按内容去重, contains也按内容比较
 	 * 
 	 * @param pattern
 	 * @return Set<byte[]>
 	 */
 	public static Set<byte[]> keys(String pattern) {
-		Jedis jedis = null;
+		Set<byte[]> allKey = new TreeSet<byte[]>(BYTES_ORDER);
 		try {
-			jedis = jedisSentinelPool.getResource();
-			Set<byte[]> allKey = jedis.keys(("*" + pattern + "*").getBytes());
+			ScanIterator<byte[]> it = scan(pattern, ScanIterator.DEFAULT_COUNT, null);
+			while (it.hasNext()) {
+				allKey.add(it.next());
+			}
 			return allKey;
 		} catch (Exception e) {
 			logger.error("Cache获取失败：" + e);
-			return new HashSet<byte[]>();
-		} finally {
-			releaseResource(jedis);
+			return new TreeSet<byte[]>(BYTES_ORDER);
 		}
 	}
 
 	/**
-	 * 获得hash中的所有key value
+	 * 以SCAN分页遍历缓存中所有包含pattern的key, 每次只取一页
+	 * 
+	 * @param pattern
+	 * @param count 每页数量
+	 * @param type string|list|set|zset|hash, null表示不过滤
+	 * @return ScanIterator, 可通过stream()转为Stream
+	 */
+	public static ScanIterator<byte[]> scan(String pattern, int count, String type) {
+		// 游标只在一个节点上有效, 整个遍历使用同一个节点
+		ReplicaRouter r = router;
+		Pool<Jedis> pool = r == null ? jedisSentinelPool : r.route((byte[]) null);
+		return ScanIterator.binaryKeys(pool::getResource, "*" + pattern + "*", count, type);
+	}
+
+	/**
+	 * 获得hash中的所有key value, 需要解码时可以用getAllHashView
 	 * 
 	 * @param key
 	 * @return Map<byte[], byte[]>
 	 */
 	public static Map<byte[], byte[]> getAllHash(Object key) {
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		try {
-			jedis = jedisSentinelPool.getResource();
-			Map<byte[], byte[]> map = jedis.hgetAll(SerializeUtils.serialize(key));
+			byte[] rawKey = rawKey(key);
+			jedis = getReadResource(rawKey);
+			Map<byte[], byte[]> map = jedis.hgetAll(rawKey);
 			return map;
 		} catch (Exception e) {
+			metrics.error("getAllHash");
 			logger.error("Cache获取失败：" + e);
 			return null;
 		} finally {
+			metrics.record("getAllHash", start);
 			releaseResource(jedis);
 		}
 	}
 
+	/**
+	 * 获得hash中的所有field和value, 按需解码: get(field)只解码这一个value, 遍历时在访问时解码
+	 * 需要全部内容时调用decodeAll()并行解码
+	 * 
+	 * @param key
+	 * @return LazyMap, field和value与addHash写入时的类型相同; 读取失败时返回null
+	 */
+	public static LazyMap<Object, Object> getAllHashView(Object key) {
+		Map<byte[], byte[]> raw = getAllHash(key);
+		if (raw == null) {
+			return null;
+		}
+		return new LazyMap<Object, Object>(raw, field -> {
+			try {
+				return SerializeUtils.serialize(field);
+			} catch (Exception e) {
+				throw new IllegalArgumentException("Cannot encode field", e);
+			}
+		}, SerializeUtils::unSerialize, bytes -> decode(key, bytes));
+	}
+
 	/**
 	 * 判断一个key是否存在
 	 * 
@@ -282,19 +802,338 @@ public class JedisSentinelUtils {
 	 */
 	public static Boolean exists(Object key) {
 		Jedis jedis = null;
+		long start = System.nanoTime();
 		Boolean result = false;
 		try {
-			jedis = jedisSentinelPool.getResource();
-			result = jedis.exists(SerializeUtils.serialize(key));
+			byte[] rawKey = rawKey(key);
+			jedis = getReadResource(rawKey);
+			result = jedis.exists(rawKey);
 			return result;
 		} catch (Exception e) {
+			metrics.error("exists");
 			logger.error("Cache获取失败：" + e);
 			return false;
+		} finally {
+			metrics.record("exists", start);
+			releaseResource(jedis);
+		}
+	}
+
+	/**
+	 * 读取缓存, 未命中时调用loader加载并保存
+	 * 本进程内同一个key的并发未命中只执行一次loader, 其他线程等待并共享结果
+	 * 
+	 * @param key
+	 * @param seconds 保存的过期时间
+	 * @param loader 返回null时不保存
+	 * @return 缓存值或loader的结果
+	 */
+	public static <T> T getOrLoad(Object key, int seconds, Callable<T> loader) {
+		return getOrLoad(key, seconds, loader, 0);
+	}
+
+	/**
+	 * 读取缓存, 未命中时调用loader加载并保存
+	 * 本进程内同一个key的并发未命中只执行一次loader;
+	 * lockMillis大于0时再用Redis锁(SET NX PX)协调多个进程: 拿到锁的进程加载, 其他进程轮询等待它写入,
+	 * 超过lockMillis仍未写入(持有锁的进程失败或过慢)时自己加载
+	 * 启用提前刷新(enableRefreshAhead)后, 过了刷新点的值仍然直接返回, 同时在后台调用loader刷新;
+	 * 这条路径直接读Redis以获得逻辑过期时间, 不经过近端缓存
+	 * 
+	 * @param key
+	 * @param seconds 保存的过期时间
+	 * @param loader 返回null时不保存; 抛出的异常会传给所有等待的调用方
+	 * @param lockMillis Redis锁的过期时间, 也是等待其他进程的最长时间, 应略大于loader的正常耗时; 0表示不使用Redis锁
+	 * @return 缓存值或loader的结果
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T getOrLoad(Object key, int seconds, Callable<T> loader, long lockMillis) {
+		RefreshAhead r = refreshAhead;
+		if (r == null) {
+			Object cached = get(key);
+			if (cached != null) {
+				return (T) cached;
+			}
+		}
+		long start = System.nanoTime();
+		try {
+			byte[] rawKey = rawKey(key);
+			if (r != null) {
+				Object cached = getOrRefresh(r, key, rawKey, seconds, loader, lockMillis);
+				if (cached != null) {
+					return (T) cached;
+				}
+			}
+			return loads.load(ByteBuffer.wrap(rawKey), () -> {
+				// 上一次加载可能刚刚完成
+				Object value = get(key);
+				if (value != null) {
+					return (T) value;
+				}
+				return lockMillis > 0 ? loadWithLock(key, rawKey, seconds, loader, lockMillis) : loadAndSave(key, seconds, loader);
+			});
+		} catch (RuntimeException e) {
+			metrics.error("getOrLoad");
+			throw e;
+		} catch (Exception e) {
+			metrics.error("getOrLoad");
+			throw new IllegalStateException("Cache加载失败：" + key, e);
+		} finally {
+			metrics.record("getOrLoad", start);
+		}
+	}
+
+	private static <T> T loadAndSave(Object key, int seconds, Callable<T> loader) throws Exception {
+		long start = System.currentTimeMillis();
+		T value = loader.call();
+		if (value != null) {
+			save(key, value, seconds, (int) Math.min(System.currentTimeMillis() - start, Integer.MAX_VALUE));
+		}
+		return value;
+	}
+
+	/**
+	 * 读取带逻辑过期时间的值, 过了刷新点时提交后台刷新
+	 * 
+	 * @return 当前值(可能已逻辑过期), 不存在或读取失败时返回null
+	 */
+	private static Object getOrRefresh(RefreshAhead r, Object key, byte[] rawKey, int seconds, Callable<?> loader,
+			long lockMillis) throws Exception {
+		byte[] bytes;
+		Jedis jedis = null;
+		try {
+			jedis = getReadResource(rawKey);
+			bytes = jedis.get(rawKey);
+		} catch (Exception e) {
+			logger.error("Cache获取失败：" + e);
+			return null;
+		} finally {
+			releaseResource(jedis);
+		}
+		if (bytes == null) {
+			return null;
+		}
+		Object value = decode(key, bytes);
+		// 启用前写入的值没有逻辑过期时间, 由Redis的TTL处理
+		if (value != null && TimedValue.isTimed(bytes)) {
+			long now = System.currentTimeMillis();
+			long expireAt = TimedValue.expireAtMillis(bytes);
+			if (r.shouldRefresh(now, expireAt, TimedValue.ttlSeconds(bytes), TimedValue.deltaMillis(bytes))) {
+				r.refresh(rawKey, now >= expireAt, () -> refresh(key, rawKey, seconds, loader, lockMillis));
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * 后台刷新, lockMillis大于0时只有拿到Redis锁的进程刷新
+	 */
+	private static void refresh(Object key, byte[] rawKey, int seconds, Callable<?> loader, long lockMillis) {
+		byte[] lockKey = null;
+		byte[] token = null;
+		if (lockMillis > 0) {
+			lockKey = lockKey(rawKey);
+			token = UUID.randomUUID().toString().getBytes();
+			if (!tryLock(lockKey, token, lockMillis)) {
+				return;
+			}
+		}
+		try {
+			loadAndSave(key, seconds, loader);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		} finally {
+			if (lockKey != null) {
+				unlock(lockKey, token);
+			}
+		}
+	}
+
+	private static byte[] lockKey(byte[] rawKey) {
+		byte[] lockKey = Arrays.copyOf(rawKey, rawKey.length + LOCK_SUFFIX.length);
+		System.arraycopy(LOCK_SUFFIX, 0, lockKey, rawKey.length, LOCK_SUFFIX.length);
+		return lockKey;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T loadWithLock(Object key, byte[] rawKey, int seconds, Callable<T> loader, long lockMillis)
+			throws Exception {
+		byte[] lockKey = lockKey(rawKey);
+		byte[] token = UUID.randomUUID().toString().getBytes();
+		if (tryLock(lockKey, token, lockMillis)) {
+			try {
+				// 其他进程可能在我们读取之后、拿到锁之前写入
+				Object value = get(key);
+				return value != null ? (T) value : loadAndSave(key, seconds, loader);
+			} finally {
+				unlock(lockKey, token);
+			}
+		}
+		long deadline = System.currentTimeMillis() + lockMillis;
+		while (System.currentTimeMillis() < deadline) {
+			Thread.sleep(LOCK_POLL_MILLIS);
+			Object value = get(key);
+			if (value != null) {
+				return (T) value;
+			}
+		}
+		logger.warn("等待其他进程加载超时, 自己加载：" + key);
+		return loadAndSave(key, seconds, loader);
+	}
+
+	/**
+	 * @return 拿到锁或Redis不可用时返回true, 不能因为锁而阻止加载
+	 */
+	private static boolean tryLock(byte[] lockKey, byte[] token, long lockMillis) {
+		Jedis jedis = null;
+		try {
+			jedis = getResource();
+			return "OK".equals(jedis.set(lockKey, token, NX, PX, lockMillis));
+		} catch (Exception e) {
+			logger.error("加载锁获取失败：" + e);
+			return true;
+		} finally {
+			releaseResource(jedis);
+		}
+	}
+
+	/**
+	 * 只删除自己持有的锁, 锁已过期并被其他进程拿到时不删除
+	 */
+	private static void unlock(byte[] lockKey, byte[] token) {
+		Jedis jedis = null;
+		try {
+			jedis = getResource();
+			jedis.eval(UNLOCK_SCRIPT, 1, lockKey, token);
+		} catch (Exception e) {
+			logger.error("加载锁释放失败：" + e);
 		} finally {
 			releaseResource(jedis);
 		}
 	}
 	
+	/**
+	 * 启用进程内近端缓存, get命中时不再访问Redis也不再反序列化
+	 * save/del/expire会向失效频道发布通知, 所有写入方都需要启用才能保证一致
+	 * 失效频道的订阅一直占用连接池中的一个连接, 连接池的maxTotal需要多留1个;
+	 * 不想占用连接池时使用enableNearCache(maxEntries, maxBytes, expireMillis, password, timeout)
+	 * 
+	 * @param maxEntries 最大条目数
+	 * @param maxBytes 最大字节数(按序列化后的大小计算)
+	 * @param expireMillis 本地缓存的最长存活时间
+	 */
+	public static synchronized void enableNearCache(int maxEntries, long maxBytes, long expireMillis) {
+		disableNearCache();
+		NearCache cache = new NearCache(maxEntries, maxBytes, expireMillis);
+		cache.subscribe(jedisSentinelPool);
+		nearCache = cache;
+	}
+
+	/**
+	 * 启用进程内近端缓存, 失效频道使用单独的连接订阅, 不占用连接池
+	 * 每次(重新)订阅时连接sentinel当前的master, 故障切换后跟随新的master
+	 * 
+	 * @param maxEntries 最大条目数
+	 * @param maxBytes 最大字节数(按序列化后的大小计算)
+	 * @param expireMillis 本地缓存的最长存活时间
+	 * @param password 密码, 可以为null
+	 * @param timeout 连接超时, 毫秒
+	 */
+	public static synchronized void enableNearCache(int maxEntries, long maxBytes, long expireMillis,
+			String password, int timeout) {
+		disableNearCache();
+		NearCache cache = new NearCache(maxEntries, maxBytes, expireMillis);
+		cache.subscribe(() -> subscriberConnection(password, timeout));
+		nearCache = cache;
+	}
+
+	/**
+	 * 为订阅新建一个到当前master的连接, 不是JedisSentinelPool时(测试)从连接池借用
+	 */
+	private static Jedis subscriberConnection(String password, int timeout) {
+		if (!(jedisSentinelPool instanceof JedisSentinelPool)) {
+			return jedisSentinelPool.getResource();
+		}
+		HostAndPort master = ((JedisSentinelPool) jedisSentinelPool).getCurrentHostMaster();
+		Jedis jedis = new Jedis(master.getHost(), master.getPort(), timeout);
+		try {
+			if (password != null) {
+				jedis.auth(password);
+			}
+		} catch (RuntimeException e) {
+			jedis.close();
+			throw e;
+		}
+		return jedis;
+	}
+
+	/**
+	 * 关闭进程内近端缓存
+	 */
+	public static synchronized void disableNearCache() {
+		if (nearCache != null) {
+			nearCache.close();
+			nearCache = null;
+		}
+	}
+
+	public static NearCache getNearCache() {
+		return nearCache;
+	}
+
+	/**
+	 * 启用replica读取, get/getHash/getAllHash/exists/keys按preference发送到sentinel发现的replica
+	 * 
+	 * <pre>
+	 * JedisSentinelUtils.enableReplicaReads(ReadPreference.REPLICA_PREFERRED, sentinels, "master1",
+	 *         password, 2000, poolConfig, 1000);
+	 * </pre>
+	 * 
+	 * @param preference 读节点的选择方式
+	 * @param sentinels sentinel地址, host:port
+	 * @param masterName sentinel中的master名称
+	 * @param password 密码, 可以为null
+	 * @param timeout 连接超时, 毫秒
+	 * @param poolConfig 每个replica连接池的配置
+	 * @param stickyMillis read-your-writes: 当前线程写过的key在这段时间内从master读取, 0表示不启用
+	 */
+	public static synchronized void enableReplicaReads(ReadPreference preference, Set<String> sentinels,
+			String masterName, String password, int timeout, GenericObjectPoolConfig poolConfig, long stickyMillis) {
+		disableReplicaReads();
+		router = new ReplicaRouter(preference, jedisSentinelPool, sentinels, masterName, password, timeout,
+				poolConfig, stickyMillis, 5000);
+	}
+
+	/**
+	 * 关闭replica读取, 全部读master
+	 */
+	public static synchronized void disableReplicaReads() {
+		if (router != null) {
+			ReplicaRouter r = router;
+			router = null;
+			r.close();
+		}
+	}
+
+	public static ReplicaRouter getReplicaRouter() {
+		return router;
+	}
+
+	/**
+	 * 启用近端缓存时, 本地失效并通知其他进程
+	 * 
+	 * @param jedis
+	 * @param rawKey
+	 */
+	private static void publishInvalidation(Jedis jedis, byte[] rawKey) {
+		NearCache cache = nearCache;
+		if (cache != null) {
+			cache.publish(jedis, rawKey);
+		}
+	}
+
 	/**
 	 * 从main函数获取Spring容器内的bean实例
 	 * 
@@ -305,6 +1144,161 @@ public class JedisSentinelUtils {
 	}
 
 	public static JedisSentinelPool getJedisSentinelPool() {
-		return jedisSentinelPool;
+		return jedisSentinelPool instanceof JedisSentinelPool ? (JedisSentinelPool) jedisSentinelPool : null;
+	}
+
+	/**
+	 * 使用任意连接池代替JedisSentinelPool, 用于测试
+	 * 
+	 * @param pool
+	 */
+	static void setPool(Pool<Jedis> pool) {
+		jedisSentinelPool = pool;
+	}
+
+	/**
+	 * 使用指定的ReplicaRouter, 用于测试
+	 * 
+	 * @param replicaRouter null表示全部读master
+	 */
+	static void setReplicaRouter(ReplicaRouter replicaRouter) {
+		router = replicaRouter;
+	}
+
+	/**
+	 * 启用延迟写入, saveBehind的值进入有界队列, 按key合并后由后台线程用Pipeline批量写出
+	 * JVM正常退出时写出剩余的值
+	 * 
+	 * @param capacity 队列中最多的key数
+	 * @param batchSize 每个Pipeline写出的key数
+	 * @param flushMillis 刷新周期, 同一个key在周期内只写最后一次的值
+	 * @param blockMillis 队列满时调用方的最长等待时间, 0表示直接丢弃
+	 */
+	public static synchronized void enableWriteBehind(int capacity, int batchSize, long flushMillis, long blockMillis) {
+		disableWriteBehind();
+		WriteBehind w = new WriteBehind(capacity, batchSize, flushMillis, blockMillis, JedisSentinelUtils::writeBatch);
+		writeBehindHook = new Thread(() -> w.close(WRITE_BEHIND_CLOSE_MILLIS), "cache-write-behind-shutdown");
+		Runtime.getRuntime().addShutdownHook(writeBehindHook);
+		writeBehind = w;
+	}
+
+	/**
+	 * 关闭延迟写入, 写出剩余的值后返回, 之后saveBehind同步保存
+	 */
+	public static synchronized void disableWriteBehind() {
+		WriteBehind w = writeBehind;
+		writeBehind = null;
+		if (w != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(writeBehindHook);
+			} catch (IllegalStateException e) {
+				// JVM正在退出, 由shutdown hook写出
+			}
+			writeBehindHook = null;
+			w.close(WRITE_BEHIND_CLOSE_MILLIS);
+		}
+	}
+
+	/**
+	 * 队列深度、丢弃次数等统计, 未启用时返回null
+	 */
+	public static WriteBehind getWriteBehind() {
+		return writeBehind;
+	}
+
+	/**
+	 * 启用提前刷新: save写入的值带逻辑过期时间, getOrLoad读到过了刷新点的值时在后台刷新, 调用方不等待
+	 * 逻辑过期后值在Redis中再保留staleSeconds, 期间getOrLoad返回旧值并刷新; get不受影响
+	 * 
+	 * @param refreshFraction 超过TTL的这个比例后刷新, 例如0.8; 1表示只在逻辑过期后刷新
+	 * @param beta XFetch系数, 按加载耗时概率性地提前刷新, 通常为1; 0表示不使用
+	 * @param staleSeconds 逻辑过期后返回旧值的最长时间
+	 * @param threads 后台刷新线程数
+	 */
+	public static synchronized void enableRefreshAhead(double refreshFraction, double beta, int staleSeconds,
+			int threads) {
+		disableRefreshAhead();
+		refreshAhead = new RefreshAhead(refreshFraction, beta, staleSeconds, threads);
+	}
+
+	/**
+	 * 关闭提前刷新, 已写入的值仍然可以读取
+	 */
+	public static synchronized void disableRefreshAhead() {
+		RefreshAhead r = refreshAhead;
+		refreshAhead = null;
+		if (r != null) {
+			r.close();
+		}
+	}
+
+	/**
+	 * 刷新次数、旧值读取次数等统计, 未启用时返回null
+	 */
+	public static RefreshAhead getRefreshAhead() {
+		return refreshAhead;
+	}
+
+	/**
+	 * 设置缓存键的编码方式, 所有客户端需要一致
+	 * 从旧版本升级时, 可以先设为JAVA, 所有客户端升级后切换为UTF8并运行migrateKeys
+	 * 
+	 * @param _keyEncoding
+	 */
+	public static void setKeyEncoding(KeyEncoding _keyEncoding) {
+		keyEncoding = _keyEncoding;
+	}
+
+	public static KeyEncoding getKeyEncoding() {
+		return keyEncoding;
+	}
+
+	/**
+	 * 把Java序列化的String/数字key在线迁移为当前的KeyEncoding, 使用SCAN和Pipeline RENAMENX, 可以重复运行
+	 * 
+	 * @param batchSize 每批的key数
+	 * @return 迁移结果
+	 */
+	public static KeyMigration.Result migrateKeys(int batchSize) {
+		return new KeyMigration(jedisSentinelPool, keyEncoding, batchSize).run();
+	}
+
+	/**
+	 * 设置缓存值的编码方式, 只影响值, 键按setKeyEncoding设置的方式编码(默认UTF-8)
+	 * 切换编码时可以先让所有读取方注册新的Codec(Codecs.register), 再切换写入方
+	 * 
+	 * @param _codec
+	 */
+	public static void setCodec(Codec _codec) {
+		Codecs.register(_codec);
+		codec = _codec;
+	}
+
+	public static Codec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * 启用大值压缩, 例如 new Compression(new Lz4Compressor(), 1024); 传入null关闭
+	 * 关闭后已压缩的值仍然可以读取
+	 * 
+	 * @param _compression
+	 */
+	public static void setCompression(Compression _compression) {
+		compression = _compression;
+	}
+
+	/**
+	 * 按key前缀统计的压缩率和耗时也可以从这里读取
+	 */
+	public static Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * 每个方法的延迟直方图、连接池等待、序列化耗时和字节数, 也可以通过JMX读取
+	 */
+	public static CommandMetrics metrics() {
+		return metrics;
 	}
 }
\ No newline at end of file
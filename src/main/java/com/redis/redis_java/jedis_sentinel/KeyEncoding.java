@@ -0,0 +1,56 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.redis.redis_java.SerializeUtils;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 缓存键的编码方式
+ */
+public enum KeyEncoding {
+
+	/** 全部使用Java序列化, 旧版本的格式 */
+	JAVA {
+		@Override
+		public byte[] encode(Object key) throws Exception {
+			return SerializeUtils.serialize(key);
+		}
+	},
+
+	/**
+	 * String和整数/小数按UTF-8原样保存, 可以直接用redis-cli查看, 也可以与JedisUtils共享;
+	 * 其他类型仍使用Java序列化(以0xAC开头, 不会与UTF-8文本冲突)
+	 * 注意数字1和字符串"1"是同一个key
+	 */
+	UTF8 {
+		@Override
+		public byte[] encode(Object key) throws Exception {
+			if (key instanceof String) {
+				return SafeEncoder.encode((String) key);
+			}
+			if (isPlainNumber(key)) {
+				return SafeEncoder.encode(key.toString());
+			}
+			return SerializeUtils.serialize(key);
+		}
+	};
+
+	/**
+	 * @param key
+	 * @return 编码后的key
+	 * @throws Exception
+	 */
+	public abstract byte[] encode(Object key) throws Exception;
+
+	/**
+	 * @return UTF8编码时是否按文本保存
+	 */
+	static boolean isPlainNumber(Object key) {
+		return key instanceof Integer || key instanceof Long || key instanceof Short || key instanceof Byte
+				|| key instanceof Double || key instanceof Float || key instanceof BigInteger
+				|| key instanceof BigDecimal;
+	}
+}
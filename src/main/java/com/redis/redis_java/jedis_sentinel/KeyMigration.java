@@ -0,0 +1,174 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redis.redis_java.SerializeUtils;
+import com.redis.redis_java.scan.ScanIterator;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Pool;
+
+/**
+ * 在线迁移缓存键的编码: SCAN遍历全部key, 把Java序列化的String/数字key按批用Pipeline RENAMENX为新编码
+ * 新key已存在(升级后的客户端已经写入)时保留新key, 删除旧key
+ * 应在所有客户端都切换到新编码之后运行; 迁移期间旧key仍可被旧客户端读取, 新客户端读不到的key相当于缓存未命中
+ */
+public class KeyMigration {
+
+	private static Logger logger = LoggerFactory.getLogger(KeyMigration.class);
+
+	/** Java序列化的流头 */
+	private static final byte STREAM_MAGIC_0 = (byte) 0xAC;
+	private static final byte STREAM_MAGIC_1 = (byte) 0xED;
+
+	/** 迁移结果 */
+	public static final class Result {
+
+		private long scanned;
+
+		private long renamed;
+
+		private long conflicts;
+
+		private long skipped;
+
+		/** 遍历的key数 */
+		public long getScanned() {
+			return scanned;
+		}
+
+		/** 改名的key数 */
+		public long getRenamed() {
+			return renamed;
+		}
+
+		/** 新key已存在而删除旧key的数量 */
+		public long getConflicts() {
+			return conflicts;
+		}
+
+		/** 不是String/数字key, 或迁移期间已被删除的数量 */
+		public long getSkipped() {
+			return skipped;
+		}
+
+		@Override
+		public String toString() {
+			return "scanned=" + scanned + ", renamed=" + renamed + ", conflicts=" + conflicts + ", skipped=" + skipped;
+		}
+	}
+
+	private final Pool<Jedis> pool;
+
+	private final KeyEncoding target;
+
+	private final int batchSize;
+
+	/**
+	 * @param pool master的连接池
+	 * @param target 新的编码方式
+	 * @param batchSize 每页SCAN和每个Pipeline的key数
+	 */
+	public KeyMigration(Pool<Jedis> pool, KeyEncoding target, int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		this.pool = pool;
+		this.target = target;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * 执行迁移, 可以重复运行
+	 *
+	 * @return Result
+	 */
+	public Result run() {
+		Result result = new Result();
+		List<byte[][]> batch = new ArrayList<byte[][]>(batchSize);
+		ScanIterator<byte[]> it = ScanIterator.binaryKeys(pool::getResource, null, batchSize, null);
+		while (it.hasNext()) {
+			byte[] oldKey = it.next();
+			result.scanned++;
+			byte[] newKey = newKey(oldKey);
+			if (newKey == null) {
+				result.skipped++;
+				continue;
+			}
+			batch.add(new byte[][] {oldKey, newKey});
+			if (batch.size() == batchSize) {
+				rename(batch, result);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			rename(batch, result);
+		}
+		logger.info("缓存键迁移完成：" + result);
+		return result;
+	}
+
+	/**
+	 * @return 新编码下的key, 不需要迁移时返回null
+	 */
+	byte[] newKey(byte[] oldKey) {
+		if (oldKey.length < 2 || oldKey[0] != STREAM_MAGIC_0 || oldKey[1] != STREAM_MAGIC_1) {
+			return null;
+		}
+		try {
+			Object key = SerializeUtils.unSerialize(oldKey);
+			if (!(key instanceof String) && !KeyEncoding.isPlainNumber(key)) {
+				return null;
+			}
+			// 反序列化会忽略末尾多余的字节(例如加载锁的后缀), 重新编码不一致的不是缓存键
+			if (!Arrays.equals(oldKey, KeyEncoding.JAVA.encode(key))) {
+				return null;
+			}
+			byte[] newKey = target.encode(key);
+			return Arrays.equals(oldKey, newKey) ? null : newKey;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private void rename(List<byte[][]> batch, Result result) {
+		Jedis jedis = pool.getResource();
+		try {
+			Pipeline pipeline = jedis.pipelined();
+			List<Response<Long>> responses = new ArrayList<Response<Long>>(batch.size());
+			for (byte[][] keys : batch) {
+				responses.add(pipeline.renamenx(keys[0], keys[1]));
+			}
+			pipeline.sync();
+			Pipeline cleanup = null;
+			for (int i = 0; i < batch.size(); i++) {
+				try {
+					if (responses.get(i).get() == 1) {
+						result.renamed++;
+					} else {
+						if (cleanup == null) {
+							cleanup = jedis.pipelined();
+						}
+						cleanup.del(batch.get(i)[0]);
+						result.conflicts++;
+					}
+				} catch (JedisDataException e) {
+					// SCAN之后被删除或过期
+					result.skipped++;
+				}
+			}
+			if (cleanup != null) {
+				cleanup.sync();
+			}
+		} finally {
+			jedis.close();
+		}
+	}
+}
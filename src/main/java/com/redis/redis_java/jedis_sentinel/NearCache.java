@@ -0,0 +1,372 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.Pool;
+
+/**
+ * 进程内近端缓存, 保存反序列化后的对象
+ * 按条目数和字节数(Redis中序列化后的大小)限制容量, 分段LRU淘汰;
+ * 通过Redis pub/sub失效频道接收其他进程save/del/expire发出的失效通知
+ *
+ * 注意: 命中时返回的是同一个对象实例, 调用方不能修改它
+ */
+public class NearCache {
+
+	private static Logger logger = LoggerFactory.getLogger(NearCache.class);
+
+	/** 默认失效频道 */
+	public static final String DEFAULT_CHANNEL = "__near_cache_invalidate__";
+
+	private static final int SEGMENTS = 16;
+
+	/** 失效计数的分片数, 按key的哈希分片, 其他key的失效很少影响回填 */
+	private static final int VERSION_STRIPES = 1024;
+
+	private static final long RETRY_INTERVAL_MILLIS = 1000;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	/** 本地缓存的最长存活时间, Redis端的过期不会发通知, 靠它兜底 */
+	private final long expireMillis;
+
+	/** 按key分片的失效计数, 读Redis期间同一分片发生过失效则不回填, 避免把旧值放回缓存 */
+	private final AtomicLongArray invalidations = new AtomicLongArray(VERSION_STRIPES);
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	private final byte[] channel;
+
+	private volatile boolean closed;
+
+	private volatile Subscriber subscriber;
+
+	/**
+	 * @param maxEntries 最大条目数
+	 * @param maxBytes 最大字节数
+	 * @param expireMillis 本地缓存的最长存活时间
+	 * @param channel 失效频道
+	 */
+	public NearCache(int maxEntries, long maxBytes, long expireMillis, String channel) {
+		if (maxEntries <= 0 || maxBytes <= 0 || expireMillis <= 0) {
+			throw new IllegalArgumentException("maxEntries, maxBytes and expireMillis must be positive");
+		}
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS), Math.max(1, maxBytes / SEGMENTS));
+		}
+		this.expireMillis = expireMillis;
+		this.channel = channel.getBytes();
+	}
+
+	public NearCache(int maxEntries, long maxBytes, long expireMillis) {
+		this(maxEntries, maxBytes, expireMillis, DEFAULT_CHANNEL);
+	}
+
+	private Segment segmentFor(ByteBuffer key) {
+		return segments[spread(key) & (SEGMENTS - 1)];
+	}
+
+	private static int stripeFor(ByteBuffer key) {
+		return (spread(key) >>> 4) & (VERSION_STRIPES - 1);
+	}
+
+	private static int spread(ByteBuffer key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @param key 序列化后的缓存键
+	 * @return 缓存的对象, 未命中返回null
+	 */
+	public Object get(byte[] key) {
+		ByteBuffer k = ByteBuffer.wrap(key);
+		Object value = segmentFor(k).get(k, System.currentTimeMillis());
+		if (value == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * 读Redis之前取一次, 回填时传给put
+	 *
+	 * @param key 序列化后的缓存键
+	 */
+	public long version(byte[] key) {
+		return invalidations.get(stripeFor(ByteBuffer.wrap(key)));
+	}
+
+	/**
+	 * 回填缓存, 如果从version(key)之后这个key(或同一分片的其他key)失效过则放弃
+	 *
+	 * @param key 序列化后的缓存键
+	 * @param value 反序列化后的对象
+	 * @param size 序列化后的字节数
+	 * @param version 读Redis之前的version(key)
+	 */
+	public void put(byte[] key, Object value, int size, long version) {
+		if (value == null) {
+			return;
+		}
+		ByteBuffer k = ByteBuffer.wrap(key);
+		segmentFor(k).put(k, new Entry(value, size, System.currentTimeMillis() + expireMillis), version);
+	}
+
+	/**
+	 * 从本地缓存中移除
+	 *
+	 * @param key 序列化后的缓存键
+	 */
+	public void invalidate(byte[] key) {
+		ByteBuffer k = ByteBuffer.wrap(key);
+		// 先增加计数再移除: 正在回填的旧值要么被计数拦下, 要么已放入并被随后的移除删掉
+		invalidations.incrementAndGet(stripeFor(k));
+		segmentFor(k).remove(k);
+	}
+
+	public void clear() {
+		for (int i = 0; i < VERSION_STRIPES; i++) {
+			invalidations.incrementAndGet(i);
+		}
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * 本地失效并通知其他进程
+	 *
+	 * @param jedis
+	 * @param key 序列化后的缓存键
+	 */
+	public void publish(Jedis jedis, byte[] key) {
+		invalidate(key);
+		jedis.publish(channel, key);
+	}
+
+	/**
+	 * 在Pipeline中发布失效通知, 用于批量写入
+	 *
+	 * @param pipeline
+	 * @param key 序列化后的缓存键
+	 */
+	public void publish(Pipeline pipeline, byte[] key) {
+		invalidate(key);
+		pipeline.publish(channel, key);
+	}
+
+	/**
+	 * 从连接池借用连接订阅失效频道, 订阅期间一直占用这个连接, 连接池的maxTotal需要多留1个
+	 *
+	 * @param pool
+	 */
+	public void subscribe(final Pool<Jedis> pool) {
+		subscribe(pool::getResource);
+	}
+
+	/**
+	 * 启动订阅线程监听失效频道, 连接断开后自动重连; close()之后不再订阅
+	 *
+	 * @param connections 每次(重新)订阅时调用一次, 返回的连接在订阅结束后close
+	 */
+	public synchronized void subscribe(final Supplier<Jedis> connections) {
+		if (subscriber != null) {
+			return;
+		}
+		subscriber = new Subscriber();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!closed) {
+					Jedis jedis = null;
+					try {
+						jedis = connections.get();
+						if (closed) {
+							break;
+						}
+						// 重新订阅期间可能漏掉通知, 清空重来
+						clear();
+						jedis.subscribe(subscriber, channel);
+					} catch (Exception e) {
+						if (!closed) {
+							logger.error("NearCache订阅失效频道失败：" + e);
+							clear();
+							sleep();
+						}
+					} finally {
+						if (jedis != null) {
+							jedis.close();
+						}
+					}
+				}
+			}
+		}, "near-cache-invalidator");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static void sleep() {
+		try {
+			Thread.sleep(RETRY_INTERVAL_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 停止订阅并清空
+	 */
+	public synchronized void close() {
+		closed = true;
+		if (subscriber != null) {
+			subscriber.stop();
+		}
+		clear();
+	}
+
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	public long bytes() {
+		long bytes = 0;
+		for (Segment segment : segments) {
+			bytes += segment.bytes();
+		}
+		return bytes;
+	}
+
+	public long hitCount() {
+		return hits.sum();
+	}
+
+	public long missCount() {
+		return misses.sum();
+	}
+
+	public long evictionCount() {
+		return evictions.sum();
+	}
+
+	private class Subscriber extends BinaryJedisPubSub {
+
+		private final AtomicBoolean stopping = new AtomicBoolean();
+
+		@Override
+		public void onSubscribe(byte[] channel, int subscribedChannels) {
+			// close()在订阅确认之前执行时isSubscribed()还是false, 由订阅线程在这里退订
+			if (closed) {
+				stop();
+			}
+		}
+
+		@Override
+		public void onMessage(byte[] channel, byte[] message) {
+			invalidate(message);
+		}
+
+		/**
+		 * 只退订一次, 避免close()和订阅线程同时在连接上发送UNSUBSCRIBE
+		 */
+		void stop() {
+			if (isSubscribed() && stopping.compareAndSet(false, true)) {
+				unsubscribe();
+			}
+		}
+	}
+
+	private static final class Entry {
+		final Object value;
+		final int size;
+		final long expireAt;
+
+		Entry(Object value, int size, long expireAt) {
+			this.value = value;
+			this.size = size;
+			this.expireAt = expireAt;
+		}
+	}
+
+	private final class Segment {
+		private final int maxEntries;
+		private final long maxBytes;
+		private final LinkedHashMap<ByteBuffer, Entry> map = new LinkedHashMap<ByteBuffer, Entry>(16, 0.75f, true);
+		private long bytes;
+
+		Segment(int maxEntries, long maxBytes) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized Object get(ByteBuffer key, long now) {
+			Entry entry = map.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.expireAt <= now) {
+				map.remove(key);
+				bytes -= entry.size;
+				return null;
+			}
+			return entry.value;
+		}
+
+		synchronized void put(ByteBuffer key, Entry entry, long version) {
+			if (entry.size > maxBytes || invalidations.get(stripeFor(key)) != version) {
+				return;
+			}
+			Entry old = map.put(key, entry);
+			if (old != null) {
+				bytes -= old.size;
+			}
+			bytes += entry.size;
+			Iterator<Map.Entry<ByteBuffer, Entry>> it = map.entrySet().iterator();
+			while ((map.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+				Entry eldest = it.next().getValue();
+				it.remove();
+				bytes -= eldest.size;
+				evictions.increment();
+			}
+		}
+
+		synchronized void remove(ByteBuffer key) {
+			Entry old = map.remove(key);
+			if (old != null) {
+				bytes -= old.size;
+			}
+		}
+
+		synchronized void clear() {
+			map.clear();
+			bytes = 0;
+		}
+
+		synchronized int size() {
+			return map.size();
+		}
+
+		synchronized long bytes() {
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.redis.redis_java.jedis_sentinel;
+
+/**
+ * 读操作发送到哪个节点
+ */
+public enum ReadPreference {
+
+	/** 全部发送到master */
+	MASTER,
+
+	/** 轮流发送到健康的replica, 没有可用的replica时发送到master */
+	REPLICA_PREFERRED,
+
+	/** 发送到PING延迟最低的节点(包括master), 延迟相近的节点之间轮流 */
+	NEAREST
+}
@@ -0,0 +1,147 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 提前刷新和过期后返回旧值(stale-while-revalidate)
+ * 值带有逻辑过期时间, Redis中的物理TTL再多保留staleSeconds;
+ * 读取时若已过刷新点(TTL的一定比例, 或按XFetch概率提前)则在后台线程刷新, 调用方直接拿到当前值
+ */
+public class RefreshAhead {
+
+	private static Logger logger = LoggerFactory.getLogger(RefreshAhead.class);
+
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	private final double refreshFraction;
+
+	private final double beta;
+
+	private final int staleSeconds;
+
+	private final ThreadPoolExecutor executor;
+
+	/** 正在刷新的key, 同一个key同时只提交一次 */
+	private final Set<ByteBuffer> refreshing = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder refreshes = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder staleReads = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * @param refreshFraction 超过TTL的这个比例后读取时刷新, 取值(0, 1], 1表示只在逻辑过期后刷新
+	 * @param beta XFetch系数, 越大越早刷新, 通常为1; 0表示不使用XFetch
+	 * @param staleSeconds 逻辑过期后在Redis中多保留的秒数, 期间读取返回旧值并刷新
+	 * @param threads 后台刷新线程数
+	 */
+	RefreshAhead(double refreshFraction, double beta, int staleSeconds, int threads) {
+		if (refreshFraction <= 0 || refreshFraction > 1 || beta < 0 || staleSeconds < 0 || threads <= 0) {
+			throw new IllegalArgumentException("invalid refresh-ahead settings");
+		}
+		this.refreshFraction = refreshFraction;
+		this.beta = beta;
+		this.staleSeconds = staleSeconds;
+		// 队列满时丢弃, 下一次读取会再次触发
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(1024), r -> {
+					Thread thread = new Thread(r, "cache-refresh-" + THREADS.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	int staleSeconds() {
+		return staleSeconds;
+	}
+
+	/**
+	 * @param now 当前时间, 毫秒
+	 * @param expireAtMillis 逻辑过期时间
+	 * @param ttlSeconds 写入时的TTL
+	 * @param deltaMillis 上一次加载的耗时
+	 * @return 是否需要刷新
+	 */
+	boolean shouldRefresh(long now, long expireAtMillis, int ttlSeconds, int deltaMillis) {
+		if (now >= expireAtMillis) {
+			return true;
+		}
+		if (now >= expireAtMillis - (long) (ttlSeconds * 1000L * (1 - refreshFraction))) {
+			return true;
+		}
+		if (beta > 0 && deltaMillis > 0) {
+			// XFetch: 剩余时间越短、加载越慢, 提前刷新的概率越高
+			double gap = -deltaMillis * beta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+			return now + gap >= expireAtMillis;
+		}
+		return false;
+	}
+
+	/**
+	 * 在后台刷新, 同一个key已在刷新时忽略
+	 *
+	 * @param rawKey 序列化后的key
+	 * @param stale 是否是已逻辑过期的值触发的
+	 * @param task 加载并保存
+	 */
+	void refresh(byte[] rawKey, boolean stale, Runnable task) {
+		if (stale) {
+			staleReads.increment();
+		}
+		ByteBuffer key = ByteBuffer.wrap(rawKey);
+		if (!refreshing.add(key)) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					task.run();
+					refreshes.increment();
+				} catch (RuntimeException e) {
+					failures.increment();
+					logger.error("Cache后台刷新失败：" + e);
+				} finally {
+					refreshing.remove(key);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.remove(key);
+			dropped.increment();
+		}
+	}
+
+	/** 完成的后台刷新次数 */
+	public long refreshCount() {
+		return refreshes.sum();
+	}
+
+	public long failureCount() {
+		return failures.sum();
+	}
+
+	/** 返回逻辑过期旧值的次数 */
+	public long staleReadCount() {
+		return staleReads.sum();
+	}
+
+	/** 刷新队列已满而丢弃的次数 */
+	public long droppedCount() {
+		return dropped.sum();
+	}
+
+	void close() {
+		executor.shutdown();
+	}
+}
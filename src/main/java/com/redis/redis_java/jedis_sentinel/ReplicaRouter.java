@@ -0,0 +1,397 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+/**
+ * 按ReadPreference把读操作分发到sentinel管理的replica
+ * 定期从sentinel获取replica列表, 每个replica一个连接池, replica上下线、主从切换后自动跟随;
+ * 同时PING每个节点, 按指数加权平均的延迟选择NEAREST节点
+ *
+ * 启用read-your-writes时, 一个线程写过的key在stickyMillis内从master读取, 避免读到复制延迟期间的旧值;
+ * 其他线程写入的key不在此保证范围内
+ */
+public class ReplicaRouter {
+
+	private static Logger logger = LoggerFactory.getLogger(ReplicaRouter.class);
+
+	/** 每个线程记录的最近写入key数量 */
+	private static final int STICKY_KEYS = 1024;
+
+	/** 延迟的指数加权系数 */
+	private static final double EWMA_ALPHA = 0.3;
+
+	/** 延迟不超过最低延迟的1.5倍加100微秒的节点视为同样近 */
+	private static final double NEAREST_FACTOR = 1.5;
+	private static final long NEAREST_SLACK_NANOS = 100000;
+
+	private final ReadPreference preference;
+
+	private final Set<String> sentinels;
+
+	private final String masterName;
+
+	private final String password;
+
+	private final int timeout;
+
+	private final GenericObjectPoolConfig poolConfig;
+
+	private final Pool<Jedis> masterPool;
+
+	private final long stickyNanos;
+
+	/** 所有已知的replica, 只在刷新线程中修改 */
+	private final Map<HostAndPort, Replica> replicas = new HashMap<HostAndPort, Replica>();
+
+	/** 当前可读的replica */
+	private volatile List<Replica> healthy = Collections.emptyList();
+
+	private volatile long masterLatencyNanos = -1;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	private final ThreadLocal<LinkedHashMap<ByteBuffer, Long>> written = new ThreadLocal<LinkedHashMap<ByteBuffer, Long>>() {
+		@Override
+		protected LinkedHashMap<ByteBuffer, Long> initialValue() {
+			return new LinkedHashMap<ByteBuffer, Long>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+					return size() > STICKY_KEYS;
+				}
+			};
+		}
+	};
+
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * @param preference 读节点的选择方式
+	 * @param masterPool master的连接池, 用于测量master的延迟和回退
+	 * @param sentinels sentinel地址, host:port
+	 * @param masterName sentinel中的master名称
+	 * @param password replica的密码, 可以为null
+	 * @param timeout 连接超时, 毫秒
+	 * @param poolConfig 每个replica连接池的配置
+	 * @param stickyMillis 写入后从master读取的时间, 0表示不启用read-your-writes
+	 * @param refreshMillis 刷新replica列表和延迟的间隔
+	 */
+	public ReplicaRouter(ReadPreference preference, Pool<Jedis> masterPool, Set<String> sentinels, String masterName,
+			String password, int timeout, GenericObjectPoolConfig poolConfig, long stickyMillis, long refreshMillis) {
+		this.preference = preference;
+		this.masterPool = masterPool;
+		this.sentinels = sentinels;
+		this.masterName = masterName;
+		this.password = password;
+		this.timeout = timeout;
+		this.poolConfig = poolConfig;
+		this.stickyNanos = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "replica-router-" + masterName);
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (preference != ReadPreference.MASTER) {
+			timer.scheduleWithFixedDelay(this::refresh, 0, refreshMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public ReadPreference getPreference() {
+		return preference;
+	}
+
+	/**
+	 * 选择读取key的节点
+	 *
+	 * @param rawKey 序列化后的key, null表示与key无关的读(例如SCAN)
+	 * @return replica的连接池, 或者master的连接池
+	 */
+	public Pool<Jedis> route(byte[] rawKey) {
+		if (preference == ReadPreference.MASTER || (rawKey != null && recentlyWritten(rawKey))) {
+			return masterPool;
+		}
+		List<Replica> candidates = healthy;
+		if (candidates.isEmpty()) {
+			return masterPool;
+		}
+		if (preference == ReadPreference.NEAREST) {
+			return nearest(candidates);
+		}
+		return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size())).pool;
+	}
+
+	/**
+	 * 多key读取的路由, 其中任何一个key刚被当前线程写入时读master
+	 *
+	 * @param rawKeys 序列化后的key
+	 * @return 连接池
+	 */
+	public Pool<Jedis> route(List<byte[]> rawKeys) {
+		for (byte[] rawKey : rawKeys) {
+			if (recentlyWritten(rawKey)) {
+				return masterPool;
+			}
+		}
+		return route((byte[]) null);
+	}
+
+	private Pool<Jedis> nearest(List<Replica> candidates) {
+		long master = masterLatencyNanos;
+		long best = master < 0 ? Long.MAX_VALUE : master;
+		for (Replica replica : candidates) {
+			best = Math.min(best, replica.latencyNanos);
+		}
+		long limit = (long) (best * NEAREST_FACTOR) + NEAREST_SLACK_NANOS;
+		List<Pool<Jedis>> near = new ArrayList<Pool<Jedis>>(candidates.size() + 1);
+		if (master >= 0 && master <= limit) {
+			near.add(masterPool);
+		}
+		for (Replica replica : candidates) {
+			if (replica.latencyNanos <= limit) {
+				near.add(replica.pool);
+			}
+		}
+		return near.get(Math.floorMod(next.getAndIncrement(), near.size()));
+	}
+
+	/**
+	 * 从replica获取连接失败时调用, 在下次刷新前不再使用这个replica
+	 *
+	 * @param pool route返回的连接池
+	 */
+	public void failed(Pool<Jedis> pool) {
+		List<Replica> current = healthy;
+		List<Replica> remaining = new ArrayList<Replica>(current.size());
+		for (Replica replica : current) {
+			if (replica.pool != pool) {
+				remaining.add(replica);
+			} else {
+				logger.warn("replica {} unavailable, reading from master until next refresh", replica.address);
+			}
+		}
+		if (remaining.size() != current.size()) {
+			healthy = Collections.unmodifiableList(remaining);
+		}
+	}
+
+	/**
+	 * 当前线程写入了key, 启用read-your-writes时之后的读取在stickyMillis内发送到master
+	 *
+	 * @param rawKey 序列化后的key
+	 */
+	public void wrote(byte[] rawKey) {
+		if (stickyNanos > 0 && preference != ReadPreference.MASTER) {
+			written.get().put(ByteBuffer.wrap(rawKey), System.nanoTime() + stickyNanos);
+		}
+	}
+
+	private boolean recentlyWritten(byte[] rawKey) {
+		if (stickyNanos <= 0) {
+			return false;
+		}
+		LinkedHashMap<ByteBuffer, Long> keys = written.get();
+		if (keys.isEmpty()) {
+			return false;
+		}
+		ByteBuffer key = ByteBuffer.wrap(rawKey);
+		Long deadline = keys.get(key);
+		if (deadline == null) {
+			return false;
+		}
+		if (deadline - System.nanoTime() < 0) {
+			keys.remove(key);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 当前可读的replica地址
+	 */
+	public List<HostAndPort> getReplicas() {
+		List<HostAndPort> addresses = new ArrayList<HostAndPort>();
+		for (Replica replica : healthy) {
+			addresses.add(replica.address);
+		}
+		return addresses;
+	}
+
+	/**
+	 * 停止刷新并关闭所有replica连接池
+	 */
+	public void close() {
+		timer.shutdownNow();
+		try {
+			timer.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		healthy = Collections.emptyList();
+		synchronized (replicas) {
+			for (Replica replica : replicas.values()) {
+				replica.pool.destroy();
+			}
+			replicas.clear();
+		}
+	}
+
+	/**
+	 * 测试用: 不经过sentinel直接加入一个可读的replica
+	 *
+	 * @param latencyNanos replica的PING延迟
+	 * @param masterLatencyNanos master的PING延迟, -1表示未知
+	 */
+	void addReplica(HostAndPort address, Pool<Jedis> pool, long latencyNanos, long masterLatencyNanos) {
+		Replica replica = new Replica(address, pool);
+		replica.latencyNanos = latencyNanos;
+		synchronized (replicas) {
+			replicas.put(address, replica);
+			List<Replica> available = new ArrayList<Replica>(healthy);
+			available.add(replica);
+			healthy = Collections.unmodifiableList(available);
+		}
+		this.masterLatencyNanos = masterLatencyNanos;
+	}
+
+	/*------------------------------ 刷新 ------------------------------*/
+
+	private void refresh() {
+		try {
+			List<HostAndPort> discovered = discover();
+			if (discovered == null) {
+				return;
+			}
+			List<Replica> available = new ArrayList<Replica>();
+			synchronized (replicas) {
+				for (Iterator<Map.Entry<HostAndPort, Replica>> it = replicas.entrySet().iterator(); it.hasNext();) {
+					Map.Entry<HostAndPort, Replica> entry = it.next();
+					if (!discovered.contains(entry.getKey())) {
+						logger.info("replica {} of {} removed", entry.getKey(), masterName);
+						entry.getValue().pool.destroy();
+						it.remove();
+					}
+				}
+				for (HostAndPort address : discovered) {
+					Replica replica = replicas.get(address);
+					if (replica == null) {
+						logger.info("replica {} of {} added", address, masterName);
+						replica = new Replica(address,
+								new JedisPool(poolConfig, address.getHost(), address.getPort(), timeout, password));
+						replicas.put(address, replica);
+					}
+					if (replica.ping()) {
+						available.add(replica);
+					}
+				}
+			}
+			masterLatencyNanos = pingMaster();
+			healthy = Collections.unmodifiableList(available);
+		} catch (RuntimeException e) {
+			logger.warn("refresh replicas of {} failed: {}", masterName, e.toString());
+		}
+	}
+
+	/**
+	 * 依次询问sentinel, 返回在线且与master连接正常的replica
+	 *
+	 * @return 所有sentinel都不可用时返回null, 保留当前的列表
+	 */
+	private List<HostAndPort> discover() {
+		for (String sentinel : sentinels) {
+			HostAndPort address = HostAndPort.parseString(sentinel);
+			Jedis jedis = null;
+			try {
+				jedis = new Jedis(address.getHost(), address.getPort(), timeout);
+				List<HostAndPort> result = new ArrayList<HostAndPort>();
+				for (Map<String, String> info : jedis.sentinelSlaves(masterName)) {
+					String flags = info.get("flags");
+					if (flags == null || flags.contains("s_down") || flags.contains("o_down")
+							|| flags.contains("disconnected") || !"ok".equals(info.get("master-link-status"))) {
+						continue;
+					}
+					result.add(new HostAndPort(info.get("ip"), Integer.parseInt(info.get("port"))));
+				}
+				return result;
+			} catch (RuntimeException e) {
+				logger.debug("sentinel {} unavailable: {}", sentinel, e.toString());
+			} finally {
+				if (jedis != null) {
+					jedis.close();
+				}
+			}
+		}
+		logger.warn("no sentinel available for {}, keeping {} replicas", masterName, healthy.size());
+		return null;
+	}
+
+	private long pingMaster() {
+		Jedis jedis = null;
+		try {
+			jedis = masterPool.getResource();
+			long start = System.nanoTime();
+			jedis.ping();
+			long elapsed = System.nanoTime() - start;
+			long previous = masterLatencyNanos;
+			return previous < 0 ? elapsed : (long) (previous + EWMA_ALPHA * (elapsed - previous));
+		} catch (RuntimeException e) {
+			return -1;
+		} finally {
+			if (jedis != null) {
+				jedis.close();
+			}
+		}
+	}
+
+	private static final class Replica {
+		final HostAndPort address;
+		final Pool<Jedis> pool;
+		/** 指数加权平均的PING延迟 */
+		volatile long latencyNanos = -1;
+
+		Replica(HostAndPort address, Pool<Jedis> pool) {
+			this.address = address;
+			this.pool = pool;
+		}
+
+		boolean ping() {
+			Jedis jedis = null;
+			try {
+				jedis = pool.getResource();
+				long start = System.nanoTime();
+				jedis.ping();
+				long elapsed = System.nanoTime() - start;
+				latencyNanos = latencyNanos < 0 ? elapsed : (long) (latencyNanos + EWMA_ALPHA * (elapsed - latencyNanos));
+				return true;
+			} catch (RuntimeException e) {
+				logger.warn("replica {} ping failed: {}", address, e.toString());
+				return false;
+			} finally {
+				if (jedis != null) {
+					jedis.close();
+				}
+			}
+		}
+	}
+}
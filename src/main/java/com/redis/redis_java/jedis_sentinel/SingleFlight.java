@@ -0,0 +1,58 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 同一个key同时只执行一次加载, 并发的调用方等待并共享同一个结果(包括异常)
+ * 加载结束后立即移除, 不缓存结果
+ *
+ * @param <K> key, 需要实现equals和hashCode
+ */
+class SingleFlight<K> {
+
+	private final ConcurrentMap<K, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<K, CompletableFuture<Object>>();
+
+	/**
+	 * @param key
+	 * @param loader 只在没有进行中的加载时由当前线程执行
+	 * @return 加载结果
+	 * @throws Exception loader抛出的异常, 所有等待的调用方都会收到
+	 */
+	@SuppressWarnings("unchecked")
+	<V> V load(K key, Callable<V> loader) throws Exception {
+		CompletableFuture<Object> future = new CompletableFuture<Object>();
+		CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			try {
+				return (V) existing.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw (Error) cause;
+			}
+		}
+		try {
+			V value = loader.call();
+			future.complete(value);
+			return value;
+		} catch (Exception | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * 进行中的加载数
+	 */
+	int size() {
+		return inFlight.size();
+	}
+}
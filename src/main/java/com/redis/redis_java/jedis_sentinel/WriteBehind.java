@@ -0,0 +1,272 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 延迟写入缓冲, 用于允许丢失的高频写入(计数、最近一次快照等)
+ * 写入先放进有界队列, 同一个key在一个刷新周期内只保留最后一次的值;
+ * 后台线程每flushMillis或积累到batchSize个key时按批交给writer(通常是一个Pipeline)
+ * 队列满时调用方最多等待blockMillis, 仍然满则丢弃并计数; close时写出剩余的值
+ * 同步的删除或保存之前调用cancel, 避免队列中的旧值在之后写出而覆盖
+ */
+public class WriteBehind {
+
+	private static Logger logger = LoggerFactory.getLogger(WriteBehind.class);
+
+	/** 一个待写入的值 */
+	static final class Entry {
+
+		final byte[] key;
+
+		final byte[] value;
+
+		final int seconds;
+
+		Entry(byte[] key, byte[] value, int seconds) {
+			this.key = key;
+			this.value = value;
+			this.seconds = seconds;
+		}
+	}
+
+	private final int capacity;
+
+	private final int batchSize;
+
+	private final long flushMillis;
+
+	private final long blockMillis;
+
+	private final Consumer<List<Entry>> writer;
+
+	/** 按key合并, 保持首次写入的顺序; 由this保护 */
+	private LinkedHashMap<ByteBuffer, Entry> pending = new LinkedHashMap<ByteBuffer, Entry>();
+
+	/** 后台线程正在写出的一批, 没有时为空; 由this保护 */
+	private Map<ByteBuffer, Entry> inFlight = Collections.emptyMap();
+
+	private final Thread flusher;
+
+	private volatile boolean closed;
+
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder cancelled = new LongAdder();
+	private final LongAdder flushes = new LongAdder();
+
+	/**
+	 * @param capacity 队列中最多的key数
+	 * @param batchSize 每批写入的key数
+	 * @param flushMillis 刷新周期, 也是合并窗口
+	 * @param blockMillis 队列满时调用方的最长等待时间, 0表示直接丢弃
+	 * @param writer 写出一批值, 抛出异常时这一批计为失败
+	 */
+	WriteBehind(int capacity, int batchSize, long flushMillis, long blockMillis, Consumer<List<Entry>> writer) {
+		if (capacity <= 0 || batchSize <= 0 || flushMillis <= 0 || blockMillis < 0) {
+			throw new IllegalArgumentException("invalid write-behind settings");
+		}
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.flushMillis = flushMillis;
+		this.blockMillis = blockMillis;
+		this.writer = writer;
+		this.flusher = new Thread(this::run, "cache-write-behind");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * 放入队列, 同一个key尚未写出时替换旧值
+	 *
+	 * @param key 序列化后的key
+	 * @param value 编码后的值
+	 * @param seconds 过期时间
+	 * @return false表示已关闭或队列满而被丢弃
+	 */
+	boolean offer(byte[] key, byte[] value, int seconds) {
+		ByteBuffer k = ByteBuffer.wrap(key);
+		synchronized (this) {
+			if (!pending.containsKey(k)) {
+				long deadline = System.currentTimeMillis() + blockMillis;
+				while (!closed && pending.size() >= capacity) {
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						dropped.increment();
+						return false;
+					}
+					notifyAll();
+					try {
+						wait(wait);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						dropped.increment();
+						return false;
+					}
+				}
+				if (closed) {
+					dropped.increment();
+					return false;
+				}
+			} else {
+				coalesced.increment();
+			}
+			pending.put(k, new Entry(key, value, seconds));
+			accepted.increment();
+			if (pending.size() >= batchSize) {
+				notifyAll();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 取消一个key尚未写出的值, 同步删除或保存这个key之前调用;
+	 * 这个key正在被后台线程写出时等待写出完成, 保证之后的同步操作在它之后执行
+	 *
+	 * @param key 序列化后的key
+	 * @return 被取消的值, 没有时返回null
+	 */
+	Entry cancel(byte[] key) {
+		ByteBuffer k = ByteBuffer.wrap(key);
+		synchronized (this) {
+			Entry entry = pending.remove(k);
+			if (entry != null) {
+				cancelled.increment();
+				// 唤醒等待空位的调用方
+				notifyAll();
+			}
+			while (inFlight.containsKey(k) && Thread.currentThread() != flusher) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			return entry;
+		}
+	}
+
+	private void run() {
+		while (true) {
+			List<Entry> batch;
+			synchronized (this) {
+				long deadline = System.currentTimeMillis() + flushMillis;
+				while (!closed && pending.size() < batchSize) {
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						break;
+					}
+					try {
+						wait(wait);
+					} catch (InterruptedException e) {
+						closed = true;
+					}
+				}
+				if (pending.isEmpty()) {
+					if (closed) {
+						return;
+					}
+					continue;
+				}
+				batch = new ArrayList<Entry>(pending.values());
+				inFlight = pending;
+				pending = new LinkedHashMap<ByteBuffer, Entry>();
+				// 唤醒等待空位的调用方
+				notifyAll();
+			}
+			try {
+				write(batch);
+			} finally {
+				synchronized (this) {
+					inFlight = Collections.emptyMap();
+					// 唤醒等待这一批写出的cancel
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	private void write(List<Entry> batch) {
+		for (int from = 0; from < batch.size(); from += batchSize) {
+			List<Entry> chunk = batch.subList(from, Math.min(from + batchSize, batch.size()));
+			try {
+				writer.accept(chunk);
+				written.add(chunk.size());
+			} catch (RuntimeException e) {
+				failed.add(chunk.size());
+				logger.error("Cache延迟写入失败, 丢弃" + chunk.size() + "个值：" + e);
+			}
+			flushes.increment();
+		}
+	}
+
+	/**
+	 * 停止接收写入, 等待后台线程写出剩余的值
+	 *
+	 * @param timeoutMillis 最长等待时间
+	 */
+	void close(long timeoutMillis) {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			flusher.join(timeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** 队列中等待写出的key数 */
+	public synchronized int queueDepth() {
+		return pending.size();
+	}
+
+	/** 进入队列的写入次数, 包括被合并的 */
+	public long acceptedCount() {
+		return accepted.sum();
+	}
+
+	/** 被同一个key后来的值覆盖的写入次数 */
+	public long coalescedCount() {
+		return coalesced.sum();
+	}
+
+	/** 队列满或已关闭而丢弃的写入次数 */
+	public long droppedCount() {
+		return dropped.sum();
+	}
+
+	/** 写出到Redis的key数 */
+	public long writtenCount() {
+		return written.sum();
+	}
+
+	/** 写出失败而丢失的key数 */
+	public long failedCount() {
+		return failed.sum();
+	}
+
+	/** 被之后的同步删除或保存取消的写入次数 */
+	public long cancelledCount() {
+		return cancelled.sum();
+	}
+
+	/** 写出的批次数 */
+	public long flushCount() {
+		return flushes.sum();
+	}
+}
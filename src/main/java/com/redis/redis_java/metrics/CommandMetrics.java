@@ -0,0 +1,281 @@
+package com.redis.redis_java.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一个客户端(JedisUtils, JedisSentinelUtils)的命令延迟、连接池等待、序列化耗时和读写字节数
+ * 通过JMX(com.redis.redis_java:type=CommandMetrics,client=...)和pull接口(latency, snapshot)读取
+ *
+ * 读写字节数按序列化后的值计算, Jedis 2.9没有提供连接上的字节计数
+ */
+public class CommandMetrics implements CommandMetricsMXBean {
+	private static final Logger logger = LoggerFactory.getLogger(CommandMetrics.class);
+
+	private static final String DOMAIN = "com.redis.redis_java";
+
+	private static final Map<String, CommandMetrics> CLIENTS = new ConcurrentHashMap<String, CommandMetrics>();
+
+	private final String client;
+
+	private final boolean jmx;
+
+	private final ConcurrentHashMap<String, Command> commands = new ConcurrentHashMap<String, Command>();
+
+	private final LatencyHistogram poolWait = new LatencyHistogram();
+
+	private final LatencyHistogram serialize = new LatencyHistogram();
+
+	private final LatencyHistogram deserialize = new LatencyHistogram();
+
+	private final LongAdder bytesIn = new LongAdder();
+
+	private final LongAdder bytesOut = new LongAdder();
+
+	/**
+	 * 不注册JMX, 用于测试
+	 */
+	public CommandMetrics(String client) {
+		this(client, false);
+	}
+
+	private CommandMetrics(String client, boolean jmx) {
+		this.client = client;
+		this.jmx = jmx;
+		if (jmx) {
+			register(objectName("type=CommandMetrics,client=" + client), this);
+		}
+	}
+
+	/**
+	 * 每个客户端一个实例, 第一次获取时注册到JMX
+	 */
+	public static CommandMetrics of(String client) {
+		return CLIENTS.computeIfAbsent(client, name -> new CommandMetrics(name, true));
+	}
+
+	public String getClient() {
+		return client;
+	}
+
+	/*------------------------------ 记录 ------------------------------*/
+
+	public void record(String command, long startNanos) {
+		command(command).histogram.record(System.nanoTime() - startNanos);
+	}
+
+	public void error(String command) {
+		command(command).errors.increment();
+	}
+
+	public void recordPoolWait(long startNanos) {
+		poolWait.record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @param bytes 序列化后的字节数, 计入bytesOut
+	 */
+	public void recordSerialize(long startNanos, int bytes) {
+		serialize.record(System.nanoTime() - startNanos);
+		bytesOut.add(bytes);
+	}
+
+	/**
+	 * @param bytes 反序列化前的字节数, 计入bytesIn
+	 */
+	public void recordDeserialize(long startNanos, int bytes) {
+		deserialize.record(System.nanoTime() - startNanos);
+		bytesIn.add(bytes);
+	}
+
+	private Command command(String name) {
+		Command command = commands.get(name);
+		if (command == null) {
+			Command created = new Command();
+			command = commands.putIfAbsent(name, created);
+			if (command == null) {
+				command = created;
+				if (jmx) {
+					register(objectName("type=CommandLatency,client=" + client + ",command=" + ObjectName.quote(name)), created);
+				}
+			}
+		}
+		return command;
+	}
+
+	/*------------------------------ 读取 ------------------------------*/
+
+	/**
+	 * @return 命令的延迟直方图, 没有执行过时返回null
+	 */
+	public LatencyHistogram latency(String command) {
+		Command c = commands.get(command);
+		return c == null ? null : c.histogram;
+	}
+
+	public long errors(String command) {
+		Command c = commands.get(command);
+		return c == null ? 0 : c.errors.sum();
+	}
+
+	public LatencyHistogram poolWait() {
+		return poolWait;
+	}
+
+	public LatencyHistogram serialize() {
+		return serialize;
+	}
+
+	public LatencyHistogram deserialize() {
+		return deserialize;
+	}
+
+	/**
+	 * 所有命令合并后的延迟分布
+	 */
+	public LatencyHistogram.Snapshot commandSnapshot() {
+		LatencyHistogram.Snapshot merged = LatencyHistogram.Snapshot.EMPTY;
+		for (Command command : commands.values()) {
+			merged = merged.plus(command.histogram.snapshot());
+		}
+		return merged;
+	}
+
+	/**
+	 * 按命令名排序的延迟, 便于定位p99最高的调用
+	 */
+	public Map<String, LatencyMXBean> snapshot() {
+		return new TreeMap<String, LatencyMXBean>(commands);
+	}
+
+	@Override
+	public String[] getCommands() {
+		return snapshot().keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	@Override
+	public long getPoolWaitCount() {
+		return poolWait.count();
+	}
+
+	@Override
+	public double getPoolWaitP99Micros() {
+		return micros(poolWait.percentileNanos(99));
+	}
+
+	@Override
+	public double getSerializeP99Micros() {
+		return micros(serialize.percentileNanos(99));
+	}
+
+	@Override
+	public double getDeserializeP99Micros() {
+		return micros(deserialize.percentileNanos(99));
+	}
+
+	@Override
+	public double percentileMicros(String command, double percentile) {
+		LatencyHistogram histogram = latency(command);
+		return histogram == null ? 0 : micros(histogram.percentileNanos(percentile));
+	}
+
+	@Override
+	public void reset() {
+		for (Command command : commands.values()) {
+			command.histogram.reset();
+			command.errors.reset();
+		}
+		poolWait.reset();
+		serialize.reset();
+		deserialize.reset();
+		bytesIn.reset();
+		bytesOut.reset();
+	}
+
+	private static double micros(double nanos) {
+		return nanos / 1000;
+	}
+
+	private static ObjectName objectName(String properties) {
+		try {
+			return new ObjectName(DOMAIN + ":" + properties);
+		} catch (Exception e) {
+			throw new IllegalArgumentException(properties, e);
+		}
+	}
+
+	private static void register(ObjectName name, Object mbean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (!server.isRegistered(name)) {
+				server.registerMBean(mbean, name);
+			}
+		} catch (Exception e) {
+			logger.warn("register mbean {} failed: {}", name, e.toString());
+		}
+	}
+
+	private static final class Command implements LatencyMXBean {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final LongAdder errors = new LongAdder();
+
+		@Override
+		public long getCount() {
+			return histogram.count();
+		}
+
+		@Override
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		@Override
+		public double getMeanMicros() {
+			return micros(histogram.meanNanos());
+		}
+
+		@Override
+		public double getP50Micros() {
+			return micros(histogram.percentileNanos(50));
+		}
+
+		@Override
+		public double getP90Micros() {
+			return micros(histogram.percentileNanos(90));
+		}
+
+		@Override
+		public double getP99Micros() {
+			return micros(histogram.percentileNanos(99));
+		}
+
+		@Override
+		public double getP999Micros() {
+			return micros(histogram.percentileNanos(99.9));
+		}
+
+		@Override
+		public double getMaxMicros() {
+			return micros(histogram.maxNanos());
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.redis.redis_java.metrics;
+
+/**
+ * 客户端的汇总指标, 时间单位为微秒
+ * 每个命令的延迟另外注册为type=CommandLatency的MBean
+ */
+public interface CommandMetricsMXBean {
+
+	String[] getCommands();
+
+	long getBytesIn();
+
+	long getBytesOut();
+
+	long getPoolWaitCount();
+
+	double getPoolWaitP99Micros();
+
+	double getSerializeP99Micros();
+
+	double getDeserializeP99Micros();
+
+	/**
+	 * @param command 命令名, 小写
+	 * @param percentile 0 ~ 100
+	 */
+	double percentileMicros(String command, double percentile);
+
+	void reset();
+}
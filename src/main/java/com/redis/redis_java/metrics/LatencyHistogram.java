@@ -0,0 +1,175 @@
+package com.redis.redis_java.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数线性分桶的延迟直方图(与HdrHistogram相同的思路), 记录时不分配内存
+ * 每个2的幂区间分为32个桶, 相对误差不超过1/32; 超过MAX_NANOS的值计入最后一个桶
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	/** 约73分钟 */
+	private static final long MAX_NANOS = (1L << 42) - 1;
+
+	private static final int BUCKETS = index(MAX_NANOS) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(index(Math.min(nanos, MAX_NANOS)));
+		count.increment();
+		sum.add(nanos);
+		long m = max.get();
+		while (nanos > m && !max.compareAndSet(m, nanos)) {
+			m = max.get();
+		}
+	}
+
+	public long count() {
+		return count.sum();
+	}
+
+	public long maxNanos() {
+		return max.get();
+	}
+
+	public double meanNanos() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @param percentile 0 ~ 100, 例如99.9
+	 * @return 该百分位所在桶的上界, 没有记录时返回0
+	 */
+	public long percentileNanos(double percentile) {
+		return Math.min(snapshot().percentileNanos(percentile), max.get());
+	}
+
+	/**
+	 * 当前计数的副本, 两次副本相减得到一段时间内的分布
+	 */
+	public Snapshot snapshot() {
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return new Snapshot(snapshot, sum.sum());
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	/**
+	 * 小于64的值每个值一个桶, 之后每个2的幂区间32个桶
+	 */
+	static int index(long value) {
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift << SUB_BITS) + (int) (value >>> shift);
+	}
+
+	static long upperBound(int index) {
+		if (index < SUB_COUNT << 1) {
+			return index;
+		}
+		int shift = (index >>> SUB_BITS) - 1;
+		long top = (index & (SUB_COUNT - 1)) + SUB_COUNT;
+		return ((top + 1) << shift) - 1;
+	}
+
+	/**
+	 * 直方图在某一时刻的计数
+	 */
+	public static final class Snapshot {
+
+		public static final Snapshot EMPTY = new Snapshot(new long[BUCKETS], 0);
+
+		private final long[] counts;
+
+		private final long count;
+
+		private final long sum;
+
+		private Snapshot(long[] counts, long sum) {
+			long n = 0;
+			for (long c : counts) {
+				n += c;
+			}
+			this.counts = counts;
+			this.count = n;
+			this.sum = sum;
+		}
+
+		public long count() {
+			return count;
+		}
+
+		public long sumNanos() {
+			return sum;
+		}
+
+		/**
+		 * @return 该百分位所在桶的上界, 没有记录时返回0
+		 */
+		public long percentileNanos(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return upperBound(i);
+				}
+			}
+			return upperBound(BUCKETS - 1);
+		}
+
+		/**
+		 * @return 从previous到当前之间记录的值
+		 */
+		public Snapshot minus(Snapshot previous) {
+			long[] delta = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				delta[i] = Math.max(0, counts[i] - previous.counts[i]);
+			}
+			return new Snapshot(delta, Math.max(0, sum - previous.sum));
+		}
+
+		/**
+		 * @return 两个分布合并后的结果
+		 */
+		public Snapshot plus(Snapshot other) {
+			long[] merged = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				merged[i] = counts[i] + other.counts[i];
+			}
+			return new Snapshot(merged, sum + other.sum);
+		}
+	}
+}
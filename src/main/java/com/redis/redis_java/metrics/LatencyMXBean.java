@@ -0,0 +1,23 @@
+package com.redis.redis_java.metrics;
+
+/**
+ * 单个命令的延迟, 时间单位为微秒
+ */
+public interface LatencyMXBean {
+
+	long getCount();
+
+	long getErrors();
+
+	double getMeanMicros();
+
+	double getP50Micros();
+
+	double getP90Micros();
+
+	double getP99Micros();
+
+	double getP999Micros();
+
+	double getMaxMicros();
+}
@@ -0,0 +1,336 @@
+package com.redis.redis_java.scan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 基于游标的分页遍历, 代替KEYS等一次返回全部结果的命令
+ * 每取一页借用一次连接, 取完归还, 遍历过程中不占用连接; 内存中只保留当前一页
+ *
+ * 与SCAN命令的语义相同: 遍历期间一直存在的元素一定会返回, 但可能返回重复元素
+ * 有多个连接来源(例如集群的每个节点)时依次遍历每个来源
+ *
+ * @param <T>
+ */
+public abstract class ScanIterator<T> implements Iterator<T> {
+
+	/** 默认每页数量(SCAN的COUNT参数) */
+	public static final int DEFAULT_COUNT = 1000;
+
+	private final List<Supplier<Jedis>> sources;
+
+	private int sourceIndex;
+
+	protected final ScanParams params = new ScanParams();
+
+	private String cursor = ScanParams.SCAN_POINTER_START;
+
+	private boolean finished;
+
+	private Iterator<T> page = Collections.emptyIterator();
+
+	/**
+	 * @param source 借用连接, 用完通过Jedis.close()归还
+	 * @param pattern 匹配模式, null表示全部
+	 * @param count 每页数量
+	 */
+	protected ScanIterator(Supplier<Jedis> source, String pattern, int count) {
+		this(Collections.singletonList(source), pattern, count);
+	}
+
+	/**
+	 * @param sources 依次遍历的连接来源
+	 * @param pattern 匹配模式, null表示全部
+	 * @param count 每页数量
+	 */
+	protected ScanIterator(List<Supplier<Jedis>> sources, String pattern, int count) {
+		this.sources = sources;
+		this.finished = sources.isEmpty();
+		if (pattern != null) {
+			params.match(pattern);
+		}
+		params.count(count > 0 ? count : DEFAULT_COUNT);
+	}
+
+	/**
+	 * 取一页
+	 * 
+	 * @param jedis
+	 * @param cursor
+	 * @return ScanResult
+	 */
+	protected abstract ScanResult<T> scan(Jedis jedis, String cursor);
+
+	/**
+	 * 过滤一页结果, 与scan使用同一个连接
+	 */
+	protected List<T> filter(Jedis jedis, List<T> result) {
+		return result;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!page.hasNext()) {
+			if (finished) {
+				return false;
+			}
+			fetch();
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	private void fetch() {
+		page = fetchPage().iterator();
+	}
+
+	private List<T> fetchPage() {
+		Jedis jedis = sources.get(sourceIndex).get();
+		try {
+			ScanResult<T> result = scan(jedis, cursor);
+			cursor = result.getStringCursor();
+			if (ScanParams.SCAN_POINTER_START.equals(cursor)) {
+				finished = ++sourceIndex == sources.size();
+			}
+			return filter(jedis, result.getResult());
+		} finally {
+			jedis.close();
+		}
+	}
+
+	/**
+	 * 按页处理剩余的全部元素, 每取到一页调用一次consumer, 空页不回调
+	 * 
+	 * @param consumer
+	 */
+	public void forEachPage(Consumer<List<T>> consumer) {
+		if (page.hasNext()) {
+			List<T> rest = new ArrayList<T>();
+			while (page.hasNext()) {
+				rest.add(page.next());
+			}
+			consumer.accept(rest);
+		}
+		while (!finished) {
+			List<T> result = fetchPage();
+			if (!result.isEmpty()) {
+				consumer.accept(result);
+			}
+		}
+	}
+
+	/**
+	 * 以Stream的方式遍历, 同样按页懒加载
+	 * 
+	 * @return Stream
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * SCAN遍历key
+	 * 
+	 * @param source
+	 * @param pattern 匹配模式, null表示全部
+	 * @param count 每页数量
+	 * @param type 只返回该类型的key(string|list|set|zset|hash), null表示不过滤
+	 * @return ScanIterator
+	 */
+	public static ScanIterator<String> keys(Supplier<Jedis> source, String pattern, int count, final String type) {
+		return keys(Collections.singletonList(source), pattern, count, type);
+	}
+
+	/**
+	 * 依次在每个来源上SCAN遍历key, 用于集群等多节点的情况
+	 * 
+	 * @param sources 每个节点的连接来源
+	 * @param pattern 匹配模式, null表示全部
+	 * @param count 每页数量
+	 * @param type 只返回该类型的key, null表示不过滤
+	 * @return ScanIterator
+	 */
+	public static ScanIterator<String> keys(List<Supplier<Jedis>> sources, String pattern, int count, final String type) {
+		return new ScanIterator<String>(sources, pattern, count) {
+			@Override
+			protected ScanResult<String> scan(Jedis jedis, String cursor) {
+				return jedis.scan(cursor, params);
+			}
+
+			@Override
+			protected List<String> filter(Jedis jedis, List<String> result) {
+				return type == null ? result : filterType(jedis, result, type);
+			}
+		};
+	}
+
+	/**
+	 * SCAN遍历key, 返回原始字节
+	 * 
+	 * @param source
+	 * @param pattern 匹配模式, null表示全部
+	 * @param count 每页数量
+	 * @param type 只返回该类型的key, null表示不过滤
+	 * @return ScanIterator
+	 */
+	public static ScanIterator<byte[]> binaryKeys(Supplier<Jedis> source, String pattern, int count, final String type) {
+		return binaryKeys(Collections.singletonList(source), pattern, count, type);
+	}
+
+	/**
+	 * 依次在每个来源上SCAN遍历key, 返回原始字节
+	 * 
+	 * @param sources 每个节点的连接来源
+	 * @param pattern 匹配模式, null表示全部
+	 * @param count 每页数量
+	 * @param type 只返回该类型的key, null表示不过滤
+	 * @return ScanIterator
+	 */
+	public static ScanIterator<byte[]> binaryKeys(List<Supplier<Jedis>> sources, String pattern, int count,
+			final String type) {
+		return new ScanIterator<byte[]>(sources, pattern, count) {
+			@Override
+			protected ScanResult<byte[]> scan(Jedis jedis, String cursor) {
+				return jedis.scan(SafeEncoder.encode(cursor), params);
+			}
+
+			@Override
+			protected List<byte[]> filter(Jedis jedis, List<byte[]> result) {
+				return type == null ? result : filterType(jedis, result, type);
+			}
+		};
+	}
+
+	/**
+	 * HSCAN遍历hash的field和value
+	 * 
+	 * @param source
+	 * @param key
+	 * @param pattern field的匹配模式, null表示全部
+	 * @param count 每页数量
+	 * @return ScanIterator
+	 */
+	public static ScanIterator<Map.Entry<String, String>> hash(Supplier<Jedis> source, final String key,
+			String pattern, int count) {
+		return new ScanIterator<Map.Entry<String, String>>(source, pattern, count) {
+			@Override
+			protected ScanResult<Map.Entry<String, String>> scan(Jedis jedis, String cursor) {
+				return jedis.hscan(key, cursor, params);
+			}
+		};
+	}
+
+	/**
+	 * SSCAN遍历set的成员
+	 * 
+	 * @param source
+	 * @param key
+	 * @param pattern 成员的匹配模式, null表示全部
+	 * @param count 每页数量
+	 * @return ScanIterator
+	 */
+	public static ScanIterator<String> set(Supplier<Jedis> source, final String key, String pattern, int count) {
+		return new ScanIterator<String>(source, pattern, count) {
+			@Override
+			protected ScanResult<String> scan(Jedis jedis, String cursor) {
+				return jedis.sscan(key, cursor, params);
+			}
+		};
+	}
+
+	/**
+	 * SSCAN遍历set的成员, 返回原始字节
+	 * 
+	 * @param source
+	 * @param key
+	 * @param pattern 成员的匹配模式, null表示全部
+	 * @param count 每页数量
+	 * @return ScanIterator
+	 */
+	public static ScanIterator<byte[]> binarySet(Supplier<Jedis> source, final byte[] key, String pattern, int count) {
+		return new ScanIterator<byte[]>(source, pattern, count) {
+			@Override
+			protected ScanResult<byte[]> scan(Jedis jedis, String cursor) {
+				return jedis.sscan(key, SafeEncoder.encode(cursor), params);
+			}
+		};
+	}
+
+	/**
+	 * ZSCAN遍历sorted set的成员和权重, 不保证按权重排序
+	 * 
+	 * @param source
+	 * @param key
+	 * @param pattern 成员的匹配模式, null表示全部
+	 * @param count 每页数量
+	 * @return ScanIterator
+	 */
+	public static ScanIterator<Tuple> sortedSet(Supplier<Jedis> source, final String key, String pattern, int count) {
+		return new ScanIterator<Tuple>(source, pattern, count) {
+			@Override
+			protected ScanResult<Tuple> scan(Jedis jedis, String cursor) {
+				return jedis.zscan(key, cursor, params);
+			}
+		};
+	}
+
+	/**
+	 * 多个节点并行遍历key, 每个节点内按页顺序遍历
+	 * 
+	 * @param nodes 每个节点的连接来源
+	 * @param pattern 匹配模式, null表示全部
+	 * @param count 每页数量
+	 * @param type 只返回该类型的key, null表示不过滤
+	 * @return 并行的Stream
+	 */
+	public static Stream<String> parallelKeys(List<Supplier<Jedis>> nodes, final String pattern, final int count,
+			final String type) {
+		return nodes.parallelStream().flatMap(node -> keys(node, pattern, count, type).stream());
+	}
+
+	/**
+	 * Redis 6之前的SCAN不支持TYPE参数, 用Pipeline对一页key批量执行TYPE过滤
+	 */
+	private static <K> List<K> filterType(Jedis jedis, List<K> keys, String type) {
+		if (keys.isEmpty()) {
+			return keys;
+		}
+		Pipeline pipeline = jedis.pipelined();
+		List<Response<String>> types = new ArrayList<Response<String>>(keys.size());
+		for (K key : keys) {
+			types.add(key instanceof byte[] ? pipeline.type((byte[]) key) : pipeline.type((String) key));
+		}
+		pipeline.sync();
+		List<K> result = new ArrayList<K>(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			if (type.equals(types.get(i).get())) {
+				result.add(keys.get(i));
+			}
+		}
+		return result;
+	}
+}
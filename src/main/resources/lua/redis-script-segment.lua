@@ -0,0 +1,37 @@
+-- 号段模式: 一次调用为 (tab, shardId) 预留当前毫秒内的一段序号, 需要 redis server 3.2+
+-- 与 redis-script-node*.lua 使用相同的计数key, 两种模式可以同时使用
+-- KEYS[1] tab, KEYS[2] shardId
+-- ARGV[1] 号段大小, ARGV[2] step(节点数), ARGV[3] startStep(节点序号)
+redis.replicate_commands();
+
+local prefix = '__idgenerator_';
+local partitionCount = 4096;
+local maxSeq = 1024;
+
+local tag = KEYS[1];
+local partition = tonumber(KEYS[2]) % partitionCount;
+local size = tonumber(ARGV[1]);
+local step = tonumber(ARGV[2]);
+local startStep = tonumber(ARGV[3]);
+
+local now;
+local miliSecondKey;
+local first;
+local last;
+repeat
+  now = redis.call('TIME');
+  miliSecondKey = prefix .. tag .. '_' .. partition .. '_' .. now[1] .. '_' .. math.floor(now[2] / 1000);
+  last = tonumber(redis.call('INCRBY', miliSecondKey, step * size));
+  if last == step * size then
+    redis.call('PEXPIRE', miliSecondKey, 5);
+  end
+  first = last - step * (size - 1);
+until first <= (maxSeq - step)
+
+-- 当前毫秒剩余的序号不足一个号段时只返回剩余部分
+if last > (maxSeq - step) then
+  last = first + step * math.floor((maxSeq - step - first) / step);
+end
+
+-- second, microSecond, partition, firstSeq, lastSeq, step
+return {tonumber(now[1]), tonumber(now[2]), partition, first + startStep, last + startStep, step}
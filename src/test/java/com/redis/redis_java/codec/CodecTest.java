@@ -0,0 +1,105 @@
+package com.redis.redis_java.codec;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redis.redis_java.TestVO;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the built-in codecs.
+ */
+public class CodecTest extends TestCase {
+
+    private static TestVO testVO(String name) {
+        TestVO vo = new TestVO();
+        vo.setName(name);
+        return vo;
+    }
+
+    public void testCompactRoundTrip() throws Exception {
+        List<Object> list = new ArrayList<Object>();
+        list.add(testVO("a"));
+        list.add(testVO("b"));
+        list.add(Long.MIN_VALUE);
+        list.add(-1);
+        list.add(3.5d);
+        list.add(null);
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("list", list);
+        map.put("bytes", new byte[] {1, 2, 3});
+
+        byte[] bytes = Codecs.COMPACT.encode(map);
+        assertEquals(CompactCodec.HEADER, bytes[0]);
+
+        Map<?, ?> decoded = (Map<?, ?>) Codecs.decode(bytes);
+        List<?> decodedList = (List<?>) decoded.get("list");
+        assertEquals("a", ((TestVO) decodedList.get(0)).getName());
+        assertEquals("b", ((TestVO) decodedList.get(1)).getName());
+        assertEquals(Long.MIN_VALUE, decodedList.get(2));
+        assertEquals(-1, decodedList.get(3));
+        assertEquals(3.5d, decodedList.get(4));
+        assertNull(decodedList.get(5));
+        assertEquals(3, ((byte[]) decoded.get("bytes")).length);
+    }
+
+    static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String name;
+        Node next;
+        List<Object> children = new ArrayList<Object>();
+    }
+
+    public void testCompactFallsBackToJavaOnCycles() throws Exception {
+        Node a = new Node();
+        a.name = "a";
+        Node b = new Node();
+        b.name = "b";
+        a.next = b;
+        b.next = a;
+        // 多个字段指回祖先时也只走一遍
+        a.children.add(a);
+        a.children.add(b);
+        byte[] bytes = Codecs.COMPACT.encode(a);
+        assertEquals(CompactCodec.HEADER, bytes[0]);
+        Node decoded = (Node) Codecs.decode(bytes);
+        assertEquals("a", decoded.name);
+        assertEquals("b", decoded.next.name);
+        assertSame(decoded, decoded.next.next);
+        assertSame(decoded, decoded.children.get(0));
+        assertSame(decoded.next, decoded.children.get(1));
+
+        List<Object> list = new ArrayList<Object>();
+        list.add("x");
+        list.add(list);
+        List<?> decodedList = (List<?>) Codecs.decode(Codecs.COMPACT.encode(list));
+        assertEquals("x", decodedList.get(0));
+        assertSame(decodedList, decodedList.get(1));
+
+        // 共享但没有循环的引用仍按字段编码
+        Node shared = new Node();
+        shared.name = "shared";
+        List<Object> twice = new ArrayList<Object>();
+        twice.add(shared);
+        twice.add(shared);
+        assertTrue(Codecs.COMPACT.encode(twice).length * 2 < Codecs.JAVA.encode(twice).length);
+    }
+
+    public void testCompactIsSmallerThanJava() throws Exception {
+        TestVO vo = testVO("name");
+        assertTrue(Codecs.COMPACT.encode(vo).length * 2 < Codecs.JAVA.encode(vo).length);
+    }
+
+    public void testMixedFormatsDecode() throws Exception {
+        Codec fastjson = new FastjsonCodec("com.redis.");
+        Codecs.register(fastjson);
+        for (Codec codec : new Codec[] {Codecs.JAVA, Codecs.COMPACT, fastjson}) {
+            Object decoded = Codecs.decode(codec.encode(testVO("mixed")));
+            assertEquals("mixed", ((TestVO) decoded).getName());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.redis.redis_java.codec;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the compressors and the compressed value frame.
+ */
+public class CompressionTest extends TestCase {
+
+    private static byte[] text(int length) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < length) {
+            sb.append("{\"id\":").append(i++).append(",\"name\":\"user\",\"tags\":[\"a\",\"b\"]}");
+        }
+        return Arrays.copyOf(sb.toString().getBytes(), length);
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    public void testCompressorsRoundTrip() {
+        Compressor[] compressors = {new Lz4Compressor(), new DeflateCompressor(1), new DeflateCompressor()};
+        byte[][] inputs = {new byte[0], new byte[] {7}, text(13), text(100000), random(5000), new byte[70000]};
+        for (Compressor c : compressors) {
+            for (byte[] input : inputs) {
+                byte[] compressed = c.compress(input, 0, input.length);
+                byte[] restored = c.decompress(compressed, 0, compressed.length, input.length);
+                assertTrue(c.name() + " " + input.length, Arrays.equals(input, restored));
+            }
+        }
+    }
+
+    public void testThresholdAndAutoDecompress() throws Exception {
+        Compression compression = new Compression(new Lz4Compressor(), 1024);
+        byte[] small = text(1000);
+        byte[] smallStored = compression.compress("user:1", small);
+        assertFalse(Compression.isCompressed(smallStored));
+        assertEquals(small.length + 3, smallStored.length);
+        assertTrue(Arrays.equals(small, Compression.decompress(smallStored)));
+
+        byte[] large = text(20000);
+        byte[] stored = compression.compress("user:2", large);
+        assertTrue(Compression.isCompressed(stored));
+        assertTrue(stored.length < large.length / 2);
+        assertTrue(Arrays.equals(large, Compression.decompress(stored)));
+
+        // 不可压缩的数据加上不压缩的格式头保存
+        byte[] noise = random(4096);
+        byte[] noiseStored = compression.compress("blob:1", noise);
+        assertFalse(Compression.isCompressed(noiseStored));
+        assertTrue(Arrays.equals(noise, Compression.decompress(noiseStored)));
+        // 没有格式头的值原样返回
+        assertSame(noise, Compression.decompress(noise));
+
+        // Codecs.decode先解压再按Codec格式标记解码
+        byte[] encoded = Codecs.COMPACT.encode(new String(text(5000)));
+        Compression deflate = new Compression(new DeflateCompressor(), 1024);
+        assertEquals(new String(text(5000)), Codecs.decode(deflate.compress("k", encoded)));
+    }
+
+    public void testRawValueStartingWithHeader() {
+        // 原始数据恰好以格式头和已知的算法编号开头
+        byte[] lookalike = {Compression.HEADER, (byte) 0xC7, Lz4Compressor.ID, 5, 1, 2, 3};
+        Compression compression = new Compression(new Lz4Compressor(), 1024);
+        byte[] stored = compression.compress("k", lookalike);
+        assertTrue(Compression.isFramed(stored));
+        assertTrue(Arrays.equals(lookalike, Compression.decompress(stored)));
+        assertTrue(Arrays.equals(lookalike, compression.decompress("k", stored)));
+
+        // 未启用压缩时只有这样的值加上格式头
+        assertTrue(Arrays.equals(lookalike, Compression.decompress(Compression.escape(lookalike))));
+        byte[] plain = text(10);
+        assertSame(plain, Compression.escape(plain));
+        byte[] empty = new byte[0];
+        assertEquals(0, Compression.decompress(compression.compress("k", empty)).length);
+    }
+
+    public void testStatsByPrefix() {
+        Compression compression = new Compression(new DeflateCompressor(), 100);
+        compression.compress("user:1", text(5000));
+        compression.compress("user:2", text(50));
+        compression.compress("order:1", random(500));
+        compression.decompress("user:1", compression.compress("user:3", text(5000)));
+
+        Compression.Stats user = compression.stats().get("user");
+        assertEquals(3, user.getValues());
+        assertEquals(2, user.getCompressed());
+        assertEquals(1, user.getDecompressed());
+        assertTrue(user.getRatio() < 0.5);
+        Compression.Stats order = compression.stats().get("order");
+        assertEquals(0, order.getCompressed());
+        // 不压缩的值多出3字节的格式头
+        assertEquals(503.0 / 500, order.getRatio());
+        assertEquals("(none)", Compression.prefix("plain"));
+    }
+
+    public void testOf() {
+        assertNull(Compression.of("none", 1024));
+        assertEquals("lz4", Compression.of("LZ4", 1024).getCompressor().name());
+        assertEquals("deflate", Compression.of("deflate", 1024).getCompressor().name());
+        try {
+            Compression.of("snappy", 1024);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.redis.redis_java.codec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for LazyList and LazyMap.
+ */
+public class LazyViewTest extends TestCase {
+
+    public void testListDecodesOnAccessOnce() throws Exception {
+        final AtomicInteger decodes = new AtomicInteger();
+        List<byte[]> raw = new ArrayList<byte[]>();
+        for (int i = 0; i < 100; i++) {
+            raw.add(Codecs.COMPACT.encode("v" + i));
+        }
+        raw.add(null);
+        LazyList<Object> list = new LazyList<Object>(raw, bytes -> {
+            decodes.incrementAndGet();
+            return Codecs.decode(bytes);
+        });
+        assertEquals(101, list.size());
+        assertEquals(0, decodes.get());
+        assertEquals("v7", list.get(7));
+        assertEquals("v7", list.get(7));
+        assertNull(list.get(100));
+        assertEquals(1, decodes.get());
+
+        list.decodeAll();
+        assertEquals(100, decodes.get());
+        assertEquals("v99", list.get(99));
+    }
+
+    public void testMapLooksUpByEncodedKey() throws Exception {
+        final AtomicInteger decodes = new AtomicInteger();
+        Map<byte[], byte[]> raw = new LinkedHashMap<byte[], byte[]>();
+        for (int i = 0; i < 50; i++) {
+            raw.put(("f" + i).getBytes(), Codecs.COMPACT.encode(i));
+        }
+        LazyMap<String, Object> map = new LazyMap<String, Object>(raw, key -> ((String) key).getBytes(),
+                String::new, bytes -> {
+                    decodes.incrementAndGet();
+                    return Codecs.decode(bytes);
+                });
+        assertEquals(50, map.size());
+        assertEquals(12, map.get("f12"));
+        assertTrue(map.containsKey("f49"));
+        assertNull(map.get("missing"));
+        assertEquals(1, decodes.get());
+        assertTrue(Arrays.equals(raw.get(raw.keySet().iterator().next()), map.raw("f0".getBytes())));
+
+        map.decodeAll();
+        assertEquals(50, decodes.get());
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(map);
+        assertEquals(0, copy.get("f0"));
+        assertEquals(50, decodes.get());
+    }
+}
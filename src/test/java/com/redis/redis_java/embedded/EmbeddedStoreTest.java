@@ -0,0 +1,134 @@
+package com.redis.redis_java.embedded;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.redis.redis_java.scan.ScanIterator;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.SortingParams;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Unit test for EmbeddedStore.
+ */
+public class EmbeddedStoreTest extends TestCase {
+
+    private EmbeddedStore store;
+    private EmbeddedJedis jedis;
+
+    @Override
+    protected void setUp() {
+        store = new EmbeddedStore(4);
+        jedis = new EmbeddedJedis(store);
+    }
+
+    @Override
+    protected void tearDown() {
+        store.close();
+    }
+
+    public void testStringsAndExpire() throws Exception {
+        assertEquals("OK", jedis.set("a", "1"));
+        assertEquals(11L, (long) jedis.incrBy("a", 10));
+        assertEquals(3L, (long) jedis.append("a", "x"));
+        assertEquals("11x", jedis.get("a"));
+        assertEquals(-1L, (long) jedis.ttl("a"));
+        try {
+            jedis.incrBy("a", 1);
+            fail();
+        } catch (JedisDataException expected) {
+        }
+
+        jedis.setex("b", 1, "v");
+        assertTrue(jedis.ttl("b") > 0);
+        jedis.expireAt("a", System.currentTimeMillis() / 1000 - 1);
+        assertNull(jedis.get("a"));
+        assertEquals(-2L, (long) jedis.ttl("a"));
+        Thread.sleep(1300);
+        assertEquals(0L, store.dbSize());
+    }
+
+    public void testWrongType() {
+        jedis.lpush("list", "a");
+        try {
+            jedis.get("list");
+            fail();
+        } catch (JedisDataException e) {
+            assertTrue(e.getMessage().startsWith("WRONGTYPE"));
+        }
+    }
+
+    public void testList() {
+        for (int i = 0; i < 20; i++) {
+            jedis.rpush("l", String.valueOf(i));
+        }
+        jedis.lpush("l", "x");
+        assertEquals(21L, (long) jedis.llen("l"));
+        assertEquals(Arrays.asList("x", "0", "1"), jedis.lrange("l", 0, 2));
+        assertEquals("19", jedis.lindex("l", -1));
+        jedis.ltrim("l", 1, 3);
+        assertEquals(Arrays.asList("0", "1", "2"), jedis.lrange("l", 0, -1));
+        jedis.rpush("l", "1");
+        assertEquals(2L, (long) jedis.lrem("l", 0, "1"));
+        assertEquals("0", jedis.lpop("l"));
+        assertEquals("2", jedis.rpop("l"));
+        assertFalse(jedis.exists("l"));
+    }
+
+    public void testSetsAndSort() {
+        jedis.sadd("s1", "3", "1", "2");
+        jedis.sadd("s2", "2", "4");
+        assertEquals(new HashSet<String>(Arrays.asList("1", "3")), jedis.sdiff("s1", "s2"));
+        assertEquals(1L, (long) jedis.sinterstore("s3", "s1", "s2"));
+        assertEquals(4L, (long) jedis.sunionstore("s4", "s1", "s2"));
+        assertEquals(Arrays.asList("4", "3", "2", "1"), jedis.sort("s4", new SortingParams().desc()));
+        assertEquals(1L, (long) jedis.smove("s1", "s2", "3"));
+        assertTrue(jedis.sismember("s2", "3"));
+    }
+
+    public void testSortedSetRanks() {
+        for (int i = 0; i < 1000; i++) {
+            jedis.zadd("z", i % 100, "m" + i);
+        }
+        assertEquals(1000L, (long) jedis.zcard("z"));
+        assertEquals(100L, (long) jedis.zcount("z", 10, 19));
+        assertEquals(0L, (long) jedis.zrank("z", "m0"));
+        assertEquals(999L, (long) jedis.zrevrank("z", "m0"));
+        assertEquals(Arrays.asList("m999", "m99"), new ArrayList<String>(jedis.zrevrange("z", 0, 1)));
+        assertEquals(5.0, jedis.zincrby("z", 5, "m0"));
+        assertEquals(500L, (long) jedis.zremrangeByScore("z", 0, 49.5));
+        assertEquals(10L, (long) jedis.zremrangeByRank("z", 0, 9));
+        assertEquals(490L, (long) jedis.zcard("z"));
+        Set<String> range = jedis.zrangeByScore("z", 99, 99);
+        assertEquals(10, range.size());
+        assertEquals("m199", range.iterator().next());
+    }
+
+    public void testPipelineAndScan() {
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<Long>> responses = new ArrayList<Response<Long>>();
+        for (int i = 0; i < 100; i++) {
+            responses.add(pipeline.hset("h" + i, "f", String.valueOf(i)));
+        }
+        Response<String> wrong = pipeline.get("h0");
+        pipeline.sync();
+        assertEquals(1L, (long) responses.get(99).get());
+        try {
+            wrong.get();
+            fail();
+        } catch (JedisDataException expected) {
+        }
+
+        jedis.set("h-string", "v");
+        Set<String> keys = new HashSet<String>();
+        ScanIterator.keys(() -> jedis, "h1*", 7, "hash").forEachRemaining(keys::add);
+        assertEquals(11, keys.size());
+        assertEquals(1, ScanIterator.hash(() -> jedis, "h5", null, 10).stream().count());
+    }
+}
@@ -0,0 +1,324 @@
+package com.redis.redis_java.id;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.Pool;
+
+/**
+ * Unit test for IdGeneratorUtil, with stub nodes standing in for Redis.
+ */
+public class IdGeneratorUtilTest extends TestCase {
+
+    /**
+     * 模拟一个id节点, 单个id的序号从seqBase开始递增; 号段按redis-script-segment.lua的算法在每毫秒内预留
+     */
+    static class StubNode extends Jedis {
+        final long seqBase;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger segments = new AtomicInteger();
+        volatile long delayMillis;
+        volatile boolean down;
+        volatile String lastThread;
+        final List<String> loadedScripts = new ArrayList<String>();
+        final List<List<String>> segmentCalls = new ArrayList<List<String>>();
+        private long millis;
+        private long counter;
+
+        StubNode(long seqBase) {
+            this.seqBase = seqBase;
+        }
+
+        @Override
+        public Object evalsha(String sha1, int keyCount, String... params) {
+            int call = calls.getAndIncrement();
+            lastThread = Thread.currentThread().getName();
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (down) {
+                throw new JedisConnectionException("node down");
+            }
+            long now = System.currentTimeMillis();
+            return Arrays.asList(now / 1000, now % 1000 * 1000, Long.parseLong(params[1]) & 0xFFF, seqBase + call);
+        }
+
+        @Override
+        public synchronized Object evalsha(String sha1, List<String> keys, List<String> args) {
+            if (!loadedScripts.contains(sha1)) {
+                throw new JedisNoScriptException("NOSCRIPT No matching script. Please use EVAL.");
+            }
+            segments.incrementAndGet();
+            List<String> call = new ArrayList<String>(keys);
+            call.addAll(args);
+            segmentCalls.add(call);
+            long partition = Math.floorMod(Long.parseLong(keys.get(1)), 4096);
+            int size = Integer.parseInt(args.get(0));
+            int step = Integer.parseInt(args.get(1));
+            int startStep = Integer.parseInt(args.get(2));
+            for (;;) {
+                long now = System.currentTimeMillis();
+                if (now != millis) {
+                    millis = now;
+                    counter = 0;
+                }
+                counter += step * size;
+                long last = counter;
+                long first = last - step * (size - 1);
+                if (first <= 1024 - step) {
+                    if (last > 1024 - step) {
+                        last = first + step * ((1024 - step - first) / step);
+                    }
+                    return Arrays.asList(now / 1000, now % 1000 * 1000, partition, first + startStep,
+                            last + startStep, (long) step);
+                }
+            }
+        }
+
+        @Override
+        public synchronized String scriptLoad(String script) {
+            String sha = sha1(script);
+            loadedScripts.add(sha);
+            return sha;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        Pool<Jedis> pool() {
+            final Jedis node = this;
+            return new Pool<Jedis>() {
+                @Override
+                public Jedis getResource() {
+                    return node;
+                }
+            };
+        }
+    }
+
+    private static long seq(long id) {
+        return IdGeneratorUtil.parseId(id).get(2);
+    }
+
+    private static long millis(long id) {
+        return IdGeneratorUtil.parseId(id).get(0);
+    }
+
+    static String sha1(String script) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitPrefetch(IdGeneratorUtil.SegmentBuffer buffer) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buffer.prefetched() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(2);
+        }
+        assertNotNull(buffer.prefetched());
+    }
+
+    public void testSlowPrimaryTriggersHedge() {
+        StubNode slow = new StubNode(0);
+        StubNode fast = new StubNode(512);
+        IdGeneratorUtil util = IdGeneratorUtil.builder().addPool(slow.pool(), "sha").addPool(fast.pool(), "sha")
+                .hedgeDelay(50).build();
+
+        // 主请求在调用线程执行, 慢但成功时使用它的结果
+        slow.delayMillis = 300;
+        long id = util.next("order", 7);
+        assertEquals(0, seq(id));
+        assertEquals(Thread.currentThread().getName(), slow.lastThread);
+        assertEquals(1, util.hedgeCount());
+        assertEquals(1, fast.calls.get());
+        assertEquals("id-generator-hedge", fast.lastThread);
+
+        // 主请求失败时使用已经发出的hedge的结果, 不再重试
+        slow.down = true;
+        int slowCalls = slow.calls.get();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(seq(util.next("order", 7)) >= 512);
+        }
+        assertTrue(slow.calls.get() > slowCalls);
+        assertTrue(util.hedgeCount() >= 2);
+        assertEquals(Thread.currentThread().getName(), slow.lastThread);
+    }
+
+    public void testFastPrimaryDoesNotHedge() {
+        StubNode a = new StubNode(0);
+        StubNode b = new StubNode(512);
+        IdGeneratorUtil util = IdGeneratorUtil.builder().addPool(a.pool(), "sha").addPool(b.pool(), "sha")
+                .hedgeDelay(200).build();
+        for (int i = 0; i < 20; i++) {
+            util.next("order", 7);
+        }
+        assertEquals(0, util.hedgeCount());
+        assertEquals(Thread.currentThread().getName(), a.lastThread);
+        assertEquals(Thread.currentThread().getName(), b.lastThread);
+        assertEquals(20, a.calls.get() + b.calls.get());
+    }
+
+    public void testSegmentScriptLoadedOnNoScript() throws Exception {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("lua/redis-script-segment.lua");
+        byte[] bytes = new byte[in.available()];
+        int read = 0;
+        while (read < bytes.length) {
+            read += in.read(bytes, read, bytes.length - read);
+        }
+        in.close();
+        String script = new String(bytes, StandardCharsets.UTF_8);
+        assertEquals(script, IdGeneratorUtil.SEGMENT_SCRIPT);
+        assertEquals(sha1(script), IdGeneratorUtil.SEGMENT_SCRIPT_SHA);
+        // 脚本的分区数和每毫秒序号数与id的位布局一致
+        assertTrue(script.contains("local partitionCount = " + (LocalIdGenerator.MAX_PARTITION + 1) + ";"));
+        assertTrue(script.contains("local maxSeq = 1024;"));
+
+        StubNode node = new StubNode(0);
+        IdGeneratorUtil util = IdGeneratorUtil.builder().addPool(node.pool(), "sha").segment(10, 3).build();
+        long id = util.next("order", -1);
+        assertEquals(Arrays.asList(IdGeneratorUtil.SEGMENT_SCRIPT_SHA), node.loadedScripts);
+        // 负数的shardId与脚本一样按floorMod归到分区
+        assertEquals(Arrays.asList("order", "4095", "10", "3", "0"), node.segmentCalls.get(0));
+        assertEquals(4095L, (long) IdGeneratorUtil.parseId(id).get(1));
+        assertEquals(3, seq(id));
+    }
+
+    public void testSegmentPrefetchAndSwitch() throws Exception {
+        StubNode node = new StubNode(0);
+        node.scriptLoad(IdGeneratorUtil.SEGMENT_SCRIPT);
+        IdGeneratorUtil util = IdGeneratorUtil.builder().addPool(node.pool(), "sha").segment(10, 1).build();
+        IdGeneratorUtil.SegmentBuffer buffer = util.segmentBuffer("order", 7);
+
+        long previous = -1;
+        for (int i = 0; i < 8; i++) {
+            long id = util.next("order", 7);
+            assertTrue(id > previous);
+            previous = id;
+        }
+        // 剩余2个时在后台预取
+        awaitPrefetch(buffer);
+        IdSegment prefetched = buffer.prefetched();
+        assertEquals(2, node.segments.get());
+        for (int i = 0; i < 3; i++) {
+            long id = util.next("order", 7);
+            assertTrue(id > previous);
+            previous = id;
+        }
+        assertSame(prefetched, buffer.current());
+        assertEquals(2, node.segments.get());
+        assertEquals(11, util.redisIdCount());
+    }
+
+    public void testStaleSegmentsExpire() throws Exception {
+        StubNode node = new StubNode(0);
+        node.scriptLoad(IdGeneratorUtil.SEGMENT_SCRIPT);
+        IdGeneratorUtil util = IdGeneratorUtil.builder().addPool(node.pool(), "sha").segment(10, 1)
+                .segmentMaxAge(50).build();
+        IdGeneratorUtil.SegmentBuffer buffer = util.segmentBuffer("order", 7);
+
+        // 当前号段过旧时不再使用
+        util.next("order", 7);
+        Thread.sleep(100);
+        long before = System.currentTimeMillis();
+        assertTrue(millis(util.next("order", 7)) >= before);
+        assertEquals(2, node.segments.get());
+
+        // 预取的号段过旧时丢弃
+        for (int i = 0; i < 8; i++) {
+            util.next("order", 7);
+        }
+        awaitPrefetch(buffer);
+        IdSegment stale = buffer.prefetched();
+        Thread.sleep(100);
+        before = System.currentTimeMillis();
+        assertTrue(millis(util.next("order", 7)) >= before);
+        assertNotSame(stale, buffer.current());
+        assertEquals(4, node.segments.get());
+    }
+
+    public void testConcurrentSwitchKeepsIdsUnique() throws Exception {
+        StubNode node = new StubNode(0);
+        node.scriptLoad(IdGeneratorUtil.SEGMENT_SCRIPT);
+        final IdGeneratorUtil util = IdGeneratorUtil.builder().addPool(node.pool(), "sha").segment(20, 1).build();
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    ids.add(util.next("order", 7));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(16000, ids.size());
+    }
+
+    public void testLocalFallbackSwitchesBothWays() throws Exception {
+        StubNode node = new StubNode(0);
+        IdGeneratorUtil util = IdGeneratorUtil.builder().addPool(node.pool(), "sha").retryTimes(2)
+                .eject(100, 1, 0.5).localFallback(3, 16).build();
+
+        // Redis不可用时切换到本地生成, 使用保留分区中的4080 + workerId
+        node.down = true;
+        long id = util.next("order", 5);
+        assertTrue(util.isLocalMode());
+        assertEquals(4083L, (long) IdGeneratorUtil.parseId(id).get(1));
+        assertEquals(1, util.modeSwitchCount());
+
+        // 冷却期间不试探Redis
+        int calls = node.calls.get();
+        util.next("order", 5);
+        assertEquals(calls, node.calls.get());
+        assertEquals(2, util.localIdCount());
+
+        // 冷却结束后试探成功, 切回Redis
+        node.down = false;
+        Thread.sleep(150);
+        id = util.next("order", 5);
+        assertFalse(util.isLocalMode());
+        assertEquals(5L, (long) IdGeneratorUtil.parseId(id).get(1));
+        assertEquals(2, util.modeSwitchCount());
+        assertEquals(1, util.redisIdCount());
+
+        // 负数的shardId不会落入保留的分区
+        id = util.next("order", -1);
+        assertEquals(4079L, (long) IdGeneratorUtil.parseId(id).get(1));
+    }
+
+    public void testLocalFallbackValidation() {
+        int[][] invalid = {{0, 0}, {0, 4096}, {16, 16}, {-1, 16}};
+        for (int[] args : invalid) {
+            try {
+                IdGeneratorUtil.builder().localFallback(args[0], args[1]);
+                fail(Arrays.toString(args));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        IdGeneratorUtil.builder().localFallback(4094, 4095);
+    }
+}
@@ -0,0 +1,33 @@
+package com.redis.redis_java.id;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for IdSegment.
+ */
+public class IdSegmentTest extends TestCase {
+
+    public void testIdsDecodeWithParseId() {
+        // second, microSecond, partition, firstSeq, lastSeq, step
+        List<Long> result = Arrays.asList(1500000000L, 123456L, 77L, 4L, 1021L, 3L);
+        IdSegment segment = new IdSegment(result);
+        assertEquals(340, segment.size());
+
+        long expectedMillis = 1500000000L * 1000 + 123;
+        long previous = -1;
+        for (int i = 0; i < 340; i++) {
+            long id = segment.next();
+            List<Long> parsed = IdGeneratorUtil.parseId(id);
+            assertEquals(expectedMillis, (long) parsed.get(0));
+            assertEquals(77L, (long) parsed.get(1));
+            assertEquals(4L + 3 * i, (long) parsed.get(2));
+            assertTrue(id > previous);
+            previous = id;
+        }
+        assertEquals(0, segment.remaining());
+        assertEquals(-1, segment.next());
+    }
+}
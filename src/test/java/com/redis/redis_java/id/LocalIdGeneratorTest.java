@@ -0,0 +1,51 @@
+package com.redis.redis_java.id;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for LocalIdGenerator.
+ */
+public class LocalIdGeneratorTest extends TestCase {
+
+    public void testLayoutMatchesBuildId() {
+        long before = System.currentTimeMillis();
+        long id = new LocalIdGenerator(4095).next();
+        List<Long> parsed = IdGeneratorUtil.parseId(id);
+        assertTrue(parsed.get(0) >= before);
+        assertEquals(4095L, (long) parsed.get(1));
+        assertEquals(0L, (long) parsed.get(2));
+    }
+
+    public void testUniqueAcrossThreads() throws Exception {
+        final LocalIdGenerator generator = new LocalIdGenerator(1);
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        ids.add(generator.next());
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, ids.size());
+    }
+
+    public void testLocalOnlyMode() {
+        IdGeneratorUtil util = IdGeneratorUtil.builder().localOnly(7).build();
+        assertTrue(util.isLocalMode());
+        long id = util.next("order", 123456789);
+        assertEquals(7L, (long) IdGeneratorUtil.parseId(id).get(1));
+        assertEquals(1, util.localIdCount());
+    }
+}
@@ -0,0 +1,75 @@
+package com.redis.redis_java.id;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for NodeSelector.
+ */
+public class NodeSelectorTest extends TestCase {
+
+    public void testRoundRobinSkipsEjectedNode() {
+        NodeSelector selector = new NodeSelector(3, 60000, 2, 0.5);
+        selector.failure(1);
+        assertTrue(selector.isHealthy(1));
+        selector.failure(1);
+        assertFalse(selector.isHealthy(1));
+
+        for (int i = 0; i < 30; i++) {
+            assertTrue(selector.select(-1) != 1);
+        }
+        assertEquals(2, selector.select(0));
+    }
+
+    public void testSuccessResetsFailures() {
+        NodeSelector selector = new NodeSelector(2, 60000, 2, 0.5);
+        selector.failure(0);
+        selector.success(0, 1000);
+        selector.failure(0);
+        assertTrue(selector.isHealthy(0));
+        assertEquals(1000, selector.latencyNanos(0));
+    }
+
+    public void testAllEjectedStillReturnsANode() {
+        NodeSelector selector = new NodeSelector(2, 60000, 1, 0.5);
+        selector.failure(0);
+        selector.failure(1);
+        assertTrue(selector.select(-1) >= 0);
+        assertEquals(-1, new NodeSelector(1, 60000, 1, 0.5).select(0));
+    }
+
+    public void testSlowNodeEjected() {
+        NodeSelector selector = new NodeSelector(3, 60000, 2, 0.5);
+        for (int i = 0; i < 20; i++) {
+            selector.success(0, 2000000);
+            selector.success(1, 3000000);
+            selector.success(2, 30000000);
+        }
+        assertTrue(selector.isHealthy(0));
+        assertTrue(selector.isHealthy(1));
+        assertFalse(selector.isHealthy(2));
+        for (int i = 0; i < 30; i++) {
+            assertTrue(selector.select(-1) != 2);
+        }
+    }
+
+    public void testFastOrLoneNodeNotEjected() {
+        // 都在1ms以内时差别再大也不剔除
+        NodeSelector fast = new NodeSelector(2, 60000, 2, 0.5);
+        for (int i = 0; i < 20; i++) {
+            fast.success(0, 10000);
+            fast.success(1, 900000);
+        }
+        assertTrue(fast.isHealthy(1));
+
+        // 另一个节点已被剔除时保留慢节点
+        NodeSelector lone = new NodeSelector(2, 60000, 1, 0.5);
+        for (int i = 0; i < 20; i++) {
+            lone.success(0, 1000000);
+        }
+        lone.failure(0);
+        for (int i = 0; i < 20; i++) {
+            lone.success(1, 50000000);
+        }
+        assertTrue(lone.isHealthy(1));
+    }
+}
@@ -0,0 +1,104 @@
+package com.redis.redis_java.jedis;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import com.redis.redis_java.metrics.CommandMetrics;
+import com.redis.redis_java.metrics.LatencyHistogram;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for AdaptivePoolController decisions.
+ */
+public class AdaptivePoolControllerTest extends TestCase {
+
+    private static final long MS = 1000000L;
+
+    private ResizableJedisPool pool;
+    private AdaptivePoolController controller;
+
+    @Override
+    protected void setUp() {
+        GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+        config.setMaxTotal(8);
+        pool = new ResizableJedisPool(config, "127.0.0.1", 6379, 2000, null, 0);
+        // 周期1秒, 测试中不会触发
+        controller = new AdaptivePoolController(pool, new CommandMetrics("test"), 4, 20, 5, 50, 1000, null);
+    }
+
+    @Override
+    protected void tearDown() {
+        controller.close();
+        pool.close();
+    }
+
+    public void testGrowOnWait() {
+        AdaptivePoolController.Decision decision = controller.decide(8, sample(100, 20 * MS), sample(100, MS), 0);
+        assertEquals(12, decision.size);
+        assertEquals(18, controller.decide(12, sample(0, 0), sample(100, MS), 3).size);
+        assertEquals(20, controller.decide(18, sample(100, 20 * MS), sample(100, MS), 0).size);
+        assertEquals(20, controller.decide(20, sample(100, 20 * MS), sample(100, MS), 0).size);
+    }
+
+    public void testHoldWhenServerSlow() {
+        AdaptivePoolController.Decision decision = controller.decide(8, sample(100, 20 * MS), sample(100, 80 * MS), 2);
+        assertEquals(8, decision.size);
+        assertTrue(decision.reason, decision.reason.startsWith("server latency high"));
+    }
+
+    public void testShrinkAfterIdleWindows() {
+        LatencyHistogram.Snapshot idle = sample(10, MS);
+        assertEquals(16, controller.decide(16, sample(10, 1000), idle, 0).size);
+        assertEquals(16, controller.decide(16, sample(10, 1000), idle, 0).size);
+        assertEquals(12, controller.decide(16, sample(10, 1000), idle, 0).size);
+        // 等待打断空闲计数
+        assertEquals(12, controller.decide(12, sample(10, 1000), idle, 0).size);
+        controller.decide(12, sample(10, 20 * MS), sample(10, MS), 0);
+        assertEquals(12, controller.decide(12, sample(10, 1000), idle, 0).size);
+    }
+
+    public void testShrinkBounds() {
+        // 1秒内共忙碌4.5秒连接时间: 16个连接利用率28%时缩小, 8个连接利用率56%时保持
+        LatencyHistogram.Snapshot busy = sample(450, 10 * MS);
+        controller.decide(16, sample(0, 0), busy, 0);
+        controller.decide(16, sample(0, 0), busy, 0);
+        assertEquals(12, controller.decide(16, sample(0, 0), busy, 0).size);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(8, controller.decide(8, sample(0, 0), busy, 0).size);
+        }
+        LatencyHistogram.Snapshot idle = sample(0, 0);
+        controller.decide(5, idle, idle, 0);
+        controller.decide(5, idle, idle, 0);
+        assertEquals(4, controller.decide(5, idle, idle, 0).size);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(4, controller.decide(4, idle, idle, 0).size);
+        }
+    }
+
+    public void testShrinkKeepsUtilizationBelowLimit() {
+        AdaptivePoolController small = new AdaptivePoolController(pool, new CommandMetrics("small"), 1, 20, 5, 50, 1000,
+                null);
+        try {
+            // 2个连接利用率27%, 缩小到1个后为55%, 超过40%不缩小
+            LatencyHistogram.Snapshot busy = sample(55, 10 * MS);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(2, small.decide(2, sample(0, 0), busy, 0).size);
+            }
+            // 3个连接利用率10%, 缩小到2个后为15%
+            LatencyHistogram.Snapshot light = sample(30, 10 * MS);
+            small.decide(3, sample(0, 0), light, 0);
+            small.decide(3, sample(0, 0), light, 0);
+            assertEquals(2, small.decide(3, sample(0, 0), light, 0).size);
+        } finally {
+            small.close();
+        }
+    }
+
+    private static LatencyHistogram.Snapshot sample(int count, long nanos) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < count; i++) {
+            histogram.record(nanos);
+        }
+        return histogram.snapshot();
+    }
+}
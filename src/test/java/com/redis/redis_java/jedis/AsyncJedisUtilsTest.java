@@ -0,0 +1,104 @@
+package com.redis.redis_java.jedis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.redis.redis_java.embedded.EmbeddedJedis;
+import com.redis.redis_java.embedded.EmbeddedStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for AsyncJedisUtils, backed by an embedded store.
+ */
+public class AsyncJedisUtilsTest extends TestCase {
+
+    private EmbeddedStore store;
+    private AsyncJedisUtils async;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    protected void setUp() {
+        store = new EmbeddedStore(4);
+        JedisUtils.use(new EmbeddedJedis(store), null);
+        async = new AsyncJedisUtils(JedisUtils.getInstance(), 1, 1, 200);
+    }
+
+    @Override
+    protected void tearDown() {
+        release.countDown();
+        async.close();
+        JedisUtils.use(null, null);
+        store.close();
+    }
+
+    public void testFacadeRunsCommands() throws Exception {
+        assertEquals("OK", async.strings().set("name", "shawn").get(1, TimeUnit.SECONDS));
+        assertEquals("shawn", async.strings().get("name").get(1, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(1), async.hash().hset("user:1", "level", "gold").get(1, TimeUnit.SECONDS));
+        assertEquals("gold", async.hash().hget("user:1", "level").get(1, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(5), async.strings().incrBy("count", 5).get(1, TimeUnit.SECONDS));
+        assertEquals(Boolean.TRUE, async.keys().exists("count").get(1, TimeUnit.SECONDS));
+    }
+
+    public void testTimeout() throws Exception {
+        CompletableFuture<Integer> blocked = async.supply(() -> {
+            release.await();
+            return 1;
+        });
+        try {
+            blocked.get(2, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    public void testRejectWhenQueueFull() throws Exception {
+        async.setTimeoutMillis(0);
+        CompletableFuture<Integer> running = async.supply(() -> {
+            release.await();
+            return 1;
+        });
+        CompletableFuture<Integer> queued = async.supply(() -> 2);
+        CompletableFuture<Integer> rejected = async.supply(() -> 3);
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        release.countDown();
+        assertEquals(Integer.valueOf(1), running.get(1, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2), queued.get(1, TimeUnit.SECONDS));
+    }
+
+    public void testClose() throws Exception {
+        async.close();
+        assertTrue(async.isClosed());
+        try {
+            async.strings().get("name").get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    public void testSharedFacadeRecreatedAfterClose() throws Exception {
+        JedisUtils jedisUtils = JedisUtils.getInstance();
+        AsyncJedisUtils shared = jedisUtils.async();
+        assertSame(shared, jedisUtils.async());
+        shared.close();
+
+        AsyncJedisUtils recreated = jedisUtils.async();
+        assertNotSame(shared, recreated);
+        assertFalse(recreated.isClosed());
+        assertEquals("OK", recreated.strings().set("name", "shawn").get(1, TimeUnit.SECONDS));
+        recreated.close();
+    }
+}
@@ -0,0 +1,237 @@
+package com.redis.redis_java.jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.redis.redis_java.embedded.EmbeddedJedis;
+import com.redis.redis_java.embedded.EmbeddedStore;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
+
+/**
+ * Unit test for Batch, backed by embedded stores.
+ */
+public class BatchTest extends TestCase {
+
+    private EmbeddedStore store;
+
+    @Override
+    protected void setUp() {
+        store = new EmbeddedStore(4);
+        JedisUtils.use(new EmbeddedJedis(store), null);
+    }
+
+    @Override
+    protected void tearDown() {
+        JedisUtils.use(null, null);
+        store.close();
+    }
+
+    public void testResponsesFilledInOrder() {
+        Batch batch = JedisUtils.getInstance().batch();
+        BatchResponse<String> set = batch.set("name", "shawn");
+        BatchResponse<String> get = batch.get("name");
+        BatchResponse<Long> push = batch.rpush("list", "a");
+        BatchResponse<Long> pushAgain = batch.rpush("list", "b");
+        BatchResponse<Long> wrongType = batch.incrBy("name", 1);
+        BatchResponse<Boolean> exists = batch.exists("missing");
+        assertEquals(6, batch.size());
+        assertFalse(get.isDone());
+
+        batch.execute();
+        assertEquals(0, batch.size());
+        assertEquals("OK", set.get());
+        assertEquals("shawn", get.get());
+        assertEquals(Long.valueOf(1), push.get());
+        assertEquals(Long.valueOf(2), pushAgain.get());
+        assertEquals(Boolean.FALSE, exists.get());
+        try {
+            wrongType.get();
+            fail();
+        } catch (JedisDataException expected) {
+        }
+        assertEquals(Arrays.asList("a", "b"), JedisUtils.getInstance().lists().lrange("list", 0, -1));
+    }
+
+    public void testClusterBatchSendsOnePipelinePerNode() {
+        List<EmbeddedStore> nodes = new ArrayList<EmbeddedStore>();
+        AtomicInteger pipelines = new AtomicInteger();
+        List<Pool<Jedis>> pools = new ArrayList<Pool<Jedis>>();
+        for (int i = 0; i < 3; i++) {
+            EmbeddedStore node = new EmbeddedStore(4);
+            nodes.add(node);
+            pools.add(countingPool(node, pipelines));
+        }
+        JedisUtils.use(null, new StubRouter(pools) {
+            @Override
+            public int partition(byte[] key) {
+                return JedisClusterCRC16.getSlot(key);
+            }
+        });
+        try {
+            Batch batch = JedisUtils.getInstance().batch();
+            for (int i = 0; i < 60; i++) {
+                batch.set("k" + i, "v" + i);
+            }
+            List<BatchResponse<String>> gets = new ArrayList<BatchResponse<String>>();
+            for (int i = 0; i < 60; i++) {
+                gets.add(batch.get("k" + i));
+            }
+            BatchResponse<Long> tagged = batch.del("{user:1}:a", "{user:1}:b");
+            BatchResponse<List<String>> crossSlot = batch.mget("k1", "k2");
+            batch.execute();
+
+            assertEquals(3, pipelines.get());
+            for (int i = 0; i < 60; i++) {
+                assertEquals("v" + i, gets.get(i).get());
+                String key = "k" + i;
+                EmbeddedStore owner = nodes.get(JedisClusterCRC16.getSlot(key) % 3);
+                assertEquals("v" + i, new EmbeddedJedis(owner).get(key));
+            }
+            assertEquals(Long.valueOf(0), tagged.get());
+            try {
+                crossSlot.get();
+                fail();
+            } catch (JedisDataException e) {
+                assertTrue(e.getMessage().startsWith("CROSSSLOT"));
+            }
+        } finally {
+            for (EmbeddedStore node : nodes) {
+                node.close();
+            }
+        }
+    }
+
+    public void testShardedBatchSendsOnePipelinePerShard() {
+        List<EmbeddedStore> shards = new ArrayList<EmbeddedStore>();
+        AtomicInteger pipelines = new AtomicInteger();
+        List<Pool<Jedis>> pools = new ArrayList<Pool<Jedis>>();
+        for (int i = 0; i < 2; i++) {
+            EmbeddedStore shard = new EmbeddedStore(4);
+            shards.add(shard);
+            pools.add(countingPool(shard, pipelines));
+        }
+        ShardRouter router = new ShardRouter(Arrays.asList("shard-a:6379", "shard-b:6379"), new int[] {1, 1}, pools);
+        JedisUtils.use(null, router);
+        try {
+            Batch batch = JedisUtils.getInstance().batch();
+            List<BatchResponse<Long>> pushes = new ArrayList<BatchResponse<Long>>();
+            for (int i = 0; i < 40; i++) {
+                batch.set("user:" + i, "u" + i);
+                pushes.add(batch.rpush("log:" + (i % 4), "e" + i));
+            }
+            List<BatchResponse<String>> gets = new ArrayList<BatchResponse<String>>();
+            for (int i = 0; i < 40; i++) {
+                gets.add(batch.get("user:" + i));
+            }
+            BatchResponse<List<String>> sameShard = batch.mget("user:1", "user:1");
+            batch.execute();
+
+            assertEquals(2, pipelines.get());
+            int[] perShard = new int[2];
+            for (int i = 0; i < 40; i++) {
+                assertEquals("u" + i, gets.get(i).get());
+                assertEquals(Long.valueOf(i / 4 + 1), pushes.get(i).get());
+                int shard = router.partition(("user:" + i).getBytes());
+                perShard[shard]++;
+                assertEquals("u" + i, new EmbeddedJedis(shards.get(shard)).get("user:" + i));
+                assertNull(new EmbeddedJedis(shards.get(1 - shard)).get("user:" + i));
+            }
+            assertTrue(perShard[0] > 0 && perShard[1] > 0);
+            assertEquals(Arrays.asList("u1", "u1"), sameShard.get());
+        } finally {
+            for (EmbeddedStore shard : shards) {
+                shard.close();
+            }
+        }
+    }
+
+    public void testFailedPipelineFailsPendingResponses() {
+        final JedisConnectionException down = new JedisConnectionException("connection reset");
+        JedisUtils.use(new EmbeddedJedis(store) {
+            @Override
+            public Pipeline pipelined() {
+                throw down;
+            }
+        }, null);
+        Batch batch = JedisUtils.getInstance().batch();
+        BatchResponse<String> get = batch.get("name");
+        BatchResponse<Long> del = batch.del("name");
+        try {
+            batch.execute();
+            fail();
+        } catch (JedisConnectionException e) {
+            assertSame(down, e);
+        }
+        assertEquals(0, batch.size());
+        assertTrue(get.isDone());
+        try {
+            del.get();
+            fail();
+        } catch (JedisConnectionException e) {
+            assertSame(down, e);
+        }
+    }
+
+    static Pool<Jedis> countingPool(EmbeddedStore store, final AtomicInteger pipelines) {
+        final EmbeddedJedis jedis = new EmbeddedJedis(store) {
+            @Override
+            public Pipeline pipelined() {
+                pipelines.incrementAndGet();
+                return super.pipelined();
+            }
+        };
+        return new Pool<Jedis>() {
+            @Override
+            public Jedis getResource() {
+                return jedis;
+            }
+        };
+    }
+
+    /**
+     * Routes partition n to node n % nodes.size()
+     */
+    abstract static class StubRouter implements KeyRouter {
+
+        private final List<Pool<Jedis>> pools;
+
+        StubRouter(List<Pool<Jedis>> pools) {
+            this.pools = pools;
+        }
+
+        @Override
+        public Object node(int partition) {
+            return pools.get(partition % pools.size());
+        }
+
+        @Override
+        public Jedis getResource(int partition) {
+            return pools.get(partition % pools.size()).getResource();
+        }
+
+        @Override
+        public <T> T execute(int partition, Function<Jedis, T> action) {
+            return action.apply(getResource(partition));
+        }
+
+        @Override
+        public Collection<? extends Pool<Jedis>> nodes() {
+            return pools;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.redis.redis_java.jedis;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for BucketedStore bucket sizing and key distribution.
+ */
+public class BucketedStoreTest extends TestCase {
+
+    public void testBucketsFor() {
+        assertEquals(1, BucketedStore.bucketsFor(0, 128));
+        assertEquals(1, BucketedStore.bucketsFor(96, 128));
+        assertEquals(2, BucketedStore.bucketsFor(97, 128));
+        assertEquals(104167, BucketedStore.bucketsFor(10000000, 128));
+    }
+
+    public void testBucketsStayBelowZiplistLimit() {
+        int entries = 200000;
+        BucketedStore store = new BucketedStore(null, "vo", BucketedStore.bucketsFor(entries, 128));
+        int[] counts = new int[store.getBuckets()];
+        for (int i = 0; i < entries; i++) {
+            counts[store.bucket("vo:" + i)]++;
+        }
+        int max = 0;
+        for (int count : counts) {
+            max = Math.max(max, count);
+        }
+        assertTrue("max bucket size " + max, max <= 128);
+        assertEquals("vo:b:" + store.bucket("vo:1"), store.bucketKey("vo:1"));
+    }
+}
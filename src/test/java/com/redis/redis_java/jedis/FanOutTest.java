@@ -0,0 +1,210 @@
+package com.redis.redis_java.jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.redis.redis_java.embedded.EmbeddedJedis;
+import com.redis.redis_java.embedded.EmbeddedStore;
+import com.redis.redis_java.scan.ScanIterator;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Unit test for FanOut, with three embedded stores standing in for cluster nodes.
+ */
+public class FanOutTest extends TestCase {
+
+    private final List<EmbeddedStore> stores = new ArrayList<EmbeddedStore>();
+    private final List<Pool<Jedis>> pools = new ArrayList<Pool<Jedis>>();
+    private KeyRouter router;
+    private FanOut fanOut;
+
+    @Override
+    protected void setUp() {
+        for (int i = 0; i < 3; i++) {
+            EmbeddedStore store = new EmbeddedStore(4);
+            final EmbeddedJedis jedis = new EmbeddedJedis(store);
+            stores.add(store);
+            pools.add(new Pool<Jedis>() {
+                @Override
+                public Jedis getResource() {
+                    return jedis;
+                }
+            });
+        }
+        router = new KeyRouter() {
+            @Override
+            public int partition(byte[] key) {
+                return JedisClusterCRC16.getSlot(key);
+            }
+
+            @Override
+            public Object node(int partition) {
+                return pools.get(partition % 3);
+            }
+
+            @Override
+            public Jedis getResource(int partition) {
+                return pools.get(partition % 3).getResource();
+            }
+
+            @Override
+            public <T> T execute(int partition, Function<Jedis, T> action) {
+                return action.apply(getResource(partition));
+            }
+
+            @Override
+            public Collection<? extends Pool<Jedis>> nodes() {
+                return pools;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        fanOut = new FanOut(router);
+    }
+
+    @Override
+    protected void tearDown() {
+        fanOut.close();
+        for (EmbeddedStore store : stores) {
+            store.close();
+        }
+    }
+
+    public void testMgetKeepsCallerOrder() {
+        String[] keys = new String[50];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "k" + i;
+            Jedis jedis = pools.get(JedisClusterCRC16.getSlot(keys[i]) % 3).getResource();
+            jedis.set(keys[i], "v" + i);
+        }
+        keys[7] = "missing";
+        String[] values = new String[keys.length];
+        List<FanOut.Part<List<String>>> parts = fanOut.byPartition(encode(keys), (jedis, indexes) -> {
+            String[] picked = new String[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                picked[i] = keys[indexes[i]];
+            }
+            return jedis.mget(picked);
+        });
+        assertTrue(parts.size() > 3);
+        for (FanOut.Part<List<String>> part : parts) {
+            for (int i = 0; i < part.indexes.length; i++) {
+                values[part.indexes[i]] = part.result.get(i);
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i == 7 ? null : "v" + i, values[i]);
+        }
+    }
+
+    public void testHashTagsShareSlot() {
+        String[] keys = {HashTags.tagged("user:1", "a"), HashTags.tagged("user:1", "b"), HashTags.tagged("user:1", "c")};
+        assertTrue(HashTags.sameSlot(keys));
+        assertEquals("user:1", HashTags.tagOf(keys[0]));
+        assertEquals(1, fanOut.byPartition(encode(keys), (jedis, indexes) -> indexes.length).size());
+    }
+
+    public void testOnAllNodesAndMultiSourceScan() {
+        for (int i = 0; i < 30; i++) {
+            String key = "s" + i;
+            pools.get(JedisClusterCRC16.getSlot(key) % 3).getResource().set(key, "x");
+        }
+        List<Long> sizes = fanOut.onAllNodes(jedis -> jedis.dbSize());
+        assertEquals(3, sizes.size());
+        assertEquals(30L, sizes.get(0) + sizes.get(1) + sizes.get(2));
+
+        List<Supplier<Jedis>> sources = new ArrayList<Supplier<Jedis>>();
+        for (Pool<Jedis> pool : pools) {
+            sources.add(pool::getResource);
+        }
+        Set<String> scanned = new HashSet<String>();
+        ScanIterator<String> it = ScanIterator.keys(sources, "s*", 4, null);
+        while (it.hasNext()) {
+            scanned.add(it.next());
+        }
+        assertEquals(30, scanned.size());
+        assertTrue(scanned.containsAll(Arrays.asList("s0", "s29")));
+    }
+
+    public void testKeysScansEveryNode() {
+        for (int i = 0; i < 30; i++) {
+            String key = "p" + i;
+            pools.get(JedisClusterCRC16.getSlot(key) % 3).getResource().set(key, "x");
+        }
+        pools.get(0).getResource().set("other", "x");
+        JedisUtils.use(null, router);
+        try {
+            Set<String> keys = JedisUtils.getInstance().keys().keys("p*");
+            assertEquals(30, keys.size());
+            assertTrue(keys.containsAll(Arrays.asList("p0", "p29")));
+            assertEquals(30, JedisUtils.getInstance().keys().parallelScan("p*", 4, "string").count());
+        } finally {
+            JedisUtils.use(null, null);
+        }
+    }
+
+    public void testRenameAndSmoveAcrossPartitions() {
+        String src = "user:1";
+        String dst = "user:2";
+        assertTrue(node(src) != node(dst));
+        JedisUtils.use(null, router);
+        try {
+            JedisUtils utils = JedisUtils.getInstance();
+            pools.get(node(src)).getResource().set(src, "x");
+            try {
+                utils.keys().rename(src, dst);
+                fail();
+            } catch (JedisDataException expected) {
+                assertTrue(expected.getMessage().contains("different partitions"));
+            }
+            try {
+                utils.keys().renamenx(src, dst);
+                fail();
+            } catch (JedisDataException expected) {
+            }
+            // 两个key都没有被改动
+            assertEquals("x", pools.get(node(src)).getResource().get(src));
+            for (Pool<Jedis> pool : pools) {
+                assertFalse(pool.getResource().exists(dst));
+            }
+
+            String tagged = HashTags.tagged(src, "renamed");
+            assertEquals("OK", utils.keys().rename(src, tagged));
+            assertEquals("x", pools.get(node(tagged)).getResource().get(tagged));
+
+            pools.get(node(src)).getResource().sadd(src, "m1", "m2");
+            assertEquals(1, utils.sets().smove(src, dst, "m1"));
+            assertEquals(0, utils.sets().smove(src, dst, "missing"));
+            assertEquals(new HashSet<String>(Arrays.asList("m2")), pools.get(node(src)).getResource().smembers(src));
+            assertEquals(new HashSet<String>(Arrays.asList("m1")), pools.get(node(dst)).getResource().smembers(dst));
+        } finally {
+            JedisUtils.use(null, null);
+        }
+    }
+
+    private static int node(String key) {
+        return JedisClusterCRC16.getSlot(key) % 3;
+    }
+
+    private static byte[][] encode(String[] keys) {
+        byte[][] encoded = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            encoded[i] = SafeEncoder.encode(keys[i]);
+        }
+        return encoded;
+    }
+}
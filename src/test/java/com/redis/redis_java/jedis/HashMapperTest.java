@@ -0,0 +1,127 @@
+package com.redis.redis_java.jedis;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.redis.redis_java.embedded.EmbeddedJedis;
+import com.redis.redis_java.embedded.EmbeddedStore;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Unit test for the HashMapper field conversions.
+ */
+public class HashMapperTest extends TestCase {
+
+    public enum Level {
+        BRONZE, GOLD
+    }
+
+    public static class Profile {
+        private String nickname;
+        private int points;
+        private Long visits;
+        private boolean active;
+        private Level level;
+        private Date joined;
+        private List<String> tags;
+
+        public String getNickname() { return nickname; }
+        public void setNickname(String nickname) { this.nickname = nickname; }
+        public int getPoints() { return points; }
+        public void setPoints(int points) { this.points = points; }
+        public Long getVisits() { return visits; }
+        public void setVisits(Long visits) { this.visits = visits; }
+        public boolean isActive() { return active; }
+        public void setActive(boolean active) { this.active = active; }
+        public Level getLevel() { return level; }
+        public void setLevel(Level level) { this.level = level; }
+        public Date getJoined() { return joined; }
+        public void setJoined(Date joined) { this.joined = joined; }
+        public List<String> getTags() { return tags; }
+        public void setTags(List<String> tags) { this.tags = tags; }
+    }
+
+    public void testRoundTrip() {
+        HashMapper<Profile> mapper = HashMapper.of(null, Profile.class);
+        Profile profile = new Profile();
+        profile.setNickname("shawn");
+        profile.setPoints(33);
+        profile.setActive(true);
+        profile.setLevel(Level.GOLD);
+        profile.setJoined(new Date(1500000000000L));
+        profile.setTags(Arrays.asList("a", "b"));
+
+        Map<String, String> hash = mapper.toHash(profile);
+        assertEquals("33", hash.get("points"));
+        assertEquals("GOLD", hash.get("level"));
+        assertEquals("1500000000000", hash.get("joined"));
+        assertEquals("true", hash.get("active"));
+        assertFalse(hash.containsKey("visits"));
+
+        Profile restored = mapper.fromHash(hash);
+        assertEquals("shawn", restored.getNickname());
+        assertEquals(33, restored.getPoints());
+        assertTrue(restored.isActive());
+        assertEquals(Level.GOLD, restored.getLevel());
+        assertEquals(profile.getJoined(), restored.getJoined());
+        assertEquals(Arrays.asList("a", "b"), restored.getTags());
+        assertNull(restored.getVisits());
+    }
+
+    public void testUnknownAndNonIntegerFields() {
+        HashMapper<Profile> mapper = HashMapper.of(null, Profile.class);
+        assertTrue(mapper.fields().contains("visits"));
+        try {
+            mapper.increment("k", "nickname", 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            mapper.increment("k", "points", 1L << 33);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            mapper.update("k", new Profile(), "missing");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testSaveAgainstEmbeddedStore() {
+        EmbeddedStore store = new EmbeddedStore(4);
+        JedisUtils.use(new EmbeddedJedis(store), null);
+        try {
+            HashMapper<Profile> mapper = HashMapper.of(JedisUtils.getInstance(), Profile.class);
+            Profile profile = new Profile();
+            profile.setNickname("shawn");
+            profile.setVisits(3L);
+            mapper.save("user:1", profile);
+            assertEquals(Long.valueOf(3), mapper.load("user:1").getVisits());
+
+            // 写入和删除null属性在一个MULTI中
+            profile.setVisits(null);
+            profile.setPoints(7);
+            mapper.save("user:1", profile);
+            Map<String, String> hash = JedisUtils.getInstance().hash().hgetAll("user:1");
+            assertFalse(hash.containsKey("visits"));
+            assertEquals("7", hash.get("points"));
+            assertEquals(5L, mapper.increment("user:1", "visits", 5));
+
+            // 内嵌模式不支持脚本
+            try {
+                mapper.increment("user:1", "points", 1);
+                fail();
+            } catch (JedisDataException e) {
+                assertEquals("ERR unsupported in embedded mode", e.getMessage());
+            }
+        } finally {
+            JedisUtils.use(null, null);
+            store.close();
+        }
+    }
+}
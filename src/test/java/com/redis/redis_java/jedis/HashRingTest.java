@@ -0,0 +1,70 @@
+package com.redis.redis_java.jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Unit test for HashRing.
+ */
+public class HashRingTest extends TestCase {
+
+    private static final int KEYS = 100000;
+
+    public void testBalance() {
+        HashRing ring = ring(4, new int[] {1, 1, 1, 1});
+        int[] counts = count(ring, 4);
+        for (int count : counts) {
+            assertTrue(Arrays.toString(counts), Math.abs(count - KEYS / 4) < KEYS / 4 / 5);
+        }
+    }
+
+    public void testWeights() {
+        int[] counts = count(ring(2, new int[] {1, 3}), 2);
+        double ratio = (double) counts[1] / counts[0];
+        assertTrue(Arrays.toString(counts), ratio > 2.4 && ratio < 3.6);
+    }
+
+    public void testAddingShardMovesAboutOneNth() {
+        HashRing before = ring(4, new int[] {1, 1, 1, 1});
+        HashRing after = ring(5, new int[] {1, 1, 1, 1, 1});
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            byte[] key = SafeEncoder.encode("key:" + i);
+            int node = after.node(key);
+            if (node != before.node(key)) {
+                // 只会移动到新分片
+                assertEquals(4, node);
+                moved++;
+            }
+        }
+        assertTrue(String.valueOf(moved), Math.abs(moved - KEYS / 5) < KEYS / 5 * 3 / 10);
+    }
+
+    public void testHashTags() {
+        HashRing ring = ring(8, new int[] {1, 1, 1, 1, 1, 1, 1, 1});
+        int node = ring.node(SafeEncoder.encode("{user:1}:profile"));
+        for (String suffix : new String[] {"orders", "cart", "a", "b"}) {
+            assertEquals(node, ring.node(SafeEncoder.encode("{user:1}:" + suffix)));
+        }
+    }
+
+    private static HashRing ring(int shards, int[] weights) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < shards; i++) {
+            names.add("10.0.0." + i + ":6379");
+        }
+        return new HashRing(names, weights, ShardRouter.VIRTUAL_NODES);
+    }
+
+    private static int[] count(HashRing ring, int shards) {
+        int[] counts = new int[shards];
+        for (int i = 0; i < KEYS; i++) {
+            counts[ring.node(SafeEncoder.encode("key:" + i))]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,70 @@
+package com.redis.redis_java.jedis;
+
+import java.util.Arrays;
+
+import com.redis.redis_java.codec.Compression;
+import com.redis.redis_java.codec.Lz4Compressor;
+import com.redis.redis_java.embedded.EmbeddedJedis;
+import com.redis.redis_java.embedded.EmbeddedStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for JedisUtils, backed by an embedded store.
+ */
+public class JedisUtilsTest extends TestCase {
+
+    private EmbeddedStore store;
+
+    private JedisUtils jedisUtils;
+
+    @Override
+    protected void setUp() {
+        store = new EmbeddedStore(4);
+        JedisUtils.use(new EmbeddedJedis(store), null);
+        jedisUtils = JedisUtils.getInstance();
+    }
+
+    @Override
+    protected void tearDown() {
+        jedisUtils.setCompression(null);
+        JedisUtils.use(null, null);
+        store.close();
+    }
+
+    private static byte[] text(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 7);
+        }
+        return bytes;
+    }
+
+    public void testReadsDecompressWhateverTheSetting() {
+        byte[] large = text(5000);
+        byte[] small = text(10);
+        jedisUtils.setCompression(new Compression(new Lz4Compressor(), 1024));
+        jedisUtils.strings().set("large", large);
+        jedisUtils.strings().set("small", small);
+        assertTrue(Compression.isCompressed(new EmbeddedJedis(store).get("large".getBytes())));
+
+        // 关闭压缩后之前写入的值仍然解压
+        jedisUtils.setCompression(null);
+        assertTrue(Arrays.equals(large, jedisUtils.strings().get("large".getBytes())));
+        assertTrue(Arrays.equals(small, jedisUtils.strings().get("small".getBytes())));
+        Batch batch = jedisUtils.batch();
+        BatchResponse<byte[]> response = batch.get("large".getBytes());
+        batch.execute();
+        assertTrue(Arrays.equals(large, response.get()));
+    }
+
+    public void testRawValueLookingLikeFrame() {
+        byte[] lookalike = {Compression.HEADER, (byte) 0xC7, Lz4Compressor.ID, 5, 1, 2, 3};
+        jedisUtils.strings().set("raw", lookalike);
+        assertTrue(Arrays.equals(lookalike, jedisUtils.strings().get("raw".getBytes())));
+
+        jedisUtils.setCompression(new Compression(new Lz4Compressor(), 1));
+        jedisUtils.strings().set("raw", lookalike);
+        assertTrue(Arrays.equals(lookalike, jedisUtils.strings().get("raw".getBytes())));
+    }
+}
@@ -0,0 +1,202 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.redis.redis_java.embedded.EmbeddedJedis;
+import com.redis.redis_java.embedded.EmbeddedPipeline;
+import com.redis.redis_java.embedded.EmbeddedStore;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+
+/**
+ * Unit test for JedisSentinelUtils, with an embedded store standing in for the sentinel pool.
+ */
+public class JedisSentinelUtilsTest extends TestCase {
+
+    private EmbeddedStore store;
+
+    @Override
+    protected void setUp() {
+        store = new EmbeddedStore(4);
+    }
+
+    @Override
+    protected void tearDown() {
+        ReplicaRouter router = JedisSentinelUtils.getReplicaRouter();
+        if (router != null) {
+            JedisSentinelUtils.setReplicaRouter(null);
+            router.close();
+        }
+        JedisSentinelUtils.setPool(null);
+        store.close();
+    }
+
+    private Pool<Jedis> use(final Jedis jedis) {
+        Pool<Jedis> pool = new Pool<Jedis>() {
+            @Override
+            public Jedis getResource() {
+                return jedis;
+            }
+        };
+        JedisSentinelUtils.setPool(pool);
+        return pool;
+    }
+
+    public void testKeysDedupesByContent() {
+        // SCAN在rehash时可能重复返回同一个key, 每次都是新的byte[]
+        use(new EmbeddedJedis(store) {
+            @Override
+            public ScanResult<byte[]> scan(byte[] cursor, ScanParams params) {
+                ScanResult<byte[]> page = super.scan(cursor, params);
+                List<byte[]> twice = new ArrayList<byte[]>();
+                for (byte[] key : page.getResult()) {
+                    twice.add(key.clone());
+                    twice.add(key.clone());
+                }
+                return new ScanResult<byte[]>(page.getCursorAsBytes(), twice);
+            }
+        });
+        EmbeddedJedis jedis = new EmbeddedJedis(store);
+        for (int i = 0; i < 20; i++) {
+            jedis.set("user:" + i, "x");
+        }
+        jedis.set("order:1", "x");
+
+        Set<byte[]> keys = JedisSentinelUtils.keys("user:");
+        assertEquals(20, keys.size());
+        assertTrue(keys.contains("user:7".getBytes()));
+        assertFalse(keys.contains("order:1".getBytes()));
+    }
+
+    public void testReplicaReadFallsBackToMaster() {
+        Pool<Jedis> master = use(new EmbeddedJedis(store));
+        assertTrue(JedisSentinelUtils.save("k", "master"));
+        final List<RuntimeException> failures = new ArrayList<RuntimeException>();
+        Pool<Jedis> replica = new Pool<Jedis>() {
+            @Override
+            public Jedis getResource() {
+                throw failures.remove(0);
+            }
+
+            @Override
+            public void destroy() {
+            }
+        };
+        ReplicaRouter router = new ReplicaRouter(ReadPreference.REPLICA_PREFERRED, master,
+                Collections.<String>emptySet(), "master1", null, 100, null, 0, 60000);
+        router.addReplica(new HostAndPort("10.0.0.1", 6379), replica, 1000, 1000);
+        JedisSentinelUtils.setReplicaRouter(router);
+
+        // 连接池耗尽: 读master, replica仍然可用
+        failures.add(new JedisException("Could not get a resource from the pool"));
+        assertEquals("master", JedisSentinelUtils.get("k"));
+        assertEquals(1, router.getReplicas().size());
+
+        // 连接失败: 读master, replica在下次刷新前不再使用
+        failures.add(new JedisConnectionException("connection refused"));
+        assertEquals("master", JedisSentinelUtils.get("k"));
+        assertTrue(router.getReplicas().isEmpty());
+    }
+
+    public void testSaveAllSyncsEveryBatch() {
+        // 每次sync时已经发送的SETEX数
+        final List<Integer> syncs = new ArrayList<Integer>();
+        use(new EmbeddedJedis(store) {
+            @Override
+            public Pipeline pipelined() {
+                return new EmbeddedPipeline(this) {
+                    private int queued;
+
+                    @Override
+                    public Response<String> setex(byte[] key, int seconds, byte[] value) {
+                        queued++;
+                        return super.setex(key, seconds, value);
+                    }
+
+                    @Override
+                    public void sync() {
+                        syncs.add(queued);
+                    }
+                };
+            }
+        });
+        assertTrue(JedisSentinelUtils.saveAll(Collections.emptyMap(), 60));
+        assertTrue(syncs.isEmpty());
+
+        Map<String, String> objects = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 1201; i++) {
+            objects.put("k" + i, "v" + i);
+        }
+        assertTrue(JedisSentinelUtils.saveAll(objects, 60));
+        assertEquals(Arrays.asList(500, 1000, 1201), syncs);
+        assertEquals("v0", JedisSentinelUtils.get("k0"));
+        assertEquals("v1200", JedisSentinelUtils.get("k1200"));
+    }
+
+    public void testGetAllChunksAndKeepsOrder() {
+        // 每次MGET的key数
+        final List<Integer> mgets = new ArrayList<Integer>();
+        use(new EmbeddedJedis(store) {
+            @Override
+            public List<byte[]> mget(byte[]... keys) {
+                mgets.add(keys.length);
+                return super.mget(keys);
+            }
+        });
+        Map<String, String> objects = new LinkedHashMap<String, String>();
+        List<String> keys = new ArrayList<String>();
+        for (int i = 1099; i >= 0; i--) {
+            keys.add("k" + i);
+            if (i % 7 != 0) {
+                objects.put("k" + i, "v" + i);
+            }
+        }
+        assertTrue(JedisSentinelUtils.saveAll(objects, 60));
+        assertTrue(JedisSentinelUtils.getAll(Collections.emptyList()).isEmpty());
+        assertTrue(mgets.isEmpty());
+
+        Map<Object, Object> result = JedisSentinelUtils.getAll(keys);
+        assertEquals(Arrays.asList(500, 500, 100), mgets);
+        // 不存在的key不在结果中, 其余按keys的顺序
+        assertEquals(new ArrayList<Object>(objects.keySet()), new ArrayList<Object>(result.keySet()));
+        assertEquals("v1098", result.get("k1098"));
+        assertFalse(result.containsKey("k1099"));
+        assertEquals("v1", result.get("k1"));
+    }
+
+    public void testSyncWritesCancelPendingSaveBehind() {
+        use(new EmbeddedJedis(store));
+        JedisSentinelUtils.enableWriteBehind(100, 100, 60000, 0);
+        try {
+            assertTrue(JedisSentinelUtils.saveBehind("deleted", "old", 60));
+            assertTrue(JedisSentinelUtils.del("deleted"));
+            assertTrue(JedisSentinelUtils.saveBehind("saved", "old", 60));
+            assertTrue(JedisSentinelUtils.save("saved", "new", 60));
+            assertTrue(JedisSentinelUtils.saveBehind("expired", "kept", 60));
+            assertTrue(JedisSentinelUtils.expire("expired", 30));
+            assertEquals(0, JedisSentinelUtils.getWriteBehind().queueDepth());
+            assertEquals(3, JedisSentinelUtils.getWriteBehind().cancelledCount());
+        } finally {
+            // 写出剩余的值
+            JedisSentinelUtils.disableWriteBehind();
+        }
+        assertNull(JedisSentinelUtils.get("deleted"));
+        assertEquals("new", JedisSentinelUtils.get("saved"));
+        assertEquals("kept", JedisSentinelUtils.get("expired"));
+    }
+}
@@ -0,0 +1,37 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import com.redis.redis_java.SerializeUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for KeyEncoding and the key migration mapping.
+ */
+public class KeyEncodingTest extends TestCase {
+
+    public void testUtf8Keys() throws Exception {
+        assertEquals("customRedisKey2", new String(KeyEncoding.UTF8.encode("customRedisKey2"), "UTF-8"));
+        assertEquals("用户:1", new String(KeyEncoding.UTF8.encode("用户:1"), "UTF-8"));
+        assertEquals("42", new String(KeyEncoding.UTF8.encode(42L)));
+        assertTrue(KeyEncoding.UTF8.encode("k").length < KeyEncoding.JAVA.encode("k").length);
+
+        Date date = new Date(0);
+        assertTrue(Arrays.equals(SerializeUtils.serialize(date), KeyEncoding.UTF8.encode(date)));
+    }
+
+    public void testMigrationMapping() throws Exception {
+        KeyMigration migration = new KeyMigration(null, KeyEncoding.UTF8, 100);
+        byte[] old = KeyEncoding.JAVA.encode("customRedisKey2");
+        assertEquals("customRedisKey2", new String(migration.newKey(old)));
+        assertEquals("7", new String(migration.newKey(KeyEncoding.JAVA.encode(7))));
+
+        // 已经是新编码、非String/数字、带后缀的加载锁都不迁移
+        assertNull(migration.newKey("customRedisKey2".getBytes()));
+        assertNull(migration.newKey(KeyEncoding.JAVA.encode(new Date(0))));
+        byte[] lock = Arrays.copyOf(old, old.length + 10);
+        assertNull(migration.newKey(lock));
+    }
+}
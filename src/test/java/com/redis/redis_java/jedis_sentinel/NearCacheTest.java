@@ -0,0 +1,117 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+
+/**
+ * Unit test for NearCache.
+ */
+public class NearCacheTest extends TestCase {
+
+    public void testPutAndInvalidate() {
+        NearCache cache = new NearCache(1024, 1024 * 1024, 60000);
+        byte[] key = "k1".getBytes();
+        cache.put(key, "v1", 2, cache.version(key));
+        assertEquals("v1", cache.get("k1".getBytes()));
+
+        cache.invalidate(key);
+        assertNull(cache.get(key));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    public void testStalePutIsDropped() {
+        NearCache cache = new NearCache(1024, 1024 * 1024, 60000);
+        byte[] key = "k1".getBytes();
+        long version = cache.version(key);
+        cache.invalidate(key);
+        cache.put(key, "stale", 5, version);
+        assertNull(cache.get(key));
+    }
+
+    public void testUnrelatedInvalidationKeepsRefill() {
+        NearCache cache = new NearCache(1024, 1024 * 1024, 60000);
+        byte[] key = "k1".getBytes();
+        long version = cache.version(key);
+        int unrelated = 0;
+        for (int i = 0; i < 100; i++) {
+            cache.invalidate(("other" + i).getBytes());
+            if (cache.version(key) == version) {
+                unrelated++;
+            }
+        }
+        assertTrue(unrelated > 0);
+        cache.put(key, "v1", 2, version);
+        // 同一分片的key失效过时放弃回填
+        assertEquals(cache.version(key) == version ? "v1" : null, cache.get(key));
+    }
+
+    public void testEvictsByEntriesAndBytes() {
+        // 16 segments, each holds at most 1 entry and 64 bytes
+        NearCache cache = new NearCache(16, 16 * 64, 60000);
+        for (int i = 0; i < 1000; i++) {
+            byte[] key = ("k" + i).getBytes();
+            cache.put(key, "v" + i, 10, cache.version(key));
+        }
+        assertTrue(cache.size() <= 16);
+        assertTrue(cache.evictionCount() >= 1000 - 16);
+
+        byte[] big = "big".getBytes();
+        cache.put(big, "v", 65, cache.version(big));
+        assertNull(cache.get("big".getBytes()));
+        assertTrue(cache.bytes() <= 16 * 64);
+    }
+
+    public void testSubscribeUsesSuppliedConnection() throws Exception {
+        final NearCache cache = new NearCache(1024, 1024 * 1024, 60000);
+        final byte[] key = "k1".getBytes();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch publish = new CountDownLatch(1);
+        final CountDownLatch invalidated = new CountDownLatch(1);
+        final CountDownLatch unsubscribe = new CountDownLatch(1);
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+        cache.subscribe(() -> {
+            opened.incrementAndGet();
+            return new Jedis() {
+                @Override
+                public void subscribe(BinaryJedisPubSub pubSub, byte[]... channels) {
+                    subscribed.countDown();
+                    try {
+                        publish.await(5, TimeUnit.SECONDS);
+                        pubSub.onMessage(channels[0], key);
+                        invalidated.countDown();
+                        unsubscribe.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+        });
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+        cache.put(key, "v1", 2, cache.version(key));
+        assertEquals("v1", cache.get(key));
+        publish.countDown();
+        assertTrue(invalidated.await(5, TimeUnit.SECONDS));
+        assertNull(cache.get(key));
+
+        cache.close();
+        unsubscribe.countDown();
+        for (int i = 0; i < 100 && closed.get() == 0; i++) {
+            Thread.sleep(20);
+        }
+        // 订阅结束后关闭连接, close()之后不再重连
+        assertEquals(1, closed.get());
+        assertEquals(1, opened.get());
+    }
+}
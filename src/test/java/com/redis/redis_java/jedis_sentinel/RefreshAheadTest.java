@@ -0,0 +1,91 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.redis.redis_java.codec.Codecs;
+import com.redis.redis_java.codec.TimedValue;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for RefreshAhead and the timed value frame.
+ */
+public class RefreshAheadTest extends TestCase {
+
+    public void testRefreshPoint() {
+        RefreshAhead r = new RefreshAhead(0.8, 0, 60, 1);
+        try {
+            long expireAt = 100000;
+            // TTL 100秒, 80秒后开始刷新
+            assertFalse(r.shouldRefresh(expireAt - 30000, expireAt, 100, 500));
+            assertTrue(r.shouldRefresh(expireAt - 10000, expireAt, 100, 500));
+            assertTrue(r.shouldRefresh(expireAt + 1, expireAt, 100, 500));
+        } finally {
+            r.close();
+        }
+    }
+
+    public void testXFetchRefreshesEarlierForSlowLoads() {
+        RefreshAhead r = new RefreshAhead(1, 1, 60, 1);
+        try {
+            long expireAt = 100000;
+            int fast = 0;
+            int slow = 0;
+            for (int i = 0; i < 1000; i++) {
+                if (r.shouldRefresh(expireAt - 1000, expireAt, 100, 10)) {
+                    fast++;
+                }
+                if (r.shouldRefresh(expireAt - 1000, expireAt, 100, 2000)) {
+                    slow++;
+                }
+            }
+            assertTrue(fast < 10);
+            assertTrue(slow > 300);
+        } finally {
+            r.close();
+        }
+    }
+
+    public void testRefreshIsDeduplicated() throws Exception {
+        RefreshAhead r = new RefreshAhead(0.5, 0, 60, 2);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final AtomicInteger runs = new AtomicInteger();
+            Runnable task = () -> {
+                runs.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            byte[] key = "k".getBytes();
+            r.refresh(key, true, task);
+            r.refresh(key, true, task);
+            r.refresh(key, false, task);
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (r.refreshCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, runs.get());
+            assertEquals(1, r.refreshCount());
+            assertEquals(2, r.staleReadCount());
+        } finally {
+            r.close();
+        }
+    }
+
+    public void testTimedValueFrame() throws Exception {
+        byte[] encoded = Codecs.COMPACT.encode("value");
+        byte[] timed = TimedValue.wrap(encoded, 1234567890123L, 3600, 42);
+        assertTrue(TimedValue.isTimed(timed));
+        assertFalse(TimedValue.isTimed(encoded));
+        assertEquals(1234567890123L, TimedValue.expireAtMillis(timed));
+        assertEquals(3600, TimedValue.ttlSeconds(timed));
+        assertEquals(42, TimedValue.deltaMillis(timed));
+        assertEquals("value", Codecs.decode(timed));
+    }
+}
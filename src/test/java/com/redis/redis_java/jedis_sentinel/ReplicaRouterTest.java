@@ -0,0 +1,122 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * Unit test for ReplicaRouter routing, with stub pools standing in for the master and replicas.
+ */
+public class ReplicaRouterTest extends TestCase {
+
+    private final List<ReplicaRouter> routers = new ArrayList<ReplicaRouter>();
+
+    @Override
+    protected void tearDown() {
+        for (ReplicaRouter router : routers) {
+            router.close();
+        }
+    }
+
+    static Pool<Jedis> stubPool() {
+        return new Pool<Jedis>() {
+            @Override
+            public void destroy() {
+            }
+        };
+    }
+
+    private ReplicaRouter router(ReadPreference preference, Pool<Jedis> master, long stickyMillis) {
+        // 没有sentinel时刷新保留当前的replica列表
+        ReplicaRouter router = new ReplicaRouter(preference, master, Collections.<String>emptySet(), "master1", null,
+                100, null, stickyMillis, 60000);
+        routers.add(router);
+        return router;
+    }
+
+    public void testMasterPreference() {
+        Pool<Jedis> master = stubPool();
+        ReplicaRouter router = router(ReadPreference.MASTER, master, 0);
+        router.addReplica(new HostAndPort("10.0.0.1", 6379), stubPool(), 1000, 1000);
+        for (int i = 0; i < 4; i++) {
+            assertSame(master, router.route("k".getBytes()));
+        }
+    }
+
+    public void testReplicaPreferredRoundRobinAndFailover() {
+        Pool<Jedis> master = stubPool();
+        Pool<Jedis> a = stubPool();
+        Pool<Jedis> b = stubPool();
+        ReplicaRouter router = router(ReadPreference.REPLICA_PREFERRED, master, 0);
+        assertSame(master, router.route("k".getBytes()));
+
+        router.addReplica(new HostAndPort("10.0.0.1", 6379), a, 1000, 1000);
+        router.addReplica(new HostAndPort("10.0.0.2", 6379), b, 1000, 1000);
+        Set<Pool<Jedis>> routed = new HashSet<Pool<Jedis>>();
+        for (int i = 0; i < 4; i++) {
+            Pool<Jedis> first = router.route("k".getBytes());
+            Pool<Jedis> second = router.route("k".getBytes());
+            assertNotSame(first, second);
+            routed.add(first);
+            routed.add(second);
+        }
+        assertEquals(new HashSet<Pool<Jedis>>(Arrays.asList(a, b)), routed);
+
+        router.failed(a);
+        assertEquals(Arrays.asList(new HostAndPort("10.0.0.2", 6379)), router.getReplicas());
+        for (int i = 0; i < 4; i++) {
+            assertSame(b, router.route("k".getBytes()));
+        }
+        router.failed(b);
+        assertSame(master, router.route("k".getBytes()));
+    }
+
+    public void testNearestSkipsSlowNodes() {
+        Pool<Jedis> master = stubPool();
+        Pool<Jedis> near = stubPool();
+        Pool<Jedis> far = stubPool();
+        ReplicaRouter router = router(ReadPreference.NEAREST, master, 0);
+        router.addReplica(new HostAndPort("10.0.0.1", 6379), near, 200000, 250000);
+        router.addReplica(new HostAndPort("10.0.0.2", 6379), far, 5000000, 250000);
+
+        // 最低延迟200微秒, 上限200*1.5+100=400微秒, master在范围内而远端replica不在
+        Set<Pool<Jedis>> routed = new HashSet<Pool<Jedis>>();
+        for (int i = 0; i < 10; i++) {
+            routed.add(router.route("k".getBytes()));
+        }
+        assertEquals(new HashSet<Pool<Jedis>>(Arrays.asList(master, near)), routed);
+    }
+
+    public void testReadYourWritesSticksToMaster() throws Exception {
+        Pool<Jedis> master = stubPool();
+        Pool<Jedis> replica = stubPool();
+        final ReplicaRouter router = router(ReadPreference.REPLICA_PREFERRED, master, 200);
+        router.addReplica(new HostAndPort("10.0.0.1", 6379), replica, 1000, 1000);
+
+        router.wrote("user:1".getBytes());
+        // 内容相同的新数组也命中
+        assertSame(master, router.route("user:1".getBytes()));
+        assertSame(replica, router.route("user:2".getBytes()));
+        assertSame(master, router.route(Arrays.asList("user:2".getBytes(), "user:1".getBytes())));
+        assertSame(replica, router.route(Arrays.asList("user:2".getBytes(), "user:3".getBytes())));
+
+        // 其他线程写入的key不在保证范围内
+        final AtomicReference<Pool<Jedis>> other = new AtomicReference<Pool<Jedis>>();
+        Thread thread = new Thread(() -> other.set(router.route("user:1".getBytes())));
+        thread.start();
+        thread.join();
+        assertSame(replica, other.get());
+
+        Thread.sleep(300);
+        assertSame(replica, router.route("user:1".getBytes()));
+    }
+}
@@ -0,0 +1,59 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for SingleFlight.
+ */
+public class SingleFlightTest extends TestCase {
+
+    public void testConcurrentCallersShareOneLoad() throws Exception {
+        final SingleFlight<String> flight = new SingleFlight<String>();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> flight.load("k", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return "v";
+                })));
+            }
+            while (flight.size() == 0) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("v", future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(0, flight.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testFailureIsNotCached() throws Exception {
+        SingleFlight<String> flight = new SingleFlight<String>();
+        try {
+            flight.load("k", () -> {
+                throw new IllegalStateException("db down");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals("v", flight.load("k", () -> "v"));
+    }
+}
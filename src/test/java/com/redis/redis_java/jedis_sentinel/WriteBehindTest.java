@@ -0,0 +1,128 @@
+package com.redis.redis_java.jedis_sentinel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for WriteBehind.
+ */
+public class WriteBehindTest extends TestCase {
+
+    public void testCoalesceAndFlushOnClose() {
+        final List<WriteBehind.Entry> written = new ArrayList<WriteBehind.Entry>();
+        WriteBehind w = new WriteBehind(100, 10, 60000, 0, batch -> {
+            synchronized (written) {
+                written.addAll(batch);
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            assertTrue(w.offer("views".getBytes(), String.valueOf(i).getBytes(), 60));
+        }
+        assertTrue(w.offer("seen".getBytes(), "x".getBytes(), 30));
+        assertEquals(2, w.queueDepth());
+        assertEquals(4, w.coalescedCount());
+
+        w.close(5000);
+        assertEquals(2, written.size());
+        assertEquals("4", new String(written.get(0).value));
+        assertEquals(30, written.get(1).seconds);
+        assertEquals(2, w.writtenCount());
+        assertFalse(w.offer("late".getBytes(), "x".getBytes(), 1));
+        assertEquals(1, w.droppedCount());
+    }
+
+    public void testBatchSizeTriggersFlush() throws Exception {
+        final CountDownLatch flushed = new CountDownLatch(1);
+        WriteBehind w = new WriteBehind(100, 3, 60000, 0, batch -> flushed.countDown());
+        try {
+            for (int i = 0; i < 3; i++) {
+                w.offer(("k" + i).getBytes(), new byte[1], 60);
+            }
+            assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        } finally {
+            w.close(5000);
+        }
+    }
+
+    public void testDropWhenFullAndFailedBatch() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        WriteBehind w = new WriteBehind(2, 2, 60000, 0, batch -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("redis down");
+        });
+        try {
+            // 前两个值被后台线程取走并阻塞在writer中
+            w.offer("a".getBytes(), new byte[1], 60);
+            w.offer("b".getBytes(), new byte[1], 60);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (w.queueDepth() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(w.offer("c".getBytes(), new byte[1], 60));
+            assertTrue(w.offer("d".getBytes(), new byte[1], 60));
+            assertFalse(w.offer("e".getBytes(), new byte[1], 60));
+            assertEquals(1, w.droppedCount());
+        } finally {
+            release.countDown();
+            w.close(5000);
+        }
+        assertEquals(4, w.failedCount());
+    }
+
+    public void testCancelPendingAndWaitForInFlight() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> written = new ArrayList<String>();
+        WriteBehind w = new WriteBehind(100, 1, 60000, 0, batch -> {
+            writing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (written) {
+                for (WriteBehind.Entry entry : batch) {
+                    written.add(new String(entry.key));
+                }
+            }
+        });
+        try {
+            // a被后台线程取走并阻塞在writer中, b还在队列中
+            w.offer("a".getBytes(), new byte[1], 60);
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            w.offer("b".getBytes(), new byte[1], 60);
+            assertNotNull(w.cancel("b".getBytes()));
+            assertNull(w.cancel("b".getBytes()));
+            assertEquals(0, w.queueDepth());
+            assertEquals(1, w.cancelledCount());
+
+            // 取消正在写出的key时等待写出完成
+            Thread releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                release.countDown();
+            });
+            releaser.start();
+            assertNull(w.cancel("a".getBytes()));
+            synchronized (written) {
+                assertEquals(1, written.size());
+            }
+            releaser.join();
+        } finally {
+            release.countDown();
+            w.close(5000);
+        }
+        assertEquals(1, w.writtenCount());
+    }
+}
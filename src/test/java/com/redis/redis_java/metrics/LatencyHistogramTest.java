@@ -0,0 +1,59 @@
+package com.redis.redis_java.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for LatencyHistogram and CommandMetrics.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    public void testBucketBounds() {
+        for (long v = 0; v < 1000000; v += 7) {
+            int i = LatencyHistogram.index(v);
+            assertTrue(v <= LatencyHistogram.upperBound(i));
+            assertTrue(i == 0 || v > LatencyHistogram.upperBound(i - 1));
+        }
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileNanos(99));
+        for (long v = 1; v <= 10000; v++) {
+            histogram.record(v * 1000);
+        }
+        assertEquals(10000, histogram.count());
+        assertEquals(10000000L, histogram.maxNanos());
+        assertEquals(5000500.0, histogram.meanNanos(), 1);
+        assertNear(5000000, histogram.percentileNanos(50));
+        assertNear(9900000, histogram.percentileNanos(99));
+        assertEquals(10000000L, histogram.percentileNanos(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.maxNanos());
+    }
+
+    public void testCommandMetrics() {
+        CommandMetrics metrics = new CommandMetrics("test");
+        assertNull(metrics.latency("get"));
+        metrics.record("get", System.nanoTime());
+        metrics.record("get", System.nanoTime());
+        metrics.error("set");
+        metrics.recordSerialize(System.nanoTime(), 10);
+        metrics.recordDeserialize(System.nanoTime(), 4);
+
+        assertEquals(2, metrics.latency("get").count());
+        assertEquals(1, metrics.errors("set"));
+        assertEquals(10, metrics.getBytesOut());
+        assertEquals(4, metrics.getBytesIn());
+        assertEquals(2, metrics.getCommands().length);
+
+        metrics.reset();
+        assertEquals(0, metrics.latency("get").count());
+        assertEquals(0, metrics.getBytesOut());
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(actual + " not near " + expected, Math.abs(actual - expected) <= expected / 32);
+    }
+}
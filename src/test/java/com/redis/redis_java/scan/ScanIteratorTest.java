@@ -0,0 +1,175 @@
+package com.redis.redis_java.scan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.redis.redis_java.embedded.EmbeddedJedis;
+import com.redis.redis_java.embedded.EmbeddedStore;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+
+/**
+ * Unit test for the HSCAN/SSCAN/ZSCAN iterators, with an embedded store that returns fixed-size pages.
+ */
+public class ScanIteratorTest extends TestCase {
+
+    private static final int PAGE = 10;
+
+    private EmbeddedStore store;
+
+    private final List<String> cursors = new ArrayList<String>();
+
+    private boolean skipped;
+
+    private final AtomicInteger borrowed = new AtomicInteger();
+
+    private final AtomicInteger closed = new AtomicInteger();
+
+    @Override
+    protected void setUp() {
+        store = new EmbeddedStore(4);
+    }
+
+    @Override
+    protected void tearDown() {
+        store.close();
+    }
+
+    /**
+     * 内嵌的集合SCAN一次返回全部元素, 这里按游标切成每页PAGE个, 第二页之后先返回一个空页,
+     * 与Redis一样游标不为0时页可以为空
+     */
+    private <T> ScanResult<T> page(ScanResult<T> all, String cursor) {
+        cursors.add(cursor);
+        List<T> result = all.getResult();
+        int from = Integer.parseInt(cursor);
+        if (from == 0) {
+            skipped = false;
+        } else if (from == PAGE * 2 && !skipped) {
+            skipped = true;
+            return new ScanResult<T>(cursor, new ArrayList<T>());
+        }
+        int to = Math.min(result.size(), from + PAGE);
+        String next = to == result.size() ? ScanParams.SCAN_POINTER_START : String.valueOf(to);
+        return new ScanResult<T>(next, new ArrayList<T>(result.subList(from, to)));
+    }
+
+    private Supplier<Jedis> source() {
+        return () -> {
+            borrowed.incrementAndGet();
+            return new EmbeddedJedis(store) {
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+
+                @Override
+                public ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, ScanParams params) {
+                    return page(super.hscan(key, cursor, params), cursor);
+                }
+
+                @Override
+                public ScanResult<String> sscan(String key, String cursor, ScanParams params) {
+                    return page(super.sscan(key, cursor, params), cursor);
+                }
+
+                @Override
+                public ScanResult<byte[]> sscan(byte[] key, byte[] cursor, ScanParams params) {
+                    String position = new String(cursor);
+                    ScanResult<byte[]> result = page(super.sscan(key, cursor, params), position);
+                    return new ScanResult<byte[]>(result.getCursorAsBytes(), result.getResult());
+                }
+
+                @Override
+                public ScanResult<Tuple> zscan(String key, String cursor, ScanParams params) {
+                    return page(super.zscan(key, cursor, params), cursor);
+                }
+            };
+        };
+    }
+
+    public void testHashWrapsAroundCursor() {
+        EmbeddedJedis jedis = new EmbeddedJedis(store);
+        for (int i = 0; i < 25; i++) {
+            jedis.hset("h", "f" + i, "v" + i);
+        }
+        Set<String> fields = new HashSet<String>();
+        ScanIterator<Map.Entry<String, String>> it = ScanIterator.hash(source(), "h", null, PAGE);
+        while (it.hasNext()) {
+            Map.Entry<String, String> entry = it.next();
+            assertEquals("v" + entry.getKey().substring(1), entry.getValue());
+            fields.add(entry.getKey());
+        }
+        assertEquals(25, fields.size());
+        // 0 -> 10 -> 20(空页) -> 20 -> 0, 每页借用一次连接并归还
+        assertEquals(Arrays.asList("0", "10", "20", "20"), cursors);
+        assertEquals(4, borrowed.get());
+        assertEquals(4, closed.get());
+        assertFalse(it.hasNext());
+        try {
+            it.next();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    public void testSetAndBinarySet() {
+        EmbeddedJedis jedis = new EmbeddedJedis(store);
+        for (int i = 0; i < 30; i++) {
+            jedis.sadd("s", "m" + i);
+        }
+        Set<String> members = new HashSet<String>();
+        ScanIterator.set(source(), "s", null, PAGE).forEachRemaining(members::add);
+        assertEquals(30, members.size());
+        assertTrue(members.contains("m29"));
+
+        Set<String> binary = new HashSet<String>();
+        List<Integer> pages = new ArrayList<Integer>();
+        ScanIterator.binarySet(source(), "s".getBytes(), null, PAGE).forEachPage(page -> {
+            pages.add(page.size());
+            for (byte[] member : page) {
+                binary.add(new String(member));
+            }
+        });
+        assertEquals(members, binary);
+        // 空页不回调
+        assertEquals(Arrays.asList(PAGE, PAGE, PAGE), pages);
+    }
+
+    public void testSortedSet() {
+        EmbeddedJedis jedis = new EmbeddedJedis(store);
+        for (int i = 0; i < 12; i++) {
+            jedis.zadd("z", i, "m" + i);
+        }
+        Set<String> members = new HashSet<String>();
+        ScanIterator.sortedSet(source(), "z", null, PAGE).forEachRemaining(tuple -> {
+            assertEquals("m" + (int) tuple.getScore(), tuple.getElement());
+            members.add(tuple.getElement());
+        });
+        assertEquals(12, members.size());
+        assertEquals(Arrays.asList("0", "10"), cursors);
+    }
+
+    public void testEmptyCollections() {
+        assertFalse(ScanIterator.hash(source(), "missing", null, PAGE).hasNext());
+        assertFalse(ScanIterator.set(source(), "missing", null, PAGE).stream().findAny().isPresent());
+        assertFalse(ScanIterator.sortedSet(source(), "missing", null, PAGE).hasNext());
+        List<List<byte[]>> pages = new ArrayList<List<byte[]>>();
+        ScanIterator.binarySet(source(), "missing".getBytes(), null, PAGE).forEachPage(pages::add);
+        assertTrue(pages.isEmpty());
+        // 每个空集合只取一页
+        assertEquals(4, borrowed.get());
+        assertEquals(4, closed.get());
+    }
+}